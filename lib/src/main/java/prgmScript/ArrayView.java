@@ -0,0 +1,131 @@
+package prgmScript;
+
+import java.nio.DoubleBuffer;
+import java.nio.LongBuffer;
+import java.util.AbstractList;
+import java.util.Objects;
+import java.util.RandomAccess;
+
+/**
+ * A fixed-size list of values backed directly by host memory. Each access to an element reads the host memory, and
+ * each assignment to an element writes through to it, so no elements are copied when the list is created.
+ *
+ * <p>The size of the list cannot change, so calling any of the script functions which add or remove elements throws
+ * a {@linkplain NativeException}, which is reported to the script as a
+ * {@linkplain prgmScript.exception.ScriptRuntimeException}. Elements of read-only views are const, so assigning to
+ * them is reported like any other assignment to a const value.
+ *
+ * @see ModuleMaker#createListView(long[],boolean,boolean)
+ */
+abstract class ArrayView extends AbstractList<Value> implements RandomAccess
+{
+    /** The type of the list's elements. */
+    private final ConstableType type;
+    /** The slots which have been handed out by {@linkplain ArrayView#get(int)}, or {@code null}. */
+    private Slot[] slots = null;
+    
+    private ArrayView(final Type type,final boolean readOnly) {this.type = Types.constableType(type,readOnly);}
+    
+    /** An element of an {@linkplain ArrayView}, which writes any value assigned to it through to the host memory. */
+    static final class Slot extends Value
+    {
+        private final ArrayView list;
+        private final int index;
+        
+        private Slot(final ArrayView list,final int index)
+        {
+            super(list.type,list.load(index));
+            this.list = list;
+            this.index = index;
+        }
+        
+        @Override
+        Object set(final Object value)
+        {
+            list.store(index,value);
+            return this.value = value;
+        }
+    }
+    
+    /** @return The element at the specified index, which has already been checked. */
+    abstract Object load(int index);
+    /** Stores the element at the specified index, which has already been checked. */
+    abstract void store(int index,Object value);
+    
+    /**
+     * @return The slot of the element at the specified index. Each index has one slot, which is created by the first
+     *         call and reloaded from the host memory by every later one.
+     */
+    @Override
+    public Value get(final int index)
+    {
+        Objects.checkIndex(index,size());
+        // Slots only cache the host memory, so threads which race to create them lose nothing but the allocation.
+        Slot[] c = slots;
+        if(c == null) slots = c = new Slot[size()];
+        final Slot s = c[index];
+        if(s == null) return c[index] = new Slot(this,index);
+        s.value = load(index);
+        return s;
+    }
+    @Override
+    public void add(final int index,final Value element)
+    {
+        throw new NativeException("Cannot change the size of a view of host memory");
+    }
+    @Override
+    public Value remove(final int index)
+    {
+        throw new NativeException("Cannot change the size of a view of host memory");
+    }
+    
+    static ArrayView of(final long[] array,final boolean readOnly)
+    {
+        return new ArrayView(Type.INT,readOnly)
+        {
+            @Override public int size() {return array.length;}
+            @Override Object load(final int index) {return array[index];}
+            @Override void store(final int index,final Object value) {array[index] = (long)value;}
+        };
+    }
+    static ArrayView of(final double[] array,final boolean readOnly)
+    {
+        return new ArrayView(Type.FLOAT,readOnly)
+        {
+            @Override public int size() {return array.length;}
+            @Override Object load(final int index) {return array[index];}
+            @Override void store(final int index,final Object value) {array[index] = (double)value;}
+        };
+    }
+    static ArrayView of(final boolean[] array,final boolean readOnly)
+    {
+        return new ArrayView(Type.BOOL,readOnly)
+        {
+            @Override public int size() {return array.length;}
+            @Override Object load(final int index) {return array[index];}
+            @Override void store(final int index,final Object value) {array[index] = (boolean)value;}
+        };
+    }
+    /** @param buffer The elements between the buffer's position and limit are used. */
+    static ArrayView of(final LongBuffer buffer,final boolean readOnly)
+    {
+        final LongBuffer b = buffer.slice();
+        return new ArrayView(Type.INT,readOnly || b.isReadOnly())
+        {
+            @Override public int size() {return b.limit();}
+            @Override Object load(final int index) {return b.get(index);}
+            @Override void store(final int index,final Object value) {b.put(index,(long)value);}
+        };
+    }
+    /** @param buffer The elements between the buffer's position and limit are used. */
+    static ArrayView of(final DoubleBuffer buffer,final boolean readOnly)
+    {
+        final DoubleBuffer b = buffer.slice();
+        return new ArrayView(Type.FLOAT,readOnly || b.isReadOnly())
+        {
+            @Override public int size() {return b.limit();}
+            @Override Object load(final int index) {return b.get(index);}
+            @Override void store(final int index,final Object value) {b.put(index,(double)value);}
+        };
+    }
+}
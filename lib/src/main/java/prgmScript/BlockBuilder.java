@@ -10,11 +10,17 @@ import java.util.List;
 final class BlockBuilder
 {
     /** The module that this block is located in. */
-    private final String module;
+    final String module;
     /** The list of instructions that compose this block. */
-    private final List<Instruction> ilist = new ArrayList<>();
-    /** A string representation of the above instructions for debugging. */
-    private final List<String> dbgInstr = new ArrayList<>();
+    final List<Instruction> ilist = new ArrayList<>();
+    /**
+     * The opcode and operands which each of the above instructions was created from, or {@code null} if they are not
+     * kept.
+     */
+    final List<Script.Op> ops;
+    final List<Object[]> operands;
+    /** A string representation of the above instructions for debugging, or {@code null} if they are not kept. */
+    private final List<String> dbgInstr;
     /** The return type of the current block. */
     Type ret = null;
     /** Branch indices */
@@ -24,15 +30,40 @@ final class BlockBuilder
     /** A dummy return type for ternary conditional instructions. */
     Type dummyT = null;
     
-    BlockBuilder(final String module,final String name) {this.module = module; this.name = name;}
+    /**
+     * @param debug  Whether the debug name of each instruction is kept.
+     * @param keepIR Whether the opcode and operands of each instruction are kept.
+     */
+    BlockBuilder(final String module,final String name,final boolean debug,final boolean keepIR)
+    {
+        this.module = module;
+        this.name = name;
+        dbgInstr = debug? new ArrayList<>() : null;
+        ops = keepIR? new ArrayList<>() : null;
+        operands = keepIR? new ArrayList<>() : null;
+    }
+    
+    /** @return {@code true} if the debug name of each instruction is kept. */
+    boolean debug() {return dbgInstr != null;}
     
-    /** Adds an instruction. */
-    void instruction(final Instruction instruction,final String name)
+    /**
+     * Adds an instruction.
+     *
+     * @param op       The opcode which created the instruction.
+     * @param operands The operands which the instruction was created from.
+     * @param name     The instruction's debug name, which is ignored unless {@linkplain BlockBuilder#debug()}.
+     */
+    void instruction(final Instruction instruction,final Script.Op op,final Object[] operands,final String name)
     {
         //TODO if statement needed? if any instructions return, they should have a type
         if(instruction.isRet) ret = instruction.type;
         ilist.add(instruction);
-        dbgInstr.add(name);
+        if(ops != null)
+        {
+            ops.add(op);
+            this.operands.add(operands);
+        }
+        if(dbgInstr != null) dbgInstr.add(name);
     }
     /** Adds a branch. */
     void branch(final boolean which,final int destination)
@@ -51,7 +82,9 @@ final class BlockBuilder
             if(retType.equals(Type.VOID))
             {
                 // Add a dummy void return statement if there isn't one already.
-                ilist.add(new Instruction(line,ret = Type.VOID) {@Override Object exec(final RuntimeScope s) {return Script.RET_VOID;}});
+                final Object[] a = {Type.VOID};
+                instruction(Script.Op.RETURN_VOID.make(module,line,a),Script.Op.RETURN_VOID,a,
+                            dbgInstr != null? "return "+Type.VOID : null);
                 return;
             }
             reporter.report(line,"Missing return statement");
@@ -68,8 +101,10 @@ final class BlockBuilder
     void dump(final List<BlockBuilder> bbList,final StringBuilder sb)
     {
         sb.append(name).append(':');
-        for(final String s : dbgInstr)
-            sb.append("\n\t\t\t").append(s);
+        // Without debug names, only the opcodes are known, if they are kept at all.
+        final List<?> l = dbgInstr != null? dbgInstr : ops;
+        if(l != null) for(final Object s : l) sb.append("\n\t\t\t").append(s);
+        else sb.append("\n\t\t\t").append(ilist.size()).append(" instructions");
         sb.append("\n\t\t\t")
           .append(ret != null? ret : '-').append(",\t")
           .append(br0 != -1? bbList.get(br0).name : '-').append(",\t")
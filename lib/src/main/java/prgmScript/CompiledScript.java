@@ -0,0 +1,88 @@
+package prgmScript;
+
+import prgmScript.util.ContainerUtil;
+
+import java.util.Map;
+
+/**
+ * A script which has been parsed and compiled but not executed. Each call to {@linkplain CompiledScript#run()}
+ * executes the top-level code in a new runtime scope, so the resulting modules do not share any globals. Constant
+ * lists are frozen once the top-level code has finished, so that importers can share them.
+ *
+ * <p>{@linkplain ScriptPool}s create their instances by copying a single initialized instance instead.
+ *
+ * @apiNote Modules imported by the script are shared between all instances.
+ *
+ * @see Script#compile(java.io.Reader,String,java.io.PrintStream)
+ * @see IRCodec
+ * @see ScriptPool
+ */
+public final class CompiledScript
+{
+    /** The name of the script's module. */
+    final String module;
+    final Script.Body body;
+    final CompilerScopeEntry compileTime;
+    private final Map<String,Type> structs;
+    /** The instance which {@linkplain CompiledScript#instance()} copies, or {@code null} before the first copy. */
+    private volatile Template template = null;
+    
+    /** The globals of an instance whose top-level code has been executed, and the copier which shares its imports. */
+    private record Template(Map<String,Value> fields,ModuleCopier copier) {}
+    
+    CompiledScript(final String module,final Script.Body body,final CompilerScopeEntry compileTime)
+    {
+        this.module = module;
+        this.body = body;
+        structs = ContainerUtil.makeImmutable(compileTime.structs);
+        this.compileTime = new CompilerScopeEntry
+        (
+            ContainerUtil.makeImmutable(compileTime.fields),
+            structs,
+            ContainerUtil.makeImmutable(compileTime.modules)
+        );
+    }
+    
+    /**
+     * Executes the script's top-level code. This method may be called from several threads at once.
+     *
+     * @return A new instance of the script's module.
+     */
+    public Module run()
+    {
+        final RuntimeScope runTime = new RuntimeScope();
+        Script.exec(body.entry(),runTime);
+        return module(runTime.popScope().fields);
+    }
+    /**
+     * Creates an instance of the script's module by copying an instance which was initialized once per compiled script,
+     * instead of executing the top-level code again. Constant lists are frozen once, and each copy receives new views of
+     * them. Only the first call takes a lock.
+     *
+     * @return A new instance of the script's module.
+     *
+     * @see ModuleCopier
+     */
+    Module instance()
+    {
+        // The template is never changed once it is created, so it is only locked while it is created and is copied
+        // by every thread at once afterwards.
+        Template t = template;
+        if(t == null)
+            synchronized(this)
+            {
+                if((t = template) == null) template = t = new Template(run().runTime.fields,new ModuleCopier());
+            }
+        return wrap(t.copier.copy(t.fields));
+    }
+    /** @return A new instance of the script's module with the specified globals. */
+    Module module(final Map<String,Value> fields)
+    {
+        CowList.freezeConstants(fields);
+        return wrap(fields);
+    }
+    private Module wrap(final Map<String,Value> fields)
+    {
+        return new Module(compileTime,new RuntimeScopeEntry(ContainerUtil.makeImmutable(fields),structs));
+    }
+}
@@ -4,7 +4,6 @@ import prgmScript.util.Stack;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
 
 /** An extension of {@linkplain Scope} specifically for use during compile time. */
 final class CompilerScope extends Scope<ConstableType,CompilerScopeEntry>
@@ -33,16 +32,16 @@ final class CompilerScope extends Scope<ConstableType,CompilerScopeEntry>
         pushToScope(entry);
         entries.top().modules.add(module);
     }
-    /** @return A map of types representing the specified struct's fields. */
-    Map<String,ConstableType> getStruct(final String name)
+    /** @return The type of the struct with the specified name, or {@code null} if no such struct exists. */
+    Type getStruct(final String name)
     {
         for(int i = entries.pos();i != 0;)
         {
-            final Map<String,ConstableType> v = entries.data()[--i].structs.get(name);
+            final Type v = entries.data()[--i].structs.get(name);
             if(v != null) return v;
         }
         return null;
     }
     /** Puts a struct onto the current scope. */
-    void putStruct(final String name,final Map<String,ConstableType> struct) {entries.top().structs.put(name,struct);}
+    void putStruct(final Type struct) {entries.top().structs.put(struct.structName,struct);}
 }
\ No newline at end of file
@@ -10,7 +10,7 @@ final class CompilerScopeEntry extends Entry<ConstableType>
     final Set<String> modules;
     
     CompilerScopeEntry(final Map<String,ConstableType> fields,
-                       final Map<String,Map<String,ConstableType>> structs,
+                       final Map<String,Type> structs,
                        final Set<String> modules)
     {
         super(fields,structs);
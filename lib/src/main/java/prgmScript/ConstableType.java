@@ -1,7 +1,5 @@
 package prgmScript;
 
-import java.util.Objects;
-
 /** A class which contains a {@linkplain Type} and whether it is const. */
 @SuppressWarnings("ClassCanBeRecord")
 public final class ConstableType
@@ -12,7 +10,7 @@ public final class ConstableType
     ConstableType(final Type type,final boolean isConst) {this.type = type; this.isConst = isConst;}
     
     @Override public String toString() {return (isConst? "const ":"")+type;}
-    @Override public int hashCode() {return Objects.hash(type,isConst);}
+    @Override public int hashCode() {return type.id;}
     @Override
     public boolean equals(final Object o)
     {
@@ -20,7 +18,7 @@ public final class ConstableType
         if(o instanceof final Type t) ot = t;
         else if(o instanceof final ConstableType t) ot = t.type;
         else return false;
-        return type.equals(ot);
+        return type == ot;
     }
     
     /** A ConstableType object representing a primitive. */
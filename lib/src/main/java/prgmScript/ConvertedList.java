@@ -0,0 +1,86 @@
+package prgmScript;
+
+import java.util.*;
+import java.util.function.Function;
+
+/**
+ * A list which converts the elements of another list to a different type as they are read. The source list is
+ * snapshotted when the conversion is made (see {@linkplain CowList#snapshot(List)}), so later changes to either list
+ * are not visible in the other. Only frozen lists (constants of imported scripts and libraries) are shared by the
+ * snapshot; any other list, including its nested lists, is deep-copied when the conversion is made. The first time
+ * this list's structure is changed, every element is converted into a private copy.
+ *
+ * @see Script#listStruct(Type,List)
+ */
+final class ConvertedList extends AbstractList<Value> implements RandomAccess
+{
+    /** A snapshot of the source list, which is only read through {@linkplain CowList#frozenData(int)}. */
+    private final CowList source;
+    /** The type of the converted elements. */
+    private final ConstableType type;
+    private final Function<Object,Object> converter;
+    /** Private copies of the elements returned by {@linkplain ConvertedList#get(int)}, or {@code null}. */
+    private Value[] cells = null;
+    /** A private copy of the entire list, created by the first structural change, or {@code null}. */
+    private List<Value> own = null;
+    
+    ConvertedList(final List<Value> source,final ConstableType type,final Function<Object,Object> converter)
+    {
+        this.source = CowList.snapshot(source);
+        this.type = type;
+        this.converter = converter;
+    }
+    
+    private Value convert(final int index) {return new Value(type,converter.apply(source.frozenData(index)));}
+    /** @return The list's private copy, creating it if necessary. */
+    private List<Value> own()
+    {
+        if(own == null)
+        {
+            final int size = source.size();
+            own = new ArrayList<>(size);
+            for(int i = 0;i < size;++i)
+                own.add(cells != null && cells[i] != null? cells[i] : convert(i));
+            cells = null;
+        }
+        return own;
+    }
+    
+    @Override
+    public Value get(final int index)
+    {
+        if(own != null) return own.get(index);
+        final int size = source.size();
+        Objects.checkIndex(index,size);
+        if(cells == null) cells = new Value[size];
+        final Value c = cells[index];
+        return c != null? c : (cells[index] = convert(index));
+    }
+    @Override public int size() {return own != null? own.size() : source.size();}
+    @Override public Value set(final int index,final Value element) {return own().set(index,element);}
+    @Override public void add(final int index,final Value element) {++modCount; own().add(index,element);}
+    @Override public Value remove(final int index) {++modCount; return own().remove(index);}
+    /**
+     * @return An iterator which does not keep private copies of elements. Elements which have not been accessed by
+     *         {@linkplain ConvertedList#get(int)} are returned as temporary copies, so changes made to them are not
+     *         visible in this list.
+     */
+    @Override
+    public Iterator<Value> iterator()
+    {
+        return new Iterator<>()
+        {
+            int i = 0;
+            
+            @Override public boolean hasNext() {return i < size();}
+            @Override
+            public Value next()
+            {
+                if(!hasNext()) throw new NoSuchElementException();
+                final int j = i++;
+                if(own != null) return own.get(j);
+                return cells != null && cells[j] != null? cells[j] : convert(j);
+            }
+        };
+    }
+}
@@ -0,0 +1,206 @@
+package prgmScript;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A copy-on-write list of values. The elements of a frozen list are shared by every view of it and are never
+ * modified or handed out. Instead, each view hands out private copies of the elements, and copies the entire list the
+ * first time its structure is changed.
+ *
+ * <p>Constant list globals are frozen when their module is created, and each importer receives its own view of them.
+ * This lets any number of scripts and threads share a module's lists without copying them up front. Several threads may
+ * read the same view at once (e.g. through {@linkplain Module#getListView(String)}), so the private copies of elements
+ * are published atomically.
+ *
+ * @see CowList#freezeConstants(Map)
+ */
+final class CowList extends AbstractList<Value> implements RandomAccess
+{
+    /** The frozen elements, which are shared between views. */
+    private final Value[] shared;
+    /** Private copies of the elements returned by {@linkplain CowList#get(int)}, or {@code null}. */
+    private volatile AtomicReferenceArray<Value> cells = null;
+    /** A private copy of the entire list, created by the first structural change, or {@code null}. */
+    private volatile List<Value> own = null;
+    
+    private static final VarHandle CELLS;
+    static
+    {
+        try {CELLS = MethodHandles.lookup().findVarHandle(CowList.class,"cells",AtomicReferenceArray.class);}
+        catch(final ReflectiveOperationException e) {throw new ExceptionInInitializerError(e);}
+    }
+    
+    private CowList(final Value[] shared) {this.shared = shared;}
+    
+    /** @return A new view of the elements this list was frozen with. */
+    CowList view() {return new CowList(shared);}
+    
+    /** @return A copy of the value which shares any frozen lists contained within it. */
+    private static Value fork(final Value v) {return new Value(v.type,fork(v.value,v.type.type));}
+    @SuppressWarnings("unchecked")
+    private static Object fork(final Object o,final Type t)
+    {
+        if(o == null) return null;
+        return switch(t.base)
+        {
+            case LIST -> t.subType.base != BaseType.VOID && Script.listData(o) instanceof final CowList c
+                ? Script.listStruct(t.subType,c.view())
+                : o;
+            case STRUCT ->
+            {
+                final Map<String,Value> s1 = (Map<String,Value>)o,
+                                        s2 = new HashMap<>(s1.size());
+                for(final Map.Entry<String,Value> e : s1.entrySet())
+                    s2.put(e.getKey(),fork(e.getValue()));
+                yield s2;
+            }
+            default -> o;
+        };
+    }
+    /** @return A frozen copy of the value, or the value itself if it does not contain any lists or structs. */
+    @SuppressWarnings("unchecked")
+    private static Object freeze(final Object o,final Type t)
+    {
+        if(o == null) return null;
+        return switch(t.base)
+        {
+            case LIST ->
+            {
+                final List<Value> l = Script.listData(o);
+                if(t.subType.base == BaseType.VOID || l instanceof ArrayView) yield o;
+                // Views which have not handed out any elements still match the elements they were frozen with.
+                if(l instanceof final CowList c && c.pristine()) yield Script.listStruct(t.subType,c.view());
+                yield Script.listStruct(t.subType,new CowList(elements(l)));
+            }
+            case STRUCT ->
+            {
+                final Map<String,Value> s1 = (Map<String,Value>)o,
+                                        s2 = new HashMap<>(s1.size());
+                for(final Map.Entry<String,Value> e : s1.entrySet())
+                    s2.put(e.getKey(),new Value(e.getValue().type,freeze(e.getValue().value,e.getValue().type.type)));
+                yield s2;
+            }
+            default -> o;
+        };
+    }
+    /** @return Frozen copies of the list's elements. */
+    private static Value[] elements(final List<Value> l)
+    {
+        final Value[] a = new Value[l.size()];
+        for(int i = 0;i < a.length;++i)
+        {
+            final Value v = l.get(i);
+            a[i] = new Value(v.type,freeze(v.value,v.type.type));
+        }
+        return a;
+    }
+    /**
+     * @return A view of the list's current elements, which is not affected by later changes to the list. Frozen lists
+     *         which have not handed out any elements are shared instead of copied.
+     */
+    static CowList snapshot(final List<Value> l)
+    {
+        return l instanceof final CowList c && c.pristine()? c.view() : new CowList(elements(l));
+    }
+    /** Freezes every initialized constant list in the specified fields. */
+    static void freezeConstants(final Map<String,Value> fields)
+    {
+        for(final Value v : fields.values())
+            if(v.type.isConst && v.type.type.base == BaseType.LIST)
+                v.value = freeze(v.value,v.type.type);
+    }
+    /** @return A field containing a new view of the specified field's list, or the field itself if it is not frozen. */
+    static Value share(final Value v)
+    {
+        return v.type.type.base == BaseType.LIST && v.value != null && Script.listData(v.value) instanceof CowList
+            ? new Value(v.type,fork(v.value,v.type.type))
+            : v;
+    }
+    
+    /**
+     * @return A copy of the data of the element at the specified index as it was frozen, ignoring any changes made
+     *         through this view. The copy is not kept by this view.
+     */
+    Object frozenData(final int index)
+    {
+        final Value v = shared[Objects.checkIndex(index,shared.length)];
+        return fork(v.value,v.type.type);
+    }
+    /** @return {@code true} iff no elements have been handed out, so this view cannot have been changed. */
+    private boolean pristine() {return own == null && cells == null;}
+    /** @return The private copy of the specified element, or {@code null} if it has not been created. */
+    private Value cell(final int index)
+    {
+        final AtomicReferenceArray<Value> c = cells;
+        return c == null? null : c.get(index);
+    }
+    /** @return The list's private copy, creating it if necessary. */
+    private List<Value> own()
+    {
+        List<Value> o = own;
+        if(o == null)
+        {
+            o = new ArrayList<>(shared.length);
+            for(int i = 0;i < shared.length;++i)
+            {
+                final Value c = cell(i);
+                o.add(c != null? c : fork(shared[i]));
+            }
+            own = o;
+            cells = null;
+        }
+        return o;
+    }
+    
+    @Override
+    public Value get(final int index)
+    {
+        final List<Value> o = own;
+        if(o != null) return o.get(index);
+        Objects.checkIndex(index,shared.length);
+        AtomicReferenceArray<Value> c = cells;
+        if(c == null)
+        {
+            final AtomicReferenceArray<Value> n = new AtomicReferenceArray<>(shared.length);
+            c = (AtomicReferenceArray<Value>)CELLS.compareAndExchange(this,null,n);
+            if(c == null) c = n;
+        }
+        // Concurrent readers agree on a single copy of each element.
+        final Value v = c.get(index);
+        if(v != null) return v;
+        final Value f = fork(shared[index]),w = c.compareAndExchange(index,null,f);
+        return w != null? w : f;
+    }
+    @Override public int size() {final List<Value> o = own; return o != null? o.size() : shared.length;}
+    @Override public Value set(final int index,final Value element) {return own().set(index,element);}
+    @Override public void add(final int index,final Value element) {++modCount; own().add(index,element);}
+    @Override public Value remove(final int index) {++modCount; return own().remove(index);}
+    /**
+     * @return An iterator which does not keep private copies of elements. Elements which have not been accessed by
+     *         {@linkplain CowList#get(int)} are returned as temporary copies, so changes made to them are not visible
+     *         in this list.
+     */
+    @Override
+    public Iterator<Value> iterator()
+    {
+        return new Iterator<>()
+        {
+            int i = 0;
+            
+            @Override public boolean hasNext() {return i < size();}
+            @Override
+            public Value next()
+            {
+                if(!hasNext()) throw new NoSuchElementException();
+                final int j = i++;
+                final List<Value> o = own;
+                if(o != null) return o.get(j);
+                final Value c = cell(j);
+                return c != null? c : fork(shared[j]);
+            }
+        };
+    }
+}
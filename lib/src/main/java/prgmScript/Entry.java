@@ -13,8 +13,8 @@ import java.util.Map;
 abstract class Entry<T>
 {
     final Map<String,T> fields;
-    final Map<String,Map<String,ConstableType>> structs;
+    final Map<String,Type> structs;
     
-    Entry(final Map<String,T> fields,final Map<String,Map<String,ConstableType>> structs) {this.fields = fields; this.structs = structs;}
+    Entry(final Map<String,T> fields,final Map<String,Type> structs) {this.fields = fields; this.structs = structs;}
     Entry() {this(new HashMap<>(),new HashMap<>());}
 }
\ No newline at end of file
@@ -0,0 +1,34 @@
+package prgmScript;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a static method which should be exposed to scripts by {@linkplain ModuleMaker#fromClass(Class)}.
+ *
+ * <table>
+ * <thead>
+ *   <tr><th>Java type</th><th>Script type</th></tr>
+ * </thead>
+ * <tbody>
+ *   <tr><td>{@code long}, {@code int}, {@code short}, {@code byte}, {@code char}</td><td>{@code int}</td></tr>
+ *   <tr><td>{@code double}, {@code float}</td><td>{@code float}</td></tr>
+ *   <tr><td>{@code boolean}</td><td>{@code bool}</td></tr>
+ *   <tr><td>{@linkplain String}</td><td>{@code str}</td></tr>
+ *   <tr><td>{@code void} (return type only)</td><td>{@code void}</td></tr>
+ * </tbody>
+ * </table>
+ *
+ * Arguments of narrower types than {@code long} and {@code double} are range-checked: passing a value which does
+ * not fit is reported to the script as a {@linkplain prgmScript.exception.ScriptRuntimeException}. {@code float}
+ * arguments are rounded to the nearest {@code float}.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.METHOD)
+public @interface HostFunction
+{
+    /** @return The name of the function in the script, or an empty string to use the method's name. */
+    String value() default "";
+}
@@ -0,0 +1,472 @@
+package prgmScript;
+
+import prgmScript.exception.ScriptException;
+import prgmScript.token.TokenType;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * Converts compiled scripts to and from a compact binary intermediate representation, so that a script can be compiled
+ * once and executed in other processes without being parsed again.
+ *
+ * <pre>
+ * File    := Magic Version Strings Imports Types Module:Str Scope Body
+ * Strings := Count (Length:i32 Value:u8[Length])*
+ * Imports := Count Name:Str*
+ * Types   := Count (Base:u8 (Sub:Type | Struct | Ret:Type Count (Type Const:u8)*)?)*
+ * Struct  := Name:Str Imported:u8 Count (Name:Str Type Const:u8)*
+ * Scope   := Count (Name:Str Type Const:u8)* Count (Name:Str Type)*
+ * Body    := Count Block*
+ * Block   := Name:Str Ret:Type Br0:i32 Br1:i32 Dummy:Type Count (Op:u8 Line:i32 Count Operand*)*
+ * Operand := Tag:u8 Value
+ * </pre>
+ *
+ * Integers are big-endian. Strings and types are stored once in the pools at the start of the file and are referred
+ * to by their index (or {@code -1} for {@code null}). The types of lists and functions only refer to types which
+ * precede them in the pool. Each instruction is stored as its opcode, the line which generated it, and the operands
+ * which are passed to the opcode's factory when the block is loaded. Nested bodies (function literals) are stored
+ * in place of their operand.
+ *
+ * <p>Struct types are stored with their fields. A struct which was declared by the script is declared again when the
+ * script is loaded, while an imported struct is resolved to the struct with the same name and fields in one of the
+ * imported modules, which are loaded before the types.
+ *
+ * @apiNote Imported modules are not part of the representation. They are resolved by name when the script is loaded,
+ *          so host modules must be registered before loading a script which imports them.
+ *
+ * @see CompiledScript
+ */
+public final class IRCodec
+{
+    private IRCodec() {}
+    
+    private static final int MAGIC = 0x50524749; // "PRGI"
+    /** The version of the format. This must be changed whenever the format or the instruction set changes. */
+    public static final int VERSION = 2;
+    
+    /** Operand tags. */
+    private static final byte NULL = 0,INT = 1,LONG = 2,DOUBLE = 3,BOOL = 4,STR = 5,TYPE = 6,CTYPE = 7,TOKEN = 8,
+                              STRS = 9,BOOLS = 10,CTYPES = 11,BODY = 12;
+    
+    /** Collects the pools while the rest of the file is written. */
+    private static final class Writer
+    {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final DataOutputStream out = new DataOutputStream(bytes);
+        final Map<String,Integer> strings = new LinkedHashMap<>();
+        final Map<Type,Integer> types = new LinkedHashMap<>();
+        /** Struct types which were declared by the imported modules rather than the script. */
+        final Set<Type> imported = new HashSet<>();
+        
+        int string(final String s)
+        {
+            if(s == null) return -1;
+            final Integer i = strings.get(s);
+            if(i != null) return i;
+            strings.put(s,strings.size());
+            return strings.size()-1;
+        }
+        int type(final Type t)
+        {
+            if(t == null) return -1;
+            final Integer i = types.get(t);
+            if(i != null) return i;
+            // Register components first so that they can be read before this type.
+            type(t.subType);
+            if(t.args != null) for(final ConstableType a : t.args) type(a.type);
+            if(t.structName != null)
+            {
+                string(t.structName);
+                for(final Map.Entry<String,ConstableType> e : t.fields.entrySet())
+                {
+                    string(e.getKey());
+                    type(e.getValue().type);
+                }
+            }
+            types.put(t,types.size());
+            return types.size()-1;
+        }
+        void constableType(final ConstableType ct) throws IOException
+        {
+            out.writeInt(type(ct.type));
+            out.writeBoolean(ct.isConst);
+        }
+        void body(final Script.Body body) throws IOException
+        {
+            out.writeInt(body.blocks().size());
+            for(final BlockBuilder bb : body.blocks())
+            {
+                out.writeInt(string(bb.name));
+                out.writeInt(type(bb.ret));
+                out.writeInt(bb.br0);
+                out.writeInt(bb.br1);
+                out.writeInt(type(bb.dummyT));
+                out.writeInt(bb.ops.size());
+                for(int i = 0;i < bb.ops.size();++i)
+                {
+                    out.writeByte(bb.ops.get(i).ordinal());
+                    out.writeInt(bb.ilist.get(i).line);
+                    final Object[] a = bb.operands.get(i);
+                    out.writeInt(a.length);
+                    for(final Object o : a) operand(o);
+                }
+            }
+        }
+        void operand(final Object o) throws IOException
+        {
+            if(o == null) out.writeByte(NULL);
+            else if(o instanceof final Integer i) {out.writeByte(INT); out.writeInt(i);}
+            else if(o instanceof final Long l) {out.writeByte(LONG); out.writeLong(l);}
+            else if(o instanceof final Double d) {out.writeByte(DOUBLE); out.writeDouble(d);}
+            else if(o instanceof final Boolean b) {out.writeByte(BOOL); out.writeBoolean(b);}
+            else if(o instanceof final String s) {out.writeByte(STR); out.writeInt(string(s));}
+            else if(o instanceof final Type t) {out.writeByte(TYPE); out.writeInt(type(t));}
+            else if(o instanceof final ConstableType ct) {out.writeByte(CTYPE); constableType(ct);}
+            else if(o instanceof final TokenType tt) {out.writeByte(TOKEN); out.writeByte(tt.ordinal());}
+            else if(o instanceof final String[] s)
+            {
+                out.writeByte(STRS);
+                out.writeInt(s.length);
+                for(final String e : s) out.writeInt(string(e));
+            }
+            else if(o instanceof final boolean[] b)
+            {
+                out.writeByte(BOOLS);
+                out.writeInt(b.length);
+                for(final boolean e : b) out.writeBoolean(e);
+            }
+            else if(o instanceof final ConstableType[] ct)
+            {
+                out.writeByte(CTYPES);
+                out.writeInt(ct.length);
+                for(final ConstableType e : ct) constableType(e);
+            }
+            else if(o instanceof final Script.Body b) {out.writeByte(BODY); body(b);}
+            else throw new IllegalStateException("Unsupported operand: "+o.getClass());
+        }
+    }
+    
+    /**
+     * @return The encoded form of the specified script.
+     *
+     * @throws IllegalArgumentException if the script was compiled without keeping its IR.
+     *
+     * @see Script.Options#keepIR()
+     */
+    public static byte[] encode(final CompiledScript script)
+    {
+        if(script.body.blocks() == null) throw new IllegalArgumentException("The script was compiled without keeping its IR");
+        final Writer w = new Writer();
+        final ByteArrayOutputStream file = new ByteArrayOutputStream();
+        try
+        {
+            final DataOutputStream out = w.out;
+            out.writeInt(w.string(script.module));
+            final CompilerScopeEntry ct = script.compileTime;
+            for(final String m : ct.modules)
+            {
+                // The script was compiled against its imports, so they have been built already.
+                final Module mod = Module.getNow(m);
+                if(mod != null) w.imported.addAll(mod.compileTime.structs.values());
+            }
+            out.writeInt(ct.fields.size());
+            for(final Map.Entry<String,ConstableType> e : ct.fields.entrySet())
+            {
+                out.writeInt(w.string(e.getKey()));
+                w.constableType(e.getValue());
+            }
+            out.writeInt(ct.structs.size());
+            for(final Map.Entry<String,Type> s : ct.structs.entrySet())
+            {
+                out.writeInt(w.string(s.getKey()));
+                out.writeInt(w.type(s.getValue()));
+            }
+            for(final String m : ct.modules) w.string(m);
+            w.body(script.body);
+            out.flush();
+            
+            try(final DataOutputStream f = new DataOutputStream(file))
+            {
+                f.writeInt(MAGIC);
+                f.writeInt(VERSION);
+                f.writeInt(w.strings.size());
+                for(final String s : w.strings.keySet())
+                {
+                    final byte[] v = s.getBytes(StandardCharsets.UTF_8);
+                    f.writeInt(v.length);
+                    f.write(v);
+                }
+                f.writeInt(ct.modules.size());
+                for(final String m : ct.modules) f.writeInt(w.strings.get(m));
+                f.writeInt(w.types.size());
+                for(final Type t : w.types.keySet())
+                {
+                    f.writeByte(t.base.ordinal());
+                    switch(t.base)
+                    {
+                        case LIST   -> f.writeInt(w.types.get(t.subType));
+                        case STRUCT ->
+                        {
+                            f.writeInt(w.strings.get(t.structName));
+                            f.writeBoolean(w.imported.contains(t));
+                            f.writeInt(t.fields.size());
+                            for(final Map.Entry<String,ConstableType> e : t.fields.entrySet())
+                            {
+                                f.writeInt(w.strings.get(e.getKey()));
+                                f.writeInt(w.types.get(e.getValue().type));
+                                f.writeBoolean(e.getValue().isConst);
+                            }
+                        }
+                        case FUNC   ->
+                        {
+                            f.writeInt(w.types.get(t.subType));
+                            f.writeInt(t.args.length);
+                            for(final ConstableType a : t.args)
+                            {
+                                f.writeInt(w.types.get(a.type));
+                                f.writeBoolean(a.isConst);
+                            }
+                        }
+                        default     -> {}
+                    }
+                }
+                w.bytes.writeTo(f);
+            }
+        }
+        catch(final IOException e) {throw new IllegalStateException(e);} // Byte array streams don't throw.
+        return file.toByteArray();
+    }
+    
+    /** Reads the pools and the rest of a file. */
+    private static final class Reader
+    {
+        final ByteBuffer in;
+        final PrintStream err;
+        final String[] strings;
+        final Set<String> modules = new HashSet<>();
+        final Type[] types;
+        final Script.Options options;
+        String module;
+        
+        Reader(final ByteBuffer in,final PrintStream err,final Script.Options options) throws IOException,ScriptException
+        {
+            this.in = in;
+            this.err = err;
+            this.options = options;
+            strings = new String[count()];
+            for(int i = 0;i < strings.length;++i)
+            {
+                final byte[] v = new byte[count()];
+                in.get(v);
+                strings[i] = new String(v,StandardCharsets.UTF_8);
+            }
+            final List<Type> imported = new ArrayList<>();
+            for(int i = count();i-- != 0;)
+            {
+                final String m = required(string());
+                final Module mod = Script.importModule(m,err);
+                if(mod == null) throw new IOException("Unknown module '"+m+'\'');
+                modules.add(m);
+                imported.addAll(mod.compileTime.structs.values());
+            }
+            final BaseType[] bases = BaseType.values();
+            types = new Type[count()];
+            for(int i = 0;i < types.length;++i)
+            {
+                final int b = in.get() & 0xFF;
+                if(b >= bases.length) throw new IOException("Invalid base type "+b);
+                types[i] = switch(bases[b])
+                {
+                    case VOID   -> Type.VOID;
+                    case BOOL   -> Type.BOOL;
+                    case INT    -> Type.INT;
+                    case FLOAT  -> Type.FLOAT;
+                    case STR    -> Type.STR;
+                    case LIST   -> Types.listType(required(type(i)));
+                    case STRUCT ->
+                    {
+                        final String name = required(string());
+                        final boolean isImported = in.get() != 0;
+                        final int n = count();
+                        final Map<String,ConstableType> fields = new HashMap<>(n);
+                        for(int f = 0;f < n;++f)
+                            fields.put(required(string()),Types.constableType(required(type(i)),in.get() != 0));
+                        if(!isImported) yield Types.structType(name,fields);
+                        final Type st = imported.stream().filter(s -> Types.matches(s,name,fields)).findFirst().orElse(null);
+                        if(st == null) throw new IOException("No imported module declares struct '"+name+"' with these fields");
+                        yield st;
+                    }
+                    case FUNC   ->
+                    {
+                        final Type ret = required(type(i));
+                        final ConstableType[] args = new ConstableType[count()];
+                        for(int a = 0;a < args.length;++a) args[a] = Types.constableType(required(type(i)),in.get() != 0);
+                        yield Types.funcType(ret,args);
+                    }
+                };
+            }
+        }
+        
+        int count() throws IOException
+        {
+            final int n = in.getInt();
+            if(n < 0 || n > in.remaining()) throw new IOException("Invalid count "+n);
+            return n;
+        }
+        String string() throws IOException
+        {
+            final int i = in.getInt();
+            if(i == -1) return null;
+            if(i < 0 || i >= strings.length) throw new IOException("Invalid string index "+i);
+            return strings[i];
+        }
+        /** @return The type with the next index, which must be less than {@code limit}. */
+        Type type(final int limit) throws IOException
+        {
+            final int i = in.getInt();
+            if(i == -1) return null;
+            if(i < 0 || i >= limit) throw new IOException("Invalid type index "+i);
+            return types[i];
+        }
+        Type type() throws IOException {return type(types.length);}
+        static <T> T required(final T t) throws IOException
+        {
+            if(t == null) throw new IOException("Missing type");
+            return t;
+        }
+        ConstableType constableType() throws IOException {return Types.constableType(required(type()),in.get() != 0);}
+        Map<String,ConstableType> members() throws IOException
+        {
+            final int n = count();
+            final Map<String,ConstableType> m = new HashMap<>(n);
+            for(int i = 0;i < n;++i) m.put(string(),constableType());
+            return m;
+        }
+        Script.Body body() throws IOException,ScriptException
+        {
+            final Script.Op[] ops = Script.Op.values();
+            final int n = count();
+            if(n == 0) throw new IOException("Empty body");
+            final List<BlockBuilder> blocks = new ArrayList<>(n);
+            for(int b = 0;b < n;++b)
+            {
+                final BlockBuilder bb = new BlockBuilder(module,string(),options.debugInfo(),options.keepIR());
+                final Type ret = type();
+                final int br0 = in.getInt(),br1 = in.getInt();
+                if(br0 < -1 || br0 >= n || br1 < -1 || br1 >= n) throw new IOException("Invalid branch");
+                final Type dummyT = type();
+                final int ni = count();
+                for(int i = 0;i < ni;++i)
+                {
+                    final int o = in.get() & 0xFF;
+                    if(o >= ops.length) throw new IOException("Invalid opcode "+o);
+                    final Script.Op op = ops[o];
+                    final int line = in.getInt();
+                    final Object[] a = new Object[count()];
+                    for(int j = 0;j < a.length;++j) a[j] = operand();
+                    if(op == Script.Op.IMPORT && a.length == 1 && a[0] instanceof final String m &&
+                       Script.importModule(m,err) == null)
+                        throw new IOException("Unknown module '"+m+'\'');
+                    final Instruction instr;
+                    try {instr = op.make(module,line,a);}
+                    catch(final RuntimeException e) {throw new IOException("Invalid operands for "+op,e);}
+                    bb.instruction(instr,op,a,op.name());
+                }
+                bb.ret = ret;
+                bb.br0 = br0;
+                bb.br1 = br1;
+                bb.dummyT = dummyT;
+                blocks.add(bb);
+            }
+            return Script.Body.build(blocks,options.keepIR());
+        }
+        Object operand() throws IOException,ScriptException
+        {
+            final TokenType[] tokens = TokenType.values();
+            return switch(in.get())
+            {
+                case NULL   -> null;
+                case INT    -> in.getInt();
+                case LONG   -> in.getLong();
+                case DOUBLE -> in.getDouble();
+                case BOOL   -> in.get() != 0;
+                case STR    -> string();
+                case TYPE   -> type();
+                case CTYPE  -> constableType();
+                case TOKEN  ->
+                {
+                    final int t = in.get() & 0xFF;
+                    if(t >= tokens.length) throw new IOException("Invalid token type "+t);
+                    yield tokens[t];
+                }
+                case STRS   ->
+                {
+                    final String[] s = new String[count()];
+                    for(int i = 0;i < s.length;++i) s[i] = string();
+                    yield s;
+                }
+                case BOOLS  ->
+                {
+                    final boolean[] b = new boolean[count()];
+                    for(int i = 0;i < b.length;++i) b[i] = in.get() != 0;
+                    yield b;
+                }
+                case CTYPES ->
+                {
+                    final ConstableType[] ct = new ConstableType[count()];
+                    for(int i = 0;i < ct.length;++i) ct[i] = constableType();
+                    yield ct;
+                }
+                case BODY   -> body();
+                default     -> throw new IOException("Invalid operand tag");
+            };
+        }
+    }
+    
+    /**
+     * Rebuilds a compiled script. Modules imported by the script are registered first if necessary, as if the script
+     * was being compiled.
+     *
+     * @param buffer  The encoded script, starting at the buffer's position.
+     * @param err     The stream which errors in imported scripts are reported to.
+     * @param options What the decoded script keeps.
+     *
+     * @return The decoded script.
+     *
+     * @throws IOException if the buffer does not contain a script in the current format, or the script imports an
+     *                     unknown module.
+     * @throws ScriptException if an imported script could not be compiled.
+     */
+    public static CompiledScript decode(final ByteBuffer buffer,final PrintStream err,final Script.Options options)
+                                        throws IOException,ScriptException
+    {
+        if(options == null) throw new NullPointerException();
+        try
+        {
+            if(buffer.getInt() != MAGIC || buffer.getInt() != VERSION) throw new IOException("Unknown IR format");
+            final Reader r = new Reader(buffer,err,options);
+            r.module = Reader.required(r.string());
+            final Map<String,ConstableType> fields = r.members();
+            final Map<String,Type> structs = new HashMap<>();
+            for(int i = r.count();i-- != 0;) structs.put(r.string(),Reader.required(r.type()));
+            return new CompiledScript(r.module,r.body(),new CompilerScopeEntry(fields,structs,r.modules));
+        }
+        catch(final BufferUnderflowException e) {throw new IOException("Truncated IR",e);}
+    }
+    /**
+     * Rebuilds a compiled script which keeps its IR, so that it can be encoded again.
+     *
+     * @see IRCodec#decode(ByteBuffer,PrintStream,Script.Options)
+     */
+    public static CompiledScript decode(final ByteBuffer buffer,final PrintStream err) throws IOException,ScriptException
+    {
+        return decode(buffer,err,new Script.Options(true,true));
+    }
+}
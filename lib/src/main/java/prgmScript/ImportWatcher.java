@@ -0,0 +1,110 @@
+package prgmScript;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.*;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+import static java.nio.file.StandardWatchEventKinds.*;
+
+/**
+ * Watches the imports directory and recompiles imported scripts in the background when their files change. Every
+ * loaded script which imports a changed script, directly or indirectly, is recompiled as well, and the new versions
+ * replace the old ones in the registry once all of them have compiled.
+ *
+ * <p>Only scripts which are imported afterwards see the new versions. Scripts which have already been compiled,
+ * including ones which are running, keep using the old versions.
+ *
+ * <p>Deleting a loaded script is reported as an error in the scripts which import it, and the old versions are kept
+ * until the file is created again. If the file system drops events, every loaded script is recompiled.
+ *
+ * @see Script#setImportsDir(Path)
+ */
+public final class ImportWatcher implements Closeable
+{
+    /** Milliseconds to wait for more changes, so that a file which is saved in several steps is reloaded once. */
+    private static final long SETTLE_MS = 50;
+    
+    private final WatchService watcher;
+    private final PrintStream err;
+    private final Consumer<Set<String>> onReload;
+    private final Thread thread;
+    
+    /**
+     * Starts watching the current imports directory and its subdirectories.
+     *
+     * @param err      Where errors in the changed scripts are reported.
+     * @param onReload Called on the watching thread with the names of the modules which were replaced after each
+     *                 successful reload, or {@code null}.
+     *
+     * @throws IOException if the directory cannot be watched.
+     */
+    public ImportWatcher(final PrintStream err,final Consumer<Set<String>> onReload) throws IOException
+    {
+        this.err = err;
+        this.onReload = onReload;
+        final Path dir = Script.getImportsDir().toAbsolutePath();
+        watcher = dir.getFileSystem().newWatchService();
+        try(final Stream<Path> s = Files.walk(dir))
+        {
+            for(final Path p : (Iterable<Path>)s.filter(Files::isDirectory)::iterator) register(p);
+        }
+        catch(final IOException e)
+        {
+            watcher.close();
+            throw e;
+        }
+        thread = new Thread(this::run,"prgmScript import watcher");
+        thread.setDaemon(true);
+        thread.start();
+    }
+    /** @see ImportWatcher#ImportWatcher(PrintStream,Consumer) */
+    public ImportWatcher(final PrintStream err) throws IOException {this(err,null);}
+    
+    private void register(final Path p) throws IOException {p.register(watcher,ENTRY_CREATE,ENTRY_DELETE,ENTRY_MODIFY);}
+    
+    private void run()
+    {
+        try
+        {
+            while(true)
+            {
+                final Set<Path> changed = new HashSet<>();
+                boolean overflow = false;
+                for(WatchKey k = watcher.take();k != null;k = watcher.poll(SETTLE_MS,TimeUnit.MILLISECONDS))
+                {
+                    final Path base = (Path)k.watchable();
+                    for(final WatchEvent<?> e : k.pollEvents())
+                    {
+                        // Some changes were lost, so any loaded script may have changed.
+                        if(e.kind() == OVERFLOW) {overflow = true; continue;}
+                        final Path p = base.resolve((Path)e.context());
+                        if(e.kind() == ENTRY_CREATE && Files.isDirectory(p))
+                            try {register(p);}
+                            catch(final IOException ignored) {} // The directory was removed again.
+                        else changed.add(p);
+                    }
+                    k.reset();
+                }
+                if(overflow) for(final String m : Script.loadedImports()) changed.add(Path.of(m));
+                final Set<String> reloaded = Script.reload(changed,err);
+                if(!reloaded.isEmpty() && onReload != null) onReload.accept(reloaded);
+            }
+        }
+        catch(final InterruptedException|ClosedWatchServiceException ignored) {}
+    }
+    
+    /** Stops watching the directory. Reloads which have already started are finished first. */
+    @Override
+    public void close() throws IOException
+    {
+        watcher.close();
+        try {thread.join();}
+        catch(final InterruptedException e) {Thread.currentThread().interrupt();}
+    }
+}
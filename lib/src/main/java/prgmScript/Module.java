@@ -1,11 +1,15 @@
 package prgmScript;
 
+import prgmScript.lib.prgmMath;
+import prgmScript.lib.prgmOutput;
+import prgmScript.lib.prgmRandom;
 import prgmScript.util.ContainerUtil;
 
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Supplier;
 
 /** A record which represents the global scope of a library or script. */
 @SuppressWarnings("ClassCanBeRecord")
@@ -52,13 +56,213 @@ public final class Module
     /** @return A copy of the value with the specified name. */
     public Value getValue(final String name) {return deepCopy(runTime.fields.get(name));}
     
-    static final Map<String,Module> REGISTRY = new HashMap<>();
+    /*/
+    The accessors below expose a field's data without copying it. Lists and structs are returned as read-only views
+    which convert their elements when they are accessed, so later changes made by the script are visible through them.
+    /*/
+    
+    /** @throws IllegalArgumentException if no field with the specified name exists. */
+    private Value field(final String name)
+    {
+        final Value v = runTime.fields.get(name);
+        if(v == null) throw new IllegalArgumentException("'"+name+"' is undefined");
+        return v;
+    }
+    /**
+     * @return The value of the initialized field with the specified name.
+     *
+     * @throws IllegalArgumentException if no field with the specified name exists, the field has a different type,
+     *                                  or the field is uninitialized.
+     */
+    private Object field(final String name,final BaseType base)
+    {
+        final Value v = field(name);
+        if(v.type.type.base != base) throw new IllegalArgumentException("'"+name+"' has type "+v.type);
+        if(v.value == null) throw new IllegalArgumentException("'"+name+"' is uninitialized");
+        return v.value;
+    }
+    /**
+     * @return The value of the specified {@code int} field.
+     *
+     * @throws IllegalArgumentException if no field with the specified name exists, the field is not an {@code int},
+     *                                  or the field is uninitialized.
+     */
+    public long getLong(final String name) {return (long)field(name,BaseType.INT);}
+    /**
+     * @return The value of the specified {@code float} field.
+     *
+     * @throws IllegalArgumentException if no field with the specified name exists, the field is not a {@code float},
+     *                                  or the field is uninitialized.
+     */
+    public double getDouble(final String name) {return (double)field(name,BaseType.FLOAT);}
+    /**
+     * @return The value of the specified {@code bool} field.
+     *
+     * @throws IllegalArgumentException if no field with the specified name exists, the field is not a {@code bool},
+     *                                  or the field is uninitialized.
+     */
+    public boolean getBool(final String name) {return (boolean)field(name,BaseType.BOOL);}
+    /**
+     * @return The value of the specified {@code str} field.
+     *
+     * @throws IllegalArgumentException if no field with the specified name exists, the field is not a {@code str},
+     *                                  or the field is uninitialized.
+     */
+    public String getString(final String name) {return Script.strData(field(name,BaseType.STR));}
+    /**
+     * @return An unmodifiable view of the specified list field. Elements are represented as described in
+     *         {@linkplain Module#view(Value)}.
+     *
+     * @throws IllegalArgumentException if no field with the specified name exists, the field is not a list, or the
+     *                                  field is uninitialized.
+     */
+    public List<Object> getListView(final String name) {return new ListView(Script.listData(field(name,BaseType.LIST)));}
+    /**
+     * @return An unmodifiable view of the specified struct field, mapping each member's name to its value. Members
+     *         are represented as described in {@linkplain Module#view(Value)}.
+     *
+     * @throws IllegalArgumentException if no field with the specified name exists, the field is not a struct, or the
+     *                                  field is uninitialized.
+     */
+    @SuppressWarnings("unchecked")
+    public Map<String,Object> getStructView(final String name)
+    {
+        return new StructView((Map<String,Value>)field(name,BaseType.STRUCT));
+    }
+    
+    /**
+     * @return The Java representation of the specified value: {@linkplain Long}, {@linkplain Double},
+     *         {@linkplain Boolean} and {@linkplain String} for primitives, unmodifiable views for lists and structs,
+     *         and the value itself for anything else. Uninitialized values are represented by {@code null}.
+     */
+    @SuppressWarnings("unchecked")
+    private static Object view(final Value v)
+    {
+        if(v.value == null) return null;
+        return switch(v.type.type.base)
+        {
+            case INT,FLOAT,BOOL -> v.value;
+            case STR -> Script.strData(v.value);
+            case LIST -> new ListView(Script.listData(v.value));
+            case STRUCT -> new StructView((Map<String,Value>)v.value);
+            default -> v;
+        };
+    }
+    private static final class ListView extends AbstractList<Object> implements RandomAccess
+    {
+        private final List<Value> list;
+        
+        ListView(final List<Value> list) {this.list = list;}
+        
+        @Override public Object get(final int index) {return view(list.get(index));}
+        @Override public int size() {return list.size();}
+    }
+    private static final class StructView extends AbstractMap<String,Object>
+    {
+        private final Map<String,Value> struct;
+        
+        StructView(final Map<String,Value> struct) {this.struct = struct;}
+        
+        @Override public Object get(final Object key) {final Value v = struct.get(key); return v == null? null : view(v);}
+        @Override public boolean containsKey(final Object key) {return struct.containsKey(key);}
+        @Override public int size() {return struct.size();}
+        @Override
+        public Set<Map.Entry<String,Object>> entrySet()
+        {
+            return new AbstractSet<>()
+            {
+                @Override public int size() {return struct.size();}
+                @Override
+                public Iterator<Map.Entry<String,Object>> iterator()
+                {
+                    final Iterator<Map.Entry<String,Value>> i = struct.entrySet().iterator();
+                    return new Iterator<>()
+                    {
+                        @Override public boolean hasNext() {return i.hasNext();}
+                        @Override
+                        public Map.Entry<String,Object> next()
+                        {
+                            final Map.Entry<String,Value> e = i.next();
+                            return new SimpleImmutableEntry<>(e.getKey(),view(e.getValue()));
+                        }
+                    };
+                }
+            };
+        }
+    }
+    
+    /**
+     * @return A handle which calls the function with the specified name.
+     *
+     * @throws IllegalArgumentException if no field with the specified name exists, or the field is not an
+     *                                  initialized function.
+     *
+     * @see ScriptFunction
+     */
+    public ScriptFunction getFunction(final String name) {return ScriptFunction.from(field(name));}
+    
+    /*/
+    The registry maps every module which has been registered, provided, or is being compiled as an import to a future of
+    it, so that looking up a module which is already loaded takes no lock, and concurrent first imports of the same
+    module build it once. Libraries are built on their first import instead of when this class is loaded: the provider
+    is removed by whichever thread imports the library first, and the other threads join on the future.
+    /*/
+    
+    /** All modules, mapped to futures which complete once the module is built. */
+    static final ConcurrentMap<String,CompletableFuture<Module>> REGISTRY = new ConcurrentHashMap<>();
+    /** Builders of modules which have been provided but not built yet, keyed by the module's future. */
+    private static final Map<CompletableFuture<Module>,Supplier<Module>> PROVIDERS = new ConcurrentHashMap<>();
     static
     {
-        // Load all libraries.
-        for(final String cls : new String[] {"prgmMath","prgmOutput","prgmRandom"})
-            try {Class.forName("prgmScript.lib."+cls);}
-            catch(final ClassNotFoundException e) {e.printStackTrace();}
+        provide("prgmMath",prgmMath::make);
+        provide("prgmOutput",prgmOutput::make);
+        provide("prgmRandom",prgmRandom::make);
+    }
+    /**
+     * Makes a module available to all scripts via the {@code import} statement without building it. The provider is
+     * called at most once, when the first script which imports the module is compiled.
+     *
+     * @param name     Name given to the module.
+     * @param provider Function which builds the module.
+     *
+     * @return {@code false} iff a module or provider with the specified name already exists.
+     */
+    public static boolean provide(final String name,final Supplier<Module> provider)
+    {
+        Objects.requireNonNull(provider);
+        final CompletableFuture<Module> f = new CompletableFuture<>();
+        PROVIDERS.put(f,provider);
+        if(REGISTRY.putIfAbsent(name,f) == null) return true;
+        PROVIDERS.remove(f);
+        return false;
+    }
+    /**
+     * @return A future of the module with the specified name, building it if it only has a provider, or {@code null}
+     *         if no such module exists. If the provider throws, the future is completed with the exception and the
+     *         exception is rethrown.
+     */
+    static CompletableFuture<Module> get(final String name)
+    {
+        final CompletableFuture<Module> f = REGISTRY.get(name);
+        if(f != null && !f.isDone())
+        {
+            final Supplier<Module> provider = PROVIDERS.remove(f);
+            if(provider != null)
+                try {f.complete(provider.get());}
+                catch(final Throwable t)
+                {
+                    // Anyone else waiting for the module would never be woken up otherwise.
+                    f.completeExceptionally(t);
+                    throw t;
+                }
+        }
+        return f;
+    }
+    /** @return The module with the specified name, or {@code null} if it does not exist or is not built yet. */
+    static Module getNow(final String name)
+    {
+        final CompletableFuture<Module> f = REGISTRY.get(name);
+        return f != null && f.isDone() && !f.isCompletedExceptionally()? f.join() : null;
     }
     /**
      * If no module with the specified name exists in the registry, then this module will be made
@@ -67,7 +271,7 @@ public final class Module
      *
      * @param name Name given to this module.
      *
-     * @return {@code false} iff a module with the specified name already exists.
+     * @return {@code false} iff a module or provider with the specified name already exists.
      */
-    public boolean register(final String name) {synchronized(REGISTRY) {return REGISTRY.putIfAbsent(name,this) == null;}}
+    public boolean register(final String name) {return REGISTRY.putIfAbsent(name,CompletableFuture.completedFuture(this)) == null;}
 }
\ No newline at end of file
@@ -0,0 +1,118 @@
+package prgmScript;
+
+import java.util.*;
+
+/**
+ * Copies initialized modules in memory, so that a new instance of a script can be created without executing its
+ * top-level code again. Values, lists, structs, and functions which belong to registered modules are shared instead
+ * of copied, as they would be if the top-level code was executed. References between copied objects (including
+ * cycles) are preserved.
+ *
+ * <p>Frozen lists are not copied. Each copy receives a new view of them instead.
+ *
+ * @see ModuleImage
+ * @see CompiledScript#instance()
+ */
+final class ModuleCopier
+{
+    /** Values and the data of values which belong to registered modules. */
+    private final Set<Object> external = Collections.newSetFromMap(new IdentityHashMap<>());
+    
+    /** Creates a copier which shares the values of the modules which are currently registered. */
+    ModuleCopier()
+    {
+        for(final String name : Module.REGISTRY.keySet())
+        {
+            // Modules which are not built yet cannot own any of the values.
+            final Module m = Module.getNow(name);
+            if(m != null)
+                for(final Value v : m.runTime.fields.values())
+                {
+                    external.add(v);
+                    if(v.value instanceof Map<?,?> || v.value instanceof Script.Func) external.add(v.value);
+                }
+        }
+    }
+    
+    /** @return A copy of the specified globals. */
+    Map<String,Value> copy(final Map<String,Value> fields) {return fields(fields,new IdentityHashMap<>());}
+    
+    private Map<String,Value> fields(final Map<String,Value> fields,final Map<Object,Object> copies)
+    {
+        final Map<String,Value> c = new HashMap<>(fields.size());
+        for(final Map.Entry<String,Value> e : fields.entrySet()) c.put(e.getKey(),value(e.getValue(),copies));
+        return c;
+    }
+    private Value value(final Value v,final Map<Object,Object> copies)
+    {
+        if(external.contains(v)) return v;
+        final Object o = copies.get(v);
+        if(o != null) return (Value)o;
+        final Value c = new Value(v.type,null);
+        copies.put(v,c);
+        // Loop iterators don't have a type, and are never used after the loop which created them.
+        c.value = v.type == null? v.value : data(v.type.type,v.value,copies);
+        return c;
+    }
+    @SuppressWarnings("unchecked")
+    private Object data(final Type t,final Object o,final Map<Object,Object> copies)
+    {
+        if(o == null || external.contains(o)) return o;
+        return switch(t.base)
+        {
+            case LIST,STRUCT,FUNC ->
+            {
+                final Object c = copies.get(o);
+                if(c != null) yield c;
+                yield switch(t.base)
+                {
+                    case LIST ->
+                    {
+                        final List<Value> l = Script.listData(o);
+                        // Host memory is shared by every instance.
+                        if(l instanceof ArrayView) yield o;
+                        if(l instanceof final CowList cow)
+                        {
+                            final Map<String,Value> v = Script.listStruct(t.subType,cow.view());
+                            copies.put(o,v);
+                            yield v;
+                        }
+                        final List<Value> n = new ArrayList<>(l.size());
+                        final Map<String,Value> v = t.subType.base == BaseType.VOID
+                            ? Script.voidList((Type)((Map<String,Value>)o).get(" subtype").value,n)
+                            : Script.listStruct(t.subType,n);
+                        // New objects are registered before their contents are copied, so that the contents can
+                        // refer back to them.
+                        copies.put(o,v);
+                        for(final Value e : l) n.add(value(e,copies));
+                        yield v;
+                    }
+                    case STRUCT ->
+                    {
+                        final Map<String,Value> s = (Map<String,Value>)o,
+                                                v = new HashMap<>(s.size());
+                        copies.put(o,v);
+                        for(final Map.Entry<String,Value> e : s.entrySet()) v.put(e.getKey(),value(e.getValue(),copies));
+                        yield v;
+                    }
+                    default ->
+                    {
+                        final Script.Func f = (Script.Func)o;
+                        // Native functions don't have any state.
+                        if(f.scope() == null) yield f;
+                        final RuntimeScope s = new RuntimeScope();
+                        s.popScope();
+                        final Script.Func v = new Script.Func(s,f.argn(),f.body());
+                        copies.put(o,v);
+                        final RuntimeScopeEntry[] d = f.scope().entries.data();
+                        for(int i = 0;i != f.scope().entries.pos();++i)
+                            s.entries.push(new RuntimeScopeEntry(fields(d[i].fields,copies),d[i].structs));
+                        yield v;
+                    }
+                };
+            }
+            // Primitives and strings are immutable.
+            default -> o;
+        };
+    }
+}
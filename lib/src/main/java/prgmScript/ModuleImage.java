@@ -0,0 +1,474 @@
+package prgmScript;
+
+import prgmScript.exception.ScriptException;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * Converts initialized modules to and from a binary image, so that a module which does expensive work in its top-level
+ * code can be loaded without executing that code again.
+ *
+ * <pre>
+ * File   := Magic Version Length:i32 IR:u8[Length] Count (Name:Str Value)*
+ * Value  := 0 Module:Str Field:Str     (a field of a registered module)
+ *         | 1 Id:i32                   (a value which was already written)
+ *         | 2 Type Const:u8 Data       (a new value, which is given the next id)
+ * Object := 0                          (null)
+ *         | 1 Module:Str Field:Str     (the data of a field of a registered module)
+ *         | 2 Id:i32                   (an object which was already written)
+ *         | 3 ...                      (a new object, which is given the next id)
+ * </pre>
+ *
+ * The image contains the script's IR (see {@linkplain IRCodec}) followed by the module's globals. Values are written
+ * according to their type. Lists, structs, and functions are objects, so references between them (including cycles)
+ * are preserved. A script function is written as the index of its body in the IR (where the script's top level is
+ * {@code 0} and nested bodies are numbered depth first), its argument names, and the scope that it captured.
+ * Functions, lists, and structs which belong to other registered modules are written as references to them by module
+ * and field name, and are resolved when the image is loaded.
+ *
+ * @apiNote Lists which were frozen when they were imported are copied into the image. Iterators of loops which were
+ *          running when a function was created are not saved, since the function cannot refer to them.
+ *
+ * @see CompiledScript
+ */
+public final class ModuleImage
+{
+    private ModuleImage() {}
+    
+    private static final int MAGIC = 0x50524753; // "PRGS"
+    /** The version of the format. This must be changed whenever the format changes. */
+    public static final int VERSION = 2;
+    
+    /** A field of a registered module. */
+    private record Ref(String module,String field) {}
+    
+    private static final class Writer
+    {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final DataOutputStream out = new DataOutputStream(bytes);
+        /** Values and the data of values which belong to other modules. */
+        final Map<Object,Ref> external = new IdentityHashMap<>();
+        final Map<Object,Integer> ids = new IdentityHashMap<>();
+        final Map<Block,Integer> bodies = new IdentityHashMap<>();
+        
+        Writer(final CompiledScript script,final Module module)
+        {
+            for(final String name : Module.REGISTRY.keySet())
+            {
+                // Modules which are not built yet cannot own any of the values.
+                final Module m = Module.getNow(name);
+                if(m != null && m != module)
+                    for(final Map.Entry<String,Value> f : m.runTime.fields.entrySet())
+                    {
+                        final Ref r = new Ref(name,f.getKey());
+                        external.putIfAbsent(f.getValue(),r);
+                        final Object o = f.getValue().value;
+                        if(o instanceof Map<?,?> || o instanceof Script.Func) external.putIfAbsent(o,r);
+                    }
+            }
+            final List<Script.Body> l = script.body.bodies();
+            for(int i = 0;i < l.size();++i) bodies.put(l.get(i).entry(),i);
+        }
+        
+        void string(final String s) throws IOException
+        {
+            final byte[] v = s.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(v.length);
+            out.write(v);
+        }
+        void type(final Type t) throws IOException
+        {
+            if(t == null) {out.writeByte(-1); return;}
+            out.writeByte(t.base.ordinal());
+            switch(t.base)
+            {
+                case LIST   -> type(t.subType);
+                case STRUCT ->
+                {
+                    string(t.structName);
+                    out.writeInt(t.fields.size());
+                    for(final Map.Entry<String,ConstableType> e : t.fields.entrySet())
+                    {
+                        string(e.getKey());
+                        type(e.getValue().type);
+                        out.writeBoolean(e.getValue().isConst);
+                    }
+                }
+                case FUNC   ->
+                {
+                    type(t.subType);
+                    out.writeInt(t.args.length);
+                    for(final ConstableType a : t.args)
+                    {
+                        type(a.type);
+                        out.writeBoolean(a.isConst);
+                    }
+                }
+                default     -> {}
+            }
+        }
+        void ref(final Ref r) throws IOException
+        {
+            string(r.module());
+            string(r.field());
+        }
+        /** @return {@code true} iff the object still needs to be written. */
+        boolean object(final Object o) throws IOException
+        {
+            if(o == null) {out.writeByte(0); return false;}
+            final Ref r = external.get(o);
+            if(r != null) {out.writeByte(1); ref(r); return false;}
+            final Integer id = ids.get(o);
+            if(id != null) {out.writeByte(2); out.writeInt(id); return false;}
+            ids.put(o,ids.size());
+            out.writeByte(3);
+            return true;
+        }
+        void fields(final Map<String,Value> fields) throws IOException
+        {
+            out.writeInt(fields.size());
+            for(final Map.Entry<String,Value> e : fields.entrySet())
+            {
+                string(e.getKey());
+                value(e.getValue());
+            }
+        }
+        void value(final Value v) throws IOException
+        {
+            final Ref r = external.get(v);
+            if(r != null) {out.writeByte(0); ref(r); return;}
+            final Integer id = ids.get(v);
+            if(id != null) {out.writeByte(1); out.writeInt(id); return;}
+            ids.put(v,ids.size());
+            out.writeByte(2);
+            // Loop iterators don't have a type.
+            final Type t = v.type == null? null : v.type.type;
+            type(t);
+            out.writeBoolean(v.type != null && v.type.isConst);
+            if(t != null) data(t,v.value);
+        }
+        @SuppressWarnings("unchecked")
+        void data(final Type t,final Object o) throws IOException
+        {
+            switch(t.base)
+            {
+                case BOOL,INT,FLOAT,STR ->
+                {
+                    out.writeBoolean(o != null);
+                    if(o == null) return;
+                    switch(t.base)
+                    {
+                        case BOOL  -> out.writeBoolean((Boolean)o);
+                        case INT   -> out.writeLong((Long)o);
+                        case FLOAT -> out.writeDouble((Double)o);
+                        default    -> string(Script.strData(o));
+                    }
+                }
+                case LIST ->
+                {
+                    if(!object(o)) return;
+                    final List<Value> l = Script.listData(o);
+                    if(l instanceof ArrayView)
+                        throw new IllegalArgumentException("Views of host memory cannot be saved");
+                    if(t.subType.base == BaseType.VOID)
+                        type((Type)((Map<String,Value>)o).get(" subtype").value);
+                    out.writeInt(l.size());
+                    for(final Value e : l) value(e);
+                }
+                case STRUCT ->
+                {
+                    if(object(o)) fields((Map<String,Value>)o);
+                }
+                case FUNC ->
+                {
+                    if(!object(o)) return;
+                    final Script.Func f = (Script.Func)o;
+                    final Integer body = f.scope() == null? null : bodies.get(f.body());
+                    if(body == null)
+                        throw new IllegalArgumentException("Function of type "+t+" is not defined by the script or a registered module");
+                    out.writeInt(body);
+                    out.writeInt(f.argn().length);
+                    for(final String a : f.argn()) string(a);
+                    final RuntimeScopeEntry[] d = f.scope().entries.data();
+                    out.writeInt(f.scope().entries.pos());
+                    for(int i = 0;i != f.scope().entries.pos();++i) fields(d[i].fields);
+                }
+                default -> {} // Void values are only used in void lists.
+            }
+        }
+    }
+    
+    /**
+     * @param script The script which created the module.
+     * @param module The module, which must have been returned by {@code script.run()}.
+     *
+     * @return The encoded form of the module.
+     *
+     * @throws IllegalArgumentException if the module was not created by the script, the script was compiled without
+     *                                  keeping its IR, or the module contains views of host memory or functions which
+     *                                  were not created by the script or a registered module.
+     */
+    public static byte[] encode(final CompiledScript script,final Module module)
+    {
+        if(module.compileTime != script.compileTime)
+            throw new IllegalArgumentException("The module was not created by this script");
+        final Writer w = new Writer(script,module);
+        try
+        {
+            final DataOutputStream out = w.out;
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            final byte[] ir = IRCodec.encode(script);
+            out.writeInt(ir.length);
+            out.write(ir);
+            w.fields(module.runTime.fields);
+            out.flush();
+        }
+        catch(final IOException e) {throw new IllegalStateException(e);} // Byte array streams don't throw.
+        return w.bytes.toByteArray();
+    }
+    
+    private static final class Reader
+    {
+        final ByteBuffer in;
+        final PrintStream err;
+        final List<Script.Body> bodies;
+        final List<Object> objects = new ArrayList<>();
+        /** The struct types which are used by the script or declared by a registered module. */
+        final List<Type> structs = new ArrayList<>();
+        
+        Reader(final ByteBuffer in,final PrintStream err,final CompiledScript script)
+        {
+            this.in = in;
+            this.err = err;
+            bodies = script.body.bodies();
+            for(final Type t : script.compileTime.structs.values()) collect(t);
+            for(final Script.Body b : bodies)
+                for(final BlockBuilder bb : b.blocks())
+                {
+                    collect(bb.ret);
+                    collect(bb.dummyT);
+                    for(final Object[] a : bb.operands)
+                        for(final Object o : a)
+                            if(o instanceof final Type t) collect(t);
+                            else if(o instanceof final ConstableType ct) collect(ct.type);
+                            else if(o instanceof final ConstableType[] ct) for(final ConstableType e : ct) collect(e.type);
+                }
+            for(final String name : Module.REGISTRY.keySet())
+            {
+                final Module m = Module.getNow(name);
+                if(m != null) for(final Type t : m.compileTime.structs.values()) collect(t);
+            }
+        }
+        
+        /** Adds the struct types which the specified type consists of to the candidates for saved struct types. */
+        void collect(final Type t)
+        {
+            if(t == null) return;
+            switch(t.base)
+            {
+                case LIST   -> collect(t.subType);
+                case STRUCT ->
+                {
+                    if(structs.contains(t)) return;
+                    structs.add(t);
+                    for(final ConstableType f : t.fields.values()) collect(f.type);
+                }
+                case FUNC   ->
+                {
+                    collect(t.subType);
+                    for(final ConstableType a : t.args) collect(a.type);
+                }
+                default     -> {}
+            }
+        }
+        
+        int count() throws IOException
+        {
+            final int n = in.getInt();
+            if(n < 0 || n > in.remaining()) throw new IOException("Invalid count "+n);
+            return n;
+        }
+        String string() throws IOException
+        {
+            final byte[] v = new byte[count()];
+            in.get(v);
+            return new String(v,StandardCharsets.UTF_8);
+        }
+        Type type() throws IOException
+        {
+            final int b = in.get();
+            if(b == -1) return null;
+            final BaseType[] bases = BaseType.values();
+            if(b < 0 || b >= bases.length) throw new IOException("Invalid base type "+b);
+            return switch(bases[b])
+            {
+                case VOID   -> Type.VOID;
+                case BOOL   -> Type.BOOL;
+                case INT    -> Type.INT;
+                case FLOAT  -> Type.FLOAT;
+                case STR    -> Type.STR;
+                case LIST   -> Types.listType(required(type()));
+                case STRUCT ->
+                {
+                    final String name = string();
+                    final Map<String,ConstableType> fields = new HashMap<>();
+                    for(int i = count();i-- != 0;) fields.put(string(),Types.constableType(required(type()),in.get() != 0));
+                    for(final Type s : structs) if(Types.matches(s,name,fields)) yield s;
+                    // The struct is not used by the script's code, so it does not matter which declaration it had.
+                    final Type s = Types.structType(name,fields);
+                    structs.add(s);
+                    yield s;
+                }
+                case FUNC   ->
+                {
+                    final Type ret = required(type());
+                    final ConstableType[] args = new ConstableType[count()];
+                    for(int a = 0;a < args.length;++a) args[a] = Types.constableType(required(type()),in.get() != 0);
+                    yield Types.funcType(ret,args);
+                }
+            };
+        }
+        static Type required(final Type t) throws IOException
+        {
+            if(t == null) throw new IOException("Missing type");
+            return t;
+        }
+        Value ref() throws IOException,ScriptException
+        {
+            final String module = string(),field = string();
+            final Module m = Script.importModule(module,err);
+            if(m == null) throw new IOException("Unknown module '"+module+'\'');
+            final Value v = m.runTime.fields.get(field);
+            if(v == null) throw new IOException("Module '"+module+"' has no field '"+field+'\'');
+            return v;
+        }
+        <T> T get(final Class<T> c) throws IOException
+        {
+            final int id = in.getInt();
+            if(id < 0 || id >= objects.size() || !c.isInstance(objects.get(id)))
+                throw new IOException("Invalid reference "+id);
+            return c.cast(objects.get(id));
+        }
+        Map<String,Value> fields(final Map<String,Value> m) throws IOException,ScriptException
+        {
+            for(int i = count();i-- != 0;) m.put(string(),value());
+            return m;
+        }
+        Value value() throws IOException,ScriptException
+        {
+            return switch(in.get())
+            {
+                case 0 -> ref();
+                case 1 -> get(Value.class);
+                case 2 ->
+                {
+                    final Type t = type();
+                    final ConstableType ct = t == null? null : Types.constableType(t,in.get() != 0);
+                    if(t == null) in.get();
+                    final Value v = new Value(ct,null);
+                    objects.add(v);
+                    if(t != null) v.value = data(t);
+                    yield v;
+                }
+                default -> throw new IOException("Invalid value tag");
+            };
+        }
+        Object data(final Type t) throws IOException,ScriptException
+        {
+            return switch(t.base)
+            {
+                case BOOL,INT,FLOAT,STR ->
+                {
+                    if(in.get() == 0) yield null;
+                    yield switch(t.base)
+                    {
+                        case BOOL  -> in.get() != 0;
+                        case INT   -> in.getLong();
+                        case FLOAT -> in.getDouble();
+                        default    -> Script.strStruct(string());
+                    };
+                }
+                case LIST,STRUCT,FUNC ->
+                {
+                    final byte tag = in.get();
+                    if(tag == 0) yield null;
+                    if(tag == 1) yield ref().value;
+                    if(tag == 2) yield get(Object.class);
+                    if(tag != 3) throw new IOException("Invalid object tag");
+                    // New objects are registered before their contents are read, so that the contents can refer
+                    // back to them.
+                    final int id = objects.size();
+                    objects.add(null);
+                    yield switch(t.base)
+                    {
+                        case LIST ->
+                        {
+                            final Type st = t.subType.base == BaseType.VOID? required(type()) : null;
+                            final List<Value> l = new ArrayList<>();
+                            final Map<String,Value> o = st != null? Script.voidList(st,l) : Script.listStruct(t.subType,l);
+                            objects.set(id,o);
+                            for(int i = count();i-- != 0;) l.add(value());
+                            yield o;
+                        }
+                        case STRUCT ->
+                        {
+                            final Map<String,Value> o = new HashMap<>();
+                            objects.set(id,o);
+                            yield fields(o);
+                        }
+                        default ->
+                        {
+                            final int b = in.getInt();
+                            if(b < 0 || b >= bodies.size()) throw new IOException("Invalid body "+b);
+                            final String[] argn = new String[count()];
+                            for(int i = 0;i < argn.length;++i) argn[i] = string();
+                            final RuntimeScope s = new RuntimeScope();
+                            s.popScope();
+                            final Script.Func f = new Script.Func(s,argn,bodies.get(b).entry());
+                            objects.set(id,f);
+                            for(int i = count();i-- != 0;) s.entries.push(new RuntimeScopeEntry(fields(new HashMap<>()),new HashMap<>()));
+                            yield f;
+                        }
+                    };
+                }
+                default -> null;
+            };
+        }
+    }
+    
+    /**
+     * Loads a module without executing the script's top-level code. Modules referred to by the image are registered
+     * first if necessary, as if the script was being compiled.
+     *
+     * @param buffer The encoded module, starting at the buffer's position.
+     * @param err    The stream which errors in imported scripts are reported to.
+     *
+     * @return The decoded module.
+     *
+     * @throws IOException if the buffer does not contain a module in the current format, or the module refers to an
+     *                     unknown module.
+     * @throws ScriptException if an imported script could not be compiled.
+     */
+    public static Module decode(final ByteBuffer buffer,final PrintStream err) throws IOException,ScriptException
+    {
+        try
+        {
+            if(buffer.getInt() != MAGIC || buffer.getInt() != VERSION) throw new IOException("Unknown image format");
+            final int n = buffer.getInt();
+            if(n < 0 || n > buffer.remaining()) throw new IOException("Truncated image");
+            final CompiledScript script = IRCodec.decode(buffer.slice(buffer.position(),n),err);
+            buffer.position(buffer.position()+n);
+            final Reader r = new Reader(buffer,err,script);
+            return script.module(r.fields(new HashMap<>()));
+        }
+        catch(final BufferUnderflowException|ClassCastException e) {throw new IOException("Invalid image",e);}
+    }
+}
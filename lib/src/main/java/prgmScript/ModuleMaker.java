@@ -2,8 +2,15 @@ package prgmScript;
 
 import prgmScript.util.ContainerUtil;
 
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.nio.DoubleBuffer;
+import java.nio.LongBuffer;
 import java.util.*;
-import java.util.function.Function;
+import java.util.function.*;
 
 /**
  * A factory class which builds a {@linkplain Module}. Using this class is the only intended way to
@@ -11,7 +18,7 @@ import java.util.function.Function;
  */
 public final class ModuleMaker
 {
-    private final Map<String,Map<String,ConstableType>> structs = new HashMap<>();
+    private final Map<String,Type> structs = new HashMap<>();
     private final Map<String,ConstableType> compileTime = new HashMap<>();
     private final Map<String,Value> runTime = new HashMap<>();
     
@@ -116,50 +123,31 @@ public final class ModuleMaker
         }
         return fi;
     }
+    /**
+     * Wraps a native function body in a function {@linkplain Value}. Native bodies are executed in the caller's
+     * scope and read their arguments from its accumulator, so a function value can be shared between threads.
+     */
+    private static Value nativeFunc(final Type funcType,final boolean isConst,final Block body)
+    {
+        return new Value(Types.constableType(funcType,isConst),new Script.Func(body));
+    }
+    /** @return A new {@linkplain Value} array containing the arguments of the current call. */
+    private static Value[] args(final RuntimeScope s,final ConstableType[] argt)
+    {
+        final Value[] args = new Value[argt.length];
+        for(int i = 0;i < args.length;++i)
+            args[i] = new Value(argt[i],s.arg(args.length,i));
+        return args;
+    }
     private static Value createFuncHelper(final Type funcType,final Function<Value[],Object> func,final boolean isConst)
     {
-        final String[] argn = new String[funcType.args.length];
-        final RuntimeScope rts = new RuntimeScope();
-        for(int i = 0;i < funcType.args.length;++i)
-            rts.putField(argn[i] = Character.toString(i),new Value(funcType.args[i],null));
-        final Value[] args = new Value[argn.length];
-        return new Value
+        final ConstableType[] argt = funcType.args;
+        return nativeFunc
         (
-            Types.constableType(funcType,isConst),
-            new Script.Func
-            (
-                rts,argn,
-                funcType.args.length == 0
-                    ? funcType.subType.base == BaseType.VOID
-                          ? new Block(Type.VOID) {@Override Object exec(final RuntimeScope s) {func.apply(args); return Script.RET_VOID;}}
-                          : new Block(funcType.subType) {@Override Object exec(final RuntimeScope s) {return func.apply(args);}}
-                    : funcType.subType.base == BaseType.VOID
-                          ? new Block(Type.VOID)
-                            {
-                                @Override
-                                Object exec(final RuntimeScope s)
-                                {
-                                    {
-                                        int i = 0;
-                                        for(final String n : argn) args[i++] = s.getField(n);
-                                    }
-                                    func.apply(args);
-                                    return Script.RET_VOID;
-                                }
-                            }
-                          : new Block(funcType.subType)
-                            {
-                                @Override
-                                Object exec(final RuntimeScope s)
-                                {
-                                    {
-                                        int i = 0;
-                                        for(final String n : argn) args[i++] = s.getField(n);
-                                    }
-                                    return func.apply(args);
-                                }
-                            }
-            )
+            funcType,isConst,
+            funcType.subType.base == BaseType.VOID
+                ? new Block(Type.VOID) {@Override Object exec(final RuntimeScope s) {func.apply(args(s,argt)); return Script.RET_VOID;}}
+                : new Block(funcType.subType) {@Override Object exec(final RuntimeScope s) {return func.apply(args(s,argt));}}
         );
     }
     /**
@@ -196,16 +184,179 @@ public final class ModuleMaker
         final Type ft = Types.funcType(returnType,args);
         return f -> createFuncHelper(ft,f,isConst);
     }
+    /**
+     * @return A function {@linkplain Value} of type {@code func<float>(const float)}.
+     *
+     * @throws NullPointerException if {@code func} is {@code null}.
+     *
+     * @apiNote The typed variants of {@linkplain ModuleMaker#createFunc(FuncInitializer,boolean)} receive their
+     *          arguments and return their results as primitives, skipping the {@linkplain Value} array and the casts
+     *          needed to unpack it. Each parameter type has its own name so that implicitly typed lambdas such as
+     *          {@code x -> x*x} are never ambiguous.
+     */
+    public static Value createDoubleFunc(final DoubleUnaryOperator func,final boolean isConst)
+    {
+        if(func == null) throw new NullPointerException();
+        return nativeFunc
+        (
+            Types.funcType(Types.FLOAT,Types.CONST_FLOAT),isConst,
+            new Block(Type.FLOAT) {@Override Object exec(final RuntimeScope s) {return func.applyAsDouble((double)s.arg(1,0));}}
+        );
+    }
+    /**
+     * @return A function {@linkplain Value} of type {@code func<float>(const float,const float)}.
+     *
+     * @throws NullPointerException if {@code func} is {@code null}.
+     *
+     * @see ModuleMaker#createDoubleFunc(DoubleUnaryOperator,boolean)
+     */
+    public static Value createDoubleFunc(final DoubleBinaryOperator func,final boolean isConst)
+    {
+        if(func == null) throw new NullPointerException();
+        return nativeFunc
+        (
+            Types.funcType(Types.FLOAT,Types.CONST_FLOAT,Types.CONST_FLOAT),isConst,
+            new Block(Type.FLOAT)
+            {
+                @Override
+                Object exec(final RuntimeScope s) {return func.applyAsDouble((double)s.arg(2,0),(double)s.arg(2,1));}
+            }
+        );
+    }
+    /**
+     * @return A function {@linkplain Value} of type {@code func<int>(const int)}.
+     *
+     * @throws NullPointerException if {@code func} is {@code null}.
+     *
+     * @see ModuleMaker#createDoubleFunc(DoubleUnaryOperator,boolean)
+     */
+    public static Value createLongFunc(final LongUnaryOperator func,final boolean isConst)
+    {
+        if(func == null) throw new NullPointerException();
+        return nativeFunc
+        (
+            Types.funcType(Types.INT,Types.CONST_INT),isConst,
+            new Block(Type.INT) {@Override Object exec(final RuntimeScope s) {return func.applyAsLong((long)s.arg(1,0));}}
+        );
+    }
+    /**
+     * @return A function {@linkplain Value} of type {@code func<int>(const int,const int)}.
+     *
+     * @throws NullPointerException if {@code func} is {@code null}.
+     *
+     * @see ModuleMaker#createDoubleFunc(DoubleUnaryOperator,boolean)
+     */
+    public static Value createLongFunc(final LongBinaryOperator func,final boolean isConst)
+    {
+        if(func == null) throw new NullPointerException();
+        return nativeFunc
+        (
+            Types.funcType(Types.INT,Types.CONST_INT,Types.CONST_INT),isConst,
+            new Block(Type.INT)
+            {
+                @Override
+                Object exec(final RuntimeScope s) {return func.applyAsLong((long)s.arg(2,0),(long)s.arg(2,1));}
+            }
+        );
+    }
+    /**
+     * @return A function {@linkplain Value} of type {@code func<int>(const str)}.
+     *
+     * @throws NullPointerException if {@code func} is {@code null}.
+     *
+     * @see ModuleMaker#createDoubleFunc(DoubleUnaryOperator,boolean)
+     */
+    public static Value createStrToLongFunc(final ToLongFunction<String> func,final boolean isConst)
+    {
+        if(func == null) throw new NullPointerException();
+        return nativeFunc
+        (
+            Types.funcType(Types.INT,Types.CONST_STR),isConst,
+            new Block(Type.INT) {@Override Object exec(final RuntimeScope s) {return func.applyAsLong(Script.strData(s.arg(1,0)));}}
+        );
+    }
+    /**
+     * @return A function {@linkplain Value} of type {@code func<>(const str)}.
+     *
+     * @throws NullPointerException if {@code func} is {@code null}.
+     *
+     * @see ModuleMaker#createDoubleFunc(DoubleUnaryOperator,boolean)
+     */
+    public static Value createStrConsumer(final Consumer<String> func,final boolean isConst)
+    {
+        if(func == null) throw new NullPointerException();
+        return nativeFunc
+        (
+            Types.funcType(Types.VOID,Types.CONST_STR),isConst,
+            new Block(Type.VOID)
+            {
+                @Override
+                Object exec(final RuntimeScope s)
+                {
+                    func.accept(Script.strData(s.arg(1,0)));
+                    return Script.RET_VOID;
+                }
+            }
+        );
+    }
+    /**
+     * @return A function {@linkplain Value} of type {@code func<bool>()}.
+     *
+     * @throws NullPointerException if {@code func} is {@code null}.
+     *
+     * @see ModuleMaker#createDoubleFunc(DoubleUnaryOperator,boolean)
+     */
+    public static Value createBoolSupplier(final BooleanSupplier func,final boolean isConst)
+    {
+        if(func == null) throw new NullPointerException();
+        return nativeFunc
+        (
+            Types.funcType(Types.BOOL),isConst,
+            new Block(Type.BOOL) {@Override Object exec(final RuntimeScope s) {return func.getAsBoolean();}}
+        );
+    }
+    /**
+     * @return A function {@linkplain Value} of type {@code func<int>()}.
+     *
+     * @throws NullPointerException if {@code func} is {@code null}.
+     *
+     * @see ModuleMaker#createDoubleFunc(DoubleUnaryOperator,boolean)
+     */
+    public static Value createLongSupplier(final LongSupplier func,final boolean isConst)
+    {
+        if(func == null) throw new NullPointerException();
+        return nativeFunc
+        (
+            Types.funcType(Types.INT),isConst,
+            new Block(Type.INT) {@Override Object exec(final RuntimeScope s) {return func.getAsLong();}}
+        );
+    }
+    /**
+     * @return A function {@linkplain Value} of type {@code func<float>()}.
+     *
+     * @throws NullPointerException if {@code func} is {@code null}.
+     *
+     * @see ModuleMaker#createDoubleFunc(DoubleUnaryOperator,boolean)
+     */
+    public static Value createDoubleSupplier(final DoubleSupplier func,final boolean isConst)
+    {
+        if(func == null) throw new NullPointerException();
+        return nativeFunc
+        (
+            Types.funcType(Types.FLOAT),isConst,
+            new Block(Type.FLOAT) {@Override Object exec(final RuntimeScope s) {return func.getAsDouble();}}
+        );
+    }
     /** A class representing the data needed to create a struct. */
     @SuppressWarnings("ClassCanBeRecord")
     public static final class StructInitializer
     {
-        final String name;
+        final Type type;
         final Map<String,Value> values;
         
-        StructInitializer(String name,Map<String,Value> values)
+        StructInitializer(Type type,Map<String,Value> values)
         {
-            this.name = name;
+            this.type = type;
             this.values = values;
         }
     }
@@ -263,10 +414,14 @@ public final class ModuleMaker
                     {
                         if(cls != StructInitializer.class)
                             throw new IllegalArgumentException("Type mismatch: "+ct.type+" -> "+cls.getSimpleName());
-                        yield createStruct((StructInitializer)val,ct.isConst);
+                        final StructInitializer si = (StructInitializer)val;
+                        if(si.type != ct.type)
+                            throw new IllegalArgumentException("Type mismatch: "+ct.type+" -> "+si.type);
+                        yield createStruct(si,ct.isConst);
                     }
                     default /* FUNC */ ->
                     {
+                        if(val instanceof final Value f && f.type.type.equals(ct.type)) yield new Value(ct,f.value);
                         if(cls != FuncInitializer.class)
                             throw new IllegalArgumentException("Type mismatch: "+ct.type+" -> "+cls.getSimpleName());
                         yield createFunc((FuncInitializer)val,ct.isConst);
@@ -278,7 +433,8 @@ public final class ModuleMaker
     }
     /**
      * @param name   The name of the struct.
-     * @param values The struct instance's fields.
+     * @param values The struct instance's fields. Function fields may be given either as a {@linkplain FuncInitializer}
+     *               or as a function {@linkplain Value} of the same type.
      *
      * @return A {@linkplain StructInitializer}.
      *
@@ -290,9 +446,8 @@ public final class ModuleMaker
     public StructInitializer createStructInitializer(final String name,final Map<String,Object> values)
     {
         if(name == null || values == null) throw new NullPointerException();
-        final Map<String,ConstableType> struct = structs.get(name);
-        if(struct == null) throw new IllegalArgumentException("Struct '"+name+"' is undefined");
-        return new StructInitializer(name,structInitHelper(struct,values));
+        final Type struct = structType(name);
+        return new StructInitializer(struct,structInitHelper(struct.fields,values));
     }
     /**
      * @return An array of {@linkplain StructInitializer}s.
@@ -307,17 +462,16 @@ public final class ModuleMaker
     public StructInitializer[] createStructInitializers(final String name,final Map<String,Object>[] values)
     {
         if(name == null || values == null) throw new NullPointerException();
-        final Map<String,ConstableType> struct = structs.get(name);
-        if(struct == null) throw new IllegalArgumentException("Struct '"+name+"' is undefined");
+        final Type struct = structType(name);
         final StructInitializer[] si = new StructInitializer[values.length];
         int i = 0;
         for(final Map<String,Object> val : values)
-            si[i++] = new StructInitializer(name,structInitHelper(struct,val));
+            si[i++] = new StructInitializer(struct,structInitHelper(struct.fields,val));
         return si;
     }
-    private static Value createStructHelper(final String name,final boolean isConst,final Map<String,Value> values)
+    private static Value createStructHelper(final Type struct,final boolean isConst,final Map<String,Value> values)
     {
-        return new Value(Types.constableType(Types.structType(name),isConst),values);
+        return new Value(Types.constableType(struct,isConst),values);
     }
     /**
      * @return A struct {@linkplain Value}.
@@ -329,7 +483,7 @@ public final class ModuleMaker
     public Value createStruct(final StructInitializer init,final boolean isConst)
     {
         if(init == null) throw new NullPointerException();
-        return createStructHelper(init.name,isConst,init.values);
+        return createStructHelper(init.type,isConst,init.values);
     }
     /**
      * @return A function which creates {@linkplain Value}s from struct maps.
@@ -348,9 +502,8 @@ public final class ModuleMaker
     public Function<Map<String,Object>,Value> structCreator(final String structName,final boolean isConst)
     {
         if(structName == null) throw new NullPointerException();
-        final Map<String,ConstableType> struct = structs.get(structName);
-        if(struct == null) throw new IllegalArgumentException("Struct '"+structName+"' is undefined");
-        return m -> createStructHelper(structName,isConst,structInitHelper(struct,m));
+        final Type struct = structType(structName);
+        return m -> createStructHelper(struct,isConst,structInitHelper(struct.fields,m));
     }
     /**
      * @param value An array of any dimension containing primitive, primitive wrapper, or String values.
@@ -507,6 +660,88 @@ public final class ModuleMaker
         else throw new IllegalArgumentException("Invalid base type: "+c2.getSimpleName());
         return new Value(Types.constableType(Types.listType(ct),isConst),Script.listStruct(ct,l));
     }
+    private static Value listView(final Type st,final ArrayView view,final boolean isConst)
+    {
+        return new Value(Types.constableType(Types.listType(st),isConst),Script.listStruct(st,view));
+    }
+    /**
+     * @param array    The array which backs the list.
+     * @param readOnly {@code true} iff the list's elements should be const.
+     *
+     * @return A fixed-size {@code int[]} {@linkplain Value} backed by the specified array. Unlike
+     *         {@linkplain ModuleMaker#createPrimitiveList(Object,boolean)}, no elements are copied: script code reads
+     *         and writes the array directly, and changes made by the host are visible to scripts. Calls to
+     *         functions which add or remove elements are reported to the script as runtime errors.
+     *
+     * @throws NullPointerException if {@code array} is {@code null}.
+     */
+    public static Value createListView(final long[] array,final boolean readOnly,final boolean isConst)
+    {
+        if(array == null) throw new NullPointerException();
+        return listView(Type.INT,ArrayView.of(array,readOnly),isConst);
+    }
+    /**
+     * @param array    The array which backs the list.
+     * @param readOnly {@code true} iff the list's elements should be const.
+     *
+     * @return A fixed-size {@code float[]} {@linkplain Value} backed by the specified array.
+     *
+     * @throws NullPointerException if {@code array} is {@code null}.
+     *
+     * @see ModuleMaker#createListView(long[],boolean,boolean)
+     */
+    public static Value createListView(final double[] array,final boolean readOnly,final boolean isConst)
+    {
+        if(array == null) throw new NullPointerException();
+        return listView(Type.FLOAT,ArrayView.of(array,readOnly),isConst);
+    }
+    /**
+     * @param array    The array which backs the list.
+     * @param readOnly {@code true} iff the list's elements should be const.
+     *
+     * @return A fixed-size {@code bool[]} {@linkplain Value} backed by the specified array.
+     *
+     * @throws NullPointerException if {@code array} is {@code null}.
+     *
+     * @see ModuleMaker#createListView(long[],boolean,boolean)
+     */
+    public static Value createListView(final boolean[] array,final boolean readOnly,final boolean isConst)
+    {
+        if(array == null) throw new NullPointerException();
+        return listView(Type.BOOL,ArrayView.of(array,readOnly),isConst);
+    }
+    /**
+     * @param buffer    The buffer which backs the list. The elements between its position and limit are used.
+     * @param readOnly {@code true} iff the list's elements should be const.
+     *
+     * @return A fixed-size {@code int[]} {@linkplain Value} backed by the specified buffer. Read-only buffers
+     *         always produce const elements.
+     *
+     * @throws NullPointerException if {@code buffer} is {@code null}.
+     *
+     * @see ModuleMaker#createListView(long[],boolean,boolean)
+     */
+    public static Value createListView(final LongBuffer buffer,final boolean readOnly,final boolean isConst)
+    {
+        if(buffer == null) throw new NullPointerException();
+        return listView(Type.INT,ArrayView.of(buffer,readOnly),isConst);
+    }
+    /**
+     * @param buffer    The buffer which backs the list. The elements between its position and limit are used.
+     * @param readOnly {@code true} iff the list's elements should be const.
+     *
+     * @return A fixed-size {@code float[]} {@linkplain Value} backed by the specified buffer. Read-only buffers
+     *         always produce const elements.
+     *
+     * @throws NullPointerException if {@code buffer} is {@code null}.
+     *
+     * @see ModuleMaker#createListView(long[],boolean,boolean)
+     */
+    public static Value createListView(final DoubleBuffer buffer,final boolean readOnly,final boolean isConst)
+    {
+        if(buffer == null) throw new NullPointerException();
+        return listView(Type.FLOAT,ArrayView.of(buffer,readOnly),isConst);
+    }
     /**
      * @param value    An array of any dimension containing {@linkplain FuncInitializer}s.
      * @param funcType {@linkplain Type} of the function elements.
@@ -599,14 +834,14 @@ public final class ModuleMaker
             throw new IllegalArgumentException("Expected array base type of "+StructInitializer.class.getSimpleName()+", got "+c2.getSimpleName());
         else
         {
-            ct = Types.structType(structName);
+            ct = structType(structName);
             final StructInitializer[] ll = (StructInitializer[])value;
             l = new ArrayList<>(ll.length);
             for(final StructInitializer s : ll)
             {
                 if(s == null) throw new NullPointerException();
-                if(!s.name.equals(structName))
-                    throw new IllegalArgumentException("Invalid struct name: expected "+structName+", got "+s.name);
+                if(s.type != ct)
+                    throw new IllegalArgumentException("Invalid struct type: expected "+ct+", got "+s.type);
                 l.add(createStruct(s,false));
             }
         }
@@ -709,6 +944,96 @@ public final class ModuleMaker
     {
         return declareValue(name,createFunc(createFuncInitializer(func,returnType,args),isConst));
     }
+    /**
+     * Declares a function symbol.
+     *
+     * @see ModuleMaker#declareValue(String,Value)
+     * @see ModuleMaker#createDoubleFunc(DoubleUnaryOperator,boolean)
+     */
+    public ModuleMaker declareDoubleFunc(final String name,final boolean isConst,final DoubleUnaryOperator func)
+    {
+        return declareValue(name,createDoubleFunc(func,isConst));
+    }
+    /**
+     * Declares a function symbol.
+     *
+     * @see ModuleMaker#declareValue(String,Value)
+     * @see ModuleMaker#createDoubleFunc(DoubleBinaryOperator,boolean)
+     */
+    public ModuleMaker declareDoubleFunc(final String name,final boolean isConst,final DoubleBinaryOperator func)
+    {
+        return declareValue(name,createDoubleFunc(func,isConst));
+    }
+    /**
+     * Declares a function symbol.
+     *
+     * @see ModuleMaker#declareValue(String,Value)
+     * @see ModuleMaker#createLongFunc(LongUnaryOperator,boolean)
+     */
+    public ModuleMaker declareLongFunc(final String name,final boolean isConst,final LongUnaryOperator func)
+    {
+        return declareValue(name,createLongFunc(func,isConst));
+    }
+    /**
+     * Declares a function symbol.
+     *
+     * @see ModuleMaker#declareValue(String,Value)
+     * @see ModuleMaker#createLongFunc(LongBinaryOperator,boolean)
+     */
+    public ModuleMaker declareLongFunc(final String name,final boolean isConst,final LongBinaryOperator func)
+    {
+        return declareValue(name,createLongFunc(func,isConst));
+    }
+    /**
+     * Declares a function symbol.
+     *
+     * @see ModuleMaker#declareValue(String,Value)
+     * @see ModuleMaker#createStrToLongFunc(ToLongFunction,boolean)
+     */
+    public ModuleMaker declareStrToLongFunc(final String name,final boolean isConst,final ToLongFunction<String> func)
+    {
+        return declareValue(name,createStrToLongFunc(func,isConst));
+    }
+    /**
+     * Declares a function symbol.
+     *
+     * @see ModuleMaker#declareValue(String,Value)
+     * @see ModuleMaker#createStrConsumer(Consumer,boolean)
+     */
+    public ModuleMaker declareStrConsumer(final String name,final boolean isConst,final Consumer<String> func)
+    {
+        return declareValue(name,createStrConsumer(func,isConst));
+    }
+    /**
+     * Declares a function symbol.
+     *
+     * @see ModuleMaker#declareValue(String,Value)
+     * @see ModuleMaker#createBoolSupplier(BooleanSupplier,boolean)
+     */
+    public ModuleMaker declareBoolSupplier(final String name,final boolean isConst,final BooleanSupplier func)
+    {
+        return declareValue(name,createBoolSupplier(func,isConst));
+    }
+    /**
+     * Declares a function symbol.
+     *
+     * @see ModuleMaker#declareValue(String,Value)
+     * @see ModuleMaker#createLongSupplier(LongSupplier,boolean)
+     */
+    public ModuleMaker declareLongSupplier(final String name,final boolean isConst,final LongSupplier func)
+    {
+        return declareValue(name,createLongSupplier(func,isConst));
+    }
+    /**
+     * Declares a function symbol.
+     *
+     * @see ModuleMaker#declareValue(String,Value)
+     * @see ModuleMaker#createDoubleSupplier(DoubleSupplier,boolean)
+     */
+    public ModuleMaker declareDoubleSupplier(final String name,final boolean isConst,final DoubleSupplier func)
+    {
+        return declareValue(name,createDoubleSupplier(func,isConst));
+    }
     /**
      * Declares a struct symbol.
      *
@@ -731,6 +1056,56 @@ public final class ModuleMaker
     {
         return declareValue(name,createPrimitiveList(value,isConst));
     }
+    /**
+     * Declares a list symbol backed by host memory.
+     *
+     * @see ModuleMaker#declareValue(String,Value)
+     * @see ModuleMaker#createListView(long[],boolean,boolean)
+     */
+    public ModuleMaker declareListView(final String name,final long[] value,final boolean readOnly,final boolean isConst)
+    {
+        return declareValue(name,createListView(value,readOnly,isConst));
+    }
+    /**
+     * Declares a list symbol backed by host memory.
+     *
+     * @see ModuleMaker#declareValue(String,Value)
+     * @see ModuleMaker#createListView(double[],boolean,boolean)
+     */
+    public ModuleMaker declareListView(final String name,final double[] value,final boolean readOnly,final boolean isConst)
+    {
+        return declareValue(name,createListView(value,readOnly,isConst));
+    }
+    /**
+     * Declares a list symbol backed by host memory.
+     *
+     * @see ModuleMaker#declareValue(String,Value)
+     * @see ModuleMaker#createListView(boolean[],boolean,boolean)
+     */
+    public ModuleMaker declareListView(final String name,final boolean[] value,final boolean readOnly,final boolean isConst)
+    {
+        return declareValue(name,createListView(value,readOnly,isConst));
+    }
+    /**
+     * Declares a list symbol backed by host memory.
+     *
+     * @see ModuleMaker#declareValue(String,Value)
+     * @see ModuleMaker#createListView(LongBuffer,boolean,boolean)
+     */
+    public ModuleMaker declareListView(final String name,final LongBuffer value,final boolean readOnly,final boolean isConst)
+    {
+        return declareValue(name,createListView(value,readOnly,isConst));
+    }
+    /**
+     * Declares a list symbol backed by host memory.
+     *
+     * @see ModuleMaker#declareValue(String,Value)
+     * @see ModuleMaker#createListView(DoubleBuffer,boolean,boolean)
+     */
+    public ModuleMaker declareListView(final String name,final DoubleBuffer value,final boolean readOnly,final boolean isConst)
+    {
+        return declareValue(name,createListView(value,readOnly,isConst));
+    }
     /**
      * Declares a function list symbol.
      *
@@ -770,17 +1145,280 @@ public final class ModuleMaker
             if(e.getKey() == null || ct == null) throw new NullPointerException();
             if(ct.type.base == BaseType.VOID)
                 throw new IllegalArgumentException("Void typed field");
-            if(ct.type.base == BaseType.STRUCT && !structs.containsKey(ct.type.structName))
-                throw new IllegalArgumentException("Struct '"+ct.type.structName+"' is undefined");
+            Type t = ct.type;
+            while(t.base == BaseType.LIST) t = t.subType;
+            if(t.base == BaseType.STRUCT && structs.get(t.structName) != t)
+                throw new IllegalArgumentException("Struct '"+t.structName+"' is not declared by this maker");
         }
-        structs.put(structName,ContainerUtil.makeImmutable(fields));
+        structs.put(structName,Types.structType(structName,fields));
         return this;
     }
+    /**
+     * @return The type of the struct with the specified name, which was declared by this maker.
+     *
+     * @throws NullPointerException if {@code structName} is {@code null}.
+     * @throws IllegalArgumentException if no struct with the specified name is defined.
+     *
+     * @see ModuleMaker#declareStructType(String,Map)
+     */
+    public Type structType(final String structName)
+    {
+        if(structName == null) throw new NullPointerException();
+        final Type struct = structs.get(structName);
+        if(struct == null) throw new IllegalArgumentException("Struct '"+structName+"' is undefined");
+        return struct;
+    }
+    
+    /** @return The script type which represents the specified Java type, or {@code null} if there is none. */
+    private static Type hostType(final Class<?> c)
+    {
+        if(c == long.class || c == int.class || c == short.class || c == byte.class || c == char.class) return Type.INT;
+        if(c == double.class || c == float.class) return Type.FLOAT;
+        if(c == boolean.class) return Type.BOOL;
+        if(c == String.class) return Type.STR;
+        if(c == void.class) return Type.VOID;
+        return null;
+    }
+    /** @return The Java type which the interpreter uses to store values of the specified script type. */
+    private static Class<?> hostClass(final Type t)
+    {
+        return switch(t.base)
+        {
+            case INT   -> long.class;
+            case FLOAT -> double.class;
+            case BOOL  -> boolean.class;
+            case VOID  -> void.class;
+            default    -> Object.class;
+        };
+    }
+    /*/
+    Arguments are stored as 64-bit values, so parameters of narrower types are range-checked before they are passed
+    instead of being truncated. Return values are only ever widened.
+    /*/
+    private static int toInt(final long v)
+    {
+        if(v != (int)v) throw new NativeException("Argument "+v+" is out of the range of int");
+        return (int)v;
+    }
+    private static short toShort(final long v)
+    {
+        if(v != (short)v) throw new NativeException("Argument "+v+" is out of the range of short");
+        return (short)v;
+    }
+    private static byte toByte(final long v)
+    {
+        if(v != (byte)v) throw new NativeException("Argument "+v+" is out of the range of byte");
+        return (byte)v;
+    }
+    private static char toChar(final long v)
+    {
+        if(v != (char)v) throw new NativeException("Argument "+v+" is out of the range of char");
+        return (char)v;
+    }
+    private static float toFloat(final double v)
+    {
+        // Rounding to the nearest float is expected, but overflowing to infinity is not.
+        if(Double.isFinite(v) && Float.isInfinite((float)v))
+            throw new NativeException("Argument "+v+" is out of the range of float");
+        return (float)v;
+    }
+    private static final MethodHandle STR_DATA,STR_STRUCT,RET_VOID;
+    /** Range checks for each narrow parameter type. */
+    private static final Map<Class<?>,MethodHandle> NARROW = new HashMap<>();
+    static
+    {
+        try
+        {
+            final MethodHandles.Lookup l = MethodHandles.lookup();
+            STR_DATA   = l.findStatic(Script.class,"strData",MethodType.methodType(String.class,Object.class));
+            STR_STRUCT = l.findStatic(Script.class,"strStruct",MethodType.methodType(Map.class,String.class));
+            RET_VOID   = MethodHandles.constant(Object.class,Script.RET_VOID);
+            NARROW.put(int.class,l.findStatic(ModuleMaker.class,"toInt",MethodType.methodType(int.class,long.class)));
+            NARROW.put(short.class,l.findStatic(ModuleMaker.class,"toShort",MethodType.methodType(short.class,long.class)));
+            NARROW.put(byte.class,l.findStatic(ModuleMaker.class,"toByte",MethodType.methodType(byte.class,long.class)));
+            NARROW.put(char.class,l.findStatic(ModuleMaker.class,"toChar",MethodType.methodType(char.class,long.class)));
+            NARROW.put(float.class,l.findStatic(ModuleMaker.class,"toFloat",MethodType.methodType(float.class,double.class)));
+        }
+        catch(final ReflectiveOperationException e) {throw new ExceptionInInitializerError(e);}
+    }
+    /**
+     * Adapts a method handle to the interpreter's calling convention.
+     *
+     * @return A method handle of type {@code (Object...)Object} which accepts values in the form they are stored
+     *         on the accumulator and returns the value which the function should return.
+     */
+    private static MethodHandle adapt(MethodHandle mh,final Type ret,final ConstableType[] args)
+    {
+        final Class<?>[] params = new Class<?>[args.length];
+        for(int i = 0;i < params.length;++i)
+        {
+            final Class<?> p = mh.type().parameterType(i);
+            if(p == String.class) mh = MethodHandles.filterArguments(mh,i,STR_DATA);
+            else if(NARROW.containsKey(p)) mh = MethodHandles.filterArguments(mh,i,NARROW.get(p));
+            params[i] = hostClass(args[i].type);
+        }
+        if(ret.base == BaseType.STR) mh = MethodHandles.filterReturnValue(mh,STR_STRUCT);
+        // Every parameter now has the type it is stored as, and return values are widened.
+        mh = mh.asType(MethodType.methodType(hostClass(ret),params));
+        if(ret.base == BaseType.VOID)
+            mh = MethodHandles.foldArguments(MethodHandles.dropArguments(RET_VOID,0,params),mh);
+        return mh.asType(MethodType.genericMethodType(params.length));
+    }
+    private static RuntimeException rethrow(final Throwable t)
+    {
+        if(t instanceof final RuntimeException e) throw e;
+        if(t instanceof final Error e) throw e;
+        return new RuntimeException(t);
+    }
+    /** @return A native function body which invokes the specified handle. */
+    private static Block handleBody(final Type ret,final MethodHandle mh,final int argc)
+    {
+        return switch(argc)
+        {
+            case 0 -> new Block(ret)
+            {
+                @Override
+                Object exec(final RuntimeScope s)
+                {
+                    try {return (Object)mh.invokeExact();}
+                    catch(final Throwable t) {throw rethrow(t);}
+                }
+            };
+            case 1 -> new Block(ret)
+            {
+                @Override
+                Object exec(final RuntimeScope s)
+                {
+                    try {return (Object)mh.invokeExact(s.arg(1,0));}
+                    catch(final Throwable t) {throw rethrow(t);}
+                }
+            };
+            case 2 -> new Block(ret)
+            {
+                @Override
+                Object exec(final RuntimeScope s)
+                {
+                    try {return (Object)mh.invokeExact(s.arg(2,0),s.arg(2,1));}
+                    catch(final Throwable t) {throw rethrow(t);}
+                }
+            };
+            case 3 -> new Block(ret)
+            {
+                @Override
+                Object exec(final RuntimeScope s)
+                {
+                    try {return (Object)mh.invokeExact(s.arg(3,0),s.arg(3,1),s.arg(3,2));}
+                    catch(final Throwable t) {throw rethrow(t);}
+                }
+            };
+            case 4 -> new Block(ret)
+            {
+                @Override
+                Object exec(final RuntimeScope s)
+                {
+                    try {return (Object)mh.invokeExact(s.arg(4,0),s.arg(4,1),s.arg(4,2),s.arg(4,3));}
+                    catch(final Throwable t) {throw rethrow(t);}
+                }
+            };
+            case 5 -> new Block(ret)
+            {
+                @Override
+                Object exec(final RuntimeScope s)
+                {
+                    try {return (Object)mh.invokeExact(s.arg(5,0),s.arg(5,1),s.arg(5,2),s.arg(5,3),s.arg(5,4));}
+                    catch(final Throwable t) {throw rethrow(t);}
+                }
+            };
+            case 6 -> new Block(ret)
+            {
+                @Override
+                Object exec(final RuntimeScope s)
+                {
+                    try {return (Object)mh.invokeExact(s.arg(6,0),s.arg(6,1),s.arg(6,2),s.arg(6,3),s.arg(6,4),s.arg(6,5));}
+                    catch(final Throwable t) {throw rethrow(t);}
+                }
+            };
+            // Functions with more arguments copy them into a new array on each call.
+            default ->
+            {
+                final MethodHandle spread = mh.asSpreader(Object[].class,argc);
+                yield new Block(ret)
+                {
+                    @Override
+                    Object exec(final RuntimeScope s)
+                    {
+                        final Object[] a = new Object[argc];
+                        System.arraycopy(s.accumulator.data(),s.accumulator.pos()-argc,a,0,argc);
+                        try {return (Object)spread.invokeExact(a);}
+                        catch(final Throwable t) {throw rethrow(t);}
+                    }
+                };
+            }
+        };
+    }
+    /**
+     * Creates a {@linkplain ModuleMaker} which declares a constant function for every static method in the specified
+     * class annotated with {@linkplain HostFunction}. Each method is bound through a {@linkplain MethodHandle}, so
+     * calls perform no reflection. Methods with up to six parameters are called without allocating; methods with
+     * more copy their arguments into a new array on each call.
+     *
+     * @param cls    The class to scan. Only methods declared by the class itself are considered.
+     * @param lookup A lookup with access to the annotated methods.
+     *
+     * @throws NullPointerException if either argument is {@code null}.
+     * @throws IllegalArgumentException if an annotated method is not static, is inaccessible, has a type which
+     *                                  cannot be represented in scripts, or has the same name as another.
+     *
+     * @see HostFunction
+     */
+    public static ModuleMaker fromClass(final Class<?> cls,final MethodHandles.Lookup lookup)
+    {
+        if(cls == null || lookup == null) throw new NullPointerException();
+        final ModuleMaker mm = new ModuleMaker();
+        for(final Method m : cls.getDeclaredMethods())
+        {
+            final HostFunction hf = m.getAnnotation(HostFunction.class);
+            if(hf == null) continue;
+            final String name = hf.value().isEmpty()? m.getName() : hf.value();
+            if(!Modifier.isStatic(m.getModifiers()))
+                throw new IllegalArgumentException("Method '"+m.getName()+"' is not static");
+            if(mm.runTime.containsKey(name))
+                throw new IllegalArgumentException("Duplicate function '"+name+"'");
+            final Type ret = hostType(m.getReturnType());
+            if(ret == null)
+                throw new IllegalArgumentException("Unsupported return type for '"+m.getName()+"': "+m.getReturnType());
+            final Class<?>[] p = m.getParameterTypes();
+            final ConstableType[] args = new ConstableType[p.length];
+            for(int i = 0;i < p.length;++i)
+            {
+                final Type t = hostType(p[i]);
+                if(t == null || t.base == BaseType.VOID)
+                    throw new IllegalArgumentException("Unsupported argument type for '"+m.getName()+"': "+p[i]);
+                args[i] = Types.constableType(t,true);
+            }
+            final MethodHandle mh;
+            try {mh = lookup.unreflect(m);}
+            catch(final IllegalAccessException e)
+            {
+                throw new IllegalArgumentException("Method '"+m.getName()+"' is inaccessible",e);
+            }
+            mm.declareValue(name,nativeFunc(Types.funcType(ret,args),true,handleBody(ret,adapt(mh,ret,args),args.length)));
+        }
+        return mm;
+    }
+    /**
+     * Equivalent to {@code fromClass(cls,MethodHandles.publicLookup())}. The class and its annotated methods must
+     * be public.
+     *
+     * @see ModuleMaker#fromClass(Class,MethodHandles.Lookup)
+     */
+    public static ModuleMaker fromClass(final Class<?> cls) {return fromClass(cls,MethodHandles.publicLookup());}
     
     /** Creates the {@linkplain Module}. */
     public Module make()
     {
-        final Map<String,Map<String,ConstableType>> s = ContainerUtil.makeImmutable(structs);
+        final Map<String,Type> s = ContainerUtil.makeImmutable(structs);
+        CowList.freezeConstants(runTime);
         return new Module
         (
             new CompilerScopeEntry(ContainerUtil.makeImmutable(compileTime),s,Set.of()),
@@ -0,0 +1,12 @@
+package prgmScript;
+
+/**
+ * An error in a native function which is reported to the script as a
+ * {@linkplain prgmScript.exception.ScriptRuntimeException} at the line which called the function. Native functions
+ * don't know which line called them, so the interpreter adds it when it catches this exception. Any other exception
+ * thrown by a native function is passed on to the host unchanged.
+ */
+final class NativeException extends RuntimeException
+{
+    NativeException(final String msg) {super(msg);}
+}
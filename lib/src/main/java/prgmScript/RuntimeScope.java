@@ -2,6 +2,7 @@ package prgmScript;
 
 import prgmScript.util.Stack;
 
+import java.util.HashMap;
 import java.util.Map;
 
 /** An extension of {@linkplain Scope} specifically for use during a script's runtime. */
@@ -12,12 +13,38 @@ final class RuntimeScope extends Scope<Value,RuntimeScopeEntry>
     RuntimeScope() {super(RuntimeScopeEntry[]::new,RuntimeScopeEntry::new);}
     RuntimeScope(final RuntimeScope other) {super(other);}
     
+    /**
+     * @return A scope for a function which is created in this scope. The module's globals are shared, so the function
+     *         sees and changes their current values. The initialized fields of the enclosing blocks are copied, so the
+     *         function keeps the values which they had when it was created. Fields which are not initialized yet are
+     *         shared, so that a function can call itself through a variable which was declared before it.
+     */
+    RuntimeScope capture()
+    {
+        final RuntimeScope c = new RuntimeScope(this);
+        final RuntimeScopeEntry[] d = c.entries.data();
+        for(int i = 1;i < c.entries.pos();++i)
+        {
+            final Map<String,Value> f = new HashMap<>(d[i].fields.size());
+            for(final Map.Entry<String,Value> e : d[i].fields.entrySet())
+            {
+                final Value v = e.getValue();
+                f.put(e.getKey(),v.value == null? v : new Value(v.type,v.value));
+            }
+            d[i] = new RuntimeScopeEntry(f,d[i].structs);
+        }
+        return c;
+    }
+    
+    /** Pushes the specified module to the current scope, giving it a new view of each of the module's frozen lists. */
     @Override
     void pushToScope(final RuntimeScopeEntry entry)
     {
-        super.pushToScope(entry);
         final RuntimeScopeEntry e = entries.top();
-        for(final Map.Entry<String,Map<String,ConstableType>> s : entry.structs.entrySet())
+        for(final Map.Entry<String,Value> f : entry.fields.entrySet())
+            if(!e.fields.containsKey(f.getKey()))
+                e.fields.put(f.getKey(),CowList.share(f.getValue()));
+        for(final Map.Entry<String,Type> s : entry.structs.entrySet())
             e.structs.putIfAbsent(s.getKey(),s.getValue());
     }
     void setFieldValue(final String name,final Object value)
@@ -35,4 +62,11 @@ final class RuntimeScope extends Scope<Value,RuntimeScopeEntry>
     
     void pushAccumulator(final Object obj) {accumulator.push(obj);}
     Object popAccumulator() {return accumulator.pop();}
+    /**
+     * @param argc The number of arguments passed to the native function being called.
+     * @param i    The index of the argument.
+     *
+     * @return The resolved value of the argument, read from the top of the accumulator.
+     */
+    Object arg(final int argc,final int i) {return accumulator.data()[accumulator.pos()-argc+i];}
 }
\ No newline at end of file
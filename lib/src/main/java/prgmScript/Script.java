@@ -6,14 +6,31 @@ import prgmScript.token.Token;
 import prgmScript.token.TokenType;
 import prgmScript.token.Tokenize;
 import prgmScript.token.Tokenize.TokenIterator;
-import prgmScript.util.ContainerUtil;
 import prgmScript.util.ErrReporter;
 
 import java.io.*;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
 import java.util.function.BiFunction;
 import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
 
 /**
  * This class contains functions which parse and compile prgmScript.
@@ -116,9 +133,9 @@ public final class Script
             // Determine if there isn't a readable token at the requested position.
             switch(itr)
             {
-                case prev      -> !tokens.hasPrevious() || tokens.peek(-1).type() == TokenType.EOF;
-                case peek,next -> !tokens.hasNext()     || tokens.peek(  ).type() == TokenType.EOF;
-                default        -> !tokens.canAdvance()  || tokens.peek( 1).type() == TokenType.EOF;
+                case prev      -> !tokens.hasPrevious() || tokens.peekType(-1) == TokenType.EOF;
+                case peek,next -> !tokens.hasNext()     || tokens.peekType( 0) == TokenType.EOF;
+                default        -> !tokens.canAdvance()  || tokens.peekType( 1) == TokenType.EOF;
             }
         )
         {
@@ -165,6 +182,30 @@ public final class Script
             default   -> /*tokens.canAdvance() ?*/ tokens.advance() /*: GENERIC_EOF*/;
         };
     }
+    /**
+     * Same as {@link #getOrEOF}, but only gets the token's type, so that no token needs to be created. Positions past
+     * the end of the tokens are treated as EOFs.
+     */
+    private static TokenType typeOrEOF(final ItrMode itr,final TokenIterator tokens)
+    {
+        final TokenType t = switch(itr)
+        {
+            case prev -> tokens.peekType(-1);
+            case peek -> tokens.peekType(0);
+            case next ->
+            {
+                final TokenType n = tokens.peekType(0);
+                tokens.pos(tokens.pos()+1);
+                yield n;
+            }
+            default   ->
+            {
+                tokens.pos(tokens.pos()+1);
+                yield tokens.peekType(0);
+            }
+        };
+        return t != null? t : TokenType.EOF;
+    }
     /**
      * Reports an error if the token returned from {@link #nonEOF} doesn't
      * match the allowed types.
@@ -217,7 +258,7 @@ public final class Script
     private static boolean matches(final ItrMode itr,final TokenIterator tokens,
                                    final TokenType...types)
     {
-        final TokenType t = getOrEOF(itr,tokens).type();
+        final TokenType t = typeOrEOF(itr,tokens);
         for(final TokenType tt : types) if(t == tt) return true;
         return false;
     }
@@ -237,7 +278,7 @@ public final class Script
         {
             TokenType t;
             // Skip until a match for 'until' or 'open' is found.
-            do if((t = getOrEOF(ItrMode.next,tokens).type()) == TokenType.EOF) return;
+            do if((t = typeOrEOF(ItrMode.next,tokens)) == TokenType.EOF) return;
             while(t != until && t != open);
             // Update balance counter.
             balance += t == until? -1:1;
@@ -281,7 +322,7 @@ public final class Script
      * @return If the argument is a {@linkplain Value}, the value will be unwrapped. Otherwise,
      *         the argument is returned unchanged.
      */
-    private static Object resolve(final Object obj) {return obj instanceof final Value v? v.value : obj;}
+    static Object resolve(final Object obj) {return obj instanceof final Value v? v.value : obj;}
     /**
      * @param o    An object of any type.
      * @param from The {@linkplain BaseType} representing the first argument.
@@ -400,7 +441,7 @@ public final class Script
             }
             case STRUCT ->
             {
-                if(!at.structName.equals(bt.structName)) yield false;
+                if(at != bt) yield false;
                 @SuppressWarnings("unchecked")
                 final Map<String,Value> aa = (Map<String,Value>)a,
                                         bb = (Map<String,Value>)b;
@@ -443,6 +484,11 @@ public final class Script
         final ErrReporter reporter;
         /** All currently active imports. Each entry has a counter to ensure no double unloads happen. */
         final Map<String,Integer> imports = new HashMap<>();
+        /**
+         * Imported scripts found by {@linkplain Script#prefetch(Context,Load)}, which are compiled in parallel while
+         * this script is parsed. Circular imports are mapped to {@code null}.
+         */
+        Map<String,CompletableFuture<Module>> pending = Map.of();
         int accPos = 0;
         final List<BlockBuilder> bbList = new ArrayList<>();
         byte deadCode = 0;
@@ -450,12 +496,32 @@ public final class Script
         final String path;
         int subID = 0;
         boolean sideEffects = false;
+        /** What the compiled script keeps. */
+        final Options options;
+        /** The scripts which are being recompiled by {@linkplain Script#reload}, or {@code null}. */
+        final Map<String,Load> staged;
         
         /** Initializes the context by running {@linkplain Tokenize#tokenize(Reader,ErrReporter)}. */
-        Context(final String module,final Reader reader,final PrintStream err) throws IOException
+        Context(final String module,final Reader reader,final PrintStream err,final Options options) throws IOException
         {
             tokens = Tokenize.tokenize(reader,reporter = new ErrReporter(this.module = module,err));
             path = "main";
+            this.options = options;
+            staged = null;
+        }
+        /**
+         * Initializes the context of an imported script with tokens which have already been read.
+         *
+         * @param staged The scripts which are being recompiled by {@linkplain Script#reload}, or {@code null}.
+         */
+        Context(final String module,final TokenIterator tokens,final PrintStream err,final Options options,
+                final Map<String,Load> staged)
+        {
+            this.tokens = tokens;
+            reporter = new ErrReporter(this.module = module,err);
+            path = "main";
+            this.options = options;
+            this.staged = staged;
         }
         @SuppressWarnings("CopyConstructorMissesField")
         Context(final Context other)
@@ -465,7 +531,10 @@ public final class Script
             module = other.module;
             reporter = other.reporter;
             imports.putAll(other.imports);
+            pending = other.pending;
             path = other.path+'.'+other.subID++;
+            options = other.options;
+            staged = other.staged;
         }
         
         /** Creates a new {@linkplain BlockBuilder}. */
@@ -473,7 +542,7 @@ public final class Script
         {
             final int i = bbNames.getOrDefault(name,0);
             bbNames.put(name,i+1);
-            return new BlockBuilder(module,i != 0? name + i : name);
+            return new BlockBuilder(module,i != 0? name + i : name,options.debugInfo(),options.keepIR());
         }
         
         @SuppressWarnings("unused")
@@ -489,911 +558,1464 @@ public final class Script
             return sb.append("\n\n").toString();
         }
         
-        Block compile() throws ScriptException
+        Body compile() throws ScriptException
         {
             //*debug*/ System.out.println(dump());
-            final Block[] blocks = new Block[bbList.size()];
-            int i = 0;
-            for(final BlockBuilder b : bbList) blocks[i++] = b.build(blocks);
-            return blocks[0];
+            return Body.build(bbList,options.keepIR());
         }
     }
-    /** A representation of a runtime function. */
-    static record Func(RuntimeScope scope,String[] argn,Block body) {}
-    /** Return status for statements, which can be valid, invalid, or end of block. */
-    private enum Status
-    { //TODO add status for invalid but salvageable
-        /** Valid        */OK,
-        /** Invalid      */BAD,
-        /** End of Block */SKIP
+    /**
+     * A representation of a runtime function.
+     *
+     * @param scope The scope which the function's arguments are assigned in, or {@code null} if the function is native.
+     * @param argn  The name of each argument, or {@code null} if the function is native.
+     * @param body  The function's entry block. Native bodies are executed in the caller's scope and read their
+     *              arguments directly from the top of the caller's accumulator (see
+     *              {@linkplain RuntimeScope#arg(int,int)}), so they share no state between calls.
+     */
+    static record Func(RuntimeScope scope,String[] argn,Block body)
+    {
+        /** Creates a native function. */
+        Func(final Block body) {this(null,null,body);}
+        
+        /**
+         * Calls this function. The arguments must already be resolved and on top of the caller's accumulator. They
+         * are not popped by this function.
+         *
+         * @return The function's return value.
+         */
+        Object call(final RuntimeScope caller)
+        {
+            if(scope == null) return body.exec(caller);
+            final Object[] d = caller.accumulator.data();
+            final int p = caller.accumulator.pos()-argn.length;
+            for(int i = 0;i != argn.length;++i)
+                scope.setFieldValue(argn[i],d[p+i]);
+            return run();
+        }
+        /**
+         * Executes the body of a script function whose arguments are already assigned. Scopes which were pushed by
+         * the body and left open by a return statement are discarded.
+         *
+         * @return The function's return value.
+         */
+        Object run()
+        {
+            final int depth = scope.entries.pos();
+            try {return exec(body,scope);}
+            finally {scope.entries.pos(depth);}
+        }
     }
-    /** @return The element type of the list. (e.g. {@code bool[][][] -> bool}). */
-    private static BaseType getElemType(Type t)
+    /** Executes blocks, starting with the specified one, until a return value is produced. */
+    static Object exec(final Block entry,final RuntimeScope s)
     {
-        while(t.base == BaseType.LIST) t= t.subType;
-        return t.base;
+        Object result = entry;
+        while(result instanceof final Block b)
+            result = b.exec(s);
+        return result;
     }
     /**
-     * @return {@code true} iff the two arguments represent the same type, or both are lists and the first type
-     *         is a void list.
+     * A compiled function body.
+     *
+     * @param blocks The blocks which the body was built from, or {@code null} if the script does not keep its IR (see
+     *               {@linkplain Options#keepIR()}). These are only needed to serialize the body.
+     * @param entry  The body's entry block.
+     *
+     * @see IRCodec
      */
-    private static boolean compareOrVoidList(final Type a,final Type b)
+    static record Body(List<BlockBuilder> blocks,Block entry)
     {
-        // Check for 'void[]'.
-        Type ast = a,bst = b;
-        while(ast.base == BaseType.LIST && bst.base == BaseType.LIST)
+        /**
+         * Builds the blocks of a function body.
+         *
+         * @param keepIR Whether the blocks are kept after they are built.
+         */
+        static Body build(final List<BlockBuilder> blocks,final boolean keepIR) throws ScriptException
         {
-            ast = ast.subType;
-            bst = bst.subType;
-            if(ast.base == BaseType.VOID) return true;
+            final Block[] b = new Block[blocks.size()];
+            int i = 0;
+            for(final BlockBuilder bb : blocks) b[i++] = bb.build(b);
+            return new Body(keepIR? blocks : null,b[0]);
         }
-        // Compare if void list not found.
-        return ast.equals(bst);
-    }
-    /** @return {@code true} iff the two arrays represent the same function arguments. */
-    private static boolean compareArgs(final ConstableType[] a,final ConstableType[] b)
-    {
-        if(a != null && b != null && a.length == b.length)
+        /**
+         * @return This body followed by every function body nested in it, depth first.
+         *
+         * @throws IllegalArgumentException if the script does not keep its IR.
+         */
+        List<Body> bodies()
         {
-            for(int i = 0;i < a.length;++i)
-                if(!compareOrVoidList(a[i].type,b[i].type))
-                    return false;
-            return true;
+            if(blocks == null) throw new IllegalArgumentException("The script was compiled without keeping its IR");
+            final List<Body> l = new ArrayList<>();
+            bodies(l);
+            return l;
         }
-        return false;
-    }
-        /** The type of String::length. Since this does not depend on the list's type, it can be constant. */
-    private static final ConstableType
-        STR_LENGTH = Types.constableType(Types.funcType(Type.INT),true),
-        /** The type of String::substring. Since this does not depend on the list's type, it can be constant. */
-        STR_SUBSTR = Types.constableType(Types.funcType(Type.STR,ConstableType.INT,ConstableType.INT),true);
-    /** The type of List::length. Since this does not depend on the list's type, it can be constant. */
-    private static final ConstableType LIST_LENGTH = Types.constableType(Types.funcType(Type.INT),true);
-    /** Members of the string struct. */
-    private static final Map<String,ConstableType> STR_MEMBERS = Map.of("length",STR_LENGTH,"substring",STR_SUBSTR),
-                                                   VOID_LIST_MEMBERS = Map.of("length",LIST_LENGTH);
-    /** @return Gets the members of the specified struct. */
-    private static Map<String,ConstableType> getMembers(final CompilerScope scope,final Type struct)
-    {// TODO see comment in listStruct
-        return switch(struct.base)
+        private void bodies(final List<Body> l)
         {
-            case LIST   ->
-            {
-                final Type st = struct.subType;
-                final ConstableType cct  = Types.constableType(st,true),
-                                    push = Types.constableType(Types.funcType(Type.VOID,cct),true),
-                                    pop  = Types.constableType(Types.funcType(st),true);
-                yield st.base == BaseType.VOID
-                    ? VOID_LIST_MEMBERS
-                    : Map.of
-                      (
-                          "length"   ,LIST_LENGTH,
-                          "front"    ,pop,
-                          "back"     ,pop,
-                          "pushFront",push,
-                          "pushBack" ,push,
-                          "popFront" ,pop,
-                          "popBack"  ,pop,
-                          "insert"   ,Types.constableType(Types.funcType(Type.VOID,ConstableType.INT,cct),true),
-                          "remove"   ,Types.constableType(Types.funcType(st,ConstableType.INT),true)
-                      );
-            }
-            case STR    -> STR_MEMBERS;
-            case STRUCT -> scope.getStruct(struct.structName);
-            default -> null;
-        };
+            l.add(this);
+            for(final BlockBuilder bb : blocks)
+                for(final Object[] a : bb.operands)
+                    for(final Object o : a)
+                        if(o instanceof final Body b)
+                            b.bodies(l);
+        }
     }
-    /** @return A struct wrapping a list converted to type {@code void[]}. */
-    static Map<String,Value> voidList(final Type subType,final List<Value> list)
+    
+    /*/
+    The compiler never creates instructions directly. Instead, each instruction is described by an opcode and a list
+    of operands, which are recorded by the block builder alongside the instruction. Operands only contain constants,
+    types, names, and nested function bodies, so a block can be serialized by writing its opcodes and operands and
+    rebuilt later by passing them to the same factories that the compiler used.
+    /*/
+    
+    /** The instruction set. Each opcode creates its instruction from the operands documented on it. */
+    enum Op
     {
-        return Map.ofEntries
-        (
-            Map.entry(" subtype",new Value(Types.CONST_VOID,subType)),
-            Map.entry(" ",new Value(Types.constableType(Types.listType(subType),true),list)),
-            Map.entry
-            (
-                "length",
-                new Value
-                (
-                    Types.constableType(Types.funcType(Type.INT),true),
-                    new Func
-                    (
-                        new RuntimeScope(),new String[0],
-                        new Block(Type.INT) {@Override Object exec(final RuntimeScope s) {return (long)list.size();}}
-                    )
-                )
-            )
-        );
-    }
-    /** @return A struct wrapping the specified list. */
-    static Map<String,Value> listStruct(final Type subtype,final List<Value> list)
-    {//TODO move copy and swap to library & add sublist
-        final Type listType = Types.listType(subtype);
-        final ConstableType est = Types.constableType(subtype,false),
-                            cst = Types.constableType(subtype,true),
-                            clt = Types.constableType(listType,true),
-                          retct = Types.constableType(Types.funcType(subtype),true),
-                          putct = Types.constableType(Types.funcType(Type.VOID,cst),true);
-        final RuntimeScope pushFront = new RuntimeScope(),
-                           pushBack = new RuntimeScope(),
-                           insert = new RuntimeScope(),
-                           remove = new RuntimeScope();
-        pushFront.putField("\0",new Value(cst,null));
-        pushBack.putField("\0",new Value(cst,null));
-        insert.putField("\0",new Value(ConstableType.CONST_INT,null));
-        insert.putField("\1",new Value(cst,null));
-        remove.putField("\0",new Value(ConstableType.CONST_INT,null));
-        return Map.of
-        (
-            // The data entry is not listed in 'getMembers' so that it is invisible.
-            " ",new Value(clt,list),
-            
-            "length",
-            new Value
-            (
-                Types.constableType(Types.funcType(Type.INT),true),
-                new Func
-                (
-                    new RuntimeScope(),new String[0],
-                    new Block(Type.INT) {@Override Object exec(final RuntimeScope s) {return (long)list.size();}}
-                )
-            ),
-            
-            "popFront",
-            new Value
-            (
-                retct,
-                new Func
-                (
-                    new RuntimeScope(),new String[0],
-                    new Block(subtype) {@Override Object exec(final RuntimeScope s) {return list.remove(0);}}
-                )
-            ),
-            
-            "popBack",
-            new Value
-            (
-                retct,
-                new Func
-                (
-                    new RuntimeScope(),new String[0],
-                    new Block(subtype) {@Override Object exec(final RuntimeScope s) {return list.remove(list.size()-1);}}
-                )
-            ),
-            
-            "pushFront",
-            new Value
-            (
-                putct,
-                new Func
-                (
-                    pushFront,new String[] {"\0"},
-                    new Block(Type.VOID)
+        /** Creates a list from the last elements on the stack. Operands: element type, number of elements. */
+        LIST
+        {
+            @Override
+            Instruction make(final String module,final int line,final Object[] a)
+            {
+                final Type subtype = (Type)a[0];
+                final int ne = (Integer)a[1];
+                final ConstableType ct = Types.constableType(subtype,false);
+                return new Instruction(line,Types.listType(subtype))
+                {
+                    @Override
+                    Object exec(final RuntimeScope s)
                     {
-                        @Override
-                        Object exec(final RuntimeScope s)
-                        {
-                            list.add(0,new Value(est,s.getField("\0").value));
-                            return null;
-                        }
+                        final Value[] val = new Value[ne];
+                        for(int i = ne;i-- != 0;) val[i] = new Value(ct,resolve(s.popAccumulator()));
+                        s.pushAccumulator(listStruct(subtype,new ArrayList<>(Arrays.asList(val))));
+                        return null;
                     }
-                )
-            ),
-            
-            "pushBack",
-            new Value
-            (
-                putct,
-                new Func
-                (
-                    pushBack,new String[] {"\0"},
-                    new Block(Type.VOID)
+                };
+            }
+        },
+        /** Pops the stack. No operands. */
+        POP
+        {
+            @Override
+            Instruction make(final String module,final int line,final Object[] a)
+            {
+                return new Instruction(line,null)
+                {
+                    @Override
+                    Object exec(final RuntimeScope s)
                     {
-                        @Override
-                        Object exec(final RuntimeScope s)
-                        {
-                            list.add(new Value(est,s.getField("\0").value));
-                            return null;
-                        }
+                        s.popAccumulator();
+                        return null;
                     }
-                )
-            ),
-            
-            "front",
-            new Value
-            (
-                retct,
-                new Func
-                (
-                    new RuntimeScope(),new String[0],
-                    new Block(subtype) {@Override Object exec(final RuntimeScope s) {return list.get(0);}}
-                )
-            ),
-            
-            "back",
-            new Value
-            (
-                retct,
-                new Func
-                (
-                    new RuntimeScope(),new String[0],
-                    new Block(subtype) {@Override Object exec(final RuntimeScope s) {return list.get(list.size()-1);}}
-                )
-            ),
-            
-            "insert",
-            new Value
-            (
-                Types.constableType(Types.funcType(Type.VOID,ConstableType.INT,cst),true),
-                new Func
-                (
-                    insert,new String[] {"\0","\1"},
-                    new Block(Type.VOID)
+                };
+            }
+        },
+        /** Creates a struct from the last elements on the stack. Operands: struct type, member names, member types. */
+        STRUCT
+        {
+            @Override
+            Instruction make(final String module,final int line,final Object[] a)
+            {
+                final String[] ids = (String[])a[1];
+                final ConstableType[] et = (ConstableType[])a[2];
+                final int size = ids.length;
+                return new Instruction(line,(Type)a[0])
+                {
+                    @Override
+                    Object exec(final RuntimeScope s)
                     {
-                        @Override
-                        Object exec(final RuntimeScope s)
-                        {
-                            list.add(((Long)s.getField("\0").value).intValue(),new Value(est,s.getField("\1").value));
-                            return null;
-                        }
+                        final Map<String,Value> v = new HashMap<>(size);
+                        // Convert the initializer to a literal struct.
+                        for(int j = 0;j < size;++j)
+                            v.put(ids[j],new Value(et[j],resolve(s.popAccumulator())));
+                        s.pushAccumulator(v);
+                        return null;
                     }
-                )
-            ),
-            
-            "remove",
-            new Value
-            (
-                Types.constableType(Types.funcType(subtype,ConstableType.INT),true),
-                new Func
-                (
-                    remove,new String[] {"\0"},
-                    new Block(subtype)
+                };
+            }
+        },
+        /** Creates a function which captures the current scope. Operands: return type, arg types, arg names, body. */
+        FUNC
+        {
+            @Override
+            Instruction make(final String module,final int line,final Object[] a)
+            {
+                final ConstableType[] argt = (ConstableType[])a[1];
+                final String[] argn = (String[])a[2];
+                final Block body = ((Body)a[3]).entry();
+                return new Instruction(line,Types.funcType((Type)a[0],argt))
+                {
+                    @Override
+                    Object exec(final RuntimeScope s)
                     {
-                        @Override
-                        Object exec(final RuntimeScope s)
-                        {
-                            return list.remove(((Long)s.getField("\0").value).intValue());
-                        }
+                        final RuntimeScope ns = s.capture();
+                        ns.pushScope();
+                        for(int a = 0;a < argt.length;++a)
+                            ns.putField(argn[a],new Value(argt[a],null));
+                        s.pushAccumulator(new Func(ns,argn,body));
+                        return null;
                     }
-                )
-            )
-        );
-    }
-    /** @return The data from the list struct. */
-    @SuppressWarnings("unchecked")
-    public static List<Value> listData(final Object list)
-    {
-        return (List<Value>)((Map<String,Value>)list).get(" ").value;
-    }
-    /** @return A struct wrapping the specified string. */
-    static Map<String,Value> strStruct(final String str)
-    {//TODO move functions to library & add toIntList, character
-        final RuntimeScope substr = new RuntimeScope();
-        substr.putField("\0",new Value(ConstableType.INT,null));
-        substr.putField("\1",new Value(ConstableType.INT,null));
-        return Map.of
-        (
-            // The data entry is not listed in 'getMembers' so that it is invisible.
-            " ",
-            new Value(ConstableType.CONST_STR,str),
-            
-            "length",
-            new Value
-            (
-                STR_LENGTH,
-                new Func
-                (
-                    new RuntimeScope(),new String[0],
-                    new Block(Type.INT) {@Override Object exec(final RuntimeScope s) {return (long)str.length();}}
-                )
-            ),
-            
-            "substring",
-            new Value
-            (
-                STR_SUBSTR,
-                new Func
-                (
-                    substr,new String[] {"\0","\1"},
-                    new Block(Type.STR)
+                };
+            }
+        },
+        /** Replaces the struct on top of the stack with one of its (nested) members. Operands: type, member path. */
+        READ_PATH
+        {
+            @Override
+            Instruction make(final String module,final int line,final Object[] a)
+            {
+                final String[] path = (String[])a[1];
+                return new Instruction(line,(Type)a[0],true)
+                {
+                    @Override @SuppressWarnings("unchecked")
+                    Object exec(final RuntimeScope s)
                     {
-                        @Override
-                        Object exec(final RuntimeScope s)
-                        {
-                            return strStruct(str.substring(((Long)s.getField("\0").value).intValue(),
-                                                           ((Long)s.getField("\1").value).intValue()));
-                        }
+                        final Object[] d = s.accumulator.data();
+                        final int p = s.accumulator.pos()-1;
+                        Map<String,Value> v = (Map<String,Value>)resolve(d[p]);
+                        int i;
+                        for(i = 0;i < path.length-1;++i)
+                            v = (Map<String,Value>)v.get(path[i]).value;
+                        d[p] = v.get(path[i]);
+                        return null;
                     }
-                )
-            )
-        );
-    }
-    /** @return The data from the string struct. */
-    @SuppressWarnings("unchecked")
-    public static String strData(final Object o)
-    {
-        return (String)((Map<String,Value>)o).get(" ").value;
-    }
-    /** @return A string representation of the specified object. */
-    @SuppressWarnings("unchecked")
-    public static String toString(Object v,final Type t)
-    {
-        v = resolve(v);
-        return switch(t.base)
+                };
+            }
+        },
+        /** Pushes a field. Operands: type, name. */
+        READ
         {
-            case BOOL,INT,FLOAT -> v.toString();
-            case STR -> strData(v);
-            case FUNC -> t.toString();
-            case LIST ->
+            @Override
+            Instruction make(final String module,final int line,final Object[] a)
             {
-                final List<Value> v2 = listData(v);
-                final Type st = t.subType;
-                final StringJoiner sj = new StringJoiner(",","["+st+':',"]");
-                for(final Value x : v2)
-                    // Use 'x.type.type' instead of 'st' to avoid issues with void lists.
-                    sj.add(toString(x.value,x.type.type));
-                yield sj.toString();
+                final String start = (String)a[1];
+                return new Instruction(line,(Type)a[0],true)
+                {
+                    @Override
+                    Object exec(final RuntimeScope s)
+                    {
+                        s.pushAccumulator(s.getField(start));
+                        return null;
+                    }
+                };
             }
-            case STRUCT ->
+        },
+        /** Converts an element of the stack. Operands: source type, target type, distance from the top. */
+        CONVERT
+        {
+            @Override
+            Instruction make(final String module,final int line,final Object[] a)
             {
-                final Map<String,Value> v2 = (Map<String,Value>)v;
-                final StringJoiner sj = new StringJoiner(",","{"+t.structName+':',"}");
-                for(final Map.Entry<String,Value> e : v2.entrySet())
-                    sj.add(e.getKey()+'='+toString(e.getValue().value,e.getValue().type.type));
-                yield sj.toString();
+                final Function<Object,Object> g = converter((Type)a[0],(Type)a[1]);
+                final int rel = (Integer)a[2]+1;
+                return new Instruction(line,null)
+                {
+                    @Override
+                    Object exec(final RuntimeScope s)
+                    {
+                        final Object[] data = s.accumulator.data();
+                        final int i = s.accumulator.pos()-rel;
+                        data[i] = g.apply(data[i]);
+                        return null;
+                    }
+                };
             }
-            default /* VOID */ -> "void";
-        };
-    }
-    /**
-     * Creates a list and pushes it to the stack.
-     *
-     * <pre>LiteralList := '[' Type ':' [Expr {',' Expr}] ']'</pre>
-     *
-     * @see Script#type(Context)
-     * @see Script#parseExpr(Context)
-     */
-    private static Instruction list(final Context ctx) throws ScriptException
-    {
-        // Assume '\[' already eaten.
-        final int line = ctx.tokens.peek(-1).line();
-        // \[ Type : [Expr {, Expr}] \]
-        
-        // Parse list type.
-        final Type subtype = type(ctx);
-        if(mismatch(ItrMode.next,ctx.tokens,ctx.reporter,TokenType.COLON))
-        {
-            skip(ctx.tokens,TokenType.RBRACKET,TokenType.LBRACKET);
-            return null;
-        }
-        // Parse elements.
-        int nElem = 0;
-        boolean ret = true;
-        if(matches(ItrMode.peek,ctx.tokens,TokenType.RBRACKET)) ctx.tokens.next(); // Advance past '\]'.
-        else
+        },
+        /** Applies a prefix operator to the top of the stack. Operands: operator, operand type, is value type. */
+        PREFIX
         {
-            // Parse expressions until a non-comma token or an invalid expression is encountered.
-            do
+            @Override
+            Instruction make(final String module,final int line,final Object[] a)
             {
-                // Parse expression.
-                final Instruction i = parseExpr(ctx);
-                if(i != null) {if(convert(ctx,i.type,subtype,i.line)) ++nElem;} // Incompatible types don't stop the parsing.
-                else
+                final UnaryOperation op = getUnaryOp((TokenType)a[0],(Type)a[1],(Boolean)a[2],line);
+                final Function<Object,Object> g = op.op;
+                return new Instruction(line,op.ret)
                 {
-                    ret = false;
-                    skip(ctx.tokens,TokenType.RBRACKET,TokenType.LBRACKET);
-                    break;
-                }
+                    @Override
+                    Object exec(final RuntimeScope s)
+                    {
+                        final Object[] d = s.accumulator.data();
+                        final int p = s.accumulator.pos()-1;
+                        d[p] = g.apply(d[p]);
+                        return null;
+                    }
+                };
             }
-            while(matches(ItrMode.next,ctx.tokens,TokenType.COMMA));
-            // Ensure that the loop condition broke on a closing bracket.
-            ret = ret && !mismatch(ItrMode.prev,ctx.tokens,ctx.reporter,TokenType.RBRACKET);
-        }
-        if(!ret) return null;
-        final int ne = nElem;
-        final ConstableType ct = Types.constableType(subtype,false);
-        final Instruction i = new Instruction(line,Types.listType(subtype))
+        },
+        /** Replaces a list and an index on the stack with the list's element. Operands: element type. */
+        LIST_ACCESS
         {
             @Override
-            Object exec(final RuntimeScope s)
+            Instruction make(final String module,final int line,final Object[] a)
             {
-                final Value[] val = new Value[ne];
-                for(int i = ne;i-- != 0;) val[i] = new Value(ct,resolve(s.popAccumulator()));
-                s.pushAccumulator(listStruct(subtype,new ArrayList<>(Arrays.asList(val))));
-                return null;
+                return new Instruction(line,(Type)a[0],true)
+                {
+                    @Override
+                    Object exec(final RuntimeScope s)
+                    {
+                        final int i;
+                        {
+                            final long l = (Long)resolve(s.popAccumulator());
+                            if(l < 0L || l >= Integer.MAX_VALUE)
+                                // If some sort of exception handling is added in the future, the accumulator
+                                // should be popped so that it's in a defined state.
+                                // s.popAccumulator();
+                                throw new ScriptRuntimeException(line,module,"Index " + l + " is out of bounds");
+                            i = (int)l;
+                        }
+                        final Object[] d = s.accumulator.data();
+                        final int p = s.accumulator.pos()-1;
+                        d[p] = listData(resolve(d[p])).get(i);
+                        return null;
+                    }
+                };
             }
-        };
-        ctx.bb.instruction(i,"list "+ne+','+subtype);
-        ctx.accPos -= ne-1;
-        // Though it would be possible to check for a suffix here, the user would not get any benefit from
-        // that functionality.
-        return i;
-    }
-    /**
-     * Creates a struct and pushes it to the stack.
-     *
-     * <pre>LiteralStruct := '{' StructName ':' [Name '=' Expr {',' Name '=' Expr}] '}'</pre>
-     *
-     * @see Script#type(Context)
-     * @see Script#parseExpr(Context)
-     */
-    private static Instruction struct(final Context ctx) throws ScriptException
-    {
-        // Assume '\{' already eaten.
-        final int line = ctx.tokens.peek(-1).line();
-        // \{ StructName : [Element = Value { , Element = Value}] \}
-        
-        // Parse struct type.
-        final Map<String,ConstableType> struct;
-        final String structName;
+        },
+        /** Increments or decrements the value on top of the stack. Operands: operator, value type. */
+        SUFFIX
         {
-            // Get the struct identifier. Nested struct declarations
-            // are not allowed, so no '.'s need to be parsed.
-            final Token t = eat(ItrMode.next,ctx.tokens,ctx.reporter,TokenType.ID);
-            structName = t.value();
-            if(t.type() != TokenType.ID) struct = null;
-            else if((struct = ctx.sc.getStruct(t.value())) == null)
-                ctx.reporter.report(t.line(),"Struct '"+t.value()+"' is undefined");
-            if(struct == null)
+            @Override
+            Instruction make(final String module,final int line,final Object[] a)
             {
-                skip(ctx.tokens,TokenType.RBRACE,TokenType.LBRACE);
-                return null;
+                final boolean inc = a[0] == TokenType.INC;
+                final Type t = (Type)a[1];
+                final Function<Object,Object> g = t.base == BaseType.INT
+                    ? (inc? x ->   (Long)x + 1L : x ->   (Long)x - 1L)
+                    : (inc? x -> (Double)x + 1D : x -> (Double)x - 1D);
+                return new Instruction(line,t,false)
+                {
+                    @Override
+                    Object exec(final RuntimeScope s)
+                    {
+                        final Value v = (Value)s.accumulator.data()[s.accumulator.pos()-1];
+                        if(v.type.isConst)
+                            throw new ScriptRuntimeException(line,"Cannot modify const value");
+                        v.set(g.apply(v.value));
+                        return null;
+                    }
+                };
             }
-        }
-        // Ensure that there's a colon after the type.
-        if(mismatch(ItrMode.next,ctx.tokens,ctx.reporter,TokenType.COLON))
-        {
-            skip(ctx.tokens,TokenType.RBRACE,TokenType.LBRACE);
-            return null;
-        }
-        // Parse elements.
-        final int size = struct.size();
-        final String[] ids = new String[size];
-        int n = 0;
-        boolean ret = true;
-        if(matches(ItrMode.peek,ctx.tokens,TokenType.RBRACE)) ctx.tokens.next(); // Advance past '\}'.
-        else
+        },
+        /** Calls the function below its arguments on the stack. Operands: function type. */
+        CALL
         {
-            final Set<String> duplicates = new HashSet<>(struct.size());
-            do
+            @Override
+            Instruction make(final String module,final int line,final Object[] a)
             {
-                // Get an identifier.
-                final Token id = eat(ItrMode.next,ctx.tokens,ctx.reporter,TokenType.ID);
-                // Ensure that the token following an identifier is a '='.
-                if(id.type() != TokenType.ID || mismatch(ItrMode.next,ctx.tokens,ctx.reporter,TokenType.ASSIGN))
+                final Type func = (Type)a[0];
+                final int argc = func.args.length;
+                final boolean nonVoidRet = func.subType.base != BaseType.VOID;
+                return new Instruction(line,func.subType)
                 {
-                    skip(ctx.tokens,TokenType.RBRACE,TokenType.LBRACE);
-                    return null;
-                }
-                final boolean flag = duplicates.add(id.value());
-                ids[size-n-1] = id.value();
-                // Parse expression.
-                final Instruction i = parseExpr(ctx);
-                if(i != null)
-                {
-                    final ConstableType ct = struct.get(id.value());
-                    if(ct != null)
+                    @Override
+                    Object exec(final RuntimeScope s)
                     {
-                        if(convert(ctx,i.type,ct.type,id.line()))
-                        {
-                            if(flag) ++n;
-                            else
-                            {
-                                ctx.reporter.warn(id.line(),"Duplicate assignment");
-                                // Pop the expression so that it doesn't affect the other assignments.
-                                ctx.bb.instruction
-                                (
-                                    new Instruction(i.line,null)
-                                    {
-                                        @Override
-                                        Object exec(final RuntimeScope s)
-                                        {
-                                            s.popAccumulator();
-                                            return null;
-                                        }
-                                    },
-                                    "pop acc [duplicate assignment]"
-                                );
-                                --ctx.accPos;
-                            }
-                            continue;
-                        }
+                        // The arguments are resolved in place and left on the accumulator until the call returns, so
+                        // that native functions can read them without copying.
+                        final Object[] d = s.accumulator.data();
+                        final int p = s.accumulator.pos()-argc;
+                        for(int i = p;i != p+argc;++i) d[i] = resolve(d[i]);
+                        // A function variable which was declared without a value has nothing to call.
+                        if(!(resolve(d[p-1]) instanceof final Func f))
+                            throw new ScriptRuntimeException(line,module,"Call to an uninitialized function");
+                        final Object ret;
+                        // Native functions don't know which line called them, so their errors are reported here.
+                        try {ret = f.call(s);}
+                        catch(final NativeException e) {throw new ScriptRuntimeException(line,module,e.getMessage());}
+                        s.accumulator.pos(p-1);
+                        if(nonVoidRet) s.pushAccumulator(ret);
+                        return null;
                     }
-                    else
-                        ctx.reporter.report
-                        (
-                            id.line(),
-                            "Field '"+id.value()+
-                            "' in struct type '"+structName+
-                            "' is undefined"
-                        );
-                }
-                ret = false;
-            }
-            while(matches(ItrMode.next,ctx.tokens,TokenType.COMMA));
-            // Handle missing members.
-            if(n != size)
-            {
-                final Set<String> s = new HashSet<>(Set.copyOf(struct.keySet()));
-                s.removeAll(Set.of(ids));
-                final StringJoiner sj = new StringJoiner(",");
-                for(final String st : s) sj.add(st);
-                ctx.reporter.report(line,"Missing definitions for members: "+sj);
-                ret = false;
+                };
             }
-            // Ensure that the loop condition broke on a closing brace.
-            ret = ret && !mismatch(ItrMode.prev,ctx.tokens,ctx.reporter,TokenType.RBRACE);
-        }
-        if(ret)
+        },
+        /** Pushes a constant. Operands: a {@linkplain Boolean}, {@linkplain Long}, {@linkplain Double}, or string. */
+        PUSH
         {
-            final ConstableType[] et = new ConstableType[struct.size()];
-            for(int j = 0;j < size;++j) // ids array already reversed, don't need to do any special indexing.
-                et[j] = struct.get(ids[j]);
-            final Instruction i = new Instruction(line,Types.structType(structName))
+            @Override
+            Instruction make(final String module,final int line,final Object[] a)
             {
-                @Override
-                Object exec(final RuntimeScope s)
+                final Type t;
+                final Object c;
+                if(a[0] instanceof final String str) {t = Type.STR; c = strStruct(str);}
+                else
                 {
-                    final Map<String,Value> v = new HashMap<>(size);
-                    // Convert the initializer to a literal struct.
-                    for(int j = 0;j < size;++j)
-                        v.put(ids[j],new Value(et[j],resolve(s.popAccumulator())));
-                    s.pushAccumulator(v);
-                    return null;
+                    t = a[0] instanceof Boolean? Type.BOOL : a[0] instanceof Long? Type.INT : Type.FLOAT;
+                    c = a[0];
                 }
-            };
-            final StringJoiner sj = new StringJoiner(",",'{'+structName+':',"}");
-            for(int j = 0;j < size;++j)
-                sj.add(ids[j]+'='+et[j]);
-            ctx.bb.instruction(i,"struct "+sj);
-            ctx.accPos -= size-1;
-            // Though it would be possible to check for a '.' here, the user would not get any benefit from
-            // that functionality.
-            return i;
-        }
-        return null;
-    }
-    /**
-     * Creates a function and pushes it to the stack.
-     *
-     * <pre>LiteralFunc := 'func' '&lt' [Type|'void'] '&gt' '(' [['const'] Type {',' ['const'] Type}] ')'</pre>
-     *
-     * @see Script#type(Context)
-     * @see Script#funcRetType(Context)
-     * @see Script#call(Context,Instruction)
-     */
-    private static Instruction func(final Context ctx) throws ScriptException
-    {//TODO maybe functions which have list args/return can be assigned to functions with void list args/return?
-        // Assume 'func' already eaten.
-        final int line = ctx.tokens.peek(-1).line();
-        // Must have the form 'func<[Type]>([Type Name {, Type Name}]) \{ Statements \}'
-        
-        // Parse return type.
-        final Type nct = funcRetType(ctx);
-        
-        // Parse arguments.
-        final CompilerScope s = new CompilerScope(ctx.sc);
-        final ConstableType[] argt;
-        final String[] argn;
+                return new Instruction(line,t)
+                {
+                    @Override
+                    Object exec(final RuntimeScope s)
+                    {
+                        s.pushAccumulator(c);
+                        return null;
+                    }
+                };
+            }
+        },
+        /** Applies a binary operator to the last two elements on the stack. Operands: left type, right type, operator. */
+        BINOP
         {
-            record ArgType(String n,ConstableType t) {}
-            final List<ArgType> l = new ArrayList<>();
-            if(matches(ItrMode.peek,ctx.tokens,TokenType.RPAREN)) ctx.tokens.next(); // Advance past '\)'.
-            else
+            @Override
+            Instruction make(final String module,final int line,final Object[] a)
             {
-                // Parse type-name pairs until a non-comma token, invalid type, or invalid name is encountered.
-                do
+                final Operation op = getOp((Type)a[0],(Type)a[1],(TokenType)a[2],new ErrReporter(module,null),module,line);
+                final BiFunction<Object,Object,Object> o = op.op;
+                return new Instruction(line,op.ret)
                 {
-                    // Parse type.
-                    final boolean isConst = chkConst(ctx.tokens);
-                    final Type act = type(ctx);
-                    if(act == null)
+                    @Override
+                    Object exec(final RuntimeScope s)
                     {
-                        skip(ctx.tokens,TokenType.RPAREN,TokenType.LPAREN);
+                        final Object bb = s.popAccumulator();
+                        final Object[] d = s.accumulator.data();
+                        final int p = s.accumulator.pos()-1;
+                        d[p] = o.apply(d[p],bb);
                         return null;
                     }
-                    
-                    // Parse name.
-                    final Token t = eat(ItrMode.next,ctx.tokens,ctx.reporter,TokenType.ID);
-                    if(t.type() != TokenType.ID)
+                };
+            }
+        },
+        /**
+         * Applies a binary operator to a value and the element above it on the stack, replacing the latter. Operands:
+         * value type, right type, operator.
+         */
+        UPDATE
+        {
+            @Override
+            Instruction make(final String module,final int line,final Object[] a)
+            {
+                final BiFunction<Object,Object,Object> o =
+                    getOp((Type)a[0],(Type)a[1],(TokenType)a[2],new ErrReporter(module,null),module,line).op;
+                return new Instruction(line,null)
+                {
+                    @Override
+                    Object exec(final RuntimeScope s)
                     {
-                        skip(ctx.tokens,TokenType.RPAREN,TokenType.LPAREN);
+                        final Object[] d = s.accumulator.data();
+                        final int p = s.accumulator.pos() - 1;
+                        d[p] = o.apply(((Value)d[p-1]).value,d[p]);
                         return null;
                     }
-                    
-                    l.add(new ArgType(t.value(),Types.constableType(act,isConst)));
-                }
-                while(matches(ItrMode.next,ctx.tokens,TokenType.COMMA));
-                // Ensure that the loop condition broke on a closing parentheses.
-                if(mismatch(ItrMode.prev,ctx.tokens,ctx.reporter,TokenType.RPAREN)) return null;
+                };
             }
-            int i = 0;
-            argt = new ConstableType[l.size()];
-            argn = new String[l.size()];
-            for(final ArgType arg : l)
-                s.putField(argn[i  ] = arg.n(),
-                           argt[i++] = arg.t());
-        }
-        
-        // Parse body.
-        if(mismatch(ItrMode.next,ctx.tokens,ctx.reporter,TokenType.LBRACE)) return null;
-        
-        final Context nctx = new Context(ctx);
-        nctx.bbList.add(nctx.bb = nctx.createBB("func.body"));
-        if(!parseBlock(nctx,nct,true)) return null;
-        final Block body = nctx.compile();
-        final Instruction i = new Instruction(line,Types.funcType(nct,argt))
+        },
+        /** Assigns the top of the stack to the value below it. Operands: value type. */
+        ASSIGN
         {
             @Override
-            Object exec(final RuntimeScope s)
+            Instruction make(final String module,final int line,final Object[] a)
             {
-                final RuntimeScope ns = new RuntimeScope(s);
-                ns.pushScope();
-                for(int a = 0;a < argt.length;++a)
-                    ns.putField(argn[a],new Value(argt[a],null));
-                s.pushAccumulator(new Func(ns,argn,body));
-                return null;
+                return new Instruction(line,(Type)a[0],true)
+                {
+                    @Override
+                    Object exec(final RuntimeScope s)
+                    {
+                        final Object o = resolve(s.popAccumulator());
+                        final Value v = (Value)s.accumulator.top();
+                        if(v.type.isConst && v.value != null)
+                            throw new ScriptRuntimeException(line,module,"Re-definition of const variable");
+                        v.set(o);
+                        return null;
+                    }
+                };
             }
-        };
-        final StringJoiner sj = new StringJoiner(",","func<"+nct+">(",")");
-        for(int a = 0;a < argt.length;++a) sj.add(argt[a].toString()+' '+argn[a]);
-        ctx.bb.instruction(i,sj.toString());
-        ++ctx.accPos;
-        return i;
-    }
-    private static Instruction idPath(final Context ctx,Type startType) throws ScriptException
-    {
-        // Can be identifier, list index, function call, or field access.
-        final List<Token> p = new ArrayList<>();
-        // Eat all the identifiers until the '.'s are exhausted.
-        // Don't puke afterward, will do with check to suffix.
-        do p.add(eat(ItrMode.next,ctx.tokens,ctx.reporter,TokenType.ID));
-        while(nonEOF(ItrMode.next,ctx.tokens,ctx.reporter).type() == TokenType.DOT);
-        // Get the token that broke the loop condition.
-        final Token op = ctx.tokens.peek(-1);
-        final String[] path;
-        final Type ct;
+        },
+        /** Pushes a scope. No operands. */
+        PUSH_SCOPE
         {
-            path = new String[p.size()];
-            int i = 0;
-            for(final Token s : p)
+            @Override
+            Instruction make(final String module,final int line,final Object[] a)
             {
-                // Get the field's members.
-                final Map<String,ConstableType> members = getMembers(ctx.sc,startType);
-                if(members == null)
-                {
-                    ctx.reporter.report(s.line(),"Type '"+startType+"' does not have any members");
-                    return null;
-                }
-                // Get member type.
-                final ConstableType t2 = members.get(path[i++] = s.value());
-                if(t2 == null)
+                return new Instruction(line,null)
                 {
-                    // Unknown field detected.
-                    ctx.reporter.report
-                    (
-                        s.line(),
-                        "Member '"+s.value()+
-                        "' of type "+startType+
-                        " is undefined"
-                    );
-                    return null;
-                }
-                startType = t2.type;
+                    @Override
+                    Object exec(final RuntimeScope s)
+                    {
+                        s.pushScope();
+                        return null;
+                    }
+                };
             }
-            ct = startType;
-        }
-        final int line = op.line();
-        final Instruction i = new Instruction(line,ct,true)
-        {
-            @Override @SuppressWarnings("unchecked")
-            Object exec(final RuntimeScope s)
-            {
-                final Object[] d = s.accumulator.data();
-                final int p = s.accumulator.pos()-1;
-                Map<String,Value> v = (Map<String,Value>)resolve(d[p]);
-                int i;
-                for(i = 0;i < path.length-1;++i)
-                    v = (Map<String,Value>)v.get(path[i]).value;
-                d[p] = v.get(path[i]);
-                return null;
+        },
+        /** Pops a scope. No operands. */
+        POP_SCOPE
+        {
+            @Override
+            Instruction make(final String module,final int line,final Object[] a)
+            {
+                return new Instruction(line,null)
+                {
+                    @Override
+                    Object exec(final RuntimeScope s)
+                    {
+                        s.popScope();
+                        return null;
+                    }
+                };
             }
-        };
-        ctx.bb.instruction(i,"readPath "+String.join(".",path));
-        return suffix(ctx,i,op);
-    }
-    /**
-     * Gets and pushes an identifier's value to the stack.
-     *
-     * <pre>Id := Name {'.' Name} [Suffix]</pre>
-     *
-     * @see Script#suffix(Context,Instruction,Token)
-     */
-    private static Instruction id(final Context ctx,final Token id) throws ScriptException
-    {
-        final String start = id.value();
-        final ConstableType t = ctx.sc.getField(start);
-        final Instruction i = new Instruction(id.line(),t.type,true)
+        },
+        /** Declares a for-each loop's element and iterator from the list on top of the stack. Operands: type, name. */
+        FOR_INIT
         {
             @Override
-            Object exec(final RuntimeScope s)
+            Instruction make(final String module,final int line,final Object[] a)
             {
-                s.pushAccumulator(s.getField(start));
-                return null;
+                final ConstableType ct = (ConstableType)a[0];
+                final String itrName = (String)a[1];
+                return new Instruction(line,null)
+                {
+                    @Override
+                    Object exec(final RuntimeScope s)
+                    {
+                        s.putField(itrName,new Value(ct,null));
+                        s.putField(" itr",new Value(null,listData(resolve(s.popAccumulator())).iterator()));
+                        return null;
+                    }
+                };
             }
-        };
-        ctx.bb.instruction(i,"read "+start);
-        ++ctx.accPos;
-        return suffix(ctx,i,nonEOF(ItrMode.next,ctx.tokens,ctx.reporter));
-    }
-    /** @return {@code true} iff an object of type {@code from} can be converted to an object of type {@code to}. */
-    static boolean triviallyConvertible(final Type to,final Type from)
-    {
-        final BaseType fbt = from.base;
-        return switch(to.base)
+        },
+        /** Pushes whether a for-each loop has another element. No operands. */
+        FOR_HAS_NEXT
         {
-            case BOOL -> fbt != BaseType.FUNC && fbt != BaseType.VOID;
-            case STR -> true;
-            case INT,FLOAT -> switch(fbt)
+            @Override
+            Instruction make(final String module,final int line,final Object[] a)
             {
-                case INT,FLOAT,BOOL -> true;
-                default -> false;
-            };
-            case FUNC -> fbt == BaseType.FUNC &&
-                         from.subType.equals(to.subType) &&
-                         compareArgs(to.args,from.args);
-            case LIST -> fbt == BaseType.LIST &&
-                         (
-                             to.subType.base == BaseType.VOID ||
-                             triviallyConvertible(to.subType,from.subType)
-                         );
-            default -> to.equals(from);
-        };
-    }
-    /** @return A {@linkplain Function} which converts an object of type {@code from} to an object of type {@code to}. */
-    private static Function<Object,Object> converter(final boolean notRecursed,final ErrReporter reporter,
-                                                     final Type from,final Type to,final int line)
-    {
-        final BaseType fbt = from.base;
-        return switch(to.base)
+                return new Instruction(line,Type.BOOL)
+                {
+                    @Override @SuppressWarnings("unchecked")
+                    Object exec(final RuntimeScope s)
+                    {
+                        s.pushAccumulator(((Iterator<Value>)s.getField(" itr").value).hasNext());
+                        return null;
+                    }
+                };
+            }
+        },
+        /** Assigns a for-each loop's next element. Operands: element name. */
+        FOR_NEXT
         {
-            case BOOL  -> a -> conditional(a,fbt);
-            case STR   -> a -> strStruct(toString(a,from));
-            case INT   -> fbt == BaseType.BOOL? a -> (Boolean)resolve(a)? 1L : 0L : a -> ((Number)resolve(a)).longValue();
-            case FLOAT -> fbt == BaseType.BOOL? a -> (Boolean)resolve(a)? 1D : 0D : a -> ((Number)resolve(a)).doubleValue();
-            default /* LIST */  ->
+            @Override
+            Instruction make(final String module,final int line,final Object[] a)
             {
-                if(notRecursed)
-                    // This warning is only dispatched once so that the user isn't spammed when
-                    // nested lists are converted.
-                    reporter.warn
-                    (
-                        line,
-                        "Implicit conversion between list types. This will create a deep-copy " +
-                        "of all elements, which is very expensive."
-                    );
-                // The two types are guaranteed to be convertible by calls to 'triviallyConvertible'
-                final Type st = to.subType,st1 = from.subType;
-                if(st.base == BaseType.VOID)
-                    // Don't copy the list because library functions might want to pass-by-value.
-                    yield a -> voidList(st1,listData(resolve(a)));
-                final ConstableType cst = Types.constableType(st,false);
-                final Function<Object,Object> c = converter(false,reporter,st1,st,line);
-                yield a ->
+                final String itrName = (String)a[0];
+                return new Instruction(line,null)
                 {
-                    final List<Value> l1 = listData(resolve(a)),
-                                      l2 = new ArrayList<>(l1.size());
-                    for(final Value value : l1) l2.add(new Value(cst,c.apply(value.value)));
-                    return listStruct(st,l2);
+                    @Override @SuppressWarnings("unchecked")
+                    Object exec(final RuntimeScope s)
+                    {
+                        s.setFieldValue(itrName,((Iterator<Value>)s.getField(" itr").value).next().value);
+                        return null;
+                    }
                 };
             }
-        };
-    }
-    /**
-     * Converts the last item on the stack between types {@code from} and {@code to}. If both types
-     * are the same, no instructions are generated.
-     *
-     * @return {@code true} iff the specified types are {@linkplain Script#triviallyConvertible(Type,Type)}.
-     */
-    private static boolean convert(final Context ctx,final Type from,final Type to,final int accPos,final int line)
-    {
-        if(triviallyConvertible(to,from))
+        },
+        /** Returns nothing. Operands: the function's return type. */
+        RETURN_VOID
         {
-            if(!from.equals(to))
+            @Override
+            Instruction make(final String module,final int line,final Object[] a)
             {
-                final Function<Object,Object> g = converter(true,ctx.reporter,from,to,line);
-                final int rel = accPos+1;
-                ctx.bb.instruction
-                (
-                    new Instruction(line,null)
+                return new Instruction(line,(Type)a[0],false,true)
+                {
+                    @Override Object exec(final RuntimeScope s) {return RET_VOID;}
+                };
+            }
+        },
+        /** Returns the top of the stack. Operands: the function's return type. */
+        RETURN
+        {
+            @Override
+            Instruction make(final String module,final int line,final Object[] a)
+            {
+                return new Instruction(line,(Type)a[0],false,true)
+                {
+                    @Override Object exec(final RuntimeScope s) {return resolve(s.popAccumulator());}
+                };
+            }
+        },
+        /** Throws an exception without a message. No operands. */
+        THROW_NULL
+        {
+            @Override
+            Instruction make(final String module,final int line,final Object[] a)
+            {
+                return new Instruction(line,null)
+                {
+                    @Override Object exec(final RuntimeScope s) {throw new ScriptRuntimeException(line+1,module);}
+                };
+            }
+        },
+        /** Throws an exception with the top of the stack as its message. Operands: message type. */
+        THROW
+        {
+            @Override
+            Instruction make(final String module,final int line,final Object[] a)
+            {
+                final Type t = (Type)a[0];
+                return new Instruction(line,null)
+                {
+                    @Override
+                    Object exec(final RuntimeScope s)
                     {
-                        @Override
-                        Object exec(final RuntimeScope s)
-                        {
-                            final Object[] data = s.accumulator.data();
-                            final int i = s.accumulator.pos()-rel;
-                            data[i] = g.apply(data[i]);
-                            return null;
-                        }
-                    },
-                    "convert ("+accPos+") "+from+" -> "+to
-                );
+                        throw new ScriptRuntimeException
+                        (
+                            line+1,module,
+                            Script.toString(s.popAccumulator(),t)
+                        );
+                    }
+                };
             }
-            return true;
+        },
+        /** Declares variables. Operands: type, names, whether each name is initialized from the stack. */
+        DECL
+        {
+            @Override
+            Instruction make(final String module,final int line,final Object[] a)
+            {
+                final ConstableType cct = (ConstableType)a[0];
+                final String[] n = (String[])a[1];
+                final boolean[] b = (boolean[])a[2];
+                final int ps = n.length;
+                return new Instruction(line,null)
+                {
+                    @Override
+                    Object exec(final RuntimeScope s)
+                    {
+                        for(int i = 0;i < ps;++i)
+                            s.putField(n[i],new Value(cct,b[i]? resolve(s.popAccumulator()) : null));
+                        return null;
+                    }
+                };
+            }
+        },
+        /**
+         * Pushes a module's globals to the scope. Operands: module name. The module must already be registered when
+         * the instruction is created.
+         */
+        IMPORT
+        {
+            @Override
+            Instruction make(final String module,final int line,final Object[] a)
+            {
+                return importing(line,Module.getNow((String)a[0]));
+            }
+        },
+        /** Resets the stack to a fixed position. Operands: position. */
+        RESET_ACC
+        {
+            @Override
+            Instruction make(final String module,final int line,final Object[] a)
+            {
+                final int p = (Integer)a[0];
+                return new Instruction(line,null)
+                {
+                    @Override
+                    Object exec(final RuntimeScope s)
+                    {
+                        s.accumulator.pos(p);
+                        return null;
+                    }
+                };
+            }
+        };
+        
+        /**
+         * @param module The module that the instruction is located in.
+         * @param line   The line of source code which generated the instruction.
+         * @param a      The instruction's operands.
+         *
+         * @return A new instruction.
+         */
+        abstract Instruction make(final String module,final int line,final Object[] a);
+        
+        /** @return An {@linkplain Op#IMPORT} instruction which pushes the globals of the specified module. */
+        static Instruction importing(final int line,final Module mm)
+        {
+            // Scripts with unknown imports are never executed, so a dummy scope is only needed to finish parsing.
+            final RuntimeScopeEntry rt = mm != null? mm.runTime : new RuntimeScopeEntry();
+            return new Instruction(line,null)
+            {
+                @Override
+                Object exec(final RuntimeScope s)
+                {
+                    s.pushToScope(rt);
+                    return null;
+                }
+            };
         }
-        ctx.reporter.report
-        (
-            line,
-            "Cannot convert type "+from+
-            " to type "+to
-        );
-        return false;
     }
     /**
-     * Converts the last item on the stack between types {@code from} and {@code to}. If both types
-     * are the same, no instructions are generated.
+     * Creates an instruction and adds it to the current block.
      *
-     * @return {@code true} iff the specified types are {@linkplain Script#triviallyConvertible(Type,Type)}.
+     * @param name The instruction's debug name, which is only built if the block keeps debug names.
      */
-    private static boolean convert(final Context ctx,final Type from,final Type to,final int line)
+    private static Instruction emit(final Context ctx,final Op op,final int line,final Supplier<String> name,
+                                    final Object...a)
     {
-        return convert(ctx,from,to,0,line);
+        final Instruction i = op.make(ctx.module,line,a);
+        ctx.bb.instruction(i,op,a,ctx.bb.debug()? name.get() : null);
+        return i;
     }
-    /** @return {@code true} iff a const token was eaten. */
-    private static boolean chkConst(final TokenIterator tokens)
+    /** Return status for statements, which can be valid, invalid, or end of block. */
+    private enum Status
+    { //TODO add status for invalid but salvageable
+        /** Valid        */OK,
+        /** Invalid      */BAD,
+        /** End of Block */SKIP
+    }
+    /** @return The element type of the list. (e.g. {@code bool[][][] -> bool}). */
+    private static BaseType getElemType(Type t)
     {
-        if(matches(ItrMode.peek,tokens,TokenType.CONST))
+        while(t.base == BaseType.LIST) t= t.subType;
+        return t.base;
+    }
+    /**
+     * @return {@code true} iff the two arguments represent the same type, or both are lists and the first type
+     *         is a void list.
+     */
+    private static boolean compareOrVoidList(final Type a,final Type b)
+    {
+        // Check for 'void[]'.
+        Type ast = a,bst = b;
+        while(ast.base == BaseType.LIST && bst.base == BaseType.LIST)
         {
-            tokens.next();
+            ast = ast.subType;
+            bst = bst.subType;
+            if(ast.base == BaseType.VOID) return true;
+        }
+        // Compare if void list not found.
+        return ast.equals(bst);
+    }
+    /** @return {@code true} iff the two arrays represent the same function arguments. */
+    private static boolean compareArgs(final ConstableType[] a,final ConstableType[] b)
+    {
+        if(a != null && b != null && a.length == b.length)
+        {
+            for(int i = 0;i < a.length;++i)
+                if(!compareOrVoidList(a[i].type,b[i].type))
+                    return false;
             return true;
         }
         return false;
+    }
+        /** The type of String::length. Since this does not depend on the list's type, it can be constant. */
+    private static final ConstableType
+        STR_LENGTH = Types.constableType(Types.funcType(Type.INT),true),
+        /** The type of String::substring. Since this does not depend on the list's type, it can be constant. */
+        STR_SUBSTR = Types.constableType(Types.funcType(Type.STR,ConstableType.INT,ConstableType.INT),true);
+    /** The type of List::length. Since this does not depend on the list's type, it can be constant. */
+    private static final ConstableType LIST_LENGTH = Types.constableType(Types.funcType(Type.INT),true);
+    /** Members of the string struct. */
+    private static final Map<String,ConstableType> STR_MEMBERS = Map.of("length",STR_LENGTH,"substring",STR_SUBSTR),
+                                                   VOID_LIST_MEMBERS = Map.of("length",LIST_LENGTH);
+    /** @return Gets the members of the specified struct. */
+    private static Map<String,ConstableType> getMembers(final Type struct)
+    {// TODO see comment in listStruct
+        return switch(struct.base)
+        {
+            case LIST   ->
+            {
+                final Type st = struct.subType;
+                final ConstableType cct  = Types.constableType(st,true),
+                                    push = Types.constableType(Types.funcType(Type.VOID,cct),true),
+                                    pop  = Types.constableType(Types.funcType(st),true);
+                yield st.base == BaseType.VOID
+                    ? VOID_LIST_MEMBERS
+                    : Map.of
+                      (
+                          "length"   ,LIST_LENGTH,
+                          "front"    ,pop,
+                          "back"     ,pop,
+                          "pushFront",push,
+                          "pushBack" ,push,
+                          "popFront" ,pop,
+                          "popBack"  ,pop,
+                          "insert"   ,Types.constableType(Types.funcType(Type.VOID,ConstableType.INT,cct),true),
+                          "remove"   ,Types.constableType(Types.funcType(st,ConstableType.INT),true)
+                      );
+            }
+            case STR    -> STR_MEMBERS;
+            case STRUCT -> struct.fields;
+            default -> null;
+        };
+    }
+    /** @return A struct wrapping a list converted to type {@code void[]}. */
+    static Map<String,Value> voidList(final Type subType,final List<Value> list)
+    {
+        return voidList(new Value(Types.CONST_VOID,subType),list);
     }
     /**
-     * Evaluates a prefix operator.
-     *
-     * <pre>Prefix := ('++'|'--'|'+'|'-'|'!'|'~') HighPrecedence</pre>
+     * @param subType The list's original element type, wrapped in a constant value which can be shared by every
+     *                conversion from the same type.
      *
-     * @see Script#highPrecedence(Context)
+     * @return A struct wrapping a list converted to type {@code void[]}.
      */
-    private static Instruction prefix(final Context ctx,final Token op) throws ScriptException
+    static Map<String,Value> voidList(final Value subType,final List<Value> list)
     {
-        final Instruction i = highPrecedence(ctx);
-        if(i == null) return null;
-        final Type ct;
-        final BaseType ib = i.type.base;
-        final int line = op.line();
-        final Function<Object,Object> g = switch(op.type())
-        {
-            case INC    ->
-            {
-                ctx.sideEffects = true;
-                ct = ib == BaseType.INT? Type.INT : Type.FLOAT;
-                if((ib != BaseType.INT && ib != BaseType.FLOAT) ||
-                   !i.isValueType)
-                    yield null;
-                yield ib == BaseType.INT
-                    ? o ->
-                      {
-                          final Value v = (Value)o;
-                          if(v.type.isConst)
-                              throw new ScriptRuntimeException(line,"Cannot modify const value");
-                          return v.value = (Long)v.value + 1L;
-                      }
-                    : o ->
-                      {
-                          final Value v = (Value)o;
-                          if(v.type.isConst)
+        return Map.of
+        (
+            " subtype",subType,
+            " ",new Value(Types.constableType(Types.listType((Type)subType.value),true),list),
+            "length",
+            new Value
+            (
+                LIST_LENGTH,
+                new Func(new Block(Type.INT) {@Override Object exec(final RuntimeScope s) {return (long)list.size();}})
+            )
+        );
+    }
+    /** @return A struct wrapping the specified list. */
+    static Map<String,Value> listStruct(final Type subtype,final List<Value> list)
+    {//TODO move copy and swap to library & add sublist
+        final Type listType = Types.listType(subtype);
+        final ConstableType est = Types.constableType(subtype,false),
+                            cst = Types.constableType(subtype,true),
+                            clt = Types.constableType(listType,true),
+                          retct = Types.constableType(Types.funcType(subtype),true),
+                          putct = Types.constableType(Types.funcType(Type.VOID,cst),true);
+        return Map.of
+        (
+            // The data entry is not listed in 'getMembers' so that it is invisible.
+            " ",new Value(clt,list),
+            
+            "length",
+            new Value
+            (
+                LIST_LENGTH,
+                new Func(new Block(Type.INT) {@Override Object exec(final RuntimeScope s) {return (long)list.size();}})
+            ),
+            
+            "popFront",
+            new Value
+            (
+                retct,
+                new Func(new Block(subtype) {@Override Object exec(final RuntimeScope s) {return list.remove(0);}})
+            ),
+            
+            "popBack",
+            new Value
+            (
+                retct,
+                new Func(new Block(subtype) {@Override Object exec(final RuntimeScope s) {return list.remove(list.size()-1);}})
+            ),
+            
+            "pushFront",
+            new Value
+            (
+                putct,
+                new Func
+                (
+                    new Block(Type.VOID)
+                    {
+                        @Override
+                        Object exec(final RuntimeScope s)
+                        {
+                            list.add(0,new Value(est,s.arg(1,0)));
+                            return null;
+                        }
+                    }
+                )
+            ),
+            
+            "pushBack",
+            new Value
+            (
+                putct,
+                new Func
+                (
+                    new Block(Type.VOID)
+                    {
+                        @Override
+                        Object exec(final RuntimeScope s)
+                        {
+                            list.add(new Value(est,s.arg(1,0)));
+                            return null;
+                        }
+                    }
+                )
+            ),
+            
+            "front",
+            new Value
+            (
+                retct,
+                new Func(new Block(subtype) {@Override Object exec(final RuntimeScope s) {return list.get(0);}})
+            ),
+            
+            "back",
+            new Value
+            (
+                retct,
+                new Func(new Block(subtype) {@Override Object exec(final RuntimeScope s) {return list.get(list.size()-1);}})
+            ),
+            
+            "insert",
+            new Value
+            (
+                Types.constableType(Types.funcType(Type.VOID,ConstableType.INT,cst),true),
+                new Func
+                (
+                    new Block(Type.VOID)
+                    {
+                        @Override
+                        Object exec(final RuntimeScope s)
+                        {
+                            list.add((int)(long)s.arg(2,0),new Value(est,s.arg(2,1)));
+                            return null;
+                        }
+                    }
+                )
+            ),
+            
+            "remove",
+            new Value
+            (
+                Types.constableType(Types.funcType(subtype,ConstableType.INT),true),
+                new Func
+                (
+                    new Block(subtype)
+                    {
+                        @Override
+                        Object exec(final RuntimeScope s)
+                        {
+                            return list.remove((int)(long)s.arg(1,0));
+                        }
+                    }
+                )
+            )
+        );
+    }
+    /** @return The data from the list struct. */
+    @SuppressWarnings("unchecked")
+    public static List<Value> listData(final Object list)
+    {
+        return (List<Value>)((Map<String,Value>)list).get(" ").value;
+    }
+    /** @return A struct wrapping the specified string. */
+    static Map<String,Value> strStruct(final String str)
+    {//TODO move functions to library & add toIntList, character
+        return Map.of
+        (
+            // The data entry is not listed in 'getMembers' so that it is invisible.
+            " ",
+            new Value(ConstableType.CONST_STR,str),
+            
+            "length",
+            new Value
+            (
+                STR_LENGTH,
+                new Func(new Block(Type.INT) {@Override Object exec(final RuntimeScope s) {return (long)str.length();}})
+            ),
+            
+            "substring",
+            new Value
+            (
+                STR_SUBSTR,
+                new Func
+                (
+                    new Block(Type.STR)
+                    {
+                        @Override
+                        Object exec(final RuntimeScope s)
+                        {
+                            return strStruct(str.substring((int)(long)s.arg(2,0),(int)(long)s.arg(2,1)));
+                        }
+                    }
+                )
+            )
+        );
+    }
+    /** @return The data from the string struct. */
+    @SuppressWarnings("unchecked")
+    public static String strData(final Object o)
+    {
+        return (String)((Map<String,Value>)o).get(" ").value;
+    }
+    /** @return A string representation of the specified object. */
+    @SuppressWarnings("unchecked")
+    public static String toString(Object v,final Type t)
+    {
+        v = resolve(v);
+        return switch(t.base)
+        {
+            case BOOL,INT,FLOAT -> v.toString();
+            case STR -> strData(v);
+            case FUNC -> t.toString();
+            case LIST ->
+            {
+                final List<Value> v2 = listData(v);
+                final Type st = t.subType;
+                final StringJoiner sj = new StringJoiner(",","["+st+':',"]");
+                for(final Value x : v2)
+                    // Use 'x.type.type' instead of 'st' to avoid issues with void lists.
+                    sj.add(toString(x.value,x.type.type));
+                yield sj.toString();
+            }
+            case STRUCT ->
+            {
+                final Map<String,Value> v2 = (Map<String,Value>)v;
+                final StringJoiner sj = new StringJoiner(",","{"+t.structName+':',"}");
+                for(final Map.Entry<String,Value> e : v2.entrySet())
+                    sj.add(e.getKey()+'='+toString(e.getValue().value,e.getValue().type.type));
+                yield sj.toString();
+            }
+            default /* VOID */ -> "void";
+        };
+    }
+    /**
+     * Creates a list and pushes it to the stack.
+     *
+     * <pre>LiteralList := '[' Type ':' [Expr {',' Expr}] ']'</pre>
+     *
+     * @see Script#type(Context)
+     * @see Script#parseExpr(Context)
+     */
+    private static Instruction list(final Context ctx) throws ScriptException
+    {
+        // Assume '\[' already eaten.
+        final int line = ctx.tokens.peek(-1).line();
+        // \[ Type : [Expr {, Expr}] \]
+        
+        // Parse list type.
+        final Type subtype = type(ctx);
+        if(mismatch(ItrMode.next,ctx.tokens,ctx.reporter,TokenType.COLON))
+        {
+            skip(ctx.tokens,TokenType.RBRACKET,TokenType.LBRACKET);
+            return null;
+        }
+        // Parse elements.
+        int nElem = 0;
+        boolean ret = true;
+        if(matches(ItrMode.peek,ctx.tokens,TokenType.RBRACKET)) ctx.tokens.next(); // Advance past '\]'.
+        else
+        {
+            // Parse expressions until a non-comma token or an invalid expression is encountered.
+            do
+            {
+                // Parse expression.
+                final Instruction i = parseExpr(ctx);
+                if(i != null) {if(convert(ctx,i.type,subtype,i.line)) ++nElem;} // Incompatible types don't stop the parsing.
+                else
+                {
+                    ret = false;
+                    skip(ctx.tokens,TokenType.RBRACKET,TokenType.LBRACKET);
+                    break;
+                }
+            }
+            while(matches(ItrMode.next,ctx.tokens,TokenType.COMMA));
+            // Ensure that the loop condition broke on a closing bracket.
+            ret = ret && !mismatch(ItrMode.prev,ctx.tokens,ctx.reporter,TokenType.RBRACKET);
+        }
+        if(!ret) return null;
+        final int ne = nElem;
+        final Instruction i = emit(ctx,Op.LIST,line,() -> "list "+ne+','+subtype,subtype,ne);
+        ctx.accPos -= ne-1;
+        // Though it would be possible to check for a suffix here, the user would not get any benefit from
+        // that functionality.
+        return i;
+    }
+    /**
+     * Creates a struct and pushes it to the stack.
+     *
+     * <pre>LiteralStruct := '{' StructName ':' [Name '=' Expr {',' Name '=' Expr}] '}'</pre>
+     *
+     * @see Script#type(Context)
+     * @see Script#parseExpr(Context)
+     */
+    private static Instruction struct(final Context ctx) throws ScriptException
+    {
+        // Assume '\{' already eaten.
+        final int line = ctx.tokens.peek(-1).line();
+        // \{ StructName : [Element = Value { , Element = Value}] \}
+        
+        // Parse struct type.
+        final Type structType;
+        final String structName;
+        {
+            // Get the struct identifier. Nested struct declarations
+            // are not allowed, so no '.'s need to be parsed.
+            final Token t = eat(ItrMode.next,ctx.tokens,ctx.reporter,TokenType.ID);
+            structName = t.value();
+            if(t.type() != TokenType.ID) structType = null;
+            else if((structType = ctx.sc.getStruct(t.value())) == null)
+                ctx.reporter.report(t.line(),"Struct '"+t.value()+"' is undefined");
+            if(structType == null)
+            {
+                skip(ctx.tokens,TokenType.RBRACE,TokenType.LBRACE);
+                return null;
+            }
+        }
+        final Map<String,ConstableType> struct = structType.fields;
+        // Ensure that there's a colon after the type.
+        if(mismatch(ItrMode.next,ctx.tokens,ctx.reporter,TokenType.COLON))
+        {
+            skip(ctx.tokens,TokenType.RBRACE,TokenType.LBRACE);
+            return null;
+        }
+        // Parse elements.
+        final int size = struct.size();
+        final String[] ids = new String[size];
+        int n = 0;
+        boolean ret = true;
+        if(matches(ItrMode.peek,ctx.tokens,TokenType.RBRACE)) ctx.tokens.next(); // Advance past '\}'.
+        else
+        {
+            final Set<String> duplicates = new HashSet<>(struct.size());
+            do
+            {
+                // Get an identifier.
+                final Token id = eat(ItrMode.next,ctx.tokens,ctx.reporter,TokenType.ID);
+                // Ensure that the token following an identifier is a '='.
+                if(id.type() != TokenType.ID || mismatch(ItrMode.next,ctx.tokens,ctx.reporter,TokenType.ASSIGN))
+                {
+                    skip(ctx.tokens,TokenType.RBRACE,TokenType.LBRACE);
+                    return null;
+                }
+                final boolean flag = duplicates.add(id.value());
+                ids[size-n-1] = id.value();
+                // Parse expression.
+                final Instruction i = parseExpr(ctx);
+                if(i != null)
+                {
+                    final ConstableType ct = struct.get(id.value());
+                    if(ct != null)
+                    {
+                        if(convert(ctx,i.type,ct.type,id.line()))
+                        {
+                            if(flag) ++n;
+                            else
+                            {
+                                ctx.reporter.warn(id.line(),"Duplicate assignment");
+                                // Pop the expression so that it doesn't affect the other assignments.
+                                emit(ctx,Op.POP,i.line,() -> "pop acc [duplicate assignment]");
+                                --ctx.accPos;
+                            }
+                            continue;
+                        }
+                    }
+                    else
+                        ctx.reporter.report
+                        (
+                            id.line(),
+                            "Field '"+id.value()+
+                            "' in struct type '"+structName+
+                            "' is undefined"
+                        );
+                }
+                ret = false;
+            }
+            while(matches(ItrMode.next,ctx.tokens,TokenType.COMMA));
+            // Handle missing members.
+            if(n != size)
+            {
+                final Set<String> s = new HashSet<>(Set.copyOf(struct.keySet()));
+                s.removeAll(Set.of(ids));
+                final StringJoiner sj = new StringJoiner(",");
+                for(final String st : s) sj.add(st);
+                ctx.reporter.report(line,"Missing definitions for members: "+sj);
+                ret = false;
+            }
+            // Ensure that the loop condition broke on a closing brace.
+            ret = ret && !mismatch(ItrMode.prev,ctx.tokens,ctx.reporter,TokenType.RBRACE);
+        }
+        if(ret)
+        {
+            final ConstableType[] et = new ConstableType[struct.size()];
+            for(int j = 0;j < size;++j) // ids array already reversed, don't need to do any special indexing.
+                et[j] = struct.get(ids[j]);
+            final Instruction i = emit(ctx,Op.STRUCT,line,() ->
+            {
+                final StringJoiner sj = new StringJoiner(",","struct {"+structName+':',"}");
+                for(int j = 0;j < size;++j)
+                    sj.add(ids[j]+'='+et[j]);
+                return sj.toString();
+            },structType,ids,et);
+            ctx.accPos -= size-1;
+            // Though it would be possible to check for a '.' here, the user would not get any benefit from
+            // that functionality.
+            return i;
+        }
+        return null;
+    }
+    /**
+     * Creates a function and pushes it to the stack.
+     *
+     * <pre>LiteralFunc := 'func' '&lt' [Type|'void'] '&gt' '(' [['const'] Type {',' ['const'] Type}] ')'</pre>
+     *
+     * @see Script#type(Context)
+     * @see Script#funcRetType(Context)
+     * @see Script#call(Context,Instruction)
+     */
+    private static Instruction func(final Context ctx) throws ScriptException
+    {//TODO maybe functions which have list args/return can be assigned to functions with void list args/return?
+        // Assume 'func' already eaten.
+        final int line = ctx.tokens.peek(-1).line();
+        // Must have the form 'func<[Type]>([Type Name {, Type Name}]) \{ Statements \}'
+        
+        // Parse return type.
+        final Type nct = funcRetType(ctx);
+        
+        // Parse arguments.
+        final CompilerScope s = new CompilerScope(ctx.sc);
+        final ConstableType[] argt;
+        final String[] argn;
+        {
+            record ArgType(String n,ConstableType t) {}
+            final List<ArgType> l = new ArrayList<>();
+            if(matches(ItrMode.peek,ctx.tokens,TokenType.RPAREN)) ctx.tokens.next(); // Advance past '\)'.
+            else
+            {
+                // Parse type-name pairs until a non-comma token, invalid type, or invalid name is encountered.
+                do
+                {
+                    // Parse type.
+                    final boolean isConst = chkConst(ctx.tokens);
+                    final Type act = type(ctx);
+                    if(act == null)
+                    {
+                        skip(ctx.tokens,TokenType.RPAREN,TokenType.LPAREN);
+                        return null;
+                    }
+                    
+                    // Parse name.
+                    final Token t = eat(ItrMode.next,ctx.tokens,ctx.reporter,TokenType.ID);
+                    if(t.type() != TokenType.ID)
+                    {
+                        skip(ctx.tokens,TokenType.RPAREN,TokenType.LPAREN);
+                        return null;
+                    }
+                    
+                    l.add(new ArgType(t.value(),Types.constableType(act,isConst)));
+                }
+                while(matches(ItrMode.next,ctx.tokens,TokenType.COMMA));
+                // Ensure that the loop condition broke on a closing parentheses.
+                if(mismatch(ItrMode.prev,ctx.tokens,ctx.reporter,TokenType.RPAREN)) return null;
+            }
+            int i = 0;
+            argt = new ConstableType[l.size()];
+            argn = new String[l.size()];
+            for(final ArgType arg : l)
+                s.putField(argn[i  ] = arg.n(),
+                           argt[i++] = arg.t());
+        }
+        
+        // Parse body.
+        if(mismatch(ItrMode.next,ctx.tokens,ctx.reporter,TokenType.LBRACE)) return null;
+        
+        final Context nctx = new Context(ctx);
+        nctx.bbList.add(nctx.bb = nctx.createBB("func.body"));
+        if(!parseBlock(nctx,nct,true)) return null;
+        final Body body = nctx.compile();
+        final Instruction i = emit(ctx,Op.FUNC,line,() ->
+        {
+            final StringJoiner sj = new StringJoiner(",","func<"+nct+">(",")");
+            for(int a = 0;a < argt.length;++a) sj.add(argt[a].toString()+' '+argn[a]);
+            return sj.toString();
+        },nct,argt,argn,body);
+        ++ctx.accPos;
+        return i;
+    }
+    private static Instruction idPath(final Context ctx,Type startType) throws ScriptException
+    {
+        // Can be identifier, list index, function call, or field access.
+        final List<Token> p = new ArrayList<>();
+        // Eat all the identifiers until the '.'s are exhausted.
+        // Don't puke afterward, will do with check to suffix.
+        do p.add(eat(ItrMode.next,ctx.tokens,ctx.reporter,TokenType.ID));
+        while(nonEOF(ItrMode.next,ctx.tokens,ctx.reporter).type() == TokenType.DOT);
+        // Get the token that broke the loop condition.
+        final Token op = ctx.tokens.peek(-1);
+        final String[] path;
+        final Type ct;
+        {
+            path = new String[p.size()];
+            int i = 0;
+            for(final Token s : p)
+            {
+                // Get the field's members.
+                final Map<String,ConstableType> members = getMembers(startType);
+                if(members == null)
+                {
+                    ctx.reporter.report(s.line(),"Type '"+startType+"' does not have any members");
+                    return null;
+                }
+                // Get member type.
+                final ConstableType t2 = members.get(path[i++] = s.value());
+                if(t2 == null)
+                {
+                    // Unknown field detected.
+                    ctx.reporter.report
+                    (
+                        s.line(),
+                        "Member '"+s.value()+
+                        "' of type "+startType+
+                        " is undefined"
+                    );
+                    return null;
+                }
+                startType = t2.type;
+            }
+            ct = startType;
+        }
+        final int line = op.line();
+        final Instruction i = emit(ctx,Op.READ_PATH,line,() -> "readPath "+String.join(".",path),ct,path);
+        return suffix(ctx,i,op);
+    }
+    /**
+     * Gets and pushes an identifier's value to the stack.
+     *
+     * <pre>Id := Name {'.' Name} [Suffix]</pre>
+     *
+     * @see Script#suffix(Context,Instruction,Token)
+     */
+    private static Instruction id(final Context ctx,final Token id) throws ScriptException
+    {
+        final String start = id.value();
+        final ConstableType t = ctx.sc.getField(start);
+        final Instruction i = emit(ctx,Op.READ,id.line(),() -> "read "+start,t.type,start);
+        ++ctx.accPos;
+        return suffix(ctx,i,nonEOF(ItrMode.next,ctx.tokens,ctx.reporter));
+    }
+    /** @return {@code true} iff an object of type {@code from} can be converted to an object of type {@code to}. */
+    static boolean triviallyConvertible(final Type to,final Type from)
+    {
+        final BaseType fbt = from.base;
+        return switch(to.base)
+        {
+            case BOOL -> fbt != BaseType.FUNC && fbt != BaseType.VOID;
+            case STR -> true;
+            case INT,FLOAT -> switch(fbt)
+            {
+                case INT,FLOAT,BOOL -> true;
+                default -> false;
+            };
+            case FUNC -> fbt == BaseType.FUNC &&
+                         from.subType.equals(to.subType) &&
+                         compareArgs(to.args,from.args);
+            case LIST -> fbt == BaseType.LIST &&
+                         (
+                             to.subType.base == BaseType.VOID ||
+                             triviallyConvertible(to.subType,from.subType)
+                         );
+            default -> to.equals(from);
+        };
+    }
+    /** @return A {@linkplain Function} which converts an object of type {@code from} to an object of type {@code to}. */
+    private static Function<Object,Object> converter(final Type from,final Type to)
+    {
+        final BaseType fbt = from.base;
+        return switch(to.base)
+        {
+            case BOOL  -> a -> conditional(a,fbt);
+            case STR   -> a -> strStruct(toString(a,from));
+            case INT   -> fbt == BaseType.BOOL? a -> (Boolean)resolve(a)? 1L : 0L : a -> ((Number)resolve(a)).longValue();
+            case FLOAT -> fbt == BaseType.BOOL? a -> (Boolean)resolve(a)? 1D : 0D : a -> ((Number)resolve(a)).doubleValue();
+            default /* LIST */  ->
+            {
+                // The two types are guaranteed to be convertible by calls to 'triviallyConvertible'
+                final Type st = to.subType,st1 = from.subType;
+                if(st.base == BaseType.VOID)
+                {
+                    // Don't copy the list because library functions might want to pass-by-value.
+                    final Value subType = new Value(Types.CONST_VOID,st1);
+                    yield a -> voidList(subType,listData(resolve(a)));
+                }
+                // Elements are converted as they are read, but the source list is still deep-copied first unless it
+                // is frozen (see 'CowList.snapshot').
+                final ConstableType cst = Types.constableType(st,false);
+                final Function<Object,Object> c = converter(st1,st);
+                yield a -> listStruct(st,new ConvertedList(listData(resolve(a)),cst,c));
+            }
+        };
+    }
+    /**
+     * Converts the last item on the stack between types {@code from} and {@code to}. If both types
+     * are the same, no instructions are generated.
+     *
+     * @return {@code true} iff the specified types are {@linkplain Script#triviallyConvertible(Type,Type)}.
+     */
+    private static boolean convert(final Context ctx,final Type from,final Type to,final int accPos,final int line)
+    {
+        if(triviallyConvertible(to,from))
+        {
+            if(!from.equals(to))
+            {
+                if(to.base == BaseType.LIST && to.subType.base != BaseType.VOID)
+                    // Nested lists are converted by the same instruction, so the warning is only dispatched once.
+                    ctx.reporter.warn
+                    (
+                        line,
+                        "Implicit conversion between list types. Unless the list is a constant of an imported " +
+                        "script or library, this will create a deep-copy of all elements, which is very expensive."
+                    );
+                emit(ctx,Op.CONVERT,line,() -> "convert ("+accPos+") "+from+" -> "+to,from,to,accPos);
+            }
+            return true;
+        }
+        ctx.reporter.report
+        (
+            line,
+            "Cannot convert type "+from+
+            " to type "+to
+        );
+        return false;
+    }
+    /**
+     * Converts the last item on the stack between types {@code from} and {@code to}. If both types
+     * are the same, no instructions are generated.
+     *
+     * @return {@code true} iff the specified types are {@linkplain Script#triviallyConvertible(Type,Type)}.
+     */
+    private static boolean convert(final Context ctx,final Type from,final Type to,final int line)
+    {
+        return convert(ctx,from,to,0,line);
+    }
+    /** @return {@code true} iff a const token was eaten. */
+    private static boolean chkConst(final TokenIterator tokens)
+    {
+        if(matches(ItrMode.peek,tokens,TokenType.CONST))
+        {
+            tokens.next();
+            return true;
+        }
+        return false;
+    }
+    /** A representation of a prefix operator and its return type. */
+    private static record UnaryOperation(Function<Object,Object> op,Type ret) {}
+    /** @return The prefix operator for an operand of the specified type, or {@code null} if there is none. */
+    private static UnaryOperation getUnaryOp(final TokenType type,final Type t,final boolean isValueType,final int line)
+    {
+        final Type ct;
+        final BaseType ib = t.base;
+        final Function<Object,Object> g = switch(type)
+        {
+            case INC    ->
+            {
+                ct = ib == BaseType.INT? Type.INT : Type.FLOAT;
+                if((ib != BaseType.INT && ib != BaseType.FLOAT) ||
+                   !isValueType)
+                    yield null;
+                yield ib == BaseType.INT
+                    ? o ->
+                      {
+                          final Value v = (Value)o;
+                          if(v.type.isConst)
+                              throw new ScriptRuntimeException(line,"Cannot modify const value");
+                          return v.set((Long)v.value + 1L);
+                      }
+                    : o ->
+                      {
+                          final Value v = (Value)o;
+                          if(v.type.isConst)
                               throw new ScriptRuntimeException(line,"Cannot modify const value");
-                          return v.value = (Double)v.value + 1D;
+                          return v.set((Double)v.value + 1D);
                       };
             }
             case DEC    ->
             {
-                ctx.sideEffects = true;
                 ct = ib == BaseType.INT? Type.INT : Type.FLOAT;
                 if((ib != BaseType.INT && ib != BaseType.FLOAT) ||
-                   !i.isValueType)
+                   !isValueType)
                     yield null;
                 yield ib == BaseType.INT
                     ? o ->
@@ -1401,14 +2023,14 @@ public final class Script
                           final Value v = (Value)o;
                           if(v.type.isConst)
                               throw new ScriptRuntimeException(line,"Cannot modify const value");
-                          return v.value = (Long)v.value - 1L;
+                          return v.set((Long)v.value - 1L);
                       }
                     : o ->
                       {
                           final Value v = (Value)o;
                           if(v.type.isConst)
                               throw new ScriptRuntimeException(line,"Cannot modify const value");
-                          return v.value = (Double)v.value - 1D;
+                          return v.set((Double)v.value - 1D);
                       };
             }
             case ADD    -> switch(ib)
@@ -1420,7 +2042,7 @@ public final class Script
                 }
                 case INT,FLOAT ->
                 {
-                    ct = i.type;
+                    ct = t;
                     yield Script::resolve;
                 }
                 default        -> {ct = null; yield null;}
@@ -1444,7 +2066,7 @@ public final class Script
                 }
                 default    -> {ct = null; yield null;}
             };
-            case NOT    -> triviallyConvertible(ct = Type.BOOL,i.type)
+            case NOT    -> triviallyConvertible(ct = Type.BOOL,t)
                 ? o -> !conditional(resolve(o),ib)
                 : null;
             case BITNOT -> switch(ib)
@@ -1468,7 +2090,21 @@ public final class Script
             };
             default     -> {ct = null; yield null;}
         };
-        if(g == null)
+        return g == null? null : new UnaryOperation(g,ct);
+    }
+    /**
+     * Evaluates a prefix operator.
+     *
+     * <pre>Prefix := ('++'|'--'|'+'|'-'|'!'|'~') HighPrecedence</pre>
+     *
+     * @see Script#highPrecedence(Context)
+     */
+    private static Instruction prefix(final Context ctx,final Token op) throws ScriptException
+    {
+        final Instruction i = highPrecedence(ctx);
+        if(i == null) return null;
+        if(op.type() == TokenType.INC || op.type() == TokenType.DEC) ctx.sideEffects = true;
+        if(getUnaryOp(op.type(),i.type,i.isValueType,op.line()) == null)
         {
             ctx.reporter.report
             (
@@ -1479,19 +2115,7 @@ public final class Script
             );
             return null;
         }
-        final Instruction o = new Instruction(line,ct)
-        {
-            @Override
-            Object exec(final RuntimeScope s)
-            {
-                final Object[] d = s.accumulator.data();
-                final int p = s.accumulator.pos()-1;
-                d[p] = g.apply(d[p]);
-                return null;
-            }
-        };
-        ctx.bb.instruction(o,"prefix "+op.value());
-        return o;
+        return emit(ctx,Op.PREFIX,op.line(),() -> "prefix "+op.value(),op.type(),i.type,i.isValueType);
     }
     /**
      * Evaluates a suffix operator.
@@ -1520,30 +2144,8 @@ public final class Script
                     yield null;
                 }
                 convert(ctx,idx.type,Type.INT,idx.line);
-                final String module = ctx.module;
-                final Instruction i = new Instruction(op.line(),expr.type.subType,true)
-                {
-                    @Override
-                    Object exec(final RuntimeScope s)
-                    {
-                        final int i;
-                        {
-                            final long l = (Long)resolve(s.popAccumulator());
-                            if(l < 0L || l >= Integer.MAX_VALUE)
-                                // If some sort of exception handling is added in the future, the accumulator
-                                // should be popped so that it's in a defined state.
-                                // s.popAccumulator();
-                                throw new ScriptRuntimeException(line,module,"Index " + l + " is out of bounds");
-                            i = (int)l;
-                        }
-                        final Object[] d = s.accumulator.data();
-                        final int p = s.accumulator.pos()-1;
-                        d[p] = listData(resolve(d[p])).get(i);
-                        return null;
-                    }
-                };
+                final Instruction i = emit(ctx,Op.LIST_ACCESS,op.line(),() -> "listAccess",expr.type.subType);
                 --ctx.accPos;
-                ctx.bb.instruction(i,"listAccess");
                 yield suffix(ctx,i,nonEOF(ItrMode.next,ctx.tokens,ctx.reporter));
             }
             case LPAREN   ->
@@ -1566,22 +2168,7 @@ public final class Script
                     );
                 if(expr.isValueType)
                 {
-                    final Function<Object,Object> g = expr.type.base == BaseType.INT
-                        ? (op.type() == TokenType.INC? x ->   (Long)x + 1L : x ->   (Long)x - 1L)
-                        : (op.type() == TokenType.INC? x -> (Double)x + 1D : x -> (Double)x - 1D);
-                    final Instruction i = new Instruction(expr.line,expr.type,false)
-                    {
-                        @Override
-                        Object exec(final RuntimeScope s)
-                        {
-                            final Value v = (Value)s.accumulator.data()[s.accumulator.pos()-1];
-                            if(v.type.isConst)
-                                throw new ScriptRuntimeException(line,"Cannot modify const value");
-                            v.value = g.apply(v.value);
-                            return null;
-                        }
-                    };
-                    ctx.bb.instruction(i,"suffix "+op.value());
+                    final Instruction i = emit(ctx,Op.SUFFIX,expr.line,() -> "suffix "+op.value(),op.type(),expr.type);
                     ctx.sideEffects = true;
                     yield i;
                 }
@@ -1668,27 +2255,9 @@ public final class Script
                 ctx.sideEffects = true;
                 return null;
             }
-        }
-        final boolean nonVoidRet = func.type.subType.base != BaseType.VOID;
-        final Instruction i = new Instruction(func.line,func.type.subType)
-        {
-            @Override
-            Object exec(final RuntimeScope s)
-            {
-                final Object[] o = new Object[argc];
-                for(int i = argc;i-- != 0;)
-                    o[i] = resolve(s.popAccumulator());
-                final Func f = (Func)resolve(s.popAccumulator());
-                final RuntimeScope fs = f.scope;
-                final String[] argn = f.argn;
-                for(int i = 0;i != argc;++i)
-                    fs.setFieldValue(argn[i],o[i]);
-                final Object ret = f.body.exec(fs);
-                if(nonVoidRet) s.pushAccumulator(ret);
-                return null;
-            }
-        };
-        ctx.bb.instruction(i,"call "+func.type);
+        }
+        final boolean nonVoidRet = func.type.subType.base != BaseType.VOID;
+        final Instruction i = emit(ctx,Op.CALL,func.line,() -> "call "+func.type,func.type);
         ctx.accPos -= argc + (nonVoidRet? 0:1);
         ctx.sideEffects = true;
         return i;
@@ -1721,12 +2290,9 @@ public final class Script
             case STR   -> Type.STR;
             case ID    ->
             {
-                if(ctx.sc.getStruct(t.value()) == null)
-                {
-                    ctx.reporter.report(t.line(),"Struct type '"+t.value()+"' is undefined");
-                    yield null;
-                }
-                yield Types.structType(t.value());
+                final Type st = ctx.sc.getStruct(t.value());
+                if(st == null) ctx.reporter.report(t.line(),"Struct type '"+t.value()+"' is undefined");
+                yield st;
             }
             case FUNC  ->
             {
@@ -1854,16 +2420,7 @@ public final class Script
             case TRUE,FALSE ->
             {
                 final boolean b = Boolean.parseBoolean(t.value());
-                final Instruction i = new Instruction(line,Type.BOOL)
-                {
-                    @Override
-                    Object exec(final RuntimeScope s)
-                    {
-                        s.pushAccumulator(b);
-                        return null;
-                    }
-                };
-                ctx.bb.instruction(i,"pushAcc "+t.value());
+                final Instruction i = emit(ctx,Op.PUSH,line,() -> "pushAcc "+t.value(),b);
                 ++ctx.accPos;
                 yield i;
             }
@@ -1880,48 +2437,20 @@ public final class Script
                 }
                 if(radix != 10) v = v.substring(2);
                 final long l = Long.parseLong(v,radix);
-                final Instruction i = new Instruction(line,Type.INT)
-                {
-                    @Override
-                    Object exec(final RuntimeScope s)
-                    {
-                        s.pushAccumulator(l);
-                        return null;
-                    }
-                };
-                ctx.bb.instruction(i,"pushAcc "+t.value());
+                final Instruction i = emit(ctx,Op.PUSH,line,() -> "pushAcc "+t.value(),l);
                 ++ctx.accPos;
                 yield i;
             }
             case LIT_FLOAT ->
             {
                 final double d = Double.parseDouble(t.value());
-                final Instruction i = new Instruction(line,Type.FLOAT)
-                {
-                    @Override
-                    Object exec(final RuntimeScope s)
-                    {
-                        s.pushAccumulator(d);
-                        return null;
-                    }
-                };
-                ctx.bb.instruction(i,"pushAcc "+t.value());
+                final Instruction i = emit(ctx,Op.PUSH,line,() -> "pushAcc "+t.value(),d);
                 ++ctx.accPos;
                 yield i;
             }
             case LIT_STR ->
             {
-                final Map<String,Value> str = strStruct(t.value());
-                final Instruction i = new Instruction(line,Type.STR)
-                {
-                    @Override
-                    Object exec(final RuntimeScope s)
-                    {
-                        s.pushAccumulator(str);
-                        return null;
-                    }
-                };
-                ctx.bb.instruction(i,"pushAcc "+t.value());
+                final Instruction i = emit(ctx,Op.PUSH,line,() -> "pushAcc "+t.value(),t.value());
                 ++ctx.accPos;
                 yield suffix(ctx,i,nonEOF(ItrMode.next,ctx.tokens,ctx.reporter));
             }
@@ -1970,7 +2499,7 @@ public final class Script
     private static record Operation(BiFunction<Object,Object,Object> op,Type ret) {}
     /** Evaluates a binary operator from two arguments in the stack.*/
     private static Operation getOp(final Type a,final Type b,final TokenType type,
-                                   final Context ctx,final int line)
+                                   final ErrReporter reporter,final String module,final int line)
     {
         final BiFunction<Object,Object,Object> op;
         final BaseType abt = a.base,bbt = b.base;
@@ -1981,7 +2510,8 @@ public final class Script
             {
                 op = switch(type)
                 {
-                    case OR,AND -> convert(ctx,a,Type.BOOL,1,line) && convert(ctx,b,Type.BOOL,line)? type == TokenType.OR
+                    // The operands are converted to bools by the caller.
+                    case OR,AND -> triviallyConvertible(Type.BOOL,a) && triviallyConvertible(Type.BOOL,b)? type == TokenType.OR
                         ? (x,y) -> (Boolean)resolve(x) || (Boolean)resolve(y)
                         : (x,y) -> (Boolean)resolve(x) && (Boolean)resolve(y)
                         : null;
@@ -2121,7 +2651,7 @@ public final class Script
                             default    -> null;
                         };
                         if(o == null)
-                            ctx.reporter.report
+                            reporter.report
                             (
                                 line,
                                 "Expression of type "+abt+
@@ -2182,7 +2712,7 @@ public final class Script
                         }
                         default ->
                         {
-                            ctx.reporter.report(line,"Cannot add type "+abt+" to type "+bbt);
+                            reporter.report(line,"Cannot add type "+abt+" to type "+bbt);
                             op = null;
                             yield null;
                         }
@@ -2196,13 +2726,13 @@ public final class Script
                                 // Although it is technically possible to do type checking on the previous
                                 // type of the list, reporting an error outright will discourage users from
                                 // making their code more obtuse by using void lists everywhere.
-                                ctx.reporter.report(line,"Cannot concatenate void lists");
+                                reporter.report(line,"Cannot concatenate void lists");
                                 op = null;
                                 yield null;
                             }
                             if(!a.subType.equals(b.subType))
                             {
-                                ctx.reporter.report
+                                reporter.report
                                 (
                                     line,
                                     "Cannot add list of type "+b.subType+
@@ -2221,14 +2751,14 @@ public final class Script
                         }
                         else
                         {
-                            ctx.reporter.report(line,"Cannot add type list and type "+bbt);
+                            reporter.report(line,"Cannot add type list and type "+bbt);
                             op = null;
                             yield null;
                         }
                     }
                     default ->
                     {
-                        ctx.reporter.report(line,"Cannot add type "+abt+" to type "+bbt);
+                        reporter.report(line,"Cannot add type "+abt+" to type "+bbt);
                         op = null;
                         yield null;
                     }
@@ -2251,7 +2781,6 @@ public final class Script
                                  BITAND -> (x,y) -> (Boolean)resolve(x)&&(Boolean)resolve(y)?1L:0L;
                             case DIV    ->
                             {
-                                final String module = ctx.module;
                                 yield (x,y) ->
                                 {
                                     if(!(Boolean)resolve(y)) throw new ScriptRuntimeException(line,module,"Divide by zero");
@@ -2273,7 +2802,6 @@ public final class Script
                             case MUL    -> (x,y) -> (Boolean)resolve(x)?(Long)resolve(y):0L;
                             case DIV    ->
                             {
-                                final String module = ctx.module;
                                 yield (x,y) ->
                                 {
                                     try {return ((Boolean)resolve(x)?1L:0L)/(Long)resolve(y);}
@@ -2296,7 +2824,6 @@ public final class Script
                             case MUL    -> (x,y) -> (Boolean)resolve(x)?(Double)resolve(y):0D;
                             case DIV    ->
                             {
-                                final String module = ctx.module;
                                 yield (x,y) ->
                                 {
                                     try {return (Boolean)resolve(x)?1D:0D/(Double)resolve(y);}
@@ -2323,7 +2850,6 @@ public final class Script
                             case MUL    -> (x,y) -> (Boolean)resolve(y)?(Long)resolve(x):0L;
                             case DIV    ->
                             {
-                                final String module = ctx.module;
                                 yield (x,y) ->
                                 {
                                     if(!(Boolean)resolve(y)) throw new ScriptRuntimeException(line,module,"Divide by zero");
@@ -2345,7 +2871,6 @@ public final class Script
                             case MUL    -> (x,y) -> (Long)resolve(x) * (Long)resolve(y);
                             case DIV    ->
                             {
-                                final String module = ctx.module;
                                 yield (x,y) ->
                                 {
                                     try {return (Long)resolve(x)/(Long)resolve(y);}
@@ -2367,7 +2892,6 @@ public final class Script
                             case MUL    -> (x,y) -> ((Long)resolve(x)).doubleValue() * (Double)resolve(y);
                             case DIV    ->
                             {
-                                final String module = ctx.module;
                                 yield (x,y) ->
                                 {
                                     try {return ((Long)resolve(x)).doubleValue()/(Double)resolve(y);}
@@ -2394,7 +2918,6 @@ public final class Script
                             case MUL    -> (x,y) -> (Boolean)resolve(y)?(Double)resolve(x):0D;
                             case DIV    ->
                             {
-                                final String module = ctx.module;
                                 yield (x,y) ->
                                 {
                                     if(!(Boolean)resolve(y)) throw new ScriptRuntimeException(line,module,"Divide by zero");
@@ -2416,7 +2939,6 @@ public final class Script
                             case MUL    -> (x,y) -> (Double)resolve(x) * ((Long)resolve(y)).doubleValue();
                             case DIV    ->
                             {
-                                final String module = ctx.module;
                                 yield (x,y) ->
                                 {
                                     try {return (Double)resolve(x)/((Long)resolve(y)).doubleValue();}
@@ -2434,1243 +2956,1723 @@ public final class Script
                         };
                         case FLOAT -> switch(type)
                         {
-                            case SUB    -> (x,y) -> (Double)resolve(x) - (Double)resolve(y);
-                            case MUL    -> (x,y) -> (Double)resolve(x) * (Double)resolve(y);
-                            case DIV    ->
-                            {
-                                final String module = ctx.module;
-                                yield (x,y) ->
-                                {
-                                    try {return (Double)resolve(x)/(Double)resolve(y);}
-                                    catch(final ArithmeticException e) {throw new ScriptRuntimeException(line,module,"Divide by zero");}
-                                };
-                            }
-                            case MOD    -> (x,y) -> (Double)resolve(x) % (Double)resolve(y);
-                            case BITAND -> (x,y) -> ltod(dtol((Double)resolve(x)) & dtol((Double)resolve(y)));
-                            case BITOR  -> (x,y) -> ltod(dtol((Double)resolve(x)) | dtol((Double)resolve(y)));
-                            case BITXOR -> (x,y) -> ltod(dtol((Double)resolve(x)) ^ dtol((Double)resolve(y)));
-                            case LSH    -> (x,y) -> (Double)resolve(x)*Math.pow(2D,(Double)resolve(y));
-                            case RSH,
-                                 LRSH   -> (x,y) -> (Double)resolve(x)/Math.pow(2D,(Double)resolve(y));
-                            default     -> null;
-                        };
-                        default    -> null;
+                            case SUB    -> (x,y) -> (Double)resolve(x) - (Double)resolve(y);
+                            case MUL    -> (x,y) -> (Double)resolve(x) * (Double)resolve(y);
+                            case DIV    ->
+                            {
+                                yield (x,y) ->
+                                {
+                                    try {return (Double)resolve(x)/(Double)resolve(y);}
+                                    catch(final ArithmeticException e) {throw new ScriptRuntimeException(line,module,"Divide by zero");}
+                                };
+                            }
+                            case MOD    -> (x,y) -> (Double)resolve(x) % (Double)resolve(y);
+                            case BITAND -> (x,y) -> ltod(dtol((Double)resolve(x)) & dtol((Double)resolve(y)));
+                            case BITOR  -> (x,y) -> ltod(dtol((Double)resolve(x)) | dtol((Double)resolve(y)));
+                            case BITXOR -> (x,y) -> ltod(dtol((Double)resolve(x)) ^ dtol((Double)resolve(y)));
+                            case LSH    -> (x,y) -> (Double)resolve(x)*Math.pow(2D,(Double)resolve(y));
+                            case RSH,
+                                 LRSH   -> (x,y) -> (Double)resolve(x)/Math.pow(2D,(Double)resolve(y));
+                            default     -> null;
+                        };
+                        default    -> null;
+                    };
+                    default    -> null;
+                };
+                if(op == null)
+                {
+                    reporter.report
+                    (
+                        line,
+                        "Cannot "+switch(type)
+                        {
+                            case SUB    -> "subtract";
+                            case MUL    -> "multiply";
+                            case DIV    -> "divide";
+                            case MOD    -> "compute the remainder of";
+                            case BITAND -> "compute bitwise and on";
+                            case BITOR  -> "compute bitwise or on";
+                            case BITXOR -> "compute bitwise exlcusive or on";
+                            case LSH    -> "left bit shift";
+                            case RSH    -> "arithmetic right bit shift";
+                            case LRSH   -> "logical right bit shift";
+                            default     -> throw new AssertionError();
+                        }+" types "+ abt +" and "+ bbt
+                    );
+                    yield null;
+                }
+                //noinspection DuplicateExpressions
+                yield abt == BaseType.FLOAT || bbt == BaseType.FLOAT
+                    ? Type.FLOAT
+                    : Type.INT;
+            }
+            default              ->
+            {
+                reporter.report(line,"Invalid binary operator: "+type);
+                op = null;
+                yield null;
+            }
+        };
+        return ct == null? null : new Operation(op,ct);
+    }
+    /**
+     * Evaluates a math expression.
+     *
+     * <pre>MathExpr := {('&&'|'||'|'=='|'!='|'&gt'|'&lt'|'&gt='|'&lt='|'+'|'-'|'*'|'/'|'%'|'&'|'|'|'^'|'&lt&lt'|'&gt&gt'|'&gt&gt&gt') HighPrecedence}</pre>
+     *
+     * @see Script#mediumPrecedence(Context)
+     */
+    private static Instruction math(final Context ctx,final Instruction first) throws ScriptException
+    {
+        /*/
+        The following is an algorithm to parse an infix-notation expression. It works by maintaining a stack of operands
+        and operators, ensuring that the operators on the stack always have less precedence than the next as the loop
+        invariant. If that isn't the case during some point in the execution, then the algorithm pops the last two
+        operands with the last operator off their stacks and combines them into a single operand until the loop invariant
+        is once again reached. Tokens which aren't an operator are assumed to be the end of the expression and therefore
+        treated as if they had the highest precedence.
+        
+        For example, consider the equation 'a + b * c - d'. The operand stack will initially start with 'a' and 'b', and
+        the operator stack will start with '+'. The next operator is '*', which has higher precedence than '+'. This can
+        be added to the operator stack because it still preserves the loop invariant. The algorithm then pushes 'c' to
+        the operand stack, and the next operator is '-'. Since this operator has lower precedence than the top of the
+        operator stack, '*', the algorithm cannot push '-'. Instead, the algorithm will combine operations until it can
+        push '-'. In this case, operands 'c' and 'b' with operator '*' will be popped, combined, and pushed, creating
+        operand '(b * c)'. Since the top of the operator stack is now '+' (same precedence as '-'), the algorithm can
+        push '-'. The algorithm then pushes 'd' to the operand stack, and the next operator is 'EOF'. Since 'EOF' has
+        precedence '-1', the algorithm will be forced to combine the stacks until there are no more operators. This
+        results in a final operand '(a + ((b * c) - d))'.
+        /*/
+        if(first == null) return null;
+        final Instruction[] I = new Instruction[11]; // 10 happens to be the number of different precedence levels, so
+        final Token[] O = new Token[10];             // the "stacks" can have constant size.
+        I[0] = first;
+        int i = 0;
+        // Loop until a non-operator token is encountered.
+        while(precedence(nonEOF(ItrMode.peek,ctx.tokens,ctx.reporter).type()) != (byte)-1)
+        {
+            // Eat the operator and the expression to the right of it.
+            O[i] = ctx.tokens.next();
+            {
+                final Instruction e = highPrecedence(ctx);
+                if(e == null) return null;
+                I[++i] = e;
+            }
+            
+            // While there are still operators on the stack and the cursor's operator is less than the stack's operator,
+            // combine the operands and operators.
+            while(i != 0 && precedence(nonEOF(ItrMode.peek,ctx.tokens,ctx.reporter).type()) <= precedence(O[i-1].type()))
+            {
+                final Instruction b = I[i],a = I[--i];
+                final Token o = O[i];
+                if((o.type() == TokenType.AND || o.type() == TokenType.OR) &&
+                   !(convert(ctx,a.type,Type.BOOL,1,o.line()) && convert(ctx,b.type,Type.BOOL,o.line())))
+                    return null;
+                if(getOp(a.type,b.type,o.type(),ctx.reporter,ctx.module,o.line()) == null) return null;
+                I[i] = emit(ctx,Op.BINOP,o.line(),() -> "binOp "+o.value(),a.type,b.type,o.type());
+                --ctx.accPos;
+            }
+        }
+        if(i != 0)
+        {
+            ctx.reporter.report(first.line,"Invalid expression");
+            return null;
+        }
+        return I[0];
+    }
+    /**
+     * Evaluates a medium-precedence expression.
+     *
+     * <pre>MediumPrecedence := HighPrecedence [MathExpr]</pre>
+     *
+     * @see Script#highPrecedence(Context)
+     * @see Script#math(Context,Instruction)
+     */
+    private static Instruction mediumPrecedence(final Context ctx) throws ScriptException
+    {
+        // Get a high-precedence expression.
+        final Instruction i = highPrecedence(ctx);
+        if(i == null) return null;
+        // Parse binary operator, if necessary.
+        return precedence(nonEOF(ItrMode.peek,ctx.tokens,ctx.reporter).type()) != (byte)-1
+            ? math(ctx,i)
+            : i;
+    }
+    /**
+     * Evaluates a ternary conditional operator.
+     *
+     * <pre>TernaryExpr := '?' Expr ':' LowPrecedence</pre>
+     *
+     * @see Script#parseExpr(Context)
+     * @see Script#lowPrecedence(Context)
+     */
+    private static Instruction ternary(final Context ctx,final Instruction condition) throws ScriptException
+    {
+        if(condition != null && matches(ItrMode.peek,ctx.tokens,TokenType.CONDITION))
+        {
+            // Eat '?'.
+            final int line = ctx.tokens.next().line();
+            
+            // Eat true branch.
+            final BlockBuilder start = ctx.bb;
+            // start -> then
+            --ctx.accPos; start.branch(true,ctx.bbList.size());
+            ctx.bbList.add(ctx.bb = ctx.createBB("ternary.then"));
+            final Instruction t = parseExpr(ctx);
+            if(mismatch(ItrMode.peek,ctx.tokens,ctx.reporter,TokenType.COLON))
+            {
+                ctx.bb = start;
+                return null;
+            }
+            ctx.tokens.next(); // Eat ':'.
+            final BlockBuilder tend = ctx.bb;
+            
+            // Eat false branch.
+            // start -> else
+            start.branch(false,ctx.bbList.size());
+            ctx.bbList.add(ctx.bb = ctx.createBB("ternary.else"));
+            final Instruction f = lowPrecedence(ctx);
+            
+            final int ei = ctx.bbList.size();
+            tend.branch(ei);   // then -> end
+            ctx.bb.branch(ei); // else -> end
+            ctx.bbList.add(ctx.bb = ctx.createBB("ternary.end"));
+            
+            if(t == null || f == null) return null;
+            if(!t.type.equals(f.type))
+            {
+                ctx.reporter.report
+                (
+                    line,
+                    "Expressions in ternary operator have different types: "+
+                    t.type+" and "+f.type
+                );
+                return null;
+            }
+            // Subtract one from the accumulator, since only one branch will be taken.
+            --ctx.accPos;
+            // Return dummy instruction. The instruction does not need to be added
+            // to the block since both branches' instructions already push their
+            // results to the stack.
+            ctx.bb.dummyT = t.type;
+            return new Instruction(line,t.type,t.isValueType && f.isValueType)
+            {
+                @Override Object exec(final RuntimeScope s) {return null;}
+            };
+        }
+        return condition;
+    }
+    /**
+     * Evaluates a low-precedence expression.
+     *
+     * <pre>LowPrecedence := MediumPrecedence [TernaryExpr]</pre>
+     *
+     * @see Script#mediumPrecedence(Context)
+     * @see Script#ternary(Context,Instruction)
+     */
+    private static Instruction lowPrecedence(final Context ctx) throws ScriptException
+    {
+        // Get medium-precedence expression.
+        final Instruction i = mediumPrecedence(ctx);
+        if(i == null) return null;
+        // Parse ternary expression if necessary.
+        return matches(ItrMode.peek,ctx.tokens,TokenType.CONDITION)
+            ? ternary(ctx,i)
+            : i;
+    }
+    /**
+     * Evaluates an assignment expression.
+     *
+     * <pre>Assignment := ('+='|'&='|'/='|'&gt&gt&gt='|'&lt&lt='|'%='|'*='|'|='|'&gt&gt='|'-='|'^='|'=') Expr</pre>
+     *
+     * @see Script#lowPrecedence(Context)
+     * @see Script#parseExpr(Context)
+     */
+    private static Instruction assignment(final Context ctx,final Instruction lhs) throws ScriptException
+    {
+        return lhs == null? null : switch(nonEOF(ItrMode.peek,ctx.tokens,ctx.reporter).type())
+        {
+            case ADDEQ,ANDEQ,ASSIGN,
+                 DIVEQ,LRSHEQ,LSHEQ,
+                 MODEQ,MULEQ,OREQ,
+                 RSHEQ,SUBEQ,XOREQ ->
+            {
+                if(!lhs.isValueType) ctx.reporter.report(lhs.line,"Expression yields a literal value");
+                final int line;
+                final TokenType tt;
+                {
+                    final Token t = ctx.tokens.next();
+                    line = t.line();
+                    tt = t.type();
+                }
+                final Instruction rhs = parseExpr(ctx);
+                if(rhs != null && lhs.isValueType)
+                {
+                    final Type ct = lhs.type;
+                    if(tt == TokenType.ASSIGN)
+                    {
+                        if(convert(ctx,rhs.type,ct,line))
+                        {
+                            final Instruction i = emit(ctx,Op.ASSIGN,line,() -> "assign",ct);
+                            --ctx.accPos;
+                            ctx.sideEffects = true;
+                            yield i;
+                        }
+                        ctx.sideEffects = true;
+                        yield null;
+                    }
+                    final TokenType ot = switch(tt)
+                    {
+                        case ADDEQ  -> TokenType.ADD;
+                        case ANDEQ  -> TokenType.BITAND;
+                        case DIVEQ  -> TokenType.DIV;
+                        case LRSHEQ -> TokenType.LRSH;
+                        case LSHEQ  -> TokenType.LSH;
+                        case MODEQ  -> TokenType.MOD;
+                        case MULEQ  -> TokenType.MUL;
+                        case OREQ   -> TokenType.BITOR;
+                        case RSHEQ  -> TokenType.RSH;
+                        case SUBEQ  -> TokenType.SUB;
+                        default     -> TokenType.BITXOR; // XOREQ
                     };
-                    default    -> null;
-                };
-                if(op == null)
-                {
-                    ctx.reporter.report
-                    (
-                        line,
-                        "Cannot "+switch(type)
+                    if(getOp(lhs.type,rhs.type,ot,ctx.reporter,ctx.module,line) != null)
+                    {
+                        // Execute the operator, convert the result into the left operand's type,
+                        // then store the result.
+                        emit(ctx,Op.UPDATE,line,() -> "math "+tt,lhs.type,rhs.type,ot);
+                        if(convert(ctx,rhs.type,lhs.type,line))
                         {
-                            case SUB    -> "subtract";
-                            case MUL    -> "multiply";
-                            case DIV    -> "divide";
-                            case MOD    -> "compute the remainder of";
-                            case BITAND -> "compute bitwise and on";
-                            case BITOR  -> "compute bitwise or on";
-                            case BITXOR -> "compute bitwise exlcusive or on";
-                            case LSH    -> "left bit shift";
-                            case RSH    -> "arithmetic right bit shift";
-                            case LRSH   -> "logical right bit shift";
-                            default     -> throw new AssertionError();
-                        }+" types "+ abt +" and "+ bbt
-                    );
+                            final Instruction i = emit(ctx,Op.ASSIGN,line,() -> "assign",lhs.type);
+                            --ctx.accPos;
+                            ctx.sideEffects = true;
+                            yield i;
+                        }
+                    }
+                    ctx.sideEffects = true;
                     yield null;
                 }
-                //noinspection DuplicateExpressions
-                yield abt == BaseType.FLOAT || bbt == BaseType.FLOAT
-                    ? Type.FLOAT
-                    : Type.INT;
-            }
-            default              ->
-            {
-                ctx.reporter.report(line,"Invalid binary operator: "+type);
-                op = null;
+                ctx.sideEffects = true;
                 yield null;
             }
+            default -> lhs;
         };
-        return ct == null? null : new Operation(op,ct);
     }
     /**
-     * Evaluates a math expression.
+     * Evaluates an expression.
      *
-     * <pre>MathExpr := {('&&'|'||'|'=='|'!='|'&gt'|'&lt'|'&gt='|'&lt='|'+'|'-'|'*'|'/'|'%'|'&'|'|'|'^'|'&lt&lt'|'&gt&gt'|'&gt&gt&gt') HighPrecedence}</pre>
+     * <pre>Expr := LowPrecedence [Assignment]</pre>
      *
-     * @see Script#mediumPrecedence(Context)
+     * @see Script#lowPrecedence(Context)
+     * @see Script#assignment(Context,Instruction)
      */
-    private static Instruction math(final Context ctx,final Instruction first) throws ScriptException
+    private static Instruction parseExpr(final Context ctx) throws ScriptException
     {
-        /*/
-        The following is an algorithm to parse an infix-notation expression. It works by maintaining a stack of operands
-        and operators, ensuring that the operators on the stack always have less precedence than the next as the loop
-        invariant. If that isn't the case during some point in the execution, then the algorithm pops the last two
-        operands with the last operator off their stacks and combines them into a single operand until the loop invariant
-        is once again reached. Tokens which aren't an operator are assumed to be the end of the expression and therefore
-        treated as if they had the highest precedence.
+        // Get low-precedence expression.
+        final Instruction i = lowPrecedence(ctx);
+        if(i == null) return null;
+        // Parse assignment expression if necessary
+        return matches(ItrMode.peek,ctx.tokens,
+                       TokenType.ASSIGN,TokenType.ADDEQ,TokenType.ANDEQ,
+                       TokenType.DIVEQ,TokenType.LRSHEQ,TokenType.LSHEQ,
+                       TokenType.MODEQ,TokenType.MULEQ,TokenType.OREQ,
+                       TokenType.RSHEQ,TokenType.SUBEQ,TokenType.XOREQ)
+            ? assignment(ctx,i)
+            : i;
+    }
+    
+    /** Dummy return value for control flow. */
+    static final Object RET_VOID = new Object();
+    
+    /*/
+    By convention, statement parsing functions return true/false to indicate success and failure. All failures
+    are reported in the functions that failed. It is up to the calling functions to determine if they can
+    continue executing and perhaps catch more unrelated errors.
+    /*/
+    
+    /** Pushes/pops the runtime and compile-time scopes. */
+    private static void scopeManip(final Context ctx,final int line,final boolean push)
+    {
+        if(push)
+        {
+            ctx.sc.pushScope();
+            emit(ctx,Op.PUSH_SCOPE,line,() -> "pushScope");
+        }
+        else
+        {
+            for(final String s : ctx.sc.popScope().modules)
+                ctx.imports.computeIfPresent(s,(a,b) -> b != 1? b - 1 : null);
+            emit(ctx,Op.POP_SCOPE,line,() -> "popScope");
+        }
+    }
+    /**
+     * Evaluates a scoped code block.
+     *
+     * <pre>BlockStmt := '{' {Stmt} '}'</pre>
+     *
+     * @see Script#parseStmt(Context,Type,boolean,boolean)
+     */
+    private static boolean parseBlock(final Context ctx,final Type ret,final boolean top) throws ScriptException
+    {
+        // Assume '\{' already eaten.
+        final int l = ctx.tokens.peek(-1).line();
+        if(matches(ItrMode.peek,ctx.tokens,TokenType.RBRACE))
+        {
+            ctx.tokens.next();
+            if(top) ctx.bb.ensureReturn(ctx.reporter,ret);
+            return true;
+        }
+        // Each block gets its own scope.
+        scopeManip(ctx,l,true);
+        final boolean st = parseStmts(ctx,ret,true);
+        if(top) ctx.bb.ensureReturn(ctx.reporter,ret);
+        final int l2;
+        if(st)
+        {
+            final Token t = ctx.tokens.peek(-1);
+            assert t.type() == TokenType.RBRACE;
+            // The above assertion is true calling 'parseStmts' with the 'block' argument set
+            // to true will yield an error if the last token was not a closing brace. If this
+            // isn't the case, then there is a bug in the compiler.
+            l2 = t.line();
+        }
+        else l2 = l;
+        scopeManip(ctx,l2,false);
+        return st;
+    }
+    /**
+     * Evaluates an if-then-else statement.
+     *
+     * <pre>IfStmt := 'if' '(' Expr ')' Stmt ['else' Stmt]</pre>
+     *
+     * @see Script#parseExpr(Context)
+     * @see Script#parseStmt(Context,Type,boolean,boolean)
+     */
+    private static boolean parseIf(final Context ctx,final Type ret) throws ScriptException
+    {
+        // Assume 'if' already eaten.
+        // if( Condition ) ThenStmt [else ElseStmt]
         
-        For example, consider the equation 'a + b * c - d'. The operand stack will initially start with 'a' and 'b', and
-        the operator stack will start with '+'. The next operator is '*', which has higher precedence than '+'. This can
-        be added to the operator stack because it still preserves the loop invariant. The algorithm then pushes 'c' to
-        the operand stack, and the next operator is '-'. Since this operator has lower precedence than the top of the
-        operator stack, '*', the algorithm cannot push '-'. Instead, the algorithm will combine operations until it can
-        push '-'. In this case, operands 'c' and 'b' with operator '*' will be popped, combined, and pushed, creating
-        operand '(b * c)'. Since the top of the operator stack is now '+' (same precedence as '-'), the algorithm can
-        push '-'. The algorithm then pushes 'd' to the operand stack, and the next operator is 'EOF'. Since 'EOF' has
-        precedence '-1', the algorithm will be forced to combine the stacks until there are no more operators. This
-        results in a final operand '(a + ((b * c) - d))'.
-        /*/
-        if(first == null) return null;
-        final Instruction[] I = new Instruction[11]; // 10 happens to be the number of different precedence levels, so
-        final Token[] O = new Token[10];             // the "stacks" can have constant size.
-        I[0] = first;
-        int i = 0;
-        // Loop until a non-operator token is encountered.
-        while(precedence(nonEOF(ItrMode.peek,ctx.tokens,ctx.reporter).type()) != (byte)-1)
+        if(mismatch(ItrMode.next,ctx.tokens,ctx.reporter,TokenType.LPAREN)) return false;
+        final Instruction c = parseExpr(ctx); // Condition
+        if(mismatch(ItrMode.next,ctx.tokens,ctx.reporter,TokenType.RPAREN))
         {
-            // Eat the operator and the expression to the right of it.
-            O[i] = ctx.tokens.next();
-            {
-                final Instruction e = highPrecedence(ctx);
-                if(e == null) return null;
-                I[++i] = e;
-            }
-            
-            // While there are still operators on the stack and the cursor's operator is less than the stack's operator,
-            // combine the operands and operators.
-            while(i != 0 && precedence(nonEOF(ItrMode.peek,ctx.tokens,ctx.reporter).type()) <= precedence(O[i-1].type()))
-            {
-                final Instruction b = I[i],a = I[--i];
-                final Token o = O[i];
-                final Operation op = getOp(a.type,b.type,o.type(),ctx,o.line());
-                if(op == null) return null;
-                ctx.bb.instruction
-                (
-                    I[i] = new Instruction(o.line(),op.ret)
-                    {
-                        @Override
-                        Object exec(final RuntimeScope s)
-                        {
-                            final Object bb = s.popAccumulator();
-                            final Object[] d = s.accumulator.data();
-                            final int p = s.accumulator.pos()-1;
-                            d[p] = op.op.apply(d[p],bb);
-                            return null;
-                        }
-                    },
-                    "binOp "+o.value()
-                );
-                --ctx.accPos;
-            }
+            skip(ctx.tokens,TokenType.RPAREN,TokenType.LPAREN);
+            return false;
         }
-        if(i != 0)
+        
+        // ThenStmt
+        final BlockBuilder start = ctx.bb;
+        // start -> then
+        --ctx.accPos; start.branch(true,ctx.bbList.size());
+        ctx.bbList.add(ctx.bb = ctx.createBB("if.then"));
+        boolean flag = parseStmt(ctx,ret,false,true) != Status.BAD
+                       && c != null;
+        
+        int toElseOrEnd = ctx.bbList.size();
+        // start -> (else|end)
+        start.branch(false,toElseOrEnd);
+        
+        // ElseStmt
+        if(ctx.tokens.peekType(0) == TokenType.ELSE)
         {
-            ctx.reporter.report(first.line,"Invalid expression");
-            return null;
+            final BlockBuilder tend = ctx.bb;
+            ctx.bbList.add(ctx.bb = ctx.createBB("if.else"));
+            ctx.tokens.next(); // Eat 'else'.
+            flag = parseStmt(ctx,ret,false,true) != Status.BAD
+                   && flag;
+            /*/
+            The line immediately after this if statement simply sets
+            the last block's branch to the index of the 'end' block.
+            Since there is an else statement, the end block has moved.
+            /*/
+            toElseOrEnd = ctx.bbList.size();
+            /*/
+            ctx.bb is set to the 'then' or 'else' blocks depending on
+            whether there was an else statement, so the end of the
+            'then' branch must be updated here.
+            /*/
+            // then -> end
+            tend.branch(toElseOrEnd);
         }
-        return I[0];
-    }
-    /**
-     * Evaluates a medium-precedence expression.
-     *
-     * <pre>MediumPrecedence := HighPrecedence [MathExpr]</pre>
-     *
-     * @see Script#highPrecedence(Context)
-     * @see Script#math(Context,Instruction)
-     */
-    private static Instruction mediumPrecedence(final Context ctx) throws ScriptException
-    {
-        // Get a high-precedence expression.
-        final Instruction i = highPrecedence(ctx);
-        if(i == null) return null;
-        // Parse binary operator, if necessary.
-        return precedence(nonEOF(ItrMode.peek,ctx.tokens,ctx.reporter).type()) != (byte)-1
-            ? math(ctx,i)
-            : i;
+        // (then|else) -> end
+        ctx.bb.branch(toElseOrEnd);
+        
+        ctx.bbList.add(ctx.bb = ctx.createBB("if.end"));
+        return flag;
     }
     /**
-     * Evaluates a ternary conditional operator.
+     * Evaluates a for-loop statement.
      *
-     * <pre>TernaryExpr := '?' Expr ':' LowPrecedence</pre>
+     * <pre>ForStmt := 'for' '(' (((DeclOrExprStmt|';') [Expr] ';' [Expr {, Expr}])|(['const'] Name ':' Expr)) ')' Stmt</pre>
      *
+     * @see Script#parseDeclOrExprStmt(Context)
      * @see Script#parseExpr(Context)
-     * @see Script#lowPrecedence(Context)
+     * @see Script#parseStmt(Context,Type,boolean,boolean)
      */
-    private static Instruction ternary(final Context ctx,final Instruction condition) throws ScriptException
+    private static boolean parseFor(final Context ctx,final Type ret) throws ScriptException
     {
-        if(condition != null && matches(ItrMode.peek,ctx.tokens,TokenType.CONDITION))
+        // Assume 'for' already eaten.
+        final int line = ctx.tokens.peek(-1).line();
+        if(mismatch(ItrMode.next,ctx.tokens,ctx.reporter,TokenType.LPAREN)) return false;
+        final boolean isForEach;
         {
-            // Eat '?'.
-            final int line = ctx.tokens.next().line();
-            
-            // Eat true branch.
-            final BlockBuilder start = ctx.bb;
-            // start -> then
-            --ctx.accPos; start.branch(true,ctx.bbList.size());
-            ctx.bbList.add(ctx.bb = ctx.createBB("ternary.then"));
-            final Instruction t = parseExpr(ctx);
-            if(mismatch(ItrMode.peek,ctx.tokens,ctx.reporter,TokenType.COLON))
+            final int p = ctx.tokens.pos();
+            // Check for "[const] name :" because that pattern cannot appear in normal for loops immediately after
+            // the opening parenthesis.
+            TokenType t = nonEOF(ItrMode.next,ctx.tokens,ctx.reporter).type();
+            if(t == TokenType.CONST) t = nonEOF(ItrMode.next,ctx.tokens,ctx.reporter).type();
+            isForEach = t == TokenType.ID && nonEOF(ItrMode.next,ctx.tokens,ctx.reporter).type() == TokenType.COLON;
+            ctx.tokens.pos(p);
+        }
+        if(isForEach)
+        {
+            // for([const] name : list) body
+            final boolean isConst = chkConst(ctx.tokens);
+            final Token e = eat(ItrMode.next,ctx.tokens,ctx.reporter,TokenType.ID); // Guaranteed not EOF by isForEach.
+            if(e.type() != TokenType.ID)
             {
-                ctx.bb = start;
-                return null;
+                skip(ctx.tokens,TokenType.RPAREN,TokenType.LPAREN);
+                return false;
             }
-            ctx.tokens.next(); // Eat ':'.
-            final BlockBuilder tend = ctx.bb;
-            
-            // Eat false branch.
-            // start -> else
-            start.branch(false,ctx.bbList.size());
-            ctx.bbList.add(ctx.bb = ctx.createBB("ternary.else"));
-            final Instruction f = lowPrecedence(ctx);
-            
-            final int ei = ctx.bbList.size();
-            tend.branch(ei);   // then -> end
-            ctx.bb.branch(ei); // else -> end
-            ctx.bbList.add(ctx.bb = ctx.createBB("ternary.end"));
+            ctx.tokens.next(); // Eat ':', guaranteed by isForEach.
             
-            if(t == null || f == null) return null;
-            if(!t.type.equals(f.type))
+            // Parse list expression.
+            final Instruction l = parseExpr(ctx);
+            if(l == null)
             {
+                skip(ctx.tokens,TokenType.RPAREN,TokenType.LPAREN);
+                return false;
+            }
+            boolean flag = l.type.base != BaseType.LIST || l.type.subType.base == BaseType.VOID;
+            if(flag)
                 ctx.reporter.report
                 (
-                    line,
-                    "Expressions in ternary operator have different types: "+
-                    t.type+" and "+f.type
+                    l.line,
+                    "For-each construct cannot be used on type "+l.type
                 );
-                return null;
+            
+            // Set up loop scope.
+            final String itrName = e.value();
+            if(mismatch(ItrMode.next,ctx.tokens,ctx.reporter,TokenType.RPAREN))
+            {
+                skip(ctx.tokens,TokenType.RPAREN,TokenType.LPAREN);
+                return false;
             }
-            // Subtract one from the accumulator, since only one branch will be taken.
+            scopeManip(ctx,line,true);
+            final ConstableType ct = Types.constableType(l.type.subType,isConst);
+            ctx.sc.putField(itrName,ct);
+            // The iterator is kept in the loop's scope under a name which cannot be declared by scripts, so the
+            // same loop can run in several scopes at once.
+            emit(ctx,Op.FOR_INIT,l.line,() -> "declForItr "+ct+','+itrName,ct,itrName);
+            --ctx.accPos;
+            
+            // cond = (name : list)
+            final int toCond = ctx.bbList.size();
+            ctx.bb.branch(toCond);
+            ctx.bbList.add(ctx.bb = ctx.createBB("forEach.cond"));
+            emit(ctx,Op.FOR_HAS_NEXT,l.line,() -> "forHasNext");
+            ++ctx.accPos;
+            
+            // body
+            final int toBody = ctx.bbList.size();
+            final BlockBuilder endOfCond = ctx.bb;
+            // cond -> body
+            --ctx.accPos; endOfCond.branch(true,toBody);
+            ctx.bbList.add(ctx.bb = ctx.createBB("forEach.body"));
+            ctx.sc.enterLoop();
+            emit(ctx,Op.FOR_NEXT,l.line,() -> "forItrNext",itrName);
+            if(parseStmt(ctx,ret,false,true) == Status.BAD)
+            {
+                scopeManip(ctx,l.line,false);
+                flag = true;
+            }
+            final List<Integer>[] cflow = ctx.sc.exitLoop();
+            // body -> cond
+            ctx.bb.branch(toCond);
+            final int toEnd = ctx.bbList.size();
+            // cond -> end
+            endOfCond.branch(false,toEnd);
+            ctx.bbList.add(ctx.bb = ctx.createBB("forEach.end"));
+            
+            // Direct all control flow to the correct places.
+            for(final int bb : cflow[0]) // break
+                ctx.bbList.get(bb).branch(toEnd);
+            for(final int bb : cflow[1]) // continue
+                ctx.bbList.get(bb).branch(toCond);
+            
+            scopeManip(ctx,ctx.tokens.peek(-1).line(),false);
+            return !flag;
+        }
+        // for([init] ; [cond] ; [upd]) body
+        scopeManip(ctx,line,true);
+        boolean flag = true;
+        
+        // init
+        if(matches(ItrMode.peek,ctx.tokens,TokenType.SEMICOLON))
+            ctx.tokens.next(); // Eat ';'.
+        else
+        {
+            final boolean hadFX = ctx.sideEffects;
+            ctx.sideEffects = false;
+            flag = parseDeclOrExprStmt(ctx);
+            // Ignore side effects.
+            if(ctx.sideEffects) --ctx.accPos;
+            ctx.sideEffects = hadFX;
+        }
+        final BlockBuilder endOfStart = ctx.bb;
+        
+        // cond
+        final BlockBuilder endOfCond;
+        final int toCond;
+        if(matches(ItrMode.peek,ctx.tokens,TokenType.SEMICOLON))
+        {
+            toCond = -1;
+            ctx.tokens.next(); // Eat ';'.
+            endOfCond = null;
+        }
+        else
+        {
+            toCond = ctx.bbList.size();
+            ctx.bbList.add(ctx.bb = ctx.createBB("for.cond"));
+            flag = parseExpr(ctx) != null &&
+                   !mismatch(ItrMode.next,ctx.tokens,ctx.reporter,TokenType.SEMICOLON) &&
+                   flag; // No short circuit so that the tokens get eaten.
+            endOfCond = ctx.bb;
+        }
+        
+        // upd
+        final BlockBuilder endOfUpd;
+        final int toBody,toBodyOrCond,fromBody;
+        if(matches(ItrMode.peek,ctx.tokens,TokenType.RPAREN))
+        {
+            endOfUpd = null;
+            toBody = ctx.bbList.size();
+            fromBody = toBodyOrCond = toCond == -1? toBody : toCond;
+            ctx.tokens.next(); // Eat ')'.
+        }
+        else
+        {
+            fromBody = ctx.bbList.size();
+            ctx.bbList.add(ctx.bb = ctx.createBB("for.upd"));
+            
+            // Parse comma-separated expressions.
+            final boolean hadFX = ctx.sideEffects;
+            ctx.sideEffects = false;
+            do
+            {
+                flag = parseExpr(ctx) != null && flag;
+                // Ignore side effects.
+                if(ctx.sideEffects)
+                {
+                    ctx.sideEffects = false;
+                    --ctx.accPos;
+                }
+            }
+            while(matches(ItrMode.next,ctx.tokens,TokenType.COMMA));
+            ctx.sideEffects = hadFX;
+            // Ensure loop broke on a closing parenthesis.
+            flag = flag && !mismatch(ItrMode.prev,ctx.tokens,ctx.reporter,TokenType.RPAREN);
+            
+            toBody = ctx.bbList.size();
+            toBodyOrCond = toCond == -1? toBody : toCond;
+            // upd -> (body|cond)
+            (endOfUpd = ctx.bb).branch(toBodyOrCond);
+        }
+        // start -> (body|cond)
+        endOfStart.branch(toBodyOrCond);
+        
+        // body
+        // (upd|body|cond) -> body
+        (endOfCond == null? endOfUpd == null? ctx.bb : endOfUpd : endOfCond).branch(true,toBody);
+        ctx.bbList.add(ctx.bb = ctx.createBB("for.body"));
+        ctx.sc.enterLoop();
+        flag = parseStmt(ctx,ret,false,true) != Status.BAD && flag;
+        final List<Integer>[] cflow = ctx.sc.exitLoop();
+        
+        final int toEnd = ctx.bbList.size();
+        // body -> (upd|body|cond)
+        ctx.bb.branch(fromBody);
+        if(endOfCond != null)
+        {
+            // cond -> end
             --ctx.accPos;
-            // Return dummy instruction. The instruction does not need to be added
-            // to the block since both branches' instructions already push their
-            // results to the stack.
-            ctx.bb.dummyT = t.type;
-            return new Instruction(line,t.type,t.isValueType && f.isValueType)
-            {
-                @Override Object exec(final RuntimeScope s) {return null;}
-            };
+            endOfCond.branch(false,toEnd);
         }
-        return condition;
+        ctx.bbList.add(ctx.bb = ctx.createBB("for.end"));
+    
+        // Direct all control flow to the correct places.
+        for(final int bb : cflow[0]) // break
+            ctx.bbList.get(bb).branch(toEnd);
+        for(final int bb : cflow[1]) // continue
+            ctx.bbList.get(bb).branch(fromBody);
+        
+        scopeManip(ctx,ctx.tokens.peek(-1).line(),false);
+        if(flag) return true;
+        skip(ctx.tokens,TokenType.RPAREN,TokenType.LPAREN);
+        return false;
     }
     /**
-     * Evaluates a low-precedence expression.
+     * Evaluates a while-loop statement.
      *
-     * <pre>LowPrecedence := MediumPrecedence [TernaryExpr]</pre>
+     * <pre>WhileStmt := 'while' '(' Expr ')' Stmt</pre>
      *
-     * @see Script#mediumPrecedence(Context)
-     * @see Script#ternary(Context,Instruction)
+     * @see Script#parseExpr(Context)
+     * @see Script#parseStmt(Context,Type,boolean,boolean)
      */
-    private static Instruction lowPrecedence(final Context ctx) throws ScriptException
+    private static boolean parseWhile(final Context ctx,final Type ret) throws ScriptException
     {
-        // Get medium-precedence expression.
-        final Instruction i = mediumPrecedence(ctx);
-        if(i == null) return null;
-        // Parse ternary expression if necessary.
-        return matches(ItrMode.peek,ctx.tokens,TokenType.CONDITION)
-            ? ternary(ctx,i)
-            : i;
+        // Assume 'while' already eaten.
+        if(mismatch(ItrMode.next,ctx.tokens,ctx.reporter,TokenType.LPAREN)) return false;
+        // while( cond ) body
+        
+        // cond
+        final int toCond = ctx.bbList.size();
+        // start -> cond
+        ctx.bb.branch(toCond);
+        ctx.bbList.add(ctx.bb = ctx.createBB("while.cond"));
+        final Instruction c = parseExpr(ctx);
+        if(c == null || mismatch(ItrMode.next,ctx.tokens,ctx.reporter,TokenType.RPAREN))
+        {
+            skip(ctx.tokens,TokenType.RPAREN,TokenType.LPAREN);
+            return false;
+        }
+        
+        // body
+        final BlockBuilder endOfCond = ctx.bb;
+        // cond -> body
+        --ctx.accPos; endOfCond.branch(true,ctx.bbList.size());
+        ctx.bbList.add(ctx.bb = ctx.createBB("while.body"));
+        ctx.sc.enterLoop();
+        final boolean flag = parseStmt(ctx,ret,false,true) == Status.BAD;
+        final List<Integer>[] cflow = ctx.sc.exitLoop();
+        
+        final int toEnd = ctx.bbList.size();
+        // body -> cond
+        ctx.bb.branch(toCond);
+        // cond -> end
+        endOfCond.branch(false,toEnd);
+        
+        // Direct all control flow to the correct places.
+        for(final int bb : cflow[0]) // break
+            ctx.bbList.get(bb).branch(toEnd);
+        for(final int bb : cflow[1]) // continue
+            ctx.bbList.get(bb).branch(toCond);
+        
+        ctx.bbList.add(ctx.bb = ctx.createBB("while.end"));
+        return !flag;
     }
     /**
-     * Evaluates an assignment expression.
+     * Evaluates a do-while loop statement.
      *
-     * <pre>Assignment := ('+='|'&='|'/='|'&gt&gt&gt='|'&lt&lt='|'%='|'*='|'|='|'&gt&gt='|'-='|'^='|'=') Expr</pre>
+     * <pre>DoWhileStmt := 'do' Stmt 'while' '(' Expr ')'</pre>
      *
-     * @see Script#lowPrecedence(Context)
      * @see Script#parseExpr(Context)
+     * @see Script#parseStmt(Context,Type,boolean,boolean)
      */
-    private static Instruction assignment(final Context ctx,final Instruction lhs) throws ScriptException
+    private static boolean parseDo(final Context ctx,final Type ret) throws ScriptException
     {
-        return lhs == null? null : switch(nonEOF(ItrMode.peek,ctx.tokens,ctx.reporter).type())
+        // Assume 'do' already eaten.
+        // do body while( cond );
+        
+        // body
+        final int toBody = ctx.bbList.size();
+        // start -> body
+        ctx.bb.branch(toBody);
+        ctx.bbList.add(ctx.bb = ctx.createBB("do.body"));
+        ctx.sc.enterLoop();
+        final boolean flag = parseStmt(ctx,ret,false,true) == Status.BAD;
+        final List<Integer>[] cflow = ctx.sc.exitLoop();
+        if(mismatch(ItrMode.next,ctx.tokens,ctx.reporter,TokenType.WHILE) ||
+           mismatch(ItrMode.next,ctx.tokens,ctx.reporter,TokenType.LPAREN))
+            return false;
+        
+        // cond
+        final Instruction c = parseExpr(ctx);
+        if(c == null || mismatch(ItrMode.next,ctx.tokens,ctx.reporter,TokenType.RPAREN))
         {
-            case ADDEQ,ANDEQ,ASSIGN,
-                 DIVEQ,LRSHEQ,LSHEQ,
-                 MODEQ,MULEQ,OREQ,
-                 RSHEQ,SUBEQ,XOREQ ->
-            {
-                if(!lhs.isValueType) ctx.reporter.report(lhs.line,"Expression yields a literal value");
-                final int line;
-                final TokenType tt;
-                {
-                    final Token t = ctx.tokens.next();
-                    line = t.line();
-                    tt = t.type();
-                }
-                final Instruction rhs = parseExpr(ctx);
-                if(rhs != null && lhs.isValueType)
-                {
-                    final Type ct = lhs.type;
-                    if(tt == TokenType.ASSIGN)
-                    {
-                        if(convert(ctx,rhs.type,ct,line))
-                        {
-                            final String module = ctx.module;
-                            final Instruction i = new Instruction(line,ct,true)
-                            {
-                                @Override
-                                Object exec(final RuntimeScope s)
-                                {
-                                    final Object o = resolve(s.popAccumulator());
-                                    final Value v = (Value)s.accumulator.top();
-                                    if(v.type.isConst && v.value != null)
-                                        throw new ScriptRuntimeException(line,module,"Re-definition of const variable");
-                                    v.value = o;
-                                    return null;
-                                }
-                            };
-                            ctx.bb.instruction(i,"assign");
-                            --ctx.accPos;
-                            ctx.sideEffects = true;
-                            yield i;
-                        }
-                        ctx.sideEffects = true;
-                        yield null;
-                    }
-                    final Operation op = getOp
-                    (
-                        lhs.type,rhs.type,
-                        switch(tt)
-                        {
-                            case ADDEQ  -> TokenType.ADD;
-                            case ANDEQ  -> TokenType.BITAND;
-                            case DIVEQ  -> TokenType.DIV;
-                            case LRSHEQ -> TokenType.LRSH;
-                            case LSHEQ  -> TokenType.LSH;
-                            case MODEQ  -> TokenType.MOD;
-                            case MULEQ  -> TokenType.MUL;
-                            case OREQ   -> TokenType.BITOR;
-                            case RSHEQ  -> TokenType.RSH;
-                            case SUBEQ  -> TokenType.SUB;
-                            default     -> TokenType.BITXOR; // XOREQ
-                        },
-                        ctx,line
-                    );
-                    if(op != null)
-                    {
-                        // Execute the operator, convert the result into the left operand's type,
-                        // then store the result.
-                        {
-                            final BiFunction<Object,Object,Object> o = op.op;
-                            ctx.bb.instruction
-                            (
-                                new Instruction(line,null)
-                                {
-                                    @Override
-                                    Object exec(final RuntimeScope s)
-                                    {
-                                        final Object[] d = s.accumulator.data();
-                                        final int p = s.accumulator.pos() - 1;
-                                        d[p] = o.apply(((Value)d[p-1]).value,d[p]);
-                                        return null;
-                                    }
-                                },
-                                "math "+tt
-                            );
-                        }
-                        if(convert(ctx,rhs.type,lhs.type,line))
-                        {
-                            final String module = ctx.module;
-                            final Instruction i = new Instruction(line,lhs.type,true)
-                            {
-                                @Override
-                                Object exec(final RuntimeScope s)
-                                {
-                                    final Object o = s.popAccumulator();
-                                    final Value v = (Value)s.accumulator.top();
-                                    if(v.type.isConst && v.value != null)
-                                        throw new ScriptRuntimeException(line,module,"Re-definition of const variable");
-                                    v.value = o;
-                                    return null;
-                                }
-                            };
-                            ctx.bb.instruction(i,"assign");
-                            --ctx.accPos;
-                            ctx.sideEffects = true;
-                            yield i;
-                        }
-                    }
-                    ctx.sideEffects = true;
-                    yield null;
-                }
-                ctx.sideEffects = true;
-                yield null;
-            }
-            default -> lhs;
-        };
+            skip(ctx.tokens,TokenType.RPAREN,TokenType.LPAREN);
+            return false;
+        }
+        if(mismatch(ItrMode.next,ctx.tokens,ctx.reporter,TokenType.SEMICOLON)) return false;
+        
+        final int toEnd = ctx.bbList.size();
+        // body -> cond -> (body|end)
+        --ctx.accPos;
+        ctx.bb.branch( true,toBody);
+        ctx.bb.branch(false,toEnd);
+        ctx.bbList.add(ctx.bb = ctx.createBB("do.end"));
+    
+        // Direct all control flow to the correct places.
+        for(final int bb : cflow[0]) // break
+            ctx.bbList.get(bb).branch(toEnd);
+        for(final int bb : cflow[1]) // continue
+            ctx.bbList.get(bb).branch(toBody);
+        
+        return !flag;
     }
     /**
-     * Evaluates an expression.
+     * Evaluates a return statement.
      *
-     * <pre>Expr := LowPrecedence [Assignment]</pre>
+     * <pre>RetStmt := 'return' [Expr] ';'</pre>
      *
-     * @see Script#lowPrecedence(Context)
-     * @see Script#assignment(Context,Instruction)
+     * @see Script#parseExpr(Context)
      */
-    private static Instruction parseExpr(final Context ctx) throws ScriptException
-    {
-        // Get low-precedence expression.
-        final Instruction i = lowPrecedence(ctx);
-        if(i == null) return null;
-        // Parse assignment expression if necessary
-        return matches(ItrMode.peek,ctx.tokens,
-                       TokenType.ASSIGN,TokenType.ADDEQ,TokenType.ANDEQ,
-                       TokenType.DIVEQ,TokenType.LRSHEQ,TokenType.LSHEQ,
-                       TokenType.MODEQ,TokenType.MULEQ,TokenType.OREQ,
-                       TokenType.RSHEQ,TokenType.SUBEQ,TokenType.XOREQ)
-            ? assignment(ctx,i)
-            : i;
-    }
-    
-    /** Dummy return value for control flow. */
-    static final Object RET_VOID = new Object();
-    
-    /*/
-    By convention, statement parsing functions return true/false to indicate success and failure. All failures
-    are reported in the functions that failed. It is up to the calling functions to determine if they can
-    continue executing and perhaps catch more unrelated errors.
-    /*/
-    
-    /** Pushes/pops the runtime and compile-time scopes. */
-    private static void scopeManip(final Context ctx,final int line,final boolean push)
+    private static boolean parseRet(final Context ctx,final Type ret) throws ScriptException
     {
-        if(push)
+        // Assume 'return' already eaten.
+        final int line = ctx.tokens.peek(-1).line();
+        // return [Expr] ;
+        if(ctx.deadCode == (byte)0) ctx.deadCode = (byte)1;
+        if(matches(ItrMode.peek,ctx.tokens,TokenType.SEMICOLON))
         {
-            ctx.sc.pushScope();
-            ctx.bb.instruction
+            emit(ctx,Op.RETURN_VOID,line,() -> "return "+Type.VOID,ret);
+            // Eat ';'
+            ctx.tokens.next();
+            if(Type.VOID.equals(ret)) return true;
+            ctx.reporter.report
             (
-                new Instruction(line,null)
-                {
-                    @Override
-                    Object exec(final RuntimeScope s)
-                    {
-                        s.pushScope();
-                        return null;
-                    }
-                },
-                "pushScope"
+                line,
+                "Expected return type "+ret+
+                ", got type "+Type.VOID
             );
         }
         else
-        {
-            for(final String s : ctx.sc.popScope().modules)
-                ctx.imports.computeIfPresent(s,(a,b) -> b != 1? b - 1 : null);
-            ctx.bb.instruction
-            (
-                new Instruction(line,null)
-                {
-                    @Override
-                    Object exec(final RuntimeScope s)
-                    {
-                        s.popScope();
-                        return null;
-                    }
-                },
-                "popScope"
-            );
+        {
+            final Instruction i = parseExpr(ctx);
+            // Eat ';'
+            ctx.tokens.next();
+            emit(ctx,Op.RETURN,line,() -> "return "+ret,ret);
+            --ctx.accPos;
+            if(i != null)
+            {
+                if(i.type.equals(ret)) return true;
+                ctx.reporter.report
+                (
+                    i.line,
+                    "Expected return type "+ret+
+                    ", got type "+i.type
+                );
+            }
         }
+        return false;
     }
     /**
-     * Evaluates a scoped code block.
+     * Evaluates a throw statement.
      *
-     * <pre>BlockStmt := '{' {Stmt} '}'</pre>
+     * <pre>ThrowStmt := 'throw' [Expr] ';'</pre>
      *
-     * @see Script#parseStmt(Context,Type,boolean,boolean)
+     * @see Script#parseExpr(Context)
      */
-    private static boolean parseBlock(final Context ctx,final Type ret,final boolean top) throws ScriptException
+    private static boolean parseThrow(final Context ctx) throws ScriptException
     {
-        // Assume '\{' already eaten.
-        final int l = ctx.tokens.peek(-1).line();
-        if(matches(ItrMode.peek,ctx.tokens,TokenType.RBRACE))
+        // Assume 'throw' already eaten.
+        final int line = ctx.tokens.peek(-1).line();
+        // throw [Expr] ;
+    
+        if(ctx.deadCode == (byte)0) ctx.deadCode = (byte)1;
+        if(matches(ItrMode.peek,ctx.tokens,TokenType.SEMICOLON))
         {
-            ctx.tokens.next();
-            if(top) ctx.bb.ensureReturn(ctx.reporter,ret);
+            emit(ctx,Op.THROW_NULL,line,() -> "throw [null]");
             return true;
         }
-        // Each block gets its own scope.
-        scopeManip(ctx,l,true);
-        final boolean st = parseStmts(ctx,ret,true);
-        if(top) ctx.bb.ensureReturn(ctx.reporter,ret);
-        final int l2;
-        if(st)
+        
+        // Expr
+        final Instruction i = parseExpr(ctx);
+        if(i == null || mismatch(ItrMode.next,ctx.tokens,ctx.reporter,TokenType.SEMICOLON))
         {
-            final Token t = ctx.tokens.peek(-1);
-            assert t.type() == TokenType.RBRACE;
-            // The above assertion is true calling 'parseStmts' with the 'block' argument set
-            // to true will yield an error if the last token was not a closing brace. If this
-            // isn't the case, then there is a bug in the compiler.
-            l2 = t.line();
+            skip(ctx.tokens,TokenType.SEMICOLON,null);
+            return false;
         }
-        else l2 = l;
-        scopeManip(ctx,l2,false);
-        return st;
+        final Type t = i.type;
+        
+        emit(ctx,Op.THROW,line,() -> "throw",t);
+        --ctx.accPos;
+        return true;
     }
     /**
-     * Evaluates an if-then-else statement.
-     *
-     * <pre>IfStmt := 'if' '(' Expr ')' Stmt ['else' Stmt]</pre>
+     * Evaluates a break statement.
      *
-     * @see Script#parseExpr(Context)
-     * @see Script#parseStmt(Context,Type,boolean,boolean)
+     * <pre>BreakStmt := 'break' ';'</pre>
      */
-    private static boolean parseIf(final Context ctx,final Type ret) throws ScriptException
+    private static boolean parseBreak(final Context ctx)
     {
-        // Assume 'if' already eaten.
-        // if( Condition ) ThenStmt [else ElseStmt]
+        // Assume 'break' already eaten.
+        final int line = ctx.tokens.peek(-1).line();
+        // break ;
+    
+        if(ctx.deadCode == (byte)0) ctx.deadCode = (byte)1;
+        if(mismatch(ItrMode.next,ctx.tokens,ctx.reporter,TokenType.SEMICOLON))
+            skip(ctx.tokens,TokenType.SEMICOLON,null);
         
-        if(mismatch(ItrMode.next,ctx.tokens,ctx.reporter,TokenType.LPAREN)) return false;
-        final Instruction c = parseExpr(ctx); // Condition
-        if(mismatch(ItrMode.next,ctx.tokens,ctx.reporter,TokenType.RPAREN))
+        if(ctx.sc.cflow.empty())
         {
-            skip(ctx.tokens,TokenType.RPAREN,TokenType.LPAREN);
+            ctx.reporter.report(line,"Break statement outside of loop");
             return false;
         }
-        
-        // ThenStmt
-        final BlockBuilder start = ctx.bb;
-        // start -> then
-        --ctx.accPos; start.branch(true,ctx.bbList.size());
-        ctx.bbList.add(ctx.bb = ctx.createBB("if.then"));
-        boolean flag = parseStmt(ctx,ret,false,true) != Status.BAD
-                       && c != null;
-
-        int toElseOrEnd = ctx.bbList.size();
-        // start -> (else|end)
-        start.branch(false,toElseOrEnd);
-
-        // ElseStmt
-        if(ctx.tokens.peek().type() == TokenType.ELSE)
+        ctx.sc.cflow.top()[0].add(ctx.bbList.size()-1);
+        return true;
+    }
+    /**
+     * Evaluates a continue statement.
+     *
+     * <pre>ContinueStmt := 'continue' ';'</pre>
+     */
+    private static boolean parseContinue(final Context ctx)
+    {
+        // Assume 'continue' already eaten.
+        final int line = ctx.tokens.peek(-1).line();
+        // break ;
+    
+        if(ctx.deadCode == (byte)0) ctx.deadCode = (byte)1;
+        if(mismatch(ItrMode.next,ctx.tokens,ctx.reporter,TokenType.SEMICOLON))
         {
-            final BlockBuilder tend = ctx.bb;
-            ctx.bbList.add(ctx.bb = ctx.createBB("if.else"));
-            ctx.tokens.next(); // Eat 'else'.
-            flag = parseStmt(ctx,ret,false,true) != Status.BAD
-                   && flag;
-            /*/
-            The line immediately after this if statement simply sets
-            the last block's branch to the index of the 'end' block.
-            Since there is an else statement, the end block has moved.
-            /*/
-            toElseOrEnd = ctx.bbList.size();
-            /*/
-            ctx.bb is set to the 'then' or 'else' blocks depending on
-            whether there was an else statement, so the end of the
-            'then' branch must be updated here.
-            /*/
-            // then -> end
-            tend.branch(toElseOrEnd);
+            skip(ctx.tokens,TokenType.SEMICOLON,null);
+            return false;
         }
-        // (then|else) -> end
-        ctx.bb.branch(toElseOrEnd);
         
-        ctx.bbList.add(ctx.bb = ctx.createBB("if.end"));
-        return flag;
+        if(ctx.sc.cflow.empty())
+        {
+            ctx.reporter.report(line,"Continue statement outside of loop");
+            return false;
+        }
+        ctx.sc.cflow.top()[1].add(ctx.bbList.size()-1);
+        return true;
     }
     /**
-     * Evaluates a for-loop statement.
+     * Evaluates an expression statement.
      *
-     * <pre>ForStmt := 'for' '(' (((DeclOrExprStmt|';') [Expr] ';' [Expr {, Expr}])|(['const'] Name ':' Expr)) ')' Stmt</pre>
+     * <pre>ExprStmt := Expr ';'</pre>
+     *
+     * @see Script#parseExpr(Context)
+     * @see Script#parseDeclOrExprStmt(Context)
+     */
+    private static boolean parseExprStmt(final Context ctx) throws ScriptException
+    {
+        // Expr ;
+        return parseExpr(ctx) != null && !mismatch(ItrMode.next,ctx.tokens,ctx.reporter,TokenType.SEMICOLON);
+    }
+    /**
+     * Evaluates a variable declaration statement.
      *
+     * <pre>DeclStmt := ['const'] Type Name ['=' Expr] {',' Name ['=' Expr]} ';'</pre>
+     *
+     * @see Script#type(Context)
      * @see Script#parseDeclOrExprStmt(Context)
      * @see Script#parseExpr(Context)
-     * @see Script#parseStmt(Context,Type,boolean,boolean)
      */
-    private static boolean parseFor(final Context ctx,final Type ret) throws ScriptException
+    private static boolean parseDeclStmt(final Context ctx) throws ScriptException
     {
-        // Assume 'for' already eaten.
-        final int line = ctx.tokens.peek(-1).line();
-        if(mismatch(ItrMode.next,ctx.tokens,ctx.reporter,TokenType.LPAREN)) return false;
-        final boolean isForEach;
-        {
-            final int p = ctx.tokens.pos();
-            // Check for "[const] name :" because that pattern cannot appear in normal for loops immediately after
-            // the opening parenthesis.
-            TokenType t = nonEOF(ItrMode.next,ctx.tokens,ctx.reporter).type();
-            if(t == TokenType.CONST) t = nonEOF(ItrMode.next,ctx.tokens,ctx.reporter).type();
-            isForEach = t == TokenType.ID && nonEOF(ItrMode.next,ctx.tokens,ctx.reporter).type() == TokenType.COLON;
-            ctx.tokens.pos(p);
-        }
-        if(isForEach)
+        // [const] Type Name [= Expr] {, Name [= Expr]} ;
+        final int line = nonEOF(ItrMode.peek,ctx.tokens,ctx.reporter).line();
+    
+        // Type
+        final boolean isConst = chkConst(ctx.tokens);
+        final Type ct = type(ctx);
+        if(ct == null) return false;
+        final ConstableType cct = Types.constableType(ct,isConst);
+        
+        final String[] n;
+        final boolean[] b;
+        final int ps;
+        boolean flag = true;
         {
-            // for([const] name : list) body
-            final boolean isConst = chkConst(ctx.tokens);
-            final Token e = eat(ItrMode.next,ctx.tokens,ctx.reporter,TokenType.ID); // Guaranteed not EOF by isForEach.
-            if(e.type() != TokenType.ID)
-            {
-                skip(ctx.tokens,TokenType.RPAREN,TokenType.LPAREN);
-                return false;
-            }
-            ctx.tokens.next(); // Eat ':', guaranteed by isForEach.
-            
-            // Parse list expression.
-            final Instruction l = parseExpr(ctx);
-            if(l == null)
-            {
-                skip(ctx.tokens,TokenType.RPAREN,TokenType.LPAREN);
-                return false;
-            }
-            boolean flag = l.type.base != BaseType.LIST || l.type.subType.base == BaseType.VOID;
-            if(flag)
-                ctx.reporter.report
-                (
-                    l.line,
-                    "For-each construct cannot be used on type "+l.type
-                );
-            
-            // Set up loop scope.
-            final String itrName = e.value();
-            if(mismatch(ItrMode.next,ctx.tokens,ctx.reporter,TokenType.RPAREN))
+            record pair(String n,boolean i) {}
+            final ArrayList<pair> pairs = new ArrayList<>();
+            do
             {
-                skip(ctx.tokens,TokenType.RPAREN,TokenType.LPAREN);
-                return false;
-            }
-            scopeManip(ctx,line,true);
-            final ConstableType ct = Types.constableType(l.type.subType,isConst);
-            ctx.sc.putField(itrName,ct);
-            final Value field = new Value(ct,null),itr = new Value(null,null);
-            ctx.bb.instruction
-            (
-                new Instruction(l.line,null)
+                // Name
+                final Token t = eat(ItrMode.next,ctx.tokens,ctx.reporter,TokenType.ID);
+                if(t.type() != TokenType.ID)
                 {
-                    @Override
-                    Object exec(final RuntimeScope s)
-                    {
-                        s.putField(itrName,field);
-                        itr.value = listData(resolve(s.popAccumulator())).iterator();
-                        return null;
-                    }
-                },
-                "declForItr "+ct+','+itrName
-            );
-            --ctx.accPos;
-            
-            // cond = (name : list)
-            final int toCond = ctx.bbList.size();
-            ctx.bb.branch(toCond);
-            ctx.bbList.add(ctx.bb = ctx.createBB("forEach.cond"));
-            ctx.bb.instruction
-            (
-                new Instruction(l.line,Type.BOOL)
+                    skip(ctx.tokens,TokenType.SEMICOLON,null);
+                    return false;
+                }
+                if(ctx.sc.getStruct(t.value()) != null)
+                {
+                    ctx.reporter.report
+                    (
+                        t.line(),
+                        "Cannot use name '"+t.value()+
+                        "'; a struct with that name exists"
+                    );
+                    flag = false;
+                }
+                
+                // Expr
+                final boolean i = nonEOF(ItrMode.peek,ctx.tokens,ctx.reporter).type() == TokenType.ASSIGN;
+                if(i)
                 {
-                    @Override @SuppressWarnings("unchecked")
-                    Object exec(final RuntimeScope s)
-                    {
-                        s.pushAccumulator(((Iterator<Value>)itr.value).hasNext());
-                        return null;
-                    }
-                },
-                "forHasNext"
-            );
-            ++ctx.accPos;
-            
-            // body
-            final int toBody = ctx.bbList.size();
-            final BlockBuilder endOfCond = ctx.bb;
-            // cond -> body
-            --ctx.accPos; endOfCond.branch(true,toBody);
-            ctx.bbList.add(ctx.bb = ctx.createBB("forEach.body"));
-            ctx.sc.enterLoop();
-            ctx.bb.instruction
-            (
-                new Instruction(l.line,null)
+                    ctx.tokens.next(); // Eat '='.
+                    final Instruction e = parseExpr(ctx);
+                    flag = e != null && convert(ctx,e.type,ct,e.line) && flag;
+                }
+                if(mismatch(ItrMode.peek,ctx.tokens,ctx.reporter,TokenType.COMMA,TokenType.SEMICOLON))
                 {
-                    @Override @SuppressWarnings("unchecked")
-                    Object exec(final RuntimeScope s)
-                    {
-                        field.value = ((Iterator<Value>)itr.value).next().value;
-                        return null;
-                    }
-                },
-                "forItrNext"
-            );
-            if(parseStmt(ctx,ret,false,true) == Status.BAD)
-            {
-                scopeManip(ctx,l.line,false);
-                flag = true;
+                    skip(ctx.tokens,TokenType.SEMICOLON,null);
+                    return false;
+                }
+                
+                pairs.add(new pair(t.value(),i));
             }
-            final List<Integer>[] cflow = ctx.sc.exitLoop();
-            // body -> cond
-            ctx.bb.branch(toCond);
-            final int toEnd = ctx.bbList.size();
-            // cond -> end
-            endOfCond.branch(false,toEnd);
-            ctx.bbList.add(ctx.bb = ctx.createBB("forEach.end"));
-            
-            // Direct all control flow to the correct places.
-            for(final int bb : cflow[0]) // break
-                ctx.bbList.get(bb).branch(toEnd);
-            for(final int bb : cflow[1]) // continue
-                ctx.bbList.get(bb).branch(toCond);
+            while(!matches(ItrMode.next,ctx.tokens,TokenType.SEMICOLON));
             
-            scopeManip(ctx,ctx.tokens.peek(-1).line(),false);
-            return !flag;
-        }
-        // for([init] ; [cond] ; [upd]) body
-        scopeManip(ctx,line,true);
-        boolean flag = true;
-        
-        // init
-        if(matches(ItrMode.peek,ctx.tokens,TokenType.SEMICOLON))
-            ctx.tokens.next(); // Eat ';'.
-        else
-        {
-            final boolean hadFX = ctx.sideEffects;
-            ctx.sideEffects = false;
-            flag = parseDeclOrExprStmt(ctx);
-            // Ignore side effects.
-            if(ctx.sideEffects) --ctx.accPos;
-            ctx.sideEffects = hadFX;
+            ps = pairs.size();
+            n = new String[ps];
+            b = new boolean[ps];
+            int i = ps;
+            for(final pair p : pairs)
+            {
+                ctx.sc.putField(n[--i] = p.n,cct);
+                if(b[i] = p.i) --ctx.accPos;
+            }
         }
-        final BlockBuilder endOfStart = ctx.bb;
-        
-        // cond
-        final BlockBuilder endOfCond;
-        final int toCond;
-        if(matches(ItrMode.peek,ctx.tokens,TokenType.SEMICOLON))
+        emit(ctx,Op.DECL,line,() -> "decl "+cct+' '+String.join(",",n),cct,n,b);
+        return flag;
+    }
+    /**
+     * Evaluates a variable declaration or expression statement.
+     *
+     * <pre>DeclOrExprStmt := (DeclStmt|ExprStmt)</pre>
+     *
+     * @see Script#parseDeclStmt(Context)
+     * @see Script#parseExprStmt(Context)
+     */
+    private static boolean parseDeclOrExprStmt(final Context ctx) throws ScriptException
+    {
+        return switch(ctx.tokens.peekType(0))
         {
-            toCond = -1;
-            ctx.tokens.next(); // Eat ';'.
-            endOfCond = null;
-        }
-        else
+            case VOID,BOOL,INT,FLOAT,STR,FUNC,CONST -> parseDeclStmt(ctx);
+            case ID -> ctx.sc.getStruct(ctx.tokens.peek().value()) != null
+                           ? parseDeclStmt(ctx)
+                           : parseExprStmt(ctx);
+            default -> parseExprStmt(ctx);
+        };
+    }
+    /**
+     * Evaluates a structure declaration statement.
+     *
+     * <pre>StructDeclStmt := 'struct' StructName '{' [ArgList] '}'</pre>
+     *
+     * @see Script#type(Context)
+     */
+    private static boolean parseStructDecl(final Context ctx)
+    {
+        // Assume 'struct' already eaten.
+        final Token id = eat(ItrMode.next,ctx.tokens,ctx.reporter,TokenType.ID);
+        if(id.type() != TokenType.ID) return false;
+        final String name = id.value();
         {
-            toCond = ctx.bbList.size();
-            ctx.bbList.add(ctx.bb = ctx.createBB("for.cond"));
-            flag = parseExpr(ctx) != null &&
-                   !mismatch(ItrMode.next,ctx.tokens,ctx.reporter,TokenType.SEMICOLON) &&
-                   flag; // No short circuit so that the tokens get eaten.
-            endOfCond = ctx.bb;
+            final char chr = name.charAt(0);
+            if('Z' < chr || chr < 'A')
+                ctx.reporter.warn
+                (
+                    id.line(),
+                    "Struct name \""+name+"\" begins with " +
+                    "a character which is not capitalized " +
+                    "or not alphabetic (i.e. outside the " +
+                    "range A-Z). It is advisable to follow " +
+                    "this convention for readability."
+                );
         }
+        // struct Name \{ [Type Name {, Type Name }] \}
         
-        // upd
-        final BlockBuilder endOfUpd;
-        final int toBody,toBodyOrCond,fromBody;
-        if(matches(ItrMode.peek,ctx.tokens,TokenType.RPAREN))
-        {
-            endOfUpd = null;
-            toBody = ctx.bbList.size();
-            fromBody = toBodyOrCond = toCond == -1? toBody : toCond;
-            ctx.tokens.next(); // Eat ')'.
-        }
+        if(mismatch(ItrMode.next,ctx.tokens,ctx.reporter,TokenType.LBRACE)) return false;
+        final Map<String,ConstableType> fields = new HashMap<>();
+        if(matches(ItrMode.peek,ctx.tokens,TokenType.RBRACE)) ctx.tokens.next(); // Eat '\}'.
         else
         {
-            fromBody = ctx.bbList.size();
-            ctx.bbList.add(ctx.bb = ctx.createBB("for.upd"));
-            
-            // Parse comma-separated expressions.
-            final boolean hadFX = ctx.sideEffects;
-            ctx.sideEffects = false;
             do
             {
-                flag = parseExpr(ctx) != null && flag;
-                // Ignore side effects.
-                if(ctx.sideEffects)
+                final boolean isConst = chkConst(ctx.tokens);
+                final Type ct = type(ctx);
+                final Token n = eat(ItrMode.next,ctx.tokens,ctx.reporter,TokenType.ID);
+                if(n.type() != TokenType.ID)
                 {
-                    ctx.sideEffects = false;
-                    --ctx.accPos;
+                    skip(ctx.tokens,TokenType.RBRACE,TokenType.LBRACE);
+                    return false;
                 }
+                fields.put(n.value(),Types.constableType(ct,isConst));
             }
             while(matches(ItrMode.next,ctx.tokens,TokenType.COMMA));
-            ctx.sideEffects = hadFX;
-            // Ensure loop broke on a closing parenthesis.
-            flag = flag && !mismatch(ItrMode.prev,ctx.tokens,ctx.reporter,TokenType.RPAREN);
-            
-            toBody = ctx.bbList.size();
-            toBodyOrCond = toCond == -1? toBody : toCond;
-            // upd -> (body|cond)
-            (endOfUpd = ctx.bb).branch(toBodyOrCond);
-        }
-        // start -> (body|cond)
-        endOfStart.branch(toBodyOrCond);
-        
-        // body
-        // (upd|body|cond) -> body
-        (endOfCond == null? endOfUpd == null? ctx.bb : endOfUpd : endOfCond).branch(true,toBody);
-        ctx.bbList.add(ctx.bb = ctx.createBB("for.body"));
-        ctx.sc.enterLoop();
-        flag = parseStmt(ctx,ret,false,true) != Status.BAD && flag;
-        final List<Integer>[] cflow = ctx.sc.exitLoop();
-        
-        final int toEnd = ctx.bbList.size();
-        // body -> (upd|body|cond)
-        ctx.bb.branch(fromBody);
-        if(endOfCond != null)
-        {
-            // cond -> end
-            --ctx.accPos;
-            endOfCond.branch(false,toEnd);
+            // Ensure that the loop condition broke on a closing brace.
+            if(mismatch(ItrMode.prev,ctx.tokens,ctx.reporter,TokenType.RBRACE))
+            {
+                skip(ctx.tokens,TokenType.RBRACE,TokenType.LBRACE);
+                return false;
+            }
         }
-        ctx.bbList.add(ctx.bb = ctx.createBB("for.end"));
+        // Each declaration gets its own type, which is only reachable from the scopes and code that use it.
+        ctx.sc.putStruct(Types.structType(name,fields));
+        // The runtime does not need any scope information, since type safety can be evaluated
+        // at compile-time.
+        return true;
+    }
+    /**
+     * Base directory for imported scripts. The field is volatile in case the API user decides to change the directory
+     * on a different thread for whatever reason.
+     */
+    private static volatile Path IMPORTS_DIR = Path.of(System.getProperty("user.dir"));
+    /** Sets the base path for all scripts. */
+    public static void setImportsDir(Path path)
+    {
+        if(path == null) path = Path.of(System.getProperty("user.dir"));
+        IMPORTS_DIR = path;
+    }
+    public static Path getImportsDir() {return IMPORTS_DIR;}
+    /** The directory which compiled imports are cached in, or {@code null} if imports are not cached. */
+    private static volatile Path CACHE_DIR = null;
+    /**
+     * Sets the directory which compiled {@code .prgm} imports are cached in. Each cached script is stored with the
+     * digests of the sources of the scripts it imports, directly or transitively, and it is compiled again if any of
+     * them or its own source has changed.
+     *
+     * @param path The cache directory, or {@code null} to disable caching.
+     *
+     * @see IRCodec
+     */
+    public static void setCacheDir(final Path path) {CACHE_DIR = path;}
+    /** @return The directory which compiled imports are cached in, or {@code null} if imports are not cached. */
+    public static Path getCacheDir() {return CACHE_DIR;}
+    /**
+     * Options which control what a compiled script keeps.
+     *
+     * @param debugInfo Whether a debug name is kept for each instruction. The names are only used when the blocks are
+     *                  dumped for debugging, so turning them off makes compilation faster and compiled scripts
+     *                  smaller. Error messages only need the line of each instruction, which is always kept.
+     * @param keepIR    Whether the opcode and operands of each instruction are kept, so that the script can be encoded
+     *                  by {@linkplain IRCodec} and {@linkplain ModuleImage}. Scripts which are only executed don't
+     *                  need them.
+     *
+     * @see Script#compile(Reader,String,PrintStream,Options)
+     */
+    public record Options(boolean debugInfo,boolean keepIR)
+    {
+        /** The options used by {@linkplain Script#compile(Reader,String,PrintStream)} and for imported scripts. */
+        public static final Options DEFAULT = new Options(true,false);
+        /** Options for scripts which are only executed, which keep nothing but the compiled blocks. */
+        public static final Options RELEASE = new Options(false,false);
+    }
+    /** The options used for imported scripts which are added to the cache. */
+    private static final Options CACHED = new Options(Options.DEFAULT.debugInfo(),true);
+    /*/
+    A cached import is stored as the entries of the scripts it was compiled against, followed by its IR:
     
-        // Direct all control flow to the correct places.
-        for(final int bb : cflow[0]) // break
-            ctx.bbList.get(bb).branch(toEnd);
-        for(final int bb : cflow[1]) // continue
-            ctx.bbList.get(bb).branch(fromBody);
-        
-        scopeManip(ctx,ctx.tokens.peek(-1).line(),false);
-        if(flag) return true;
-        skip(ctx.tokens,TokenType.RPAREN,TokenType.LPAREN);
-        return false;
+        Cache := Count (Name:Str Digest:u8[32] Direct:u8)* IR
+    
+    The file is named after a hash of the IR version, the module name, and the source. The entries are every imported
+    script which the script depends on, with the digest of the source which each one was compiled from. The cached
+    script is only used if all of them still match, since the IR depends on the types of the imported modules.
+    /*/
+    
+    /** The digest of the source which each loaded imported script was compiled from, if imports are cached. */
+    private static final Map<String,byte[]> DIGESTS = new ConcurrentHashMap<>();
+    
+    /**
+     * An imported script which has been read.
+     *
+     * @param src    The source.
+     * @param digest The digest of the source, or {@code null} if the script is not cached.
+     * @param file   The file which the compiled script is cached in, or {@code null} if the script is not cached.
+     * @param cached The compiled script read from the cache, or {@code null} if there was no usable one.
+     * @param tokens The tokens, or {@code null} if the compiled script was read from the cache.
+     */
+    private record Source(String module,byte[] src,byte[] digest,Path file,Cached cached,TokenIterator tokens) {}
+    /**
+     * A compiled script read from the cache.
+     *
+     * @param imports The imported scripts which the script imports directly.
+     * @param ir      The encoded script.
+     */
+    private record Cached(Set<String> imports,ByteBuffer ir) {}
+    
+    private static MessageDigest sha256()
+    {
+        try {return MessageDigest.getInstance("SHA-256");}
+        catch(final NoSuchAlgorithmException e) {throw new IllegalStateException(e);} // Required on every platform.
     }
     /**
-     * Evaluates a while-loop statement.
+     * Compiles and executes an imported script. Scripts which are recompiled by {@linkplain Script#reload} are not
+     * cached.
      *
-     * <pre>WhileStmt := 'while' '(' Expr ')' Stmt</pre>
+     * @param staged The scripts which are being recompiled by {@linkplain Script#reload}, or {@code null}.
      *
-     * @see Script#parseExpr(Context)
-     * @see Script#parseStmt(Context,Type,boolean,boolean)
+     * @see Script#readImport(Path,String,PrintStream,boolean)
      */
-    private static boolean parseWhile(final Context ctx,final Type ret) throws ScriptException
+    private static Module runImport(final Path path,final String module,final PrintStream err,final Load self,
+                                    final Map<String,Load> staged) throws IOException,ScriptException
     {
-        // Assume 'while' already eaten.
-        if(mismatch(ItrMode.next,ctx.tokens,ctx.reporter,TokenType.LPAREN)) return false;
-        // while( cond ) body
-        
-        // cond
-        final int toCond = ctx.bbList.size();
-        // start -> cond
-        ctx.bb.branch(toCond);
-        ctx.bbList.add(ctx.bb = ctx.createBB("while.cond"));
-        final Instruction c = parseExpr(ctx);
-        if(c == null || mismatch(ItrMode.next,ctx.tokens,ctx.reporter,TokenType.RPAREN))
-        {
-            skip(ctx.tokens,TokenType.RPAREN,TokenType.LPAREN);
-            return false;
-        }
-        
-        // body
-        final BlockBuilder endOfCond = ctx.bb;
-        // cond -> body
-        --ctx.accPos; endOfCond.branch(true,ctx.bbList.size());
-        ctx.bbList.add(ctx.bb = ctx.createBB("while.body"));
-        ctx.sc.enterLoop();
-        final boolean flag = parseStmt(ctx,ret,false,true) == Status.BAD;
-        final List<Integer>[] cflow = ctx.sc.exitLoop();
-        
-        final int toEnd = ctx.bbList.size();
-        // body -> cond
-        ctx.bb.branch(toCond);
-        // cond -> end
-        endOfCond.branch(false,toEnd);
-        
-        // Direct all control flow to the correct places.
-        for(final int bb : cflow[0]) // break
-            ctx.bbList.get(bb).branch(toEnd);
-        for(final int bb : cflow[1]) // continue
-            ctx.bbList.get(bb).branch(toCond);
-        
-        ctx.bbList.add(ctx.bb = ctx.createBB("while.end"));
-        return !flag;
+        final Source s = readImport(path,module,err,staged == null);
+        return s == null? null : runImport(s,err,self,staged);
     }
     /**
-     * Evaluates a do-while loop statement.
-     *
-     * <pre>DoWhileStmt := 'do' Stmt 'while' '(' Expr ')'</pre>
+     * Reads an imported script. If a cache directory is set and the cache has a compiled version of the script which
+     * is still valid, then the script is not tokenized.
      *
-     * @see Script#parseExpr(Context)
-     * @see Script#parseStmt(Context,Type,boolean,boolean)
+     * @return The script, or {@code null} if it has errors.
      */
-    private static boolean parseDo(final Context ctx,final Type ret) throws ScriptException
+    private static Source readImport(final Path path,final String module,final PrintStream err,final boolean cache)
+                                     throws IOException
     {
-        // Assume 'do' already eaten.
-        // do body while( cond );
-        
-        // body
-        final int toBody = ctx.bbList.size();
-        // start -> body
-        ctx.bb.branch(toBody);
-        ctx.bbList.add(ctx.bb = ctx.createBB("do.body"));
-        ctx.sc.enterLoop();
-        final boolean flag = parseStmt(ctx,ret,false,true) == Status.BAD;
-        final List<Integer>[] cflow = ctx.sc.exitLoop();
-        if(mismatch(ItrMode.next,ctx.tokens,ctx.reporter,TokenType.WHILE) ||
-           mismatch(ItrMode.next,ctx.tokens,ctx.reporter,TokenType.LPAREN))
-            return false;
-        
-        // cond
-        final Instruction c = parseExpr(ctx);
-        if(c == null || mismatch(ItrMode.next,ctx.tokens,ctx.reporter,TokenType.RPAREN))
+        final byte[] src = Files.readAllBytes(path);
+        final Path cacheDir = cache? getCacheDir() : null;
+        byte[] digest = null;
+        Path file = null;
+        if(cacheDir != null)
         {
-            skip(ctx.tokens,TokenType.RPAREN,TokenType.LPAREN);
-            return false;
+            digest = sha256().digest(src);
+            // The IR contains the module name, which is used in error messages.
+            final MessageDigest md = sha256();
+            md.update(ByteBuffer.allocate(4).putInt(0,IRCodec.VERSION));
+            md.update(module.getBytes(StandardCharsets.UTF_8));
+            md.update((byte)0);
+            file = cacheDir.resolve(HexFormat.of().formatHex(md.digest(digest))+".ir");
+            final Cached c = readCached(file);
+            if(c != null) return new Source(module,src,digest,file,c,null);
         }
-        if(mismatch(ItrMode.next,ctx.tokens,ctx.reporter,TokenType.SEMICOLON)) return false;
-        
-        final int toEnd = ctx.bbList.size();
-        // body -> cond -> (body|end)
-        --ctx.accPos;
-        ctx.bb.branch( true,toBody);
-        ctx.bb.branch(false,toEnd);
-        ctx.bbList.add(ctx.bb = ctx.createBB("do.end"));
-    
-        // Direct all control flow to the correct places.
-        for(final int bb : cflow[0]) // break
-            ctx.bbList.get(bb).branch(toEnd);
-        for(final int bb : cflow[1]) // continue
-            ctx.bbList.get(bb).branch(toBody);
-        
-        return !flag;
+        final TokenIterator tokens = tokenize(module,src,err);
+        return tokens == null? null : new Source(module,src,digest,file,null,tokens);
+    }
+    private static TokenIterator tokenize(final String module,final byte[] src,final PrintStream err)
+    {
+        return Tokenize.tokenize(StandardCharsets.UTF_8.decode(ByteBuffer.wrap(src)),new ErrReporter(module,err));
+    }
+    /** @return The cached script in a file, or {@code null} if there is none or it is corrupted or out of date. */
+    private static Cached readCached(final Path file)
+    {
+        if(!Files.isRegularFile(file)) return null;
+        try(final FileChannel ch = FileChannel.open(file,StandardOpenOption.READ))
+        {
+            final ByteBuffer in = ch.map(FileChannel.MapMode.READ_ONLY,0,ch.size());
+            final Set<String> imports = new HashSet<>();
+            for(int n = in.getInt();n-- > 0;)
+            {
+                final int length = in.getInt();
+                if(length < 0 || length > in.remaining()) return null;
+                final byte[] name = new byte[length],digest = new byte[32];
+                in.get(name).get(digest);
+                final String m = new String(name,StandardCharsets.UTF_8);
+                if(in.get() != 0) imports.add(m);
+                if(!Arrays.equals(digest,currentDigest(m))) return null;
+            }
+            return new Cached(imports,in.slice());
+        }
+        // The file is corrupted, so it will be replaced.
+        catch(final IOException|BufferUnderflowException ignored) {return null;}
     }
     /**
-     * Evaluates a return statement.
-     *
-     * <pre>RetStmt := 'return' [Expr] ';'</pre>
+     * @return The digest of the source which an imported script is (or would be) loaded from, or {@code null} if it is
+     *         unknown.
+     */
+    private static byte[] currentDigest(final String m)
+    {
+        // Loaded scripts are not read again, even if their file has changed.
+        if(Module.getNow(m) != null) return DIGESTS.get(m);
+        try {return sha256().digest(Files.readAllBytes(getImportsDir().resolve(Path.of(m))));}
+        catch(final IOException|InvalidPathException e) {return null;}
+    }
+    /**
+     * Executes an imported script which has been read. Scripts which are not in the cache are compiled and added to
+     * it.
      *
-     * @see Script#parseExpr(Context)
+     * @param self   The script's entry in the scripts being compiled.
+     * @param staged The scripts which are being recompiled by {@linkplain Script#reload}, or {@code null}.
      */
-    private static boolean parseRet(final Context ctx,final Type ret) throws ScriptException
+    private static Module runImport(final Source s,final PrintStream err,final Load self,final Map<String,Load> staged)
+                                    throws IOException,ScriptException
     {
-        // Assume 'return' already eaten.
-        final int line = ctx.tokens.peek(-1).line();
-        // return [Expr] ;
-        if(ctx.deadCode == (byte)0) ctx.deadCode = (byte)1;
-        if(matches(ItrMode.peek,ctx.tokens,TokenType.SEMICOLON))
+        if(s.cached != null)
         {
-            ctx.bb.instruction
-            (
-                new Instruction(line,ret,false,true)
-                {
-                    @Override Object exec(final RuntimeScope s) {return RET_VOID;}
-                },
-                "return "+Type.VOID
-            );
-            // Eat ';'
-            ctx.tokens.next();
-            if(Type.VOID.equals(ret)) return true;
-            ctx.reporter.report
-            (
-                line,
-                "Expected return type "+ret+
-                ", got type "+Type.VOID
-            );
+            synchronized(LOADING) {self.imports.addAll(s.cached.imports);}
+            CompiledScript c = null;
+            try {c = IRCodec.decode(s.cached.ir,err,Options.DEFAULT);}
+            catch(final IOException ignored) {} // The types of an import have changed, so the source is compiled.
+            if(c != null)
+            {
+                final Module r = c.run();
+                DIGESTS.put(s.module,s.digest);
+                return r;
+            }
         }
-        else
+        final TokenIterator tokens = s.tokens != null? s.tokens : tokenize(s.module,s.src,err);
+        if(tokens == null) return null;
+        final CompiledScript c = compile(new Context(s.module,tokens,err,s.file != null? CACHED : Options.DEFAULT,staged),self);
+        if(c == null) return null;
+        final Module r = c.run();
+        if(s.file != null)
         {
-            final Instruction i = parseExpr(ctx);
-            // Eat ';'
-            ctx.tokens.next();
-            ctx.bb.instruction
-            (
-                new Instruction(line,ret,false,true) {@Override Object exec(final RuntimeScope s) {return resolve(s.popAccumulator());}},
-                "return "+ret
-            );
-            --ctx.accPos;
-            if(i != null)
+            DIGESTS.put(s.module,s.digest);
+            store(s.file,c,self);
+        }
+        return r;
+    }
+    /** Adds a compiled imported script to the cache, unless a script it depends on was not cached. */
+    private static void store(final Path file,final CompiledScript c,final Load self)
+    {
+        final Map<String,Boolean> deps = new TreeMap<>();
+        {
+            final Deque<String> todo = new ArrayDeque<>();
+            synchronized(LOADING) {todo.addAll(self.imports);}
+            for(final String m : todo) deps.put(m,true);
+            while(!todo.isEmpty())
+                for(final String m : IMPORTS.getOrDefault(todo.pop(),Set.of()))
+                    if(deps.putIfAbsent(m,false) == null)
+                        todo.push(m);
+        }
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        // The cache is only an optimization, so failing to write it is not an error.
+        try
+        {
+            try(final DataOutputStream out = new DataOutputStream(bytes))
             {
-                if(i.type.equals(ret)) return true;
-                ctx.reporter.report
-                (
-                    i.line,
-                    "Expected return type "+ret+
-                    ", got type "+i.type
-                );
+                out.writeInt(deps.size());
+                for(final Map.Entry<String,Boolean> e : deps.entrySet())
+                {
+                    final byte[] digest = DIGESTS.get(e.getKey());
+                    if(digest == null) return;
+                    final byte[] name = e.getKey().getBytes(StandardCharsets.UTF_8);
+                    out.writeInt(name.length);
+                    out.write(name);
+                    out.write(digest);
+                    out.writeBoolean(e.getValue());
+                }
+                out.write(IRCodec.encode(c));
             }
+            Files.createDirectories(file.getParent());
+            final Path tmp = Files.createTempFile(file.getParent(),null,".tmp");
+            Files.write(tmp,bytes.toByteArray());
+            Files.move(tmp,file,StandardCopyOption.REPLACE_EXISTING,StandardCopyOption.ATOMIC_MOVE);
         }
+        catch(final IOException ignored) {}
+    }
+    /*/
+    Imported scripts are compiled on a fork/join pool, so that the imports of a script are compiled in parallel with
+    each other and with the script itself. Each script is compiled exactly once: the first importer puts its future in
+    the registry, and every other importer joins on it. An import which would wait on a script that is (transitively)
+    waiting on the importer is reported as circular instead of deadlocking. The import graph which is used to detect
+    this is the only state that needs a lock, and it is only touched while scripts are being compiled.
+    /*/
+    
+    /**
+     * The future of an imported script which is being compiled, and the names of the scripts it imports. Scripts are
+     * only added to the imports while {@code LOADING} is locked, unless they have been loaded already.
+     */
+    private record Load(CompletableFuture<Module> module,Set<String> imports)
+    {
+        Load() {this(new CompletableFuture<>(),ConcurrentHashMap.newKeySet());}
+    }
+    /** Imported scripts which are being compiled. Guarded by its own lock. */
+    private static final Map<String,Load> LOADING = new HashMap<>();
+    /** The imported scripts which each loaded imported script imports. */
+    private static final Map<String,Set<String>> IMPORTS = new ConcurrentHashMap<>();
+    /**
+     * @param staged The scripts which are being recompiled by {@linkplain Script#reload}, or {@code null}.
+     *
+     * @return {@code true} iff {@code from} is {@code to} or imports it through scripts which are still being
+     *         compiled.
+     */
+    private static boolean waitsOn(final String from,final String to,final Map<String,Load> staged,
+                                   final Set<String> visited)
+    {
+        if(from.equals(to)) return true;
+        if(!visited.add(from)) return false;
+        final Load s = staged != null? staged.get(from) : null,
+                   l = s != null? s : LOADING.get(from);
+        if(l != null)
+            for(final String i : l.imports)
+                if(waitsOn(i,to,staged,visited))
+                    return true;
         return false;
     }
     /**
-     * Evaluates a throw statement.
+     * Gets a registered module. Imported scripts ({@code .prgm} files) which are not registered yet are read from the
+     * imports directory, executed, and registered on the common fork/join pool.
      *
-     * <pre>ThrowStmt := 'throw' [Expr] ';'</pre>
+     * @param staged The scripts which are being recompiled by {@linkplain Script#reload}, or {@code null}. Their new
+     *               versions are returned instead of the registered ones, and scripts which are not registered yet
+     *               are compiled against them and added to them instead of the registry.
      *
-     * @see Script#parseExpr(Context)
+     * @return A future which completes with the module, or with {@code null} if the module does not exist or the
+     *         imported script has errors.
      */
-    private static boolean parseThrow(final Context ctx) throws ScriptException
+    private static CompletableFuture<Module> load(final String m,final PrintStream err,final Map<String,Load> staged)
     {
-        // Assume 'throw' already eaten.
-        final int line = ctx.tokens.peek(-1).line();
-        // throw [Expr] ;
-    
-        if(ctx.deadCode == (byte)0) ctx.deadCode = (byte)1;
-        if(matches(ItrMode.peek,ctx.tokens,TokenType.SEMICOLON))
+        final Load s = staged != null? staged.get(m) : null;
+        if(s != null) return s.module;
+        final CompletableFuture<Module> f = Module.get(m);
+        if(f != null) return f;
+        if(!m.endsWith(".prgm")) return CompletableFuture.completedFuture(null);
+        
+        final Load self = new Load();
+        if(staged != null)
         {
-            ctx.bb.instruction
-            (
-                new Instruction(line,null)
-                {
-                    @Override Object exec(final RuntimeScope s) {throw new ScriptRuntimeException(line+1,ctx.module);}
-                },
-                "throw [null]"
-            );
-            return true;
+            final Load other = staged.putIfAbsent(m,self);
+            if(other != null) return other.module;
         }
-        
-        // Expr
-        final Instruction i = parseExpr(ctx);
-        if(i == null || mismatch(ItrMode.next,ctx.tokens,ctx.reporter,TokenType.SEMICOLON))
+        else
         {
-            skip(ctx.tokens,TokenType.SEMICOLON,null);
-            return false;
+            final CompletableFuture<Module> other = Module.REGISTRY.putIfAbsent(m,self.module);
+            if(other != null) return other;
+            synchronized(LOADING) {LOADING.put(m,self);}
         }
-        final Type t = i.type;
-        
-        ctx.bb.instruction
-        (
-            new Instruction(line,null)
-            {
-                @Override
-                Object exec(final RuntimeScope s)
-                {
-                    throw new ScriptRuntimeException
-                    (
-                        line+1,ctx.module,
-                        Script.toString(s.popAccumulator(),t)
-                    );
-                }
-            },
-            "throw"
-        );
-        --ctx.accPos;
-        return true;
+        ForkJoinPool.commonPool().execute(() ->
+        {
+            Module r = null;
+            Throwable t = null;
+            try {r = runImport(getImportsDir().resolve(Path.of(m)),m,err,self,staged);}
+            catch(final Throwable e) {t = e;}
+            finish(m,self,r,t,staged);
+        });
+        return self.module;
     }
     /**
-     * Evaluates a break statement.
+     * Removes an imported script from the scripts which are being compiled, registers it if it has no errors, and
+     * completes its future.
      *
-     * <pre>BreakStmt := 'break' ';'</pre>
+     * @param r      The module, or {@code null} if the script has errors.
+     * @param t      The exception thrown while compiling or executing the script, or {@code null}.
+     * @param staged The scripts which are being recompiled by {@linkplain Script#reload} if the script is one of
+     *               them, which registers them itself, or {@code null}.
      */
-    private static boolean parseBreak(final Context ctx)
+    private static void finish(final String m,final Load self,final Module r,final Throwable t,
+                               final Map<String,Load> staged)
     {
-        // Assume 'break' already eaten.
-        final int line = ctx.tokens.peek(-1).line();
-        // break ;
-    
-        if(ctx.deadCode == (byte)0) ctx.deadCode = (byte)1;
-        if(mismatch(ItrMode.next,ctx.tokens,ctx.reporter,TokenType.SEMICOLON))
-            skip(ctx.tokens,TokenType.SEMICOLON,null);
-        
-        if(ctx.sc.cflow.empty())
+        if(staged != null)
         {
-            ctx.reporter.report(line,"Break statement outside of loop");
-            return false;
+            if(r == null) staged.remove(m,self);
+        }
+        else
+        {
+            synchronized(LOADING)
+            {
+                LOADING.remove(m);
+                if(r != null) IMPORTS.put(m,Set.copyOf(self.imports));
+            }
+            // Scripts with errors are removed from the registry so that later imports try again.
+            if(r == null) Module.REGISTRY.remove(m,self.module);
+        }
+        if(t != null) self.module.completeExceptionally(t);
+        else self.module.complete(r);
+    }
+    /** Waits for a module returned by {@linkplain Script#load(String,PrintStream,Map)}. */
+    private static Module join(final CompletableFuture<Module> module) throws IOException,ScriptException
+    {
+        try {return module.join();}
+        catch(final CompletionException e)
+        {
+            if(e.getCause() instanceof IOException x) throw x;
+            if(e.getCause() instanceof ScriptException x) throw x;
+            throw e;
         }
-        ctx.sc.cflow.top()[0].add(ctx.bbList.size()-1);
-        return true;
     }
     /**
-     * Evaluates a continue statement.
+     * Gets a registered module. Imported scripts ({@code .prgm} files) which are not registered yet are read from the
+     * imports directory, executed, and registered.
      *
-     * <pre>ContinueStmt := 'continue' ';'</pre>
+     * @return The module, or {@code null} if the module does not exist or the imported script has errors.
      */
-    private static boolean parseContinue(final Context ctx)
+    static Module importModule(final String m,final PrintStream err) throws IOException,ScriptException
     {
-        // Assume 'continue' already eaten.
-        final int line = ctx.tokens.peek(-1).line();
-        // break ;
+        return join(load(m,err,null));
+    }
+    /*/
+    Reloading recompiles the changed scripts and every loaded script which imports them, transitively, with imports
+    ordered before the scripts which import them. While they are recompiled, the new versions are kept in a staged map
+    which is passed to everything that compiles them, including scripts which are imported for the first time by a
+    new version. Those are compiled against the new versions and staged as well. Everything in the staged map is
+    swapped into the registry once all of it has compiled. Scripts which were compiled against the old versions,
+    including ones which are running or held by a ScriptCache, keep using the old versions.
+    /*/
     
-        if(ctx.deadCode == (byte)0) ctx.deadCode = (byte)1;
-        if(mismatch(ItrMode.next,ctx.tokens,ctx.reporter,TokenType.SEMICOLON))
+    /**
+     * Recompiles the loaded imported scripts whose files have changed, and the scripts which import them. If any of
+     * them has errors, then the old versions are kept.
+     *
+     * @param files The changed files.
+     * @param err   Where errors are reported.
+     *
+     * @return The names of the modules which were replaced.
+     *
+     * @see ImportWatcher
+     * @see ScriptCache
+     */
+    static Set<String> reload(final Collection<Path> files,final PrintStream err)
+    {
+        final Path dir = getImportsDir();
+        final Set<Path> changed = new HashSet<>();
+        for(final Path f : files) changed.add(dir.resolve(f).toAbsolutePath().normalize());
+        
+        final List<String> order = new ArrayList<>();
         {
-            skip(ctx.tokens,TokenType.SEMICOLON,null);
-            return false;
+            final Set<String> visited = new HashSet<>();
+            for(final String m : IMPORTS.keySet())
+                if(changed.contains(dir.resolve(m).toAbsolutePath().normalize()))
+                    orderDependents(m,visited,order);
         }
+        if(order.isEmpty()) return Set.of();
+        Collections.reverse(order);
         
-        if(ctx.sc.cflow.empty())
+        // Scripts which are imported for the first time are added from the pool's threads.
+        final Map<String,Load> staged = new ConcurrentHashMap<>();
+        try
         {
-            ctx.reporter.report(line,"Continue statement outside of loop");
-            return false;
+            for(final String m : order)
+            {
+                // Each script is only staged once it is being compiled, so that the scripts which it imports for
+                // the first time don't wait on scripts which are later in the order.
+                final Load self = new Load();
+                staged.put(m,self);
+                Module mm = null;
+                try {mm = runImport(dir.resolve(Path.of(m)),m,err,self,staged);}
+                finally {self.module.complete(mm);}
+                if(mm == null) return Set.of();
+            }
         }
-        ctx.sc.cflow.top()[1].add(ctx.bbList.size()-1);
-        return true;
+        catch(final IOException|ScriptException e)
+        {
+            err.println("Could not reload modules "+order+": "+e.getMessage());
+            return Set.of();
+        }
+        
+        for(final Map.Entry<String,Load> e : staged.entrySet())
+        {
+            final String m = e.getKey();
+            synchronized(LOADING) {IMPORTS.put(m,Set.copyOf(e.getValue().imports));}
+            // Reloaded scripts are not cached, so neither are the scripts which import them until the next run.
+            DIGESTS.remove(m);
+            Module.REGISTRY.put(m,CompletableFuture.completedFuture(e.getValue().module.join()));
+        }
+        return Set.copyOf(order);
+    }
+    /** @return The names of the imported scripts which are loaded. */
+    static Set<String> loadedImports() {return Set.copyOf(IMPORTS.keySet());}
+    /** Adds a module after all the loaded scripts which import it. */
+    private static void orderDependents(final String m,final Set<String> visited,final List<String> order)
+    {
+        if(!visited.add(m)) return;
+        for(final Map.Entry<String,Set<String>> e : IMPORTS.entrySet())
+            if(e.getValue().contains(m))
+                orderDependents(e.getKey(),visited,order);
+        order.add(m);
     }
     /**
-     * Evaluates an expression statement.
-     *
-     * <pre>ExprStmt := Expr ';'</pre>
-     *
-     * @see Script#parseExpr(Context)
-     * @see Script#parseDeclOrExprStmt(Context)
+     * @return The imported scripts ({@code .prgm} files) found in the tokens, mapped to the line of their first import
+     *         statement, in the order which they are first imported in.
      */
-    private static boolean parseExprStmt(final Context ctx) throws ScriptException
+    private static Map<String,Integer> scanImports(final TokenIterator tokens)
     {
-        // Expr ;
-        return parseExpr(ctx) != null && !mismatch(ItrMode.next,ctx.tokens,ctx.reporter,TokenType.SEMICOLON);
+        final Map<String,Integer> imports = new LinkedHashMap<>();
+        TokenType t;
+        for(int i = 0;(t = tokens.peekType(i)) != null;++i)
+            if(t == TokenType.IMPORT && tokens.peekType(i+1) == TokenType.LIT_STR)
+            {
+                final Token m = tokens.peek(i+1);
+                if(m.value().endsWith(".prgm"))
+                    imports.putIfAbsent(m.value(),m.line());
+            }
+        return imports;
     }
     /**
-     * Evaluates a variable declaration statement.
-     *
-     * <pre>DeclStmt := ['const'] Type Name ['=' Expr] {',' Name ['=' Expr]} ';'</pre>
+     * Scans a script's tokens for imports of other scripts and starts compiling them, so that they are ready by the
+     * time their import statements are parsed.
      *
-     * @see Script#type(Context)
-     * @see Script#parseDeclOrExprStmt(Context)
-     * @see Script#parseExpr(Context)
+     * @param self The script's entry in the scripts being compiled, or {@code null} if it is not an import.
      */
-    private static boolean parseDeclStmt(final Context ctx) throws ScriptException
+    private static void prefetch(final Context ctx,final Load self)
     {
-        // [const] Type Name [= Expr] {, Name [= Expr]} ;
-        final int line = nonEOF(ItrMode.peek,ctx.tokens,ctx.reporter).line();
-    
-        // Type
-        final boolean isConst = chkConst(ctx.tokens);
-        final Type ct = type(ctx);
-        if(ct == null) return false;
-        final ConstableType cct = Types.constableType(ct,isConst);
+        final Set<String> names = scanImports(ctx.tokens).keySet();
+        if(names.isEmpty()) return;
         
-        final String[] n;
-        final boolean[] b;
-        final int ps;
-        boolean flag = true;
+        final Map<String,CompletableFuture<Module>> pending = new HashMap<>();
+        final List<String> loading = new ArrayList<>();
+        for(final String m : names)
         {
-            record pair(String n,boolean i) {}
-            final ArrayList<pair> pairs = new ArrayList<>();
-            do
-            {
-                // Name
-                final Token t = eat(ItrMode.next,ctx.tokens,ctx.reporter,TokenType.ID);
-                if(t.type() != TokenType.ID)
-                {
-                    skip(ctx.tokens,TokenType.SEMICOLON,null);
-                    return false;
-                }
-                if(ctx.sc.getStruct(t.value()) != null)
-                {
-                    ctx.reporter.report
-                    (
-                        t.line(),
-                        "Cannot use name '"+t.value()+
-                        "'; a struct with that name exists"
-                    );
-                    flag = false;
-                }
-                
-                // Expr
-                final boolean i = nonEOF(ItrMode.peek,ctx.tokens,ctx.reporter).type() == TokenType.ASSIGN;
-                if(i)
-                {
-                    ctx.tokens.next(); // Eat '='.
-                    final Instruction e = parseExpr(ctx);
-                    flag = e != null && convert(ctx,e.type,ct,e.line) && flag;
-                }
-                if(mismatch(ItrMode.peek,ctx.tokens,ctx.reporter,TokenType.COMMA,TokenType.SEMICOLON))
-                {
-                    skip(ctx.tokens,TokenType.SEMICOLON,null);
-                    return false;
-                }
-                
-                pairs.add(new pair(t.value(),i));
-            }
-            while(!matches(ItrMode.next,ctx.tokens,TokenType.SEMICOLON));
-            
-            ps = pairs.size();
-            n = new String[ps];
-            b = new boolean[ps];
-            int i = ps;
-            for(final pair p : pairs)
+            // Scripts which have been loaded already cannot wait on this one, so they don't need the lock.
+            final Load l = ctx.staged != null? ctx.staged.get(m) : null;
+            final CompletableFuture<Module> f = l != null? l.module : Module.get(m);
+            if(f != null && f.isDone())
             {
-                ctx.sc.putField(n[--i] = p.n,cct);
-                if(b[i] = p.i) --ctx.accPos;
+                if(self != null) self.imports.add(m);
+                pending.put(m,f);
             }
+            else loading.add(m);
         }
-        final StringJoiner sj = new StringJoiner(",","decl "+cct+' ',"");
-        for(int i = 0;i < ps;++i) sj.add(n[i]);
-        ctx.bb.instruction
-        (
-            new Instruction(line,null)
+        if(!loading.isEmpty())
+            synchronized(LOADING)
             {
-                @Override
-                Object exec(final RuntimeScope s)
-                {
-                    for(int i = 0;i < ps;++i)
-                        s.putField(n[i],new Value(cct,b[i]? s.popAccumulator() : null));
-                    return null;
-                }
-            },
-            sj.toString()
-        );
-        return flag;
+                for(final String m : loading)
+                    if(self != null && waitsOn(m,ctx.module,ctx.staged,new HashSet<>()))
+                        pending.put(m,null);
+                    else
+                    {
+                        if(self != null) self.imports.add(m);
+                        pending.put(m,load(m,ctx.reporter.ps,ctx.staged));
+                    }
+            }
+        ctx.pending = pending;
     }
+    /*/
+    Precompiling reads every script in a directory up front, so that the import graph is known before anything is
+    compiled. Each script is then compiled once all the scripts it imports from the same directory have been, which
+    keeps the executor's threads from blocking on each other, and scripts which do not depend on each other are
+    compiled in parallel.
+    /*/
+    
     /**
-     * Evaluates a variable declaration or expression statement.
+     * The result of {@linkplain Script#precompileAll(Path,Executor,PrintStream)}.
      *
-     * <pre>DeclOrExprStmt := (DeclStmt|ExprStmt)</pre>
-     *
-     * @see Script#parseDeclStmt(Context)
-     * @see Script#parseExprStmt(Context)
+     * @param compiled The modules which were compiled and registered.
+     * @param failed   The modules which have errors.
+     * @param times    The time spent reading, compiling, and executing each module.
+     * @param elapsed  The total time taken.
      */
-    private static boolean parseDeclOrExprStmt(final Context ctx) throws ScriptException
-    {
-        return switch(ctx.tokens.peek().type())
-        {
-            case VOID,BOOL,INT,FLOAT,STR,FUNC,CONST -> parseDeclStmt(ctx);
-            case ID -> ctx.sc.getStruct(ctx.tokens.peek().value()) != null
-                           ? parseDeclStmt(ctx)
-                           : parseExprStmt(ctx);
-            default -> parseExprStmt(ctx);
-        };
-    }
+    public record Precompiled(List<String> compiled,List<String> failed,Map<String,Duration> times,Duration elapsed) {}
     /**
-     * Evaluates a structure declaration statement.
+     * Compiles, executes, and registers every script ({@code .prgm} file) in a directory and its subdirectories, as
+     * if each one had been imported. Scripts which are already registered are skipped. Errors are reported the same
+     * way as for imports, with the reports of each module printed together.
      *
-     * <pre>StructDeclStmt := 'struct' StructName '{' [ArgList] '}'</pre>
+     * @param dir      The directory, relative to the imports directory. It must be inside the imports directory.
+     * @param executor Runs the compilation tasks.
+     * @param err      Where errors are reported.
      *
-     * @see Script#type(Context)
+     * @return A summary of the modules which were compiled.
+     *
+     * @throws IllegalArgumentException if the directory is not inside the imports directory.
+     * @throws IOException if the directory cannot be read.
+     *
+     * @see Script#setImportsDir(Path)
      */
-    private static boolean parseStructDecl(final Context ctx)
+    public static Precompiled precompileAll(final Path dir,final Executor executor,final PrintStream err)
+                                            throws IOException
     {
-        // Assume 'struct' already eaten.
-        final Token id = eat(ItrMode.next,ctx.tokens,ctx.reporter,TokenType.ID);
-        if(id.type() != TokenType.ID) return false;
-        final String name = id.value();
+        final long start = System.nanoTime();
+        final Path imports = getImportsDir().toAbsolutePath().normalize(),
+                      root = imports.resolve(dir).normalize();
+        if(!root.startsWith(imports)) throw new IllegalArgumentException(dir+" is not inside "+imports);
+        
+        // Claim the scripts which are not registered yet.
+        final Map<String,Load> loads = new TreeMap<>();
+        try(final Stream<Path> files = Files.walk(root))
         {
-            final char chr = name.charAt(0);
-            if('Z' < chr || chr < 'A')
-                ctx.reporter.warn
-                (
-                    id.line(),
-                    "Struct name \""+name+"\" begins with " +
-                    "a character which is not capitalized " +
-                    "or not alphabetic (i.e. outside the " +
-                    "range A-Z). It is advisable to follow " +
-                    "this convention for readability."
-                );
+            for(final Path p : (Iterable<Path>)files::iterator)
+            {
+                if(!p.toString().endsWith(".prgm") || !Files.isRegularFile(p)) continue;
+                final StringJoiner name = new StringJoiner("/");
+                for(final Path n : imports.relativize(p)) name.add(n.toString());
+                final Load self = new Load();
+                if(Module.REGISTRY.putIfAbsent(name.toString(),self.module) == null) loads.put(name.toString(),self);
+            }
         }
-        // struct Name \{ [Type Name {, Type Name }] \}
         
-        if(mismatch(ItrMode.next,ctx.tokens,ctx.reporter,TokenType.LBRACE)) return false;
-        final Map<String,ConstableType> fields = new HashMap<>();
-        if(matches(ItrMode.peek,ctx.tokens,TokenType.RBRACE)) ctx.tokens.next(); // Eat '\}'.
-        else
+        final Map<String,Source> sources = new ConcurrentHashMap<>();
+        final Map<String,Long> nanos = new ConcurrentHashMap<>();
         {
-            do
-            {
-                final boolean isConst = chkConst(ctx.tokens);
-                final Type ct = type(ctx);
-                final Token n = eat(ItrMode.next,ctx.tokens,ctx.reporter,TokenType.ID);
-                if(n.type() != TokenType.ID)
+            final List<CompletableFuture<?>> read = new ArrayList<>(loads.size());
+            for(final String m : loads.keySet())
+                read.add(CompletableFuture.runAsync(() ->
                 {
-                    skip(ctx.tokens,TokenType.RBRACE,TokenType.LBRACE);
-                    return false;
-                }
-                fields.put(n.value(),Types.constableType(ct,isConst));
+                    final long t = System.nanoTime();
+                    try
+                    {
+                        final Source s = readImport(imports.resolve(m),m,err,true);
+                        if(s != null) sources.put(m,s);
+                    }
+                    catch(final IOException e) {report(m,err,"Could not read module: "+e.getMessage());}
+                    nanos.merge(m,System.nanoTime() - t,Long::sum);
+                },executor));
+            CompletableFuture.allOf(read.toArray(CompletableFuture[]::new)).join();
+        }
+        
+        final Map<String,Map<String,Integer>> graph = new HashMap<>();
+        synchronized(LOADING)
+        {
+            for(final Map.Entry<String,Load> e : loads.entrySet())
+            {
+                final Source s = sources.get(e.getKey());
+                final Map<String,Integer> i = new LinkedHashMap<>();
+                // Cached scripts were compiled against the current versions of their imports, so they are not circular.
+                if(s != null && s.cached != null) for(final String c : s.cached.imports) i.put(c,0);
+                else if(s != null) i.putAll(scanImports(s.tokens));
+                graph.put(e.getKey(),i);
+                e.getValue().imports.addAll(i.keySet());
+                LOADING.put(e.getKey(),e.getValue());
             }
-            while(matches(ItrMode.next,ctx.tokens,TokenType.COMMA));
-            // Ensure that the loop condition broke on a closing brace.
-            if(mismatch(ItrMode.prev,ctx.tokens,ctx.reporter,TokenType.RBRACE))
+        }
+        final List<CompletableFuture<?>> compiled = new ArrayList<>(loads.size());
+        for(final Map.Entry<String,Load> e : loads.entrySet())
+        {
+            final String m = e.getKey();
+            final Load self = e.getValue();
+            final Source s = sources.get(m);
+            if(s == null)
             {
-                skip(ctx.tokens,TokenType.RBRACE,TokenType.LBRACE);
-                return false;
+                finish(m,self,null,null,null);
+                continue;
+            }
+            final ErrReporter reporter = new ErrReporter(m,err);
+            final List<CompletableFuture<Module>> deps = new ArrayList<>();
+            for(final Map.Entry<String,Integer> i : graph.get(m).entrySet())
+                if(reaches(i.getKey(),m,graph,new HashSet<>()))
+                    reporter.report(i.getValue(),"Circular import of module '"+i.getKey()+'\'');
+                else if(loads.containsKey(i.getKey()))
+                    deps.add(loads.get(i.getKey()).module);
+            if(reporter.reportAll())
+            {
+                finish(m,self,null,null,null);
+                continue;
             }
+            // Scripts whose imports have errors are still compiled, so that they report the failed import.
+            final CompletableFuture<Void> ready = CompletableFuture.allOf(deps.toArray(CompletableFuture[]::new))
+                                                                   .exceptionally(x -> null);
+            compiled.add(ready.thenRunAsync(() ->
+            {
+                final long t = System.nanoTime();
+                Module r = null;
+                Throwable x = null;
+                try {r = runImport(s,err,self,null);}
+                catch(final Throwable ex)
+                {
+                    x = ex;
+                    report(m,err,"Could not run module: "+ex.getMessage());
+                }
+                nanos.merge(m,System.nanoTime() - t,Long::sum);
+                finish(m,self,r,x,null);
+            },executor));
         }
-        final Map<String,ConstableType> f = ContainerUtil.makeImmutable(fields); // Make immutable
-        ctx.sc.putStruct(name,f);
-        // The runtime does not need any scope information, since type safety can be evaluated
-        // at compile-time.
-        return true;
+        CompletableFuture.allOf(compiled.toArray(CompletableFuture[]::new)).join();
+        
+        final List<String> ok = new ArrayList<>(),failed = new ArrayList<>();
+        final Map<String,Duration> times = new TreeMap<>();
+        for(final Map.Entry<String,Load> e : loads.entrySet())
+        {
+            final CompletableFuture<Module> f = e.getValue().module;
+            (!f.isCompletedExceptionally() && f.join() != null? ok : failed).add(e.getKey());
+            times.put(e.getKey(),Duration.ofNanos(nanos.getOrDefault(e.getKey(),0L)));
+        }
+        return new Precompiled
+        (
+            Collections.unmodifiableList(ok),Collections.unmodifiableList(failed),
+            Collections.unmodifiableMap(times),Duration.ofNanos(System.nanoTime() - start)
+        );
     }
-    /**
-     * Base directory for imported scripts. Access is synchronized in case the API user decides to change the directory
-     * on a different thread for whatever reason.
-     */
-    private static Path IMPORTS_DIR = Path.of(System.getProperty("user.dir"));
-    /** Lock for the imports directory. */
-    private static final Object pathLock = new Object();
-    /** Sets the base path for all scripts. */
-    public static void setImportsDir(Path path)
+    /** @return {@code true} iff {@code from} is {@code to} or imports it in the graph. */
+    private static boolean reaches(final String from,final String to,final Map<String,Map<String,Integer>> graph,
+                                   final Set<String> visited)
     {
-        if(path == null) path = Path.of(System.getProperty("user.dir"));
-        synchronized(pathLock) {IMPORTS_DIR = path;}
+        if(from.equals(to)) return true;
+        if(!visited.add(from) || !graph.containsKey(from)) return false;
+        for(final String i : graph.get(from).keySet())
+            if(reaches(i,to,graph,visited))
+                return true;
+        return false;
+    }
+    /** Prints a single error for a module. */
+    private static void report(final String module,final PrintStream err,final String msg)
+    {
+        final ErrReporter reporter = new ErrReporter(module,err);
+        reporter.report(0,msg);
+        reporter.reportAll();
     }
-    public static Path getImportsDir() {synchronized(pathLock) {return IMPORTS_DIR;}}
     /**
      * Evaluates an import statement.
      *
@@ -3691,56 +4693,32 @@ public final class Script
             // Skip already loaded modules.
             return true;
         
-        Module mm;
-        synchronized(Module.REGISTRY)
+        Module mm = null;
+        if(ctx.pending.containsKey(m) && ctx.pending.get(m) == null)
+            ctx.reporter.report(line,"Circular import of module '"+m+'\'');
+        else try
         {
-            // Get module if it exists.
-            mm = Module.REGISTRY.get(m);
+            final CompletableFuture<Module> f = ctx.pending.get(m);
+            mm = join(f != null? f : load(m,ctx.reporter.ps,ctx.staged));
             if(mm == null)
-            {
-                // Try to compile external script.
-                if(m.endsWith(".prgm"))
-                {
-                    final Path p = getImportsDir().resolve(Path.of(m));
-                    // Try to read another script from file.
-                    try(final FileReader fr = new FileReader(p.toFile()))
-                    {
-                        mm = run(fr,m,ctx.reporter.ps);
-                        // If no errors were found in the script, add it to the registries.
-                        if(mm != null) Module.REGISTRY.put(m,mm);
-                    }
-                    catch(final Exception e)
-                    {
-                        ctx.reporter.report
-                        (
-                            line,
-                            "Could not read module '"+m+
-                            "': "+e.getMessage()
-                        );
-                    }
-                }
-                else ctx.reporter.report(line,"Unknown module '"+m+'\'');
-                if(mm == null)
-                    // Create a dummy module so that more errors in this script can be
-                    // caught before the compiler exits.
-                    mm = new Module(new CompilerScopeEntry(),new RuntimeScopeEntry());
-            }
+                ctx.reporter.report(line,m.endsWith(".prgm")? "Module '"+m+"' has errors" : "Unknown module '"+m+'\'');
+        }
+        catch(final Exception e)
+        {
+            ctx.reporter.report
+            (
+                line,
+                "Could not read module '"+m+
+                "': "+e.getMessage()
+            );
         }
+        if(mm == null)
+            // Create a dummy module so that more errors in this script can be
+            // caught before the compiler exits.
+            mm = new Module(new CompilerScopeEntry(),new RuntimeScopeEntry());
         ctx.sc.pushToScope(m,mm.compileTime);
-        final RuntimeScopeEntry rt = mm.runTime;
-        ctx.bb.instruction
-        (
-            new Instruction(line,null)
-            {
-                @Override
-                Object exec(final RuntimeScope s)
-                {
-                    s.pushToScope(rt);
-                    return null;
-                }
-            },
-            "import "+module
-        );
+        // The module may be a new version which is not registered yet, so it is not looked up by name.
+        ctx.bb.instruction(Op.importing(line,mm),Op.IMPORT,new Object[] {m},ctx.bb.debug()? "import "+module : null);
         return true;
     }
     /**
@@ -3801,7 +4779,7 @@ public final class Script
             case LBRACE     ->
             {
                 final boolean flag;
-                if(ctx.tokens.canAdvance() && ctx.tokens.peek(1).type() == TokenType.COLON)
+                if(ctx.tokens.canAdvance() && ctx.tokens.peekType(1) == TokenType.COLON)
                 {
                     ctx.tokens.previous(); // Puke previous token.
                     flag = parseDeclOrExprStmt(ctx);
@@ -3829,19 +4807,7 @@ public final class Script
         if(ctx.accPos != p)
         {
             final int line = ctx.tokens.peek(-1).line();
-            ctx.bb.instruction
-            (
-                new Instruction(line,null)
-                {
-                    @Override
-                    Object exec(final RuntimeScope s)
-                    {
-                        s.accumulator.pos(p);
-                        return null;
-                    }
-                },
-                "resetAcc "+p
-            );
+            emit(ctx,Op.RESET_ACC,line,() -> "resetAcc "+p,p);
             ctx.accPos = p;
             if(!ctx.sideEffects) ctx.reporter.warn(line,"Unused result of expression");
         }
@@ -3866,7 +4832,7 @@ public final class Script
         return last == Status.SKIP;
     }
     /** Parses and compiles a script. */
-    private static Block parse(final Context ctx) throws ScriptException
+    private static Body parse(final Context ctx) throws ScriptException
     {
         ctx.bbList.add(ctx.bb = ctx.createBB("entry"));
         if(parseStmts(ctx,Type.VOID,false))
@@ -3876,62 +4842,66 @@ public final class Script
         }
         return null;
     }
-    /** Parses, compiles, and executes a script. */
+    /**
+     * Parses and compiles a script without executing it.
+     *
+     * @return The compiled script, or {@code null} if any errors were reported.
+     *
+     * @see CompiledScript#run()
+     */
+    public static CompiledScript compile(final Reader reader,final String moduleName,final PrintStream err,
+                                         final Options options)
+                                         throws IOException,ScriptException
+    {
+        if(options == null) throw new NullPointerException();
+        return compile(new Context(moduleName,reader,err,options),null);
+    }
+    /**
+     * Parses and compiles a script with the {@linkplain Options#DEFAULT default options}.
+     *
+     * @see Script#compile(Reader,String,PrintStream,Options)
+     */
+    public static CompiledScript compile(final Reader reader,final String moduleName,final PrintStream err)
+                                         throws IOException,ScriptException
+    {
+        return compile(reader,moduleName,err,Options.DEFAULT);
+    }
+    private static CompiledScript compile(final Context ctx,final Load self) throws ScriptException
+    {
+        if(ctx.tokens == null) return null;
+        prefetch(ctx,self);
+        final Body entry = parse(ctx);
+        if(ctx.reporter.reportAll()) return null;
+        
+        assert entry != null;
+        /*/
+        Proof of the above assertion:
+         0| All code is assumed to be correct.
+         1| 'ctx.reporter.reportAll' returns true iff there is at least one error reported.
+         2| 'parse' returns a null value iff 'parseStmts' returns false.
+         3| 'parseStmts' returns false iff one of the calls to 'parseStmt' returns 'Status.BAD'
+         4| 'parseStmts' returns true iff one of the calls to 'parseStmt' returns 'Status.SKIP'
+         5| 'parseStmts' is called with 'block' set to false
+         6| Given 5, 'parseStmt' is called with 'block' set to false
+         7| Given 6, The only way that 'Status.SKIP' can be returned from 'parseStmt' is if an
+            'EOF' token is encountered.
+         8| Given 7, The only ways that 'Status.BAD' can be returned from 'parseStmt' is if a
+            '}' token is encountered or one of the other cases yields false.
+         9| The only way that other cases yield false is if the functions have reported an error.
+        10| Given all the above statements, entry must not be null at this point in the code.
+        /*/
+        
+        return new CompiledScript(ctx.module,entry,ctx.sc.popScope());
+    }
+    /**
+     * Parses, compiles, and executes a script.
+     *
+     * @see Script#compile(Reader,String,PrintStream)
+     */
     public static Module run(final Reader reader,final String moduleName,final PrintStream err)
                              throws IOException,ScriptException
     {
-        final CompilerScopeEntry compileTime;
-        final Block entry;
-        {
-            final Context ctx = new Context(moduleName,reader,err);
-            if(ctx.tokens == null) return null;
-            entry = parse(ctx);
-            if(ctx.reporter.reportAll()) return null;
-            
-            assert entry != null;
-            /*/
-            Proof of the above assertion:
-             0| All code is assumed to be correct.
-             1| 'ctx.reporter.reportAll' returns true iff there is at least one error reported.
-             2| 'parse' returns a null value iff 'parseStmts' returns false.
-             3| 'parseStmts' returns false iff one of the calls to 'parseStmt' returns 'Status.BAD'
-             4| 'parseStmts' returns true iff one of the calls to 'parseStmt' returns 'Status.SKIP'
-             5| 'parseStmts' is called with 'block' set to false
-             6| Given 5, 'parseStmt' is called with 'block' set to false
-             7| Given 6, The only way that 'Status.SKIP' can be returned from 'parseStmt' is if an
-                'EOF' token is encountered.
-             8| Given 7, The only ways that 'Status.BAD' can be returned from 'parseStmt' is if a
-                '}' token is encountered or one of the other cases yields false.
-             9| The only way that other cases yield false is if the functions have reported an error.
-            10| Given all the above statements, entry must not be null at this point in the code.
-            /*/
-            
-            compileTime = ctx.sc.popScope();
-        }
-        final RuntimeScope runTime = new RuntimeScope();
-        Object result = entry;
-        while(result instanceof final Block b)
-            result = b.exec(runTime);
-        final Map<String,Map<String,ConstableType>> structs;
-        {
-            final Map<String,Map<String,ConstableType>> s = new HashMap<>(compileTime.structs.size());
-            for(final Map.Entry<String,Map<String,ConstableType>> e : compileTime.structs.entrySet())
-                s.put(e.getKey(),ContainerUtil.makeImmutable(e.getValue()));
-            structs = ContainerUtil.makeImmutable(s);
-        }
-        return new Module
-        (
-            new CompilerScopeEntry
-            (
-                ContainerUtil.makeImmutable(compileTime.fields),
-                structs,
-                ContainerUtil.makeImmutable(compileTime.modules)
-            ),
-            new RuntimeScopeEntry
-            (
-                ContainerUtil.makeImmutable(runTime.popScope().fields),
-                structs
-            )
-        );
+        final CompiledScript c = compile(reader,moduleName,err);
+        return c == null? null : c.run();
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,166 @@
+package prgmScript;
+
+import prgmScript.exception.ScriptException;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A bounded cache of {@linkplain CompiledScript}s, keyed by a SHA-256 hash of the source, the module name, the
+ * imports directory, and the {@linkplain Script.Options compile options}. When the cache is full, the least recently
+ * used script is evicted.
+ *
+ * <p>A cached script is compiled again if any of the modules it imports has been replaced since it was compiled, for
+ * example by an {@linkplain ImportWatcher}, so scripts which are compiled after a reload always see the new versions.
+ *
+ * <p>The cache is safe to use from several threads. If several threads request the same script at once, only one of
+ * them compiles it and the others wait for the result. Scripts which fail to compile are not cached, so their errors
+ * are reported to every caller.
+ *
+ * @see Script#compile(java.io.Reader,String,PrintStream)
+ */
+public final class ScriptCache
+{
+    /** A snapshot of a cache's statistics. */
+    public record Stats(long hits,long misses,long evictions) {}
+    
+    /** A compiled script, and the modules which it was compiled against. */
+    private record Entry(CompiledScript script,Map<String,Module> imports)
+    {
+        Entry(final CompiledScript script)
+        {
+            this(script,new HashMap<>());
+            for(final String m : script.compileTime.modules) imports.put(m,Module.getNow(m));
+        }
+        /** @return {@code true} iff none of the imported modules has been replaced. */
+        boolean current()
+        {
+            for(final Map.Entry<String,Module> e : imports.entrySet())
+                if(Module.getNow(e.getKey()) != e.getValue())
+                    return false;
+            return true;
+        }
+    }
+    
+    private final int capacity;
+    private final Map<String,CompletableFuture<Entry>> cache;
+    private final LongAdder hits = new LongAdder(),misses = new LongAdder(),evictions = new LongAdder();
+    
+    /**
+     * @param capacity The maximum number of scripts to keep.
+     *
+     * @throws IllegalArgumentException if {@code capacity} is not positive.
+     */
+    public ScriptCache(final int capacity)
+    {
+        if(capacity <= 0) throw new IllegalArgumentException("Non-positive capacity: "+capacity);
+        this.capacity = capacity;
+        cache = new LinkedHashMap<>(16,.75f,true)
+        {
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<String,CompletableFuture<Entry>> eldest)
+            {
+                if(size() <= ScriptCache.this.capacity) return false;
+                evictions.increment();
+                return true;
+            }
+        };
+    }
+    
+    private static String key(final String source,final String moduleName,final Script.Options options)
+    {
+        final MessageDigest md;
+        try {md = MessageDigest.getInstance("SHA-256");}
+        catch(final NoSuchAlgorithmException e) {throw new IllegalStateException(e);} // Required on every platform.
+        // Each part is terminated by a NUL character so that different splits of the same text produce different keys.
+        for(final String s : new String[] {source,moduleName,Script.getImportsDir().toString()})
+        {
+            md.update(s.getBytes(StandardCharsets.UTF_8));
+            md.update((byte)0);
+        }
+        md.update((byte)((options.debugInfo()? 1 : 0) | (options.keepIR()? 2 : 0)));
+        return HexFormat.of().formatHex(md.digest());
+    }
+    
+    /**
+     * Gets the compiled version of the specified source, compiling it if it is not cached. Scripts compiled with
+     * different options are cached separately.
+     *
+     * @param err The stream which compiler errors are reported to.
+     *
+     * @return The compiled script, or {@code null} if any errors were reported.
+     *
+     * @throws NullPointerException if any argument is {@code null}.
+     */
+    public CompiledScript compile(final String source,final String moduleName,final PrintStream err,
+                                  final Script.Options options)
+                                  throws IOException,ScriptException
+    {
+        if(source == null || moduleName == null || err == null || options == null) throw new NullPointerException();
+        final String key = key(source,moduleName,options);
+        for(;;)
+        {
+            final CompletableFuture<Entry> mine = new CompletableFuture<>(),f;
+            synchronized(cache) {f = cache.putIfAbsent(key,mine);}
+            if(f == null)
+            {
+                misses.increment();
+                final CompiledScript c;
+                try {c = Script.compile(new StringReader(source),moduleName,err,options);}
+                catch(final IOException|ScriptException|RuntimeException|Error e)
+                {
+                    remove(key,mine);
+                    mine.completeExceptionally(e);
+                    throw e;
+                }
+                if(c == null) remove(key,mine);
+                mine.complete(c != null? new Entry(c) : null);
+                return c;
+            }
+            final Entry c;
+            try {c = f.join();}
+            catch(final CompletionException e)
+            {
+                // Compile the script again so that the exception is thrown to this caller as well.
+                continue;
+            }
+            if(c != null && c.current())
+            {
+                hits.increment();
+                return c.script;
+            }
+            // The script failed to compile or is out of date, so compile it again (and report any errors to this
+            // caller).
+            if(c != null) remove(key,f);
+        }
+    }
+    /**
+     * Gets the compiled version of the specified source with the {@linkplain Script.Options#DEFAULT default options}.
+     *
+     * @see ScriptCache#compile(String,String,PrintStream,Script.Options)
+     */
+    public CompiledScript compile(final String source,final String moduleName,final PrintStream err)
+                                  throws IOException,ScriptException
+    {
+        return compile(source,moduleName,err,Script.Options.DEFAULT);
+    }
+    private void remove(final String key,final CompletableFuture<Entry> f) {synchronized(cache) {cache.remove(key,f);}}
+    
+    /** @return The number of cached scripts, including ones which are still being compiled. */
+    public int size() {synchronized(cache) {return cache.size();}}
+    /** Removes all scripts from the cache. The statistics are not reset. */
+    public void clear() {synchronized(cache) {cache.clear();}}
+    /** @return The current statistics of this cache. */
+    public Stats stats() {return new Stats(hits.sum(),misses.sum(),evictions.sum());}
+}
@@ -0,0 +1,213 @@
+package prgmScript;
+
+/**
+ * A handle which calls a function value from Java. The handle keeps its own frame, so repeated invocations perform
+ * no lookups and allocate nothing beyond what the function itself allocates.
+ *
+ * <p>Arguments and return values use the following representations:
+ * <table>
+ * <thead>
+ *   <tr><th>Script type</th><th>Java type</th></tr>
+ * </thead>
+ * <tbody>
+ *   <tr><td>{@code int}</td><td>any {@linkplain Number} or {@linkplain Character} (returned as {@linkplain Long})</td></tr>
+ *   <tr><td>{@code float}</td><td>any {@linkplain Number} (returned as {@linkplain Double})</td></tr>
+ *   <tr><td>{@code bool}</td><td>{@linkplain Boolean}</td></tr>
+ *   <tr><td>{@code str}</td><td>{@linkplain String}</td></tr>
+ *   <tr><td>anything else</td><td>a {@linkplain Value} of the same type (returned as {@linkplain Value#getValue()})</td></tr>
+ * </tbody>
+ * </table>
+ *
+ * <p>There is no batch API: to call a function once per row of input, call it in a plain loop on one handle, e.g.
+ * <pre>{@code
+ * final ScriptFunction f = module.getFunction("udf");
+ * for(int i = 0;i < in.length;++i) out[i] = f.applyAsLong(in[i]);
+ * }</pre>
+ * Each call reuses the handle's frame, so the loop costs no more than a batch call would.
+ *
+ * @apiNote Handles are not thread-safe. Script functions keep their arguments in the scope they were created in, so
+ *          a script function should only be called from one thread at a time regardless of how many handles refer
+ *          to it.
+ *
+ * @see Module#getFunction(String)
+ * @see ScriptFunction#from(Value)
+ */
+public final class ScriptFunction
+{
+    /** The type of the function. */
+    public final Type type;
+    private final Script.Func func;
+    /** The argument cells of a script function, or {@code null} if the function is native. */
+    private final Value[] cells;
+    /** The frame which arguments to native functions are passed on. */
+    private final RuntimeScope frame = new RuntimeScope();
+    
+    private ScriptFunction(final Type type,final Script.Func func)
+    {
+        this.type = type;
+        this.func = func;
+        if(func.scope() == null) cells = null;
+        else
+        {
+            cells = new Value[func.argn().length];
+            for(int i = 0;i < cells.length;++i)
+                cells[i] = func.scope().getField(func.argn()[i]);
+        }
+    }
+    
+    /**
+     * @return A handle to the function contained in the specified value. This can be used by host functions to call
+     *         function arguments (e.g. a comparator passed to a native sort).
+     *
+     * @throws NullPointerException if {@code value} is {@code null}.
+     * @throws IllegalArgumentException if {@code value} is not an initialized function.
+     */
+    public static ScriptFunction from(final Value value)
+    {
+        if(value == null) throw new NullPointerException();
+        if(value.type.type.base != BaseType.FUNC) throw new IllegalArgumentException("Not a function: "+value.type);
+        if(value.value == null) throw new IllegalArgumentException("Uninitialized function");
+        return new ScriptFunction(value.type.type,(Script.Func)value.value);
+    }
+    
+    /** Passes the specified argument to the next call. */
+    private void arg(final int i,final Object o)
+    {
+        if(cells == null) frame.pushAccumulator(o);
+        else cells[i].value = o;
+    }
+    /**
+     * Calls the function with the arguments passed by {@linkplain ScriptFunction#arg(int,Object)}.
+     *
+     * @param p The position of the frame's accumulator before the arguments were passed.
+     */
+    private Object call(final int p)
+    {
+        try {return Script.resolve(cells == null? func.call(frame) : func.run());}
+        finally {frame.accumulator.pos(p);}
+    }
+    private void check(final BaseType ret,final int argc,final BaseType arg)
+    {
+        if(type.subType.base != ret || type.args.length != argc)
+            throw new IllegalArgumentException("Function type mismatch: "+type);
+        for(final ConstableType ct : type.args)
+            if(ct.type.base != arg)
+                throw new IllegalArgumentException("Function type mismatch: "+type);
+    }
+    private static Object toScript(final Object o,final Type t)
+    {
+        return switch(t.base)
+        {
+            case INT ->
+            {
+                if(o instanceof final Number n) yield n.longValue();
+                if(o instanceof final Character c) yield (long)c;
+                throw new IllegalArgumentException("Expected "+t+", got "+o);
+            }
+            case FLOAT ->
+            {
+                if(o instanceof final Number n) yield n.doubleValue();
+                throw new IllegalArgumentException("Expected "+t+", got "+o);
+            }
+            case BOOL ->
+            {
+                if(o instanceof Boolean) yield o;
+                throw new IllegalArgumentException("Expected "+t+", got "+o);
+            }
+            case STR ->
+            {
+                if(o instanceof final String s) yield Script.strStruct(s);
+                throw new IllegalArgumentException("Expected "+t+", got "+o);
+            }
+            default ->
+            {
+                if(o instanceof final Value v && v.type.type.equals(t)) yield v.value;
+                throw new IllegalArgumentException("Expected "+t+", got "+o);
+            }
+        };
+    }
+    
+    /**
+     * Calls the function.
+     *
+     * @return The function's return value, or {@code null} if the function returns {@code void}.
+     *
+     * @throws IllegalArgumentException if the number or types of the arguments do not match the function's type.
+     */
+    public Object invoke(final Object...args)
+    {
+        if(args.length != type.args.length)
+            throw new IllegalArgumentException("Expected "+type.args.length+" arguments, got "+args.length);
+        final int p = frame.accumulator.pos();
+        try
+        {
+            for(int i = 0;i < args.length;++i)
+                arg(i,toScript(args[i],type.args[i].type));
+        }
+        catch(final IllegalArgumentException e)
+        {
+            frame.accumulator.pos(p);
+            throw e;
+        }
+        return toJava(call(p));
+    }
+    private Object toJava(final Object ret)
+    {
+        return switch(type.subType.base)
+        {
+            case VOID -> null;
+            case STR -> Script.strData(ret);
+            default -> ret;
+        };
+    }
+    /**
+     * Calls a function of type {@code func<int>(int)}.
+     *
+     * @throws IllegalArgumentException if the function has a different type.
+     */
+    public long applyAsLong(final long a)
+    {
+        check(BaseType.INT,1,BaseType.INT);
+        final int p = frame.accumulator.pos();
+        arg(0,a);
+        return (long)call(p);
+    }
+    /**
+     * Calls a function of type {@code func<int>(int,int)}.
+     *
+     * @throws IllegalArgumentException if the function has a different type.
+     */
+    public long applyAsLong(final long a,final long b)
+    {
+        check(BaseType.INT,2,BaseType.INT);
+        final int p = frame.accumulator.pos();
+        arg(0,a);
+        arg(1,b);
+        return (long)call(p);
+    }
+    /**
+     * Calls a function of type {@code func<float>(float)}.
+     *
+     * @throws IllegalArgumentException if the function has a different type.
+     */
+    public double applyAsDouble(final double a)
+    {
+        check(BaseType.FLOAT,1,BaseType.FLOAT);
+        final int p = frame.accumulator.pos();
+        arg(0,a);
+        return (double)call(p);
+    }
+    /**
+     * Calls a function of type {@code func<float>(float,float)}.
+     *
+     * @throws IllegalArgumentException if the function has a different type.
+     */
+    public double applyAsDouble(final double a,final double b)
+    {
+        check(BaseType.FLOAT,2,BaseType.FLOAT);
+        final int p = frame.accumulator.pos();
+        arg(0,a);
+        arg(1,b);
+        return (double)call(p);
+    }
+}
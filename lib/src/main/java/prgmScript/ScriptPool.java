@@ -0,0 +1,92 @@
+package prgmScript;
+
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * A pool of isolated instances of a {@linkplain CompiledScript}, whose top-level code has already been executed.
+ * Borrowing and releasing instances is lock-free, so a single compiled script can serve many threads at once.
+ *
+ * <p>The script's top-level code is executed once, and every instance is a copy of the resulting globals. Released
+ * instances are replaced by a new copy, so an instance never observes the changes made while it was borrowed by
+ * someone else. If every instance is borrowed, a new copy is created instead of waiting for one to be released.
+ *
+ * @apiNote Modules imported by the script are shared between all instances. An instance, and any
+ *          {@linkplain ScriptFunction} obtained from it, must only be used by the thread which borrowed it. Since the
+ *          top-level code is not executed for each instance, its side effects (such as calls to host functions)
+ *          happen only once.
+ *
+ * @see Script#compile(java.io.Reader,String,java.io.PrintStream)
+ */
+public final class ScriptPool
+{
+    private final CompiledScript script;
+    private final int capacity;
+    private final ConcurrentLinkedDeque<Module> idle = new ConcurrentLinkedDeque<>();
+    /** The number of instances in {@linkplain ScriptPool#idle}, which is never greater than the capacity. */
+    private final AtomicInteger size = new AtomicInteger();
+    
+    /**
+     * Creates a pool and initializes {@code capacity} instances.
+     *
+     * @throws NullPointerException if {@code script} is {@code null}.
+     * @throws IllegalArgumentException if {@code capacity} is negative.
+     */
+    public ScriptPool(final CompiledScript script,final int capacity)
+    {
+        if(script == null) throw new NullPointerException();
+        if(capacity < 0) throw new IllegalArgumentException("Negative capacity: "+capacity);
+        this.script = script;
+        this.capacity = capacity;
+        for(int i = 0;i < capacity;++i) idle.push(script.instance());
+        size.set(capacity);
+    }
+    /**
+     * Creates a pool with one instance per available processor.
+     *
+     * @see ScriptPool#ScriptPool(CompiledScript,int)
+     */
+    public ScriptPool(final CompiledScript script) {this(script,Runtime.getRuntime().availableProcessors());}
+    
+    /** @return An initialized instance which is not used by any other thread. */
+    public Module borrow()
+    {
+        final Module m = idle.poll();
+        if(m == null) return script.instance();
+        size.decrementAndGet();
+        return m;
+    }
+    /**
+     * Returns an instance to the pool. The instance must not be used after calling this method.
+     *
+     * @throws NullPointerException if {@code module} is {@code null}.
+     * @throws IllegalArgumentException if {@code module} was not created by this pool's script.
+     */
+    public void release(final Module module)
+    {
+        if(module.compileTime != script.compileTime)
+            throw new IllegalArgumentException("Module was not created by this pool's script");
+        // The instance is replaced by a new copy of the script's template instead of being reused, which resets it
+        // without having to undo in-place changes to lists and structs. Copying takes no lock.
+        if(size.getAndIncrement() < capacity) idle.push(script.instance());
+        else size.decrementAndGet();
+    }
+    /**
+     * Borrows an instance, applies the specified function to it, and releases it.
+     *
+     * @return The result of the function.
+     *
+     * @throws NullPointerException if {@code f} is {@code null}.
+     */
+    public <R> R apply(final Function<Module,R> f)
+    {
+        if(f == null) throw new NullPointerException();
+        final Module m = borrow();
+        try {return f.apply(m);}
+        finally {release(m);}
+    }
+    
+    /** @return The number of initialized instances which are not currently borrowed. */
+    public int available() {return size.get();}
+}
@@ -1,24 +1,97 @@
 package prgmScript;
 
-import java.util.Arrays;
-import java.util.Objects;
+import java.lang.ref.PhantomReference;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
 import java.util.StringJoiner;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
 
-/** A record which represents a runtime datatype. */
-@SuppressWarnings("ClassCanBeRecord")
+/**
+ * A record which represents a runtime datatype. Types are interned by {@linkplain Types}, so there is only one
+ * instance of each type and types can be compared by reference. Each struct declaration creates its own type, which
+ * is distinct from every other struct type even if the names and fields are the same.
+ */
 public final class Type
 {
+    /** The number of ids which have been given out. */
+    private static final AtomicInteger COUNT = new AtomicInteger();
+    /** A phantom reference to a type, which remembers its id so that the id can be reused once it is enqueued. */
+    private static final class IdRef extends PhantomReference<Type>
+    {
+        final int id;
+        IdRef(final Type t) {super(t,COLLECTED); id = t.id;}
+    }
+    /** The references to the types which can be collected. They are removed once they have been enqueued. */
+    private static final Set<IdRef> REFS = ConcurrentHashMap.newKeySet();
+    private static final ReferenceQueue<Type> COLLECTED = new ReferenceQueue<>();
+    /** The ids of types which have been collected. */
+    private static final Queue<Integer> FREE = new ConcurrentLinkedQueue<>();
+    
     public final BaseType base;
     public final Type subType;
     public final String structName;
+    /** The struct's fields, or {@code null} if this is not a struct type. */
+    public final Map<String,ConstableType> fields;
     public final ConstableType[] args;
+    /**
+     * A small number which is unique among the types which exist at the same time. The ids of collected types are
+     * given to new types, so the ids stay below the largest number of types which have existed at once.
+     *
+     * @see Types#count()
+     */
+    public final int id;
     
-    Type(final BaseType base,final Type subType,final String structName,final ConstableType...args)
+    /*/
+    Derived types are stored on the types which they are derived from instead of in global tables, so that they can
+    be collected along with them. The mutable and const instances are created with the type, except for primitives,
+    whose instances are constants of ConstableType. The list type is created the first time it is needed.
+    /*/
+    
+    /** The non-const and const instances of this type, or {@code null} if this is a primitive. */
+    final ConstableType mutable,constant;
+    /** The list type whose elements have this type, or {@code null} if it has not been created yet. */
+    private volatile Type list;
+    private static final AtomicReferenceFieldUpdater<Type,Type> LIST =
+        AtomicReferenceFieldUpdater.newUpdater(Type.class,Type.class,"list");
+    
+    Type(final BaseType base,final Type subType,final String structName,final Map<String,ConstableType> fields,
+         final ConstableType...args)
     {
         this.base = base;
         this.subType = subType;
         this.structName = structName;
+        this.fields = fields;
         this.args = args;
+        for(Reference<? extends Type> r;(r = COLLECTED.poll()) != null;)
+        {
+            REFS.remove(r);
+            FREE.add(((IdRef)r).id);
+        }
+        final Integer free = FREE.poll();
+        id = free != null? free : COUNT.getAndIncrement();
+        // Primitives are constants, so they are never collected.
+        final boolean primitive = base != BaseType.LIST && base != BaseType.STRUCT && base != BaseType.FUNC;
+        mutable  = primitive? null : new ConstableType(this,false);
+        constant = primitive? null : new ConstableType(this,true);
+        if(!primitive) REFS.add(new IdRef(this));
+    }
+    /** @return The number of ids which have been given out, which is greater than the id of every type. */
+    static int count() {return COUNT.get();}
+    
+    /** @return The list type whose elements have this type. */
+    Type listType()
+    {
+        final Type l = list;
+        if(l != null) return l;
+        // Another thread may create the type at the same time, in which case its instance wins.
+        LIST.compareAndSet(this,null,new Type(BaseType.LIST,this,null,null));
+        return list;
     }
     
     @Override
@@ -37,24 +110,14 @@ public final class Type
             default -> base.name().toLowerCase();
         };
     }
-    @Override public int hashCode() {return 31 * Objects.hash(base,subType,structName) + Arrays.hashCode(args);}
-    @Override
-    public boolean equals(final Object o)
-    {
-        return this == o ||
-        (
-            o instanceof final Type ct &&
-            base == ct.base &&
-            Objects.equals(structName,ct.structName) &&
-            Objects.equals(subType,ct.subType) &&
-            Objects.deepEquals(args,ct.args)
-        );
-    }
+    @Override public int hashCode() {return id;}
+    /** Since types are interned, two types are equal iff they are the same object. */
+    @Override public boolean equals(final Object o) {return this == o;}
     
     /** A Type object representing a primitive. */
-    static final Type VOID  = new Type(BaseType.VOID ,null,null),
-                      BOOL  = new Type(BaseType.BOOL ,null,null),
-                      INT   = new Type(BaseType.INT  ,null,null),
-                      FLOAT = new Type(BaseType.FLOAT,null,null),
-                      STR   = new Type(BaseType.STR  ,null,null);
-}
\ No newline at end of file
+    static final Type VOID  = new Type(BaseType.VOID ,null,null,null),
+                      BOOL  = new Type(BaseType.BOOL ,null,null,null),
+                      INT   = new Type(BaseType.INT  ,null,null,null),
+                      FLOAT = new Type(BaseType.FLOAT,null,null,null),
+                      STR   = new Type(BaseType.STR  ,null,null,null);
+}
@@ -1,6 +1,13 @@
 package prgmScript;
 
-import java.util.*;
+import prgmScript.util.ContainerUtil;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * A utility class which contains functions for operating on types.
@@ -15,9 +22,17 @@ public final class Types
     /*/
     The below functions and constants are responsible for managing types. Since types are used everywhere in the
     code, having only a single unique Type instance per runtime type may save a substantial amount of memory for
-    other things. The drawback is that non-primitive types must be stored in a map of some kind to be retrieved
-    later, which creates overhead for scripts which only use the primitive types. Additionally, these maps must
-    be synchronized so that scripts running on different threads don't concurrently modify the maps.
+    other things, and lets Type compare by reference. Hosts which compile scripts for a long time must not keep every
+    type that was ever created, though, so types are only reachable from the scripts which use them:
+    
+     - Each struct declaration creates its own type, which is stored in the scope that declared it.
+     - List types and the const and non-const instances of each type are stored on the types they are derived from.
+     - Function types have no single owner, so they are stored in a concurrent map of weak references, keyed by the
+       ids of their components. Cleared references are removed whenever a function type is made.
+    
+    The ids of collected types are reused, so that they stay dense. A function type refers to its components, so
+    its reference is always cleared before the id of a component can be reused, and a key which matches a different
+    type after that only finds the cleared reference.
     /*/
     
     /** A {@linkplain Type} object representing a primitive. */
@@ -27,51 +42,80 @@ public final class Types
                              FLOAT = Type.FLOAT,
                              STR   = Type.STR;
     
-    /** A synchronized map containing struct types. */
-    private static final Map<String,Type> STRUCT = Collections.synchronizedMap(new HashMap<>());
-    /** @return A {@linkplain Type} representing the struct with the specified name. */
-    public static Type structType(final String structName)
+    /**
+     * @return The number of type ids which have been given out, which is greater than the id of every type. Since the
+     *         ids of collected types are reused, this only grows with the number of types which exist at once.
+     */
+    public static int count() {return Type.count();}
+    
+    /**
+     * @param structName The name of the struct.
+     * @param fields     A map containing each field's name and {@linkplain ConstableType}.
+     *
+     * @return A new {@linkplain Type} representing a struct, which is distinct from every other struct type.
+     *
+     * @throws NullPointerException if any argument is {@code null}.
+     */
+    public static Type structType(final String structName,final Map<String,ConstableType> fields)
     {
-        Type t = STRUCT.get(structName);
-        if(t == null) STRUCT.put(structName,t = new Type(BaseType.STRUCT,null,structName));
-        return t;
+        if(structName == null || fields == null) throw new NullPointerException();
+        return new Type(BaseType.STRUCT,null,structName,ContainerUtil.makeImmutable(fields));
     }
     
-    /** A synchronized map containing list types. */
-    private static final Map<Type,Type> LIST = Collections.synchronizedMap(new HashMap<>());
-    /** @return A {@linkplain Type} representing the list with the specified sub-type. */
-    public static Type listType(final Type subType)
+    /**
+     * @return {@code true} iff the struct type has the specified name and exactly the specified fields, including
+     *         their const-ness. Used to find the declaration of a struct which was saved by name and fields.
+     */
+    static boolean matches(final Type struct,final String structName,final Map<String,ConstableType> fields)
     {
-        Type t = LIST.get(subType);
-        if(t == null) LIST.put(subType,t = new Type(BaseType.LIST,subType,null));
-        return t;
+        if(!struct.structName.equals(structName) || struct.fields.size() != fields.size()) return false;
+        // Constable types are interned as well, so the fields can be compared by reference.
+        for(final Map.Entry<String,ConstableType> e : fields.entrySet())
+            if(struct.fields.get(e.getKey()) != e.getValue()) return false;
+        return true;
     }
     
-    /** A record which represents the identifying features of a function type. */
-    private record FuncKey(Type subType,ConstableType...args)
+    /** @return A {@linkplain Type} representing the list with the specified sub-type. */
+    public static Type listType(final Type subType) {return subType.listType();}
+    
+    /**
+     * A record which represents the identifying features of a function type. Since the const-ness of the arguments
+     * does not affect which functions can be assigned to the type, only the ids of the argument types are compared.
+     */
+    private record FuncKey(int subType,int[] args)
     {
-        @Override
-        public boolean equals(final Object o)
+        @Override public int hashCode() {return 31*subType+Arrays.hashCode(args);}
+        @Override public boolean equals(final Object o)
         {
-            return this == o ||
-            (
-                o instanceof final FuncKey fk &&
-                subType.equals(fk.subType) &&
-                Arrays.equals(args,fk.args)
-            );
+            return o instanceof final FuncKey k && subType == k.subType && Arrays.equals(args,k.args);
         }
-        @Override public int hashCode() {return 31 * Objects.hash(subType) + Arrays.hashCode(args);}
     }
-    /** A synchronized map containing function types. */
-    private static final Map<FuncKey,Type> FUNC = Collections.synchronizedMap(new HashMap<>());
+    /** A weak reference to a function type, which remembers its key so that it can be removed once it is cleared. */
+    private static final class FuncRef extends WeakReference<Type>
+    {
+        final FuncKey key;
+        FuncRef(final Type t,final FuncKey key) {super(t,CLEARED); this.key = key;}
+    }
+    /** A concurrent map containing function types. */
+    private static final Map<FuncKey,FuncRef> FUNC = new ConcurrentHashMap<>();
+    private static final ReferenceQueue<Type> CLEARED = new ReferenceQueue<>();
     /** @return A {@linkplain Type} representing the function with the specified return type and arguments. */
     public static Type funcType(final Type retType,final ConstableType...args)
     {
-        final FuncKey fk = new FuncKey(retType,args);
-        Type t = FUNC.get(fk);
-        if(t == null) FUNC.put(fk,t = new Type(BaseType.FUNC,retType,null,args));
-        return t;
+        for(Reference<? extends Type> r;(r = CLEARED.poll()) != null;) FUNC.remove(((FuncRef)r).key,r);
+        final int[] ids = new int[args.length];
+        for(int i = 0;i < args.length;++i) ids[i] = args[i].type.id;
+        final Type[] t = new Type[1];
+        FUNC.compute(new FuncKey(retType.id,ids),(k,r) ->
+        {
+            if(r != null && (t[0] = r.get()) != null) return r;
+            t[0] = new Type(BaseType.FUNC,retType,null,null,args.clone());
+            return new FuncRef(t[0],k);
+        });
+        return t[0];
     }
+    /** @return The number of function types which are currently interned. */
+    static int funcTypes() {return FUNC.size();}
     
     /** A {@linkplain ConstableType} object representing a primitive. */
     public static final ConstableType MUTABLE_BOOL  = ConstableType.BOOL,
@@ -85,9 +129,6 @@ public final class Types
                                       CONST_FLOAT   = ConstableType.CONST_FLOAT,
                                       CONST_STR     = ConstableType.CONST_STR;
     
-    /** A synchronized map containing all non-primitive non-const and const instances, respectively. */
-    private static final Map<Type,ConstableType[]> STORAGE = Collections.synchronizedMap(new HashMap<>());
-    
     /**
      * @return A {@linkplain ConstableType} representing the specified {@linkplain Type} and const-ness.
      *
@@ -103,12 +144,7 @@ public final class Types
             case INT   -> isConst? CONST_INT   : MUTABLE_INT;
             case FLOAT -> isConst? CONST_FLOAT : MUTABLE_FLOAT;
             case STR   -> isConst? CONST_STR   : MUTABLE_STR;
-            default    ->
-            {
-                ConstableType[] pair = STORAGE.get(t);
-                if(pair == null) STORAGE.put(t,pair = new ConstableType[] {new ConstableType(t,false),new ConstableType(t,true)});
-                yield pair[isConst? 1:0];
-            }
+            default    -> isConst? t.constant : t.mutable;
         };
     }
 }
\ No newline at end of file
@@ -1,7 +1,7 @@
 package prgmScript;
 
 /** A {@linkplain ConstableType} with a mutable value attached. */
-public final class Value
+public sealed class Value permits ArrayView.Slot
 {
     public final ConstableType type;
     Object value;
@@ -12,6 +12,14 @@ public final class Value
         this.value = value;
     }
     
+    /**
+     * Assigns a new value. Script code assigns through this method so that elements of views of host memory can write
+     * through to it.
+     *
+     * @return The new value.
+     */
+    Object set(final Object value) {return this.value = value;}
+    
     @Override
     public boolean equals(final Object o)
     {
@@ -1,37 +1,30 @@
 package prgmScript.lib;
 
 import prgmScript.*;
+import prgmScript.Module;
 
 import java.util.Map;
-import java.util.function.Function;
+import java.util.function.Consumer;
 
-import static prgmScript.ModuleMaker.FuncInitializer;
-import static prgmScript.ModuleMaker.createFuncInitializers;
 import static java.lang.System.err;
 import static java.lang.System.out;
 
 /** Standard output streams. */
-@SuppressWarnings("unused")
 public final class prgmOutput
 {
     private prgmOutput() {}
     
-    static
+    /** @return A new instance of this library. */
+    public static Module make()
     {
-        @SuppressWarnings("unchecked")
-        final Function<Value[],Object>[] f = new Function[]
-        {
-            (Function<Value[],Object>)a -> {out.print  (Script.strData(a[0].getValue())); return null;},
-            (Function<Value[],Object>)a -> {out.println(Script.strData(a[0].getValue())); return null;},
-            (Function<Value[],Object>)a -> {err.print  (Script.strData(a[0].getValue())); return null;},
-            (Function<Value[],Object>)a -> {err.println(Script.strData(a[0].getValue())); return null;}
-        };
-        final FuncInitializer[] init = createFuncInitializers(f,Types.VOID,Types.CONST_STR);
         final ConstableType ft = Types.constableType(Types.funcType(Types.VOID,Types.CONST_STR),true);
-        new ModuleMaker().
-            declareStructType("PrintStream",Map.of("print",ft,"println",ft)).
-            declareStructValue("sysout","PrintStream",Map.of("print",init[0],"println",init[1]),true).
-            declareStructValue("syserr","PrintStream",Map.of("print",init[2],"println",init[3]),true).
-            make().register("prgmOutput");
+        final ModuleMaker mm = new ModuleMaker().declareStructType("PrintStream",Map.of("print",ft,"println",ft));
+        return mm.declareStructValue("sysout","PrintStream",printStream(str -> out.print(str),str -> out.println(str)),true)
+                 .declareStructValue("syserr","PrintStream",printStream(str -> err.print(str),str -> err.println(str)),true)
+                 .make();
     }
-}
\ No newline at end of file
+    private static Map<String,Object> printStream(final Consumer<String> print,final Consumer<String> println)
+    {
+        return Map.of("print",ModuleMaker.createStrConsumer(print,true),"println",ModuleMaker.createStrConsumer(println,true));
+    }
+}
@@ -1,6 +1,7 @@
 package prgmScript.lib;
 
 import prgmScript.*;
+import prgmScript.Module;
 import prgmScript.util.XorShift;
 
 import java.util.Map;
@@ -11,7 +12,6 @@ import java.util.random.RandomGenerator;
 import static prgmScript.ModuleMaker.*;
 
 /** Random number generators. */
-@SuppressWarnings("unused")
 public final class prgmRandom
 {
     private prgmRandom() {}
@@ -20,7 +20,8 @@ public final class prgmRandom
     {
         return Map.entry(k,Types.constableType(Types.funcType(rt,args),true));
     }
-    static
+    /** @return A new instance of this library. */
+    public static Module make()
     {
         final Map<String,ConstableType> struct = Map.ofEntries
         (
@@ -41,12 +42,6 @@ public final class prgmRandom
             entry("nextGaussian",Types.FLOAT),
             entry("nextExponential",Types.FLOAT)
         );
-        final Function<Function<Value[],Object>,Value> nextB = funcCreator(true,Types.BOOL),
-                                                       nextI = funcCreator(true,Types.INT),
-                                                       nextF = funcCreator(true,Types.FLOAT),
-        
-                                                       nextBI = funcCreator(true,Types.INT,Types.CONST_INT,Types.CONST_INT),
-                                                       nextBF = funcCreator(true,Types.FLOAT,Types.CONST_FLOAT,Types.CONST_FLOAT);
         final Function<Value[],Object> f = a ->
         {
             long seed = (long)a[0].getValue();
@@ -58,23 +53,21 @@ public final class prgmRandom
                 Map.entry("seed",createInt(seed,true)),
                 Map.entry("isStrong",createBool(isStrong,true)),
                 
-                Map.entry("nextBool",nextB.apply(b -> rand.nextBoolean())),
+                Map.entry("nextBool",createBoolSupplier(rand::nextBoolean,true)),
                 
-                Map.entry("nextI32",nextI.apply(b -> (long)rand.nextInt())),
-                Map.entry("nextI64",nextI.apply(b -> rand.nextLong())),
-                Map.entry("nextBoundedInt",nextBI.apply(b -> rand.nextLong((long)b[0].getValue(),(long)b[1].getValue()))),
+                Map.entry("nextI32",createLongSupplier(() -> (long)rand.nextInt(),true)),
+                Map.entry("nextI64",createLongSupplier(() -> rand.nextLong(),true)),
+                Map.entry("nextBoundedInt",createLongFunc((lo,hi) -> rand.nextLong(lo,hi),true)),
                 
-                Map.entry("nextF32",nextF.apply(b -> (double)rand.nextFloat())),
-                Map.entry("nextF64",nextF.apply(b -> rand.nextDouble())),
-                Map.entry("nextBoundedFloat",nextBF.apply(b -> rand.nextDouble((double)b[0].getValue(),(double)b[1].getValue()))),
+                Map.entry("nextF32",createDoubleSupplier(() -> (double)rand.nextFloat(),true)),
+                Map.entry("nextF64",createDoubleSupplier(() -> rand.nextDouble(),true)),
+                Map.entry("nextBoundedFloat",createDoubleFunc((lo,hi) -> rand.nextDouble(lo,hi),true)),
                 
-                Map.entry("nextGaussian",nextF.apply(b -> rand.nextGaussian())),
-                Map.entry("nextExponential",nextF.apply(b -> rand.nextExponential()))
+                Map.entry("nextGaussian",createDoubleSupplier(() -> rand.nextGaussian(),true)),
+                Map.entry("nextExponential",createDoubleSupplier(() -> rand.nextExponential(),true))
             );
         };
-        new ModuleMaker().
-            declareStructType("Random",struct).
-            declareFunc("newRandom",true,f,Types.structType("Random"),Types.CONST_INT,Types.CONST_BOOL).
-            make().register("prgmRandom");
+        final ModuleMaker mm = new ModuleMaker().declareStructType("Random",struct);
+        return mm.declareFunc("newRandom",true,f,mm.structType("Random"),Types.CONST_INT,Types.CONST_BOOL).make();
     }
 }
\ No newline at end of file
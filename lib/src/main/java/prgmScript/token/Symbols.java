@@ -0,0 +1,78 @@
+package prgmScript.token;
+
+import java.util.Arrays;
+
+/**
+ * The distinct token values of a script. Each value is stored once and is identified by its index, so tokens with
+ * the same text share a string. Values can be looked up by a range of characters, so that the scanner doesn't create
+ * a string for a value which it has already seen.
+ */
+final class Symbols
+{
+    private String[] values;
+    private int size = 0;
+    /** An open addressing hash table, which contains the index of each value plus one, or zero in empty slots. */
+    private int[] table;
+    
+    Symbols() {this(64);}
+    Symbols(final int capacity)
+    {
+        values = new String[Math.max(capacity,1)];
+        table = new int[Integer.highestOneBit(Math.max(capacity,1))*4];
+    }
+    
+    /** @return The number of symbols. */
+    int size() {return size;}
+    /** @return The value of the specified symbol, or {@code null} if the symbol is {@code -1}. */
+    String get(final int symbol) {return symbol == -1? null : values[symbol];}
+    
+    private static int slot(final int hash,final int mask) {return (hash ^ (hash >>> 16)) & mask;}
+    /** @return The symbol of the specified characters, which is added if necessary. */
+    int intern(final char[] c,final int from,final int to)
+    {
+        // This is the same as String::hashCode, so that the strings' cached hashes can be compared.
+        int h = 0;
+        for(int i = from;i < to;++i) h = 31*h+c[i];
+        final int mask = table.length-1;
+        int i = slot(h,mask);
+        for(int s;(s = table[i]) != 0;i = (i+1) & mask)
+        {
+            final String v = values[s-1];
+            if(v.hashCode() == h && v.length() == to-from)
+            {
+                int j = 0;
+                while(j != to-from && v.charAt(j) == c[from+j]) ++j;
+                if(j == to-from) return s-1;
+            }
+        }
+        return add(new String(c,from,to-from),i);
+    }
+    /** @return The symbol of the specified value, which is added if necessary. */
+    int intern(final String v)
+    {
+        final int h = v.hashCode(),mask = table.length-1;
+        int i = slot(h,mask);
+        for(int s;(s = table[i]) != 0;i = (i+1) & mask)
+            if(values[s-1].equals(v)) return s-1;
+        return add(v,i);
+    }
+    private int add(final String v,final int slot)
+    {
+        if(size == values.length) values = Arrays.copyOf(values,size*2);
+        values[size] = v;
+        table[slot] = ++size;
+        // Keep the table at most half full.
+        if(size*2 > table.length)
+        {
+            table = new int[table.length*2];
+            final int mask = table.length-1;
+            for(int s = 0;s < size;++s)
+            {
+                int i = slot(values[s].hashCode(),mask);
+                while(table[i] != 0) i = (i+1) & mask;
+                table[i] = s+1;
+            }
+        }
+        return size-1;
+    }
+}
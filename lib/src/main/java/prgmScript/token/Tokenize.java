@@ -1,13 +1,19 @@
 package prgmScript.token;
 
 import prgmScript.util.ErrReporter;
-import prgmScript.util.Reader;
 
 import java.io.IOException;
 import java.io.PrintStream;
-import java.util.ArrayList;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
 
-import static prgmScript.token.Token.DUMMY;
 import static prgmScript.token.TokenType.*;
 
 /**
@@ -47,23 +53,93 @@ import static prgmScript.token.TokenType.*;
  *                  | '0'|'1'|'2'|'3'|'4'|'5'|'6'|'7'|'8'|'9'|'$'|'_'
  * </pre>
  *
+ * The source is scanned from a character buffer with an index, so lookahead only moves the index back and the values
+ * of names and numbers are sliced from the buffer. Tokens are scanned on demand by {@linkplain TokenIterator}.
+ *
  * @see prgmScript.Script
  */
 public final class Tokenize
 {
-    private static String word(final Reader r,int first) throws IOException
+    /** A cursor over the characters of a script, which also holds the line and symbol of the last token scanned. */
+    private static final class Source
     {
-        final StringBuilder sb = new StringBuilder();
-        while(('a' <= first && first <= 'z') ||
-              ('A' <= first && first <= 'Z') ||
-              ('0' <= first && first <= '9') ||
-               first == '_' || first == '$')
+        private final char[] c;
+        private final int end;
+        private int pos,line;
+        final Symbols symbols;
+        int tokenLine,symbol;
+        
+        /** A source over the characters between the indices, which begins on the specified line. */
+        Source(final char[] c,final int pos,final int end,final int line,final Symbols symbols)
+        {
+            this.c = c;
+            this.pos = pos;
+            this.end = end;
+            this.line = line;
+            this.symbols = symbols;
+        }
+        Source(final CharBuffer buf)
+        {
+            if(buf.hasArray())
+            {
+                c = buf.array();
+                pos = buf.arrayOffset()+buf.position();
+                end = buf.arrayOffset()+buf.limit();
+            }
+            else
+            {
+                c = new char[buf.remaining()];
+                buf.duplicate().get(c);
+                end = c.length;
+            }
+            symbols = new Symbols();
+        }
+        
+        /** @return The number of newline ('\n') characters read. */
+        int line() {return line;}
+        /** @return The index of the next character. */
+        int pos() {return pos;}
+        /** @return The next character, or {@code -1} at the end of the source. */
+        int read()
         {
-            sb.append(Character.toString(first));
-            first = r.read();
+            if(pos == end) return -1;
+            final char o = c[pos++];
+            if(o == '\n') ++line;
+            return o;
         }
-        r.unread(first);
-        return sb.toString();
+        /** Moves back over the specified character, which must be the last one read. */
+        void unread(final int o)
+        {
+            if(o == -1) return;
+            --pos;
+            if(o == '\n') --line;
+        }
+        /**
+         * Skips all characters which satisfy {@linkplain Character#isWhitespace(char)}.
+         *
+         * @return The first non-whitespace character encountered.
+         */
+        int skipWS()
+        {
+            int o;
+            do o = read(); while(Character.isWhitespace(o));
+            return o;
+        }
+        /** @return The symbol of the characters between the specified indices. */
+        int symbol(final int from,final int to) {return symbols.intern(c,from,to);}
+    }
+    
+    /** @return The symbol of the name. */
+    private static int word(final Source r,final int start)
+    {
+        int c;
+        do c = r.read();
+        while(('a' <= c && c <= 'z') ||
+              ('A' <= c && c <= 'Z') ||
+              ('0' <= c && c <= '9') ||
+               c == '_' || c == '$');
+        r.unread(c);
+        return r.symbol(start,r.pos());
     }
     private enum Base {hex,dec,bin}
     private static boolean isNumeric(final int c,final Base b)
@@ -75,34 +151,28 @@ public final class Tokenize
             default  -> '0' <= c && c <= '9'; // dec
         };
     }
-    private static int integer(final Reader r,final Base b,final StringBuilder sb) throws IOException
+    /*/
+    The functions below only check the syntax of numbers. Their text is looked up in the symbols once the whole number
+    has been read, so each function returns whether the number is valid (or the character after it) instead of text.
+    /*/
+    /** @return The first character which is not a digit. */
+    private static int integer(final Source r,final Base b)
     {
         int c = r.read();
-        while(isNumeric(c,b))
-        {
-            sb.append(Character.toString(c));
-            c = r.read();
-        }
+        while(isNumeric(c,b)) c = r.read();
         return c;
     }
-    private static String frac(final Reader r,final ErrReporter reporter) throws IOException
+    private static boolean frac(final Source r,final ErrReporter reporter)
     {
-        final StringBuilder sb = new StringBuilder();
-        int c = integer(r,Base.dec,sb);
+        int c = integer(r,Base.dec);
         if(c == 'e' || c == 'E')
         {
-            sb.append(Character.toString(c));
             c = r.read();
-            if(c == '+' || c == '-')
-            {
-                sb.append(Character.toString(c));
-                c = r.read();
-            }
+            if(c == '+' || c == '-') c = r.read();
             if(isNumeric(c,Base.dec))
             {
-                sb.append(Character.toString(c));
-                r.unread(integer(r,Base.dec,sb));
-                return sb.toString();
+                r.unread(integer(r,Base.dec));
+                return true;
             }
             r.unread(c);
             reporter.report
@@ -110,100 +180,66 @@ public final class Tokenize
                 r.line(),
                 "Invalid character in float literal: '"+Character.toString(c)+'\''
             );
-            return null;
+            return false;
         }
         r.unread(c);
-        return sb.toString();
+        return true;
     }
-    private static String hexExp(final Reader r,final ErrReporter reporter,int start) throws IOException
+    private static boolean hexExp(final Source r,final ErrReporter reporter,int start)
     {
-        final StringBuilder sb = new StringBuilder();
         if(start == 'p' || start == 'P')
         {
-            sb.append(Character.toString(start));
-            if((start = r.read()) == '-' || start == '+')
-            {
-                sb.append(Character.toString(start));
-                start = r.read();
-            }
+            if((start = r.read()) == '-' || start == '+') start = r.read();
             if(isNumeric(start,Base.dec))
             {
-                r.unread(integer(r,Base.dec,sb.append(Character.toString(start))));
-                return sb.toString();
+                r.unread(integer(r,Base.dec));
+                return true;
             }
             reporter.report(r.line(),"Invalid character in exponent of hexadecimal float");
-            return null;
+            return false;
         }
         reporter.report(r.line(),"Missing exponent part of hexadecimal float");
-        return null;
+        return false;
     }
-    private static String hexFrac(final Reader r,final ErrReporter reporter,boolean hasDigit) throws IOException
+    private static boolean hexFrac(final Source r,final ErrReporter reporter,boolean hasDigit)
     {
         int c = r.read();
-        final StringBuilder sb = new StringBuilder();
         if(isNumeric(c,Base.hex))
         {
             hasDigit = true;
-            c = integer(r,Base.hex,sb.append(Character.toString(c)));
+            c = integer(r,Base.hex);
         }
         if(!hasDigit)
         {
             reporter.report(r.line(),"Missing digits in fractional part of hexadecimal float");
-            return null;
+            return false;
         }
-        return sb.append(hexExp(r,reporter,c)).toString();
+        return hexExp(r,reporter,c);
     }
-    private static Token number(final Reader r,final ErrReporter reporter,final Base b) throws IOException
+    /** @return The type of the number, or {@code null} if it is invalid. */
+    private static TokenType number(final Source r,final ErrReporter reporter,final Base b)
     {
         int c = r.read();
         final boolean hasDigit = isNumeric(c,b);
-        final StringBuilder sb = new StringBuilder();
-        TokenType tt = LIT_INT;
-        if(hasDigit)
-        {
-            sb.append(Character.toString(c));
-            c = integer(r,b,sb);
-        }
+        if(hasDigit) c = integer(r,b);
         switch(b)
         {
             case hex ->
             {
-                if(c == '.')
-                {
-                    final String s = hexFrac(r,reporter,hasDigit);
-                    if(s == null) return null;
-                    sb.append('.')
-                      .append(s);
-                    tt = LIT_FLOAT;
-                }
-                else if(hasDigit && (c == 'p' || c == 'P'))
+                if(c == '.') return hexFrac(r,reporter,hasDigit)? LIT_FLOAT : null;
+                if(hasDigit && (c == 'p' || c == 'P')) return hexExp(r,reporter,c)? LIT_FLOAT : null;
+                if(!hasDigit)
                 {
-                    final String s = hexExp(r,reporter,c);
-                    if(s == null) return null;
-                    sb.append(s);
-                    tt = LIT_FLOAT;
+                    reporter.report(r.line(),"Missing digits while parsing number");
+                    return null;
                 }
-                else r.unread(c);
+                r.unread(c);
             }
             case dec ->
             {
-                if(c == '.')
-                {
-                    final String f = frac(r,reporter);
-                    if(f == null) return null;
-                    sb.append('.')
-                      .append(f);
-                    tt = LIT_FLOAT;
-                }
-                else if(c == 'e' || c == 'E')
-                {
-                    r.unread(c);
-                    final String f = frac(r,reporter);
-                    if(f == null) return null;
-                    sb.append(f);
-                    tt = LIT_FLOAT;
-                }
-                else r.unread(c);
+                if(c == '.') return frac(r,reporter)? LIT_FLOAT : null;
+                r.unread(c);
+                if(c == 'e' || c == 'E') return frac(r,reporter)? LIT_FLOAT : null;
             }
             default ->
             {
@@ -215,11 +251,20 @@ public final class Tokenize
                 r.unread(c);
             }
         }
-        return new Token(tt,-1,sb.toString());
+        return LIT_INT;
     }
-    private static String quote(final ErrReporter reporter,final Reader r) throws IOException
+    /** @return The symbol of the string's value. */
+    private static int quote(final ErrReporter reporter,final Source r)
     {
-        final StringBuilder sb = new StringBuilder();
+        // Most strings don't contain escape sequences, so their values can be looked up from the source.
+        final int start = r.pos();
+        {
+            int c;
+            do c = r.read(); while(c != '"' && c != '\\' && c != -1);
+            if(c == '"') return r.symbol(start,r.pos()-1);
+            r.unread(c);
+        }
+        final StringBuilder sb = new StringBuilder().append(r.c,start,r.pos()-start);
         boolean escaped = false;
         while(true)
         {
@@ -262,6 +307,8 @@ public final class Tokenize
                         }
                         yield unicode;
                     }
+                    case '\\' -> '\\';
+                    case '"' -> '"';
                     case 'f' -> '\f';
                     case 'n' -> '\n';
                     case 'r' -> '\r';
@@ -285,7 +332,7 @@ public final class Tokenize
                     }
                 };
                 if(esc == -1) break;
-                sb.append(Character.toString(esc));
+                sb.append((char)esc);
                 escaped = false;
             }
             else if(!(escaped = c == '\\'))
@@ -296,17 +343,17 @@ public final class Tokenize
                     reporter.report(r.line(),"Unexpected end-of-file while parsing quote.");
                     break;
                 }
-                sb.append(Character.toString(c));
+                sb.append((char)c);
             }
         }
-        return sb.toString();
+        return r.symbols.intern(sb.toString());
     }
-    private static void skipLineComment(final Reader r) throws IOException
+    private static void skipLineComment(final Source r)
     {
         //noinspection StatementWithEmptyBody
         for(int c = r.read();c != -1 && c != '\n';c = r.read());
     }
-    private static void skipBlockComment(final Reader r) throws IOException
+    private static void skipBlockComment(final Source r)
     {
         // Read until c is an asterisk, then check to see if the
         // next character is a slash.
@@ -315,12 +362,24 @@ public final class Tokenize
             while(c != '*' && c != -1)
                 c = r.read();
     }
-    private static Token next(final ErrReporter reporter,final Reader r) throws IOException
+    /**
+     * Scans the next token and stores its line and symbol in the source. The symbol of the token's text is looked up
+     * once the token has been scanned, unless the token's value differs from its text.
+     *
+     * @return The token's type, {@link TokenType#ERR} if it is invalid, or {@code null} if it is a comment or an
+     *         invalid number.
+     */
+    private static TokenType next(final ErrReporter reporter,final Source r)
     {
-        int c = r.skipWS();
-        final int line = r.line();
-        if(c == -1) return new Token(EOF,line,null);
-        String text = Character.toString(c);
+        final int c = r.skipWS();
+        final int start = r.pos()-1;
+        r.tokenLine = r.line();
+        if(c == -1)
+        {
+            r.symbol = -1;
+            return EOF;
+        }
+        int symbol = -1;
         final TokenType tt = switch(c)
         {
             case 'a','b','c','d','e','f',
@@ -334,7 +393,7 @@ public final class Tokenize
                  'S','T','U','V','W','X',
                  'Y','Z',
                  '_','$'
-                 -> Keywords.getOrDefault(text = word(r,c),ID);
+                 -> Keywords.getOrDefault(r.symbols.get(symbol = word(r,start)),ID);
             case ',' -> COMMA;
             case ';' -> SEMICOLON;
             case ':' -> COLON;
@@ -349,11 +408,7 @@ public final class Tokenize
             case '.' ->
             {
                 final int c2 = r.read();
-                if(isNumeric(c2,Base.dec))
-                {
-                    text = '.'+Character.toString(c2)+frac(r,reporter);
-                    yield LIT_FLOAT;
-                }
+                if(isNumeric(c2,Base.dec)) yield frac(r,reporter)? LIT_FLOAT : null;
                 r.unread(c2);
                 yield DOT;
             }
@@ -366,20 +421,11 @@ public final class Tokenize
                     case 'b','B' -> Base.bin;
                     default      -> {r.unread(c2); yield Base.dec;}
                 };
-                final Token t = number(r,reporter,b);
-                if(t == null) yield null;
-                text = '0'+(b == Base.dec? "" : Character.toString(c2))+t.value();
-                yield t.type();
+                yield number(r,reporter,b);
             }
             case '1','2','3','4','5',
-                 '6','7','8','9' ->
-            {
-                final Token t = number(r,reporter,Base.dec);
-                if(t == null) yield null;
-                text = Character.toString(c)+t.value();
-                yield t.type();
-            }
-            case '"' -> {text = quote(reporter,r); yield LIT_STR;}
+                 '6','7','8','9' -> number(r,reporter,Base.dec);
+            case '"' -> {symbol = quote(reporter,r); yield LIT_STR;}
             default  ->
             {
                 final int c1 = r.read();
@@ -387,8 +433,8 @@ public final class Tokenize
                     switch(c)
                     {
                         case '/' -> {skipLineComment(r); yield null;}
-                        case '+' -> {text = "++"; yield INC;}
-                        case '-' -> {text = "--"; yield DEC;}
+                        case '+' -> {yield INC;}
+                        case '-' -> {yield DEC;}
                         case '>' ->
                         {
                             final int c2 = r.read();
@@ -397,13 +443,12 @@ public final class Tokenize
                                 case '>' ->
                                 {
                                     final int c3 = r.read();
-                                    if(c3 == '=') {text = ">>>="; yield LRSHEQ;}
+                                    if(c3 == '=') yield LRSHEQ;
                                     r.unread(c3);
-                                    text = ">>>";
                                     yield LRSH;
                                 }
-                                case '=' -> {text = ">>="; yield RSHEQ;}
-                                default  -> {text = ">>"; r.unread(c2); yield RSH;}
+                                case '=' -> RSHEQ;
+                                default  -> {r.unread(c2); yield RSH;}
                             };
                         }
                         case '<' ->
@@ -412,28 +457,28 @@ public final class Tokenize
                             //noinspection SwitchStatementWithTooFewBranches
                             yield switch(c2)
                             {
-                                case '=' -> {text = "<<="; yield LSHEQ;}
-                                default  -> {text = "<<"; r.unread(c2); yield LSH;}
+                                case '=' -> LSHEQ;
+                                default  -> {r.unread(c2); yield LSH;}
                             };
                         }
-                        case '=' -> {text = "=="; yield EQ;}
-                        case '&' -> {text = "&&"; yield AND;}
-                        case '|' -> {text = "||"; yield OR;}
+                        case '=' -> {yield EQ;}
+                        case '&' -> {yield AND;}
+                        case '|' -> {yield OR;}
                     }
                 else if(c1 == '=')
                     switch(c)
                     {
-                        case '+' -> {text = "+="; yield ADDEQ;}
-                        case '-' -> {text = "-="; yield SUBEQ;}
-                        case '*' -> {text = "*="; yield MULEQ;}
-                        case '/' -> {text = "/="; yield DIVEQ;}
-                        case '%' -> {text = "%="; yield MODEQ;}
-                        case '&' -> {text = "&="; yield ANDEQ;}
-                        case '|' -> {text = "|="; yield OREQ;}
-                        case '^' -> {text = "^="; yield XOREQ;}
-                        case '!' -> {text = "!="; yield NEQ;}
-                        case '<' -> {text = "<="; yield LEQ;}
-                        case '>' -> {text = ">="; yield GEQ;}
+                        case '+' -> {yield ADDEQ;}
+                        case '-' -> {yield SUBEQ;}
+                        case '*' -> {yield MULEQ;}
+                        case '/' -> {yield DIVEQ;}
+                        case '%' -> {yield MODEQ;}
+                        case '&' -> {yield ANDEQ;}
+                        case '|' -> {yield OREQ;}
+                        case '^' -> {yield XOREQ;}
+                        case '!' -> {yield NEQ;}
+                        case '<' -> {yield LEQ;}
+                        case '>' -> {yield GEQ;}
                     }
                 else if(c == '/' && c1 == '*') {skipBlockComment(r); yield null;}
                 r.unread(c1);
@@ -463,56 +508,298 @@ public final class Tokenize
                 };
             }
         };
-        return tt != null
-            ? tt != ERR
-                  ? new Token(tt,line,text)
-                  : DUMMY
-            : null;
+        if(tt != null && tt != ERR) r.symbol = symbol != -1? symbol : r.symbol(start,r.pos());
+        return tt;
     }
+    /**
+     * An iterator over tokens which can move back and forth. When the tokens come from a source, each token is
+     * scanned the first time that it is needed.
+     */
     public static class TokenIterator
     {
-        private final Token[] t;
+        private static final TokenType[] TYPES = TokenType.values();
+        
+        /*/
+        Tokens are stored in parallel arrays instead of as objects, and their values are stored as indices into the
+        script's symbols, so that names which are used many times share a single string. Token objects are only
+        created when the parser asks for one, and they don't outlive the parser's use of them.
+        /*/
+        
+        private byte[] types;
+        private int[] lines,values;
+        final Symbols symbols;
+        /** The number of tokens which have been scanned. */
+        private int n;
         private int p = 0;
+        /** The source of the remaining tokens, or {@code null} once the end-of-file token has been scanned. */
+        private Source src;
+        private final ErrReporter reporter;
+        
+        TokenIterator(final byte[] types,final int[] lines,final int[] values,final Symbols symbols)
+        {
+            this.types = types;
+            this.lines = lines;
+            this.values = values;
+            this.symbols = symbols;
+            n = types.length;
+            reporter = null;
+        }
+        private TokenIterator(final Source src,final ErrReporter reporter)
+        {
+            types = new byte[256];
+            lines = new int[256];
+            values = new int[256];
+            symbols = src.symbols;
+            this.src = src;
+            this.reporter = reporter;
+        }
         
-        protected TokenIterator(final Token[] tokens) {t = tokens;}
+        /** @return {@code true} iff the token at the specified index exists, after scanning up to it if necessary. */
+        private boolean scan(final int i)
+        {
+            while(i >= n)
+            {
+                if(src == null) return false;
+                TokenType k;
+                // Ignore comments and invalid tokens.
+                do k = Tokenize.next(reporter,src);
+                while(k == null || k == ERR);
+                if(n == types.length)
+                {
+                    types  = Arrays.copyOf(types ,n*2);
+                    lines  = Arrays.copyOf(lines ,n*2);
+                    values = Arrays.copyOf(values,n*2);
+                }
+                types[n] = (byte)k.ordinal();
+                lines[n] = src.tokenLine;
+                values[n++] = src.symbol;
+                if(k == EOF) src = null;
+            }
+            return true;
+        }
+        private Token get(final int i)
+        {
+            if(!scan(i)) throw new NoSuchElementException();
+            return new Token(TYPES[types[i]],lines[i],symbols.get(values[i]));
+        }
         
-        public boolean hasNext() {return p != t.length;}
-        public Token next() {return t[p++];}
-        public boolean canAdvance() {return p != t.length - 1;}
-        public Token advance() {return t[++p];}
-        public Token peek() {return t[p];}
-        public Token peek(int offset) {return p+offset < t.length? t[p+offset] : null;}
+        public boolean hasNext() {return scan(p);}
+        public Token next() {return get(p++);}
+        public boolean canAdvance() {return scan(p+1);}
+        public Token advance() {return get(++p);}
+        public Token peek() {return get(p);}
+        public Token peek(int offset) {return scan(p+offset)? get(p+offset) : null;}
+        /** @return The type of the token at the specified offset, or {@code null} if there is no such token. */
+        public TokenType peekType(int offset) {return scan(p+offset)? TYPES[types[p+offset]] : null;}
         public boolean hasPrevious() {return p != 0;}
-        public Token previous() {return t[--p];}
+        public Token previous() {return get(--p);}
         
         public int pos() {return p;}
         public void pos(final int p) {this.p = p;}
+        
+        /** @return The number of tokens, after scanning all of them. */
+        int size()
+        {
+            scan(Integer.MAX_VALUE);
+            return n;
+        }
+        byte type(final int i) {return types[i];}
+        int line(final int i) {return lines[i];}
+        int symbol(final int i) {return values[i];}
+        
+        /** @return All tokens, including the ones before the current position. */
+        Token[] tokens()
+        {
+            final Token[] t = new Token[size()];
+            for(int i = 0;i < t.length;++i) t[i] = get(i);
+            return t;
+        }
     }
-    public static TokenIterator tokenize(final java.io.Reader reader,final ErrReporter reporter) throws IOException
+    /**
+     * @return An iterator which scans the tokens in the buffer as they are needed. Errors are added to the reporter
+     *         when the tokens which contain them are scanned, so the reporter must be checked after the last token.
+     */
+    public static TokenIterator lazy(final CharBuffer source,final ErrReporter reporter)
     {
-        try(final Reader r = new Reader(reader))
-        {
-            final ArrayList<Token> tokens = new ArrayList<>();
-            while(true)
+        return new TokenIterator(new Source(source),reporter);
+    }
+    
+    /*/
+    Large sources are split into chunks which are tokenized in parallel. A chunk may only end after a newline which is
+    not inside a string or a block comment, since no other token can contain a newline. A pre-scan finds these
+    newlines and counts the lines before each chunk, so that each chunk can be scanned on its own with the right line
+    numbers. The chunks have their own symbols, which are merged into the symbols of the first chunk afterwards.
+    
+    The pre-scan only knows where strings and comments end in valid scripts. If any chunk has errors, the whole source
+    is scanned again in order, so that the errors which are reported are the same as without chunks.
+    /*/
+    
+    /** Sources with fewer characters than this are tokenized on the calling thread. */
+    private static final int PARALLEL_MIN = 1 << 18;
+    /** The least number of characters in each chunk of a source which is tokenized in parallel. */
+    private static final int CHUNK_MIN = 1 << 15;
+    
+    /** @return The next character after the index, or {@code -1} at the end. */
+    private static int at(final char[] c,final int i,final int end) {return i < end? c[i] : -1;}
+    /**
+     * Finds the first newline outside of strings and comments after every {@code chunk} characters of the source.
+     *
+     * @return The indices after those newlines, and the number of lines before each index.
+     */
+    private static int[][] split(final char[] c,final int start,final int end,final int chunk)
+    {
+        final int max = (end-start)/chunk;
+        final int[] pos = new int[max],lines = new int[max];
+        int n = 0,line = 0,next = start+chunk;
+        for(int i = start;i < end && n < max;)
+            switch(c[i++])
             {
-                Token t;
-                // Ignore comments.
-                do t = next(reporter,r);
-                while(t == null);
-                
-                if(t != DUMMY)
+                case '\n' ->
                 {
-                    tokens.add(t);
-                    if(t.type() == EOF) break;
+                    ++line;
+                    if(i < next || i == end) break;
+                    pos[n] = i;
+                    lines[n++] = line;
+                    next = i+chunk;
                 }
+                case '"' ->
+                {
+                    for(int q;(q = at(c,i++,end)) != '"' && q != -1;)
+                    {
+                        if(q == '\\') q = at(c,i++,end);
+                        if(q == '\n') ++line;
+                    }
+                }
+                case '/' ->
+                {
+                    final int c1 = at(c,i,end);
+                    if(c1 == '/') // The newline is left for the loop.
+                        while(i < end && c[i] != '\n') ++i;
+                    else if(c1 == '*') // Same as skipBlockComment.
+                    {
+                        ++i;
+                        for(int b = at(c,i++,end);b != -1 && b != '/';b = at(c,i++,end))
+                            while(b != '*' && b != -1)
+                            {
+                                if(b == '\n') ++line;
+                                b = at(c,i++,end);
+                            }
+                    }
+                }
+                default -> {}
             }
-            return reporter.reportAll()
-                ? null
-                : new TokenIterator(tokens.toArray(Token[]::new));
+        return new int[][] {Arrays.copyOf(pos,n),Arrays.copyOf(lines,n)};
+    }
+    /** @return All tokens in the source, or {@code null} if any chunk has errors. */
+    private static TokenIterator parallel(final Source src,final int chunk)
+    {
+        final int[][] split = split(src.c,src.pos,src.end,chunk);
+        final int[] pos = split[0],lines = split[1];
+        final TokenIterator[] chunks = IntStream.rangeClosed(0,pos.length).parallel().mapToObj(k ->
+        {
+            final ErrReporter errs = new ErrReporter(null,null);
+            final Source s = k == 0
+                ? new Source(src.c,src.pos,pos.length == 0? src.end : pos[0],0,src.symbols)
+                : new Source(src.c,pos[k-1],k == pos.length? src.end : pos[k],lines[k-1],new Symbols());
+            final TokenIterator i = new TokenIterator(s,errs);
+            i.size();
+            return errs.hasErrors()? null : i;
+        }).toArray(TokenIterator[]::new);
+        
+        int total = 1;
+        for(final TokenIterator i : chunks)
+        {
+            if(i == null) return null;
+            total += i.n-1; // Without the end-of-file token.
+        }
+        final byte[] types = new byte[total];
+        final int[] lns = new int[total],values = new int[total];
+        final Symbols symbols = chunks[0].symbols;
+        int n = 0;
+        for(int k = 0;k < chunks.length;++k)
+        {
+            final TokenIterator i = chunks[k];
+            final int count = k == chunks.length-1? i.n : i.n-1;
+            System.arraycopy(i.types,0,types,n,count);
+            System.arraycopy(i.lines,0,lns,n,count);
+            if(k == 0) System.arraycopy(i.values,0,values,n,count);
+            else
+            {
+                final int[] map = new int[i.symbols.size()];
+                for(int s = 0;s < map.length;++s) map[s] = symbols.intern(i.symbols.get(s));
+                for(int t = 0;t < count;++t) values[n+t] = i.values[t] == -1? -1 : map[i.values[t]];
+            }
+            n += count;
+        }
+        return new TokenIterator(types,lns,values,symbols);
+    }
+    /**
+     * @param chunk The least number of characters to tokenize on each thread, or zero to scan on the calling thread.
+     *
+     * @return All tokens in the buffer, or {@code null} if any errors were reported.
+     */
+    static TokenIterator tokenize(final CharBuffer source,final ErrReporter reporter,final int chunk)
+    {
+        TokenIterator i = null;
+        if(chunk != 0 && source.remaining() > chunk)
+        {
+            final Source src = new Source(source);
+            i = parallel(src,chunk);
+            // Start over, since some of the chunks may have been scanned with the source's symbols.
+            if(i == null) i = new TokenIterator(new Source(src.c,src.pos,src.end,0,new Symbols()),reporter);
         }
+        else i = lazy(source,reporter);
+        i.size(); // Scan everything, so that no errors are left to be found.
+        return reporter.reportAll()? null : i;
+    }
+    /**
+     * Sources with at least {@value PARALLEL_MIN} characters are split into chunks which are tokenized on the common
+     * fork/join pool.
+     *
+     * @return All tokens in the buffer, or {@code null} if any errors were reported.
+     */
+    public static TokenIterator tokenize(final CharBuffer source,final ErrReporter reporter)
+    {
+        final boolean parallel = source.remaining() >= PARALLEL_MIN && ForkJoinPool.getCommonPoolParallelism() > 1;
+        return tokenize
+        (
+            source,reporter,
+            parallel? Math.max(CHUNK_MIN,source.remaining()/(4*ForkJoinPool.getCommonPoolParallelism())) : 0
+        );
+    }
+    /**
+     * Reads the whole stream before tokenizing it. The stream is closed afterwards.
+     *
+     * @return All tokens in the stream, or {@code null} if any errors were reported.
+     */
+    public static TokenIterator tokenize(final java.io.Reader reader,final ErrReporter reporter) throws IOException
+    {
+        final CharBuffer source;
+        try(reader)
+        {
+            // The stream is read until it ends, since a pipe or socket may not have the rest of the input yet.
+            char[] b = new char[8192];
+            int n = 0;
+            for(int r;(r = reader.read(b,n,b.length-n)) != -1;)
+                if((n += r) == b.length) b = Arrays.copyOf(b,n*2);
+            source = CharBuffer.wrap(b,0,n);
+        }
+        return tokenize(source,reporter);
     }
     public static TokenIterator tokenize(final java.io.Reader reader,final String name,final PrintStream output) throws IOException
     {
         return tokenize(reader,new ErrReporter(name,output));
     }
-}
\ No newline at end of file
+    /**
+     * Tokenizes a UTF-8 file, which is mapped into memory instead of being read through a stream.
+     *
+     * @return All tokens in the file, or {@code null} if any errors were reported.
+     */
+    public static TokenIterator tokenize(final Path path,final ErrReporter reporter) throws IOException
+    {
+        try(final FileChannel ch = FileChannel.open(path,StandardOpenOption.READ))
+        {
+            return tokenize(StandardCharsets.UTF_8.decode(ch.map(FileChannel.MapMode.READ_ONLY,0,ch.size())),reporter);
+        }
+    }
+}
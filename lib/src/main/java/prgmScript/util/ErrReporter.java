@@ -22,8 +22,11 @@ public class ErrReporter
     public void warn(final int line,final String msg) {warns.add(reportFmt(line,msg));}
     /** Adds an error to the list of reports. */
     public void report(final int line,final String msg) {errs.add(reportFmt(line,msg));}
+    /** @return {@code true} if {@linkplain ErrReporter#report(int,String)} was called at least once. */
+    public boolean hasErrors() {return !errs.isEmpty();}
     /**
-     * Prints all reports.
+     * Prints all reports. The reports are printed with a single call, so that reports from modules which are compiled
+     * in parallel are not interleaved.
      *
      * @return {@code true} if {@linkplain ErrReporter#report(int,String)} was called at least once.
      */
@@ -31,9 +34,11 @@ public class ErrReporter
     {
         final boolean noErrs = errs.isEmpty();
         if(noErrs && warns.isEmpty()) return false;
-        ps.println("In module '"+ module +"':");
-        for(final String w : warns) ps.println("[WARNING] \t["+w);
-        for(final String e :  errs) ps.println("[ ERROR ] \t["+e);
+        final String nl = System.lineSeparator();
+        final StringBuilder sb = new StringBuilder("In module '").append(module).append("':").append(nl);
+        for(final String w : warns) sb.append("[WARNING] \t[").append(w).append(nl);
+        for(final String e :  errs) sb.append("[ ERROR ] \t[").append(e).append(nl);
+        ps.print(sb);
         return !noErrs;
     }
 }
\ No newline at end of file
@@ -54,7 +54,7 @@ public class Stack<T>
         if(pos > this.pos) throw new IndexOutOfBoundsException();
         // Find the smallest power of two that is at least as large as the new stack size.
         final int size = (((this.pos = pos) - 1) & pos) != 0
-            ? 1<<(Integer.highestOneBit(pos)+1) // pos is not a power of two, retain the highest bit and shift left once.
+            ? Integer.highestOneBit(pos)<<1 // pos is not a power of two, retain the highest bit and shift left once.
             : pos;
         // Reduce the size if necessary.
         if(4 < size && size < arr.length/4) System.arraycopy(arr,0,arr = arrGen.apply(size),0,pos);
@@ -0,0 +1,294 @@
+package prgmScript;
+
+import org.junit.Test;
+import prgmScript.exception.ScriptRuntimeException;
+
+import java.io.StringReader;
+import java.lang.invoke.MethodHandles;
+import java.nio.DoubleBuffer;
+
+import static org.junit.Assert.*;
+
+public class ModuleMakerTest
+{
+    public static final class Host
+    {
+        private Host() {}
+        
+        static long calls = 0;
+        
+        @HostFunction public static long add(final long a,final long b) {return a + b;}
+        @HostFunction("half") public static float halve(final int i) {return i / 2f;}
+        @HostFunction public static boolean isEmpty(final String s) {return s.isEmpty();}
+        @HostFunction public static String repeat(final String s,final char n) {return s.repeat(n);}
+        @HostFunction public static double sum4(final double a,final short b,final byte c,final long d) {return a+b+c+d;}
+        @HostFunction public static void count() {++calls;}
+        @HostFunction public static long sum6(final long a,final long b,final long c,final long d,final long e,final long f)
+        {
+            return a+b+c+d+e+f;
+        }
+        @HostFunction public static long sum7(final long a,final long b,final long c,final long d,final long e,final long f,
+                                              final long g)
+        {
+            return a+b+c+d+e+f+g;
+        }
+        @HostFunction public static double narrow(final float f) {return f;}
+        @HostFunction static long hidden() {return 42L;}
+    }
+    public static final class Invalid
+    {
+        private Invalid() {}
+        
+        @HostFunction public static Object obj() {return null;}
+    }
+    
+    @Test
+    public void testFromClass() throws Exception
+    {
+        assertTrue(ModuleMaker.fromClass(Host.class,MethodHandles.lookup()).make().register("ModuleMakerTest_Host"));
+        final Module m = Script.run
+        (
+            new StringReader
+            (
+                """
+                import "ModuleMakerTest_Host";
+                const int a = add(40,2);
+                const float h = half(5);
+                const bool e = isEmpty("") && !isEmpty("x");
+                const str r = repeat("ab",3);
+                const float s = sum4(.5,1,2,3);
+                for(int i = 0;i != 3;++i) count();
+                const int x = hidden();
+                const int s6 = sum6(1,2,3,4,5,6);
+                const int s7 = sum7(1,2,3,4,5,6,7);
+                const float n = narrow(.5);
+                """
+            ),
+            "FromClass",System.err
+        );
+        assertNotNull(m);
+        assertEquals(42L,m.getValue("a").getValue());
+        assertEquals(2.5,m.getValue("h").getValue());
+        assertEquals(true,m.getValue("e").getValue());
+        assertEquals("ababab",Script.strData(m.getValue("r").getValue()));
+        assertEquals(6.5,m.getValue("s").getValue());
+        assertEquals(3L,Host.calls);
+        assertEquals(42L,m.getValue("x").getValue());
+        assertEquals(21L,m.getValue("s6").getValue());
+        assertEquals(28L,m.getValue("s7").getValue());
+        assertEquals(.5,m.getValue("n").getValue());
+        
+        // Arguments which don't fit in the parameter's type are rejected instead of being truncated.
+        for(final String call : new String[] {"half(1 << 40)","repeat(\"ab\",-1)","sum4(0.,1 << 16,0,0)","sum4(0.,0,128,0)","narrow(1e300)"})
+        {
+            final ScriptRuntimeException e = assertThrows
+            (
+                ScriptRuntimeException.class,
+                () -> Script.run(new StringReader("import \"ModuleMakerTest_Host\";\nconst bool b = "+call+" == 0;"),"Narrow",System.err)
+            );
+            assertTrue(e.getMessage(),e.getMessage().contains("Narrow [1]") && e.getMessage().contains("out of the range"));
+        }
+        
+        // Package-private methods require a lookup with access to them.
+        assertThrows(IllegalArgumentException.class,() -> ModuleMaker.fromClass(Host.class));
+        assertThrows(IllegalArgumentException.class,() -> ModuleMaker.fromClass(Invalid.class));
+    }
+    @Test
+    public void testTypedFunctions() throws Exception
+    {
+        // Each typed factory creates a function of the documented type.
+        assertEquals(Types.funcType(Types.FLOAT,Types.CONST_FLOAT),ModuleMaker.createDoubleFunc(x -> x,true).type.type);
+        assertEquals
+        (
+            Types.funcType(Types.FLOAT,Types.CONST_FLOAT,Types.CONST_FLOAT),
+            ModuleMaker.createDoubleFunc((x,y) -> x,true).type.type
+        );
+        assertEquals(Types.funcType(Types.INT,Types.CONST_INT),ModuleMaker.createLongFunc(x -> x,true).type.type);
+        assertEquals
+        (
+            Types.funcType(Types.INT,Types.CONST_INT,Types.CONST_INT),
+            ModuleMaker.createLongFunc((x,y) -> x,true).type.type
+        );
+        assertEquals(Types.funcType(Types.INT,Types.CONST_STR),ModuleMaker.createStrToLongFunc(String::length,true).type.type);
+        assertEquals(Types.funcType(Types.VOID,Types.CONST_STR),ModuleMaker.createStrConsumer(x -> {},true).type.type);
+        assertEquals(Types.funcType(Types.BOOL),ModuleMaker.createBoolSupplier(() -> true,true).type.type);
+        assertEquals(Types.funcType(Types.INT),ModuleMaker.createLongSupplier(() -> 1L,true).type.type);
+        assertEquals(Types.funcType(Types.FLOAT),ModuleMaker.createDoubleSupplier(() -> 1.,true).type.type);
+        assertThrows(NullPointerException.class,() -> ModuleMaker.createLongSupplier(null,true));
+        
+        final StringBuilder out = new StringBuilder();
+        assertTrue
+        (
+            new ModuleMaker().declareDoubleFunc("half",true,x -> x / 2)
+                             .declareDoubleFunc("pow",true,Math::pow)
+                             .declareLongFunc("neg",true,x -> -x)
+                             .declareLongFunc("sub",true,(a,b) -> a - b)
+                             .declareStrToLongFunc("len",true,String::length)
+                             .declareStrConsumer("print",true,out::append)
+                             .declareBoolSupplier("yes",true,() -> true)
+                             .declareLongSupplier("seven",true,() -> 7L)
+                             .declareDoubleSupplier("pi",true,() -> Math.PI)
+                             .make().register("ModuleMakerTest_Typed")
+        );
+        final Module m = Script.run
+        (
+            new StringReader
+            (
+                """
+                import "ModuleMakerTest_Typed";
+                const float h = half(5.);
+                const float p = pow(2.,10.);
+                const int n = neg(3);
+                const int d = sub(10,4);
+                const int l = len("four");
+                print("a"); print("b");
+                const bool y = yes();
+                const int s = seven();
+                const float pi = pi();
+                """
+            ),
+            "Typed",System.err
+        );
+        assertNotNull(m);
+        assertEquals(2.5,m.getValue("h").getValue());
+        assertEquals(1024.,m.getValue("p").getValue());
+        assertEquals(-3L,m.getValue("n").getValue());
+        assertEquals(6L,m.getValue("d").getValue());
+        assertEquals(4L,m.getValue("l").getValue());
+        assertEquals("ab",out.toString());
+        assertEquals(true,m.getValue("y").getValue());
+        assertEquals(7L,m.getValue("s").getValue());
+        assertEquals(Math.PI,m.getValue("pi").getValue());
+    }
+    @Test
+    public void testScriptFunction() throws Exception
+    {
+        // A host function which calls back into a script function.
+        final Type intFunc = Types.funcType(Types.INT,Types.CONST_INT);
+        new ModuleMaker().declareFunc
+        (
+            "applyTwice",true,
+            a ->
+            {
+                final ScriptFunction f = ScriptFunction.from(a[0]);
+                return f.applyAsLong(f.applyAsLong((long)a[1].getValue()));
+            },
+            Types.INT,Types.constableType(intFunc,true),Types.CONST_INT
+        ).make().register("ModuleMakerTest_Callback");
+        final Module m = Script.run
+        (
+            new StringReader
+            (
+                """
+                import "ModuleMakerTest_Callback";
+                func<int>(int,int) diff = func<int>(int a,int b)
+                {
+                    if(a > b) return a - b;
+                    return b - a;
+                };
+                func<str>(str,int) rep = func<str>(str s,int n)
+                {
+                    str r = "";
+                    for(int i = 0;i != n;++i) r += s;
+                    return r;
+                };
+                const int twice = applyTwice(func<int>(int x) {return x * 3;},2);
+                """
+            ),
+            "Handles",System.err
+        );
+        assertNotNull(m);
+        assertEquals(18L,m.getValue("twice").getValue());
+        
+        final ScriptFunction diff = m.getFunction("diff");
+        long sum = 0;
+        for(int i = 0;i != 1000;++i) sum += diff.applyAsLong(i,500);
+        assertEquals(250000L,sum);
+        assertEquals(3L,diff.invoke(4,7));
+        assertEquals("ababab",m.getFunction("rep").invoke("ab",3));
+        
+        assertThrows(IllegalArgumentException.class,() -> diff.applyAsDouble(1.));
+        assertThrows(IllegalArgumentException.class,() -> diff.invoke("x",1));
+        assertEquals(3L,diff.invoke(4,7)); // The frame must be usable after a failed call.
+        assertThrows(IllegalArgumentException.class,() -> m.getFunction("twice"));
+        assertThrows(IllegalArgumentException.class,() -> m.getFunction("undefined"));
+    }
+    @Test
+    public void testListViews() throws Exception
+    {
+        final long[] longs = {1,2,3};
+        final DoubleBuffer floats = DoubleBuffer.wrap(new double[] {0,.5,1.5,2.5}).position(1);
+        final boolean[] flags = {true,false};
+        new ModuleMaker().declareListView("longs",longs,false,true)
+                         .declareListView("floats",floats,false,true)
+                         .declareListView("flags",flags,true,true)
+                         .make().register("ModuleMakerTest_Views");
+        final Module m = Script.run
+        (
+            new StringReader
+            (
+                """
+                import "ModuleMakerTest_Views";
+                int sum = 0;
+                for(const x : longs) sum += x;
+                longs[0] = 10;
+                ++longs[1];
+                floats[2] = floats[2] * 2;
+                const int n = floats.length();
+                const bool f = flags[0] && !flags[1];
+                """
+            ),
+            "Views",System.err
+        );
+        assertNotNull(m);
+        assertEquals(6L,m.getLong("sum"));
+        assertArrayEquals(new long[] {10,3,3},longs);
+        assertEquals(5.,floats.get(3),0);
+        assertEquals(3L,m.getLong("n"));
+        assertTrue(m.getBool("f"));
+        
+        // Each element has one slot, which is reloaded whenever it is read.
+        final long[] a = {1,2};
+        final ArrayView v = ArrayView.of(a,false);
+        assertSame(v.get(0),v.get(0));
+        a[0] = 7;
+        assertEquals(7L,v.get(0).getValue());
+        
+        // Host changes are visible to scripts.
+        longs[2] = 42;
+        assertEquals(42L,Script.run(new StringReader("import \"ModuleMakerTest_Views\"; int x = longs[2];"),"Views",System.err).getLong("x"));
+        
+        assertThrows
+        (
+            ScriptRuntimeException.class,
+            () -> Script.run(new StringReader("import \"ModuleMakerTest_Views\"; flags[0] = false;"),"Views",System.err)
+        );
+        assertTrue(flags[0]);
+        // Scripts see changes to the size of a view as runtime errors, not as Java exceptions.
+        final ScriptRuntimeException e = assertThrows
+        (
+            ScriptRuntimeException.class,
+            () -> Script.run(new StringReader("import \"ModuleMakerTest_Views\";\nlongs.pushBack(1);"),"Views",System.err)
+        );
+        assertTrue(e.getMessage().contains("Views [1]"));
+        assertThrows
+        (
+            ScriptRuntimeException.class,
+            () -> Script.run(new StringReader("import \"ModuleMakerTest_Views\"; int x = longs.popFront();"),"Views",System.err)
+        );
+        assertEquals(3,longs.length);
+        
+        // Other exceptions thrown by host functions are passed on to the host unchanged.
+        new ModuleMaker().declareFunc
+        (
+            "fail",true,
+            x -> {throw new UnsupportedOperationException();},
+            Types.VOID
+        ).make().register("ModuleMakerTest_Fail");
+        assertThrows
+        (
+            UnsupportedOperationException.class,
+            () -> Script.run(new StringReader("import \"ModuleMakerTest_Fail\"; fail();"),"Fail",System.err)
+        );
+    }
+}
@@ -0,0 +1,249 @@
+package prgmScript;
+
+import org.junit.Test;
+
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class ModuleTest
+{
+    @Test
+    public void testViews() throws Exception
+    {
+        final Module m = Script.run
+        (
+            new StringReader
+            (
+                """
+                struct Point {int x,float y,str name}
+                const int i = 42;
+                const float f = .5;
+                const bool b = true;
+                const str s = "abc";
+                str[][] l = [str[]: [str: "a","b"],[str:]];
+                Point p = {Point: x = 1,y = 2.5,name = "p"};
+                Point[] ps = [Point: p];
+                int u;
+                """
+            ),
+            "Views",System.err
+        );
+        assertNotNull(m);
+        assertEquals(42L,m.getLong("i"));
+        assertEquals(.5,m.getDouble("f"),0);
+        assertTrue(m.getBool("b"));
+        assertEquals("abc",m.getString("s"));
+        
+        final List<Object> l = m.getListView("l");
+        assertEquals(List.of(List.of("a","b"),List.of()),l);
+        assertThrows(UnsupportedOperationException.class,() -> l.add("c"));
+        assertThrows(UnsupportedOperationException.class,() -> l.set(0,List.of()));
+        
+        final Map<String,Object> p = m.getStructView("p");
+        assertEquals(Map.of("x",1L,"y",2.5,"name","p"),p);
+        assertThrows(UnsupportedOperationException.class,() -> p.put("x",2L));
+        assertEquals(p,m.getListView("ps").get(0));
+        
+        assertThrows(IllegalArgumentException.class,() -> m.getLong("f"));
+        assertThrows(IllegalArgumentException.class,() -> m.getString("undefined"));
+        assertThrows(IllegalArgumentException.class,() -> m.getLong("u"));
+    }
+    @Test
+    public void testSharedConstLists() throws Exception
+    {
+        final Module shared = Script.run
+        (
+            new StringReader("const int[][] table = [int[]: [int: 1,2],[int: 3]];"),
+            "ModuleTest_Shared",System.err
+        );
+        assertNotNull(shared);
+        assertTrue(shared.register("ModuleTest_Shared"));
+        // Changes made by an importer are only visible to that importer.
+        final String writer =
+        """
+        import "ModuleTest_Shared";
+        table[0][0] = 10;
+        table[1].pushBack(5);
+        table.pushBack([int: 4]);
+        int[][] c = table + [int[]:];
+        c[1][0] = 7;
+        const int a = table[0][0];
+        const int n = table.length();
+        const int m = table[1].length();
+        const int x = table[1][0];
+        """,
+                     reader =
+        """
+        import "ModuleTest_Shared";
+        int sum = 0;
+        for(const row : table) for(const i : row) sum += i;
+        const int a = table[0][0];
+        const int n = table.length();
+        const int m = table[1].length();
+        """;
+        final Module w = Script.run(new StringReader(writer),"Writer",System.err);
+        assertNotNull(w);
+        assertEquals(10L,w.getLong("a"));
+        assertEquals(3L,w.getLong("n"));
+        assertEquals(2L,w.getLong("m"));
+        assertEquals(7L,w.getLong("x"));
+        for(int i = 0;i != 2;++i)
+        {
+            final Module r = Script.run(new StringReader(reader),"Reader",System.err);
+            assertNotNull(r);
+            assertEquals(6L,r.getLong("sum"));
+            assertEquals(1L,r.getLong("a"));
+            assertEquals(2L,r.getLong("n"));
+            assertEquals(1L,r.getLong("m"));
+        }
+        assertEquals(List.of(List.of(1L,2L),List.of(3L)),shared.getListView("table"));
+    }
+    @Test
+    public void testConcurrentListReads() throws Exception
+    {
+        final Module m = Script.run(new StringReader("const int[][] t = [int[]: [int: 1,2],[int: 3],[int:]];"),"Reads",System.err);
+        assertNotNull(m);
+        final List<Value> t = Script.listData(m.runTime.fields.get("t").value);
+        
+        // Threads which read the same frozen list at once agree on a single copy of each element.
+        final int threads = 8;
+        final ExecutorService ex = Executors.newFixedThreadPool(threads);
+        try
+        {
+            final CyclicBarrier barrier = new CyclicBarrier(threads);
+            final List<Future<List<Value>>> results = new ArrayList<>(threads);
+            for(int i = 0;i < threads;++i)
+                results.add(ex.submit(() ->
+                {
+                    barrier.await();
+                    final List<Value> l = new ArrayList<>();
+                    for(int j = 0;j < t.size();++j) l.add(t.get(j));
+                    return l;
+                }));
+            final List<Value> first = results.get(0).get();
+            for(final Future<List<Value>> f : results)
+            {
+                final List<Value> l = f.get();
+                for(int j = 0;j < first.size();++j) assertSame(first.get(j),l.get(j));
+            }
+        }
+        finally {ex.shutdown();}
+        assertEquals(List.of(List.of(1L,2L),List.of(3L),List.of()),m.getListView("t"));
+    }
+    @Test
+    public void testImage() throws Exception
+    {
+        final long[] calls = {0};
+        new ModuleMaker().declareLongFunc("ModuleTest_count",true,x -> {++calls[0]; return x;})
+                         .make().register("ModuleTest_Image");
+        final CompiledScript c = Script.compile
+        (
+            new StringReader
+            (
+                """
+                import "ModuleTest_Image";
+                struct Node {int key,str name}
+                Node[] table = [Node:];
+                for(int i = 0;i != 100;++i) table.pushBack({Node: key = ModuleTest_count(i * i),name = "n"+i});
+                const Node first = table[0];
+                void[] any = [int: 1,2];
+                func<int>(int) lookup = func<int>(int i) {return table[i].key;};
+                func<int>(int) count = ModuleTest_count;
+                """
+            ),
+            "Image",System.err,new Script.Options(true,true)
+        );
+        assertNotNull(c);
+        final Module m = c.run();
+        assertEquals(100L,calls[0]);
+        final byte[] image = ModuleImage.encode(c,m);
+        
+        // The top-level code is not executed again.
+        final Module l = ModuleImage.decode(ByteBuffer.wrap(image),System.err);
+        assertEquals(100L,calls[0]);
+        assertEquals(m.getListView("table"),l.getListView("table"));
+        assertEquals(Map.of("key",0L,"name","n0"),l.getStructView("first"));
+        assertEquals(81L,l.getFunction("lookup").applyAsLong(9));
+        assertEquals(5L,l.getFunction("count").applyAsLong(5));
+        assertEquals(101L,calls[0]);
+        assertEquals(2,l.getListView("any").size());
+        
+        assertThrows(IllegalArgumentException.class,() -> ModuleImage.encode(c,l));
+        assertThrows(java.io.IOException.class,() -> ModuleImage.decode(ByteBuffer.wrap(image,0,image.length/2),System.err));
+    }
+    @Test
+    public void testProvide() throws Exception
+    {
+        final int[] builds = {0};
+        assertTrue(Module.provide("ModuleTest_Lazy",() -> {++builds[0]; return new ModuleMaker().declareValue("n",ModuleMaker.createInt(3,true)).make();}));
+        assertFalse(Module.provide("ModuleTest_Lazy",() -> null));
+        assertFalse(Module.provide("prgmMath",() -> null));
+        assertFalse(new ModuleMaker().make().register("ModuleTest_Lazy"));
+        assertEquals(0,builds[0]);
+        
+        // The module is only built once, no matter how many scripts import it.
+        for(int i = 0;i != 2;++i)
+        {
+            final Module m = Script.run(new StringReader("import \"ModuleTest_Lazy\"; int x = n * 2;"),"Lazy",System.err);
+            assertNotNull(m);
+            assertEquals(6L,m.getLong("x"));
+        }
+        assertEquals(1,builds[0]);
+        
+        // A provider which fails is rethrown to the importer which built it, and reported as an error to every later
+        // importer instead of leaving them waiting.
+        assertTrue(Module.provide("ModuleTest_Broken",() -> {throw new AssertionError("broken");}));
+        final String src = "import \"ModuleTest_Broken\"; int x = 0;";
+        assertEquals("broken",assertThrows(AssertionError.class,() -> Script.run(new StringReader(src),"Broken",System.err)).getMessage());
+        assertNull(Script.run(new StringReader(src),"Broken",System.err));
+    }
+    @Test
+    public void testConcurrentImports() throws Exception
+    {
+        final AtomicInteger runs = new AtomicInteger();
+        assertTrue(new ModuleMaker().declareLongSupplier("ModuleTest_run",true,runs::incrementAndGet)
+                                    .make().register("ModuleTest_Runs"));
+        final Path dir = Files.createTempDirectory("prgmImports");
+        Files.writeString(dir.resolve("Once.prgm"),"import \"ModuleTest_Runs\"; const int n = ModuleTest_run();");
+        Script.setImportsDir(dir);
+        
+        // Concurrent first imports of the same script compile and run it once.
+        final int threads = 8;
+        final ExecutorService ex = Executors.newFixedThreadPool(threads);
+        try
+        {
+            final CyclicBarrier barrier = new CyclicBarrier(threads);
+            final List<Future<Module>> results = new ArrayList<>(threads);
+            for(int t = 0;t < threads;++t)
+                results.add(ex.submit(() ->
+                {
+                    barrier.await();
+                    return Script.run(new StringReader("import \"Once.prgm\"; int x = n;"),"Importer",System.err);
+                }));
+            for(final Future<Module> f : results)
+            {
+                final Module m = f.get();
+                assertNotNull(m);
+                assertEquals(1L,m.getLong("x"));
+            }
+            assertEquals(1,runs.get());
+        }
+        finally
+        {
+            ex.shutdown();
+            Script.setImportsDir(null);
+        }
+    }
+}
\ No newline at end of file
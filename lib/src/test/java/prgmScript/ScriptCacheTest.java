@@ -0,0 +1,75 @@
+package prgmScript;
+
+import org.junit.Test;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.*;
+
+public class ScriptCacheTest
+{
+    @Test
+    public void testCache() throws Exception
+    {
+        final ScriptCache cache = new ScriptCache(2);
+        final CompiledScript a = cache.compile("int x = 1;","A",System.err);
+        assertNotNull(a);
+        assertSame(a,cache.compile("int x = 1;","A",System.err));
+        assertNotSame(a,cache.compile("int x = 1;","B",System.err));
+        assertEquals(new ScriptCache.Stats(1,2,0),cache.stats());
+        assertEquals(1L,a.run().getLong("x"));
+        
+        // 'A' is the least recently used script, so it is evicted.
+        cache.compile("int x = 2;","A",System.err);
+        assertEquals(new ScriptCache.Stats(1,3,1),cache.stats());
+        assertNotSame(a,cache.compile("int x = 1;","A",System.err));
+        assertEquals(2,cache.size());
+        
+        // Scripts with errors are not cached.
+        final PrintStream none = new PrintStream(OutputStream.nullOutputStream());
+        assertNull(cache.compile("int x = ;","A",none));
+        assertNull(cache.compile("int x = ;","A",none));
+        assertEquals(6L,cache.stats().misses());
+        assertTrue(cache.size() <= 2);
+        
+        assertThrows(IllegalArgumentException.class,() -> new ScriptCache(0));
+    }
+    @Test
+    public void testOptions() throws Exception
+    {
+        // Scripts compiled with different options are cached separately.
+        final ScriptCache cache = new ScriptCache(4);
+        final CompiledScript d = cache.compile("int x = 1;","A",System.err),
+                             r = cache.compile("int x = 1;","A",System.err,Script.Options.RELEASE);
+        assertNotNull(d);
+        assertNotNull(r);
+        assertNotSame(d,r);
+        assertSame(d,cache.compile("int x = 1;","A",System.err,Script.Options.DEFAULT));
+        assertSame(r,cache.compile("int x = 1;","A",System.err,Script.Options.RELEASE));
+        assertEquals(new ScriptCache.Stats(2,2,0),cache.stats());
+    }
+    @Test
+    public void testConcurrentCompiles() throws Exception
+    {
+        final ScriptCache cache = new ScriptCache(4);
+        final int threads = 8;
+        final ExecutorService ex = Executors.newFixedThreadPool(threads);
+        try
+        {
+            final List<Future<CompiledScript>> results = new ArrayList<>(threads);
+            for(int t = 0;t < threads;++t)
+                results.add(ex.submit(() -> cache.compile("int x = 1; for(int i = 0;i != 10;++i) x *= 2;","C",System.err)));
+            final CompiledScript c = results.get(0).get();
+            assertNotNull(c);
+            for(final Future<CompiledScript> f : results) assertSame(c,f.get());
+        }
+        finally {ex.shutdown();}
+        assertEquals(new ScriptCache.Stats(threads-1,1,0),cache.stats());
+    }
+}
@@ -0,0 +1,152 @@
+package prgmScript;
+
+import org.junit.Test;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class ScriptPoolTest
+{
+    private static final String SRC =
+    """
+    int[] seen = [int:];
+    func<int>(int) next = func<int>(int x)
+    {
+        seen.pushBack(x);
+        int s = 0;
+        for(const i : seen) s += i;
+        return s;
+    };
+    """;
+    
+    @Test
+    public void testIsolation() throws Exception
+    {
+        final CompiledScript c = Script.compile(new StringReader(SRC),"Pool",System.err);
+        assertNotNull(c);
+        final ScriptPool pool = new ScriptPool(c,2);
+        assertEquals(2,pool.available());
+        
+        final Module a = pool.borrow(),b = pool.borrow();
+        assertNotSame(a,b);
+        assertEquals(0,pool.available());
+        final ScriptFunction fa = a.getFunction("next"),fb = b.getFunction("next");
+        assertEquals(1L,fa.applyAsLong(1));
+        assertEquals(3L,fa.applyAsLong(2));
+        assertEquals(5L,fb.applyAsLong(5));
+        
+        // Instances are reset when they are released.
+        pool.release(a);
+        assertEquals(1,pool.available());
+        assertEquals(4L,(long)pool.apply(m -> m.getFunction("next").applyAsLong(4)));
+        assertEquals(4L,(long)pool.apply(m -> m.getFunction("next").applyAsLong(4)));
+        
+        // The pool never holds more than its capacity.
+        pool.release(b);
+        pool.release(pool.borrow());
+        pool.release(c.run());
+        assertEquals(2,pool.available());
+        
+        final CompiledScript other = Script.compile(new StringReader(SRC),"Pool",System.err);
+        assertNotNull(other);
+        assertThrows(IllegalArgumentException.class,() -> pool.release(other.run()));
+        assertThrows(IllegalArgumentException.class,() -> new ScriptPool(c,-1));
+    }
+    @Test
+    public void testCopies() throws Exception
+    {
+        final AtomicInteger runs = new AtomicInteger();
+        assertTrue(new ModuleMaker().declareLongSupplier("ScriptPoolTest_run",true,runs::incrementAndGet)
+                                    .make().register("ScriptPoolTest_Runs"));
+        final CompiledScript c = Script.compile
+        (
+            new StringReader("import \"ScriptPoolTest_Runs\"; const int n = ScriptPoolTest_run(); const int[] k = [int:1,2];"+SRC),
+            "Pool",System.err
+        );
+        assertNotNull(c);
+        final ScriptPool pool = new ScriptPool(c,2);
+        for(int i = 0;i != 4;++i) pool.release(pool.borrow());
+        // The top-level code is executed once, and every instance is a copy of its result.
+        assertEquals(1,runs.get());
+        
+        final Module a = pool.borrow(),b = pool.borrow();
+        assertEquals(1L,a.getLong("n"));
+        assertEquals(3L,a.getFunction("next").applyAsLong(3));
+        // Functions and globals still share the lists they refer to, but instances do not.
+        assertEquals(List.of(3L),a.getListView("seen"));
+        assertEquals(List.of(),b.getListView("seen"));
+        assertEquals(List.of(1L,2L),b.getListView("k"));
+    }
+    @Test
+    public void testConcurrentInstances() throws Exception
+    {
+        final CompiledScript c = Script.compile(new StringReader(SRC),"Pool",System.err);
+        assertNotNull(c);
+        final ScriptPool pool = new ScriptPool(c,4);
+        final int threads = 8;
+        final ExecutorService ex = Executors.newFixedThreadPool(threads);
+        try
+        {
+            final List<Future<Long>> results = new ArrayList<>(threads);
+            for(int t = 0;t < threads;++t)
+                results.add(ex.submit(() ->
+                {
+                    long sum = 0;
+                    for(int r = 0;r != 50;++r)
+                        sum += pool.apply(m ->
+                        {
+                            final ScriptFunction f = m.getFunction("next");
+                            long last = 0;
+                            for(int i = 1;i <= 20;++i) last = f.applyAsLong(i);
+                            return last;
+                        });
+                    return sum;
+                }));
+            for(final Future<Long> f : results) assertEquals(50L*210,(long)f.get());
+        }
+        finally {ex.shutdown();}
+        assertEquals(4,pool.available());
+    }
+    @Test
+    public void testConcurrentIsolation() throws Exception
+    {
+        final CompiledScript c = Script.compile(new StringReader(SRC),"Pool",System.err);
+        assertNotNull(c);
+        final ScriptPool pool = new ScriptPool(c,2);
+        final int threads = 8;
+        final ExecutorService ex = Executors.newFixedThreadPool(threads);
+        try
+        {
+            final List<Future<?>> results = new ArrayList<>(threads);
+            for(int t = 0;t < threads;++t)
+            {
+                final long id = t+1;
+                results.add(ex.submit(() ->
+                {
+                    for(int r = 0;r != 200;++r)
+                    {
+                        final Module m = pool.borrow();
+                        // Released instances must not keep the changes of whoever borrowed them before, and
+                        // borrowed instances must not see the changes of other threads.
+                        assertEquals(List.of(),m.getListView("seen"));
+                        assertEquals(id,m.getFunction("next").applyAsLong(id));
+                        Thread.yield();
+                        assertEquals(List.of(id),m.getListView("seen"));
+                        pool.release(m);
+                    }
+                    return null;
+                }));
+            }
+            for(final Future<?> f : results) f.get();
+        }
+        finally {ex.shutdown();}
+        assertEquals(2,pool.available());
+    }
+}
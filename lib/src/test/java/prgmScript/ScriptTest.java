@@ -1,16 +1,30 @@
 package prgmScript;
 
 import prgmScript.exception.ScriptException;
+import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileReader;
 import java.io.IOException;
+import java.io.PrintStream;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.StringJoiner;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
 
 import static org.junit.Assert.*;
 
@@ -25,6 +39,8 @@ public class ScriptTest
             "src","test","java","prgmScript"
         ));
     }
+    @After
+    public void after() {Script.setImportsDir(null);}
     
     @Test
     public void conditional()
@@ -124,7 +140,7 @@ public class ScriptTest
             // what the code does.
             final Map<String,Value> mock = Map.of("x",new Value(ConstableType.BOOL,true),
                                                   "y",new Value(ConstableType.FLOAT,1D));
-            final String out = Script.toString(mock,Types.structType("test"));
+            final String out = Script.toString(mock,Types.structType("test",Map.of("x",Types.MUTABLE_BOOL,"y",Types.MUTABLE_FLOAT)));
             final StringJoiner sj = new StringJoiner(",","{test:","}");
             for(final Map.Entry<String,Value> e : mock.entrySet())
                 sj.add(e.getKey()+'='+Script.toString(e.getValue().value,e.getValue().type.type));
@@ -144,6 +160,336 @@ public class ScriptTest
         assertEquals(Path.of(System.getProperty("user.dir")),Script.getImportsDir());
     }
     
+    @Test
+    public void testClosures() throws IOException,ScriptException
+    {
+        final Module m = Script.run
+        (
+            new StringReader
+            (
+                """
+                int count = 0;
+                func<>() inc = func<>() {++count;};
+                inc();
+                inc();
+                int g = 1;
+                func<int>() getg = func<int>() {return g;};
+                g = 7;
+                int h = getg();
+                
+                // A function can call itself through a variable which is assigned after it is created.
+                int calls = 0;
+                func<>(int) down;
+                down = func<>(int n) {++calls; if(n > 0) down(n - 1);};
+                down(3);
+                int local = 0;
+                {
+                    func<>(int) rec;
+                    rec = func<>(int n) {++local; if(n > 0) rec(n - 1);};
+                    rec(2);
+                }
+                """
+            ),
+            "Closures",System.err
+        );
+        assertEquals(2L,m.getLong("count"));
+        assertEquals(7L,m.getLong("h"));
+        assertEquals(4L,m.getLong("calls"));
+        assertEquals(3L,m.getLong("local"));
+    }
+    
+    @Test
+    public void testConvertedLists() throws IOException,ScriptException
+    {
+        // Converted lists are snapshots, so changes to either list are not visible in the other.
+        final Module m = Script.run
+        (
+            new StringReader
+            (
+                """
+                int[] d = [int: 1,2];
+                float[] e = d;
+                d.pushBack(5);
+                const int n = e.length();
+                d[0] = 9;
+                const float a = e[0];
+                d.popBack(); d.popBack(); d.popBack();
+                const float b = e[1];
+                e[1] = 4.;
+                e.pushBack(3.);
+                const int dn = d.length();
+                
+                int[][] g = [int[]: [int: 1],[int: 2,3]];
+                float[][] h = g;
+                g[1].pushBack(4);
+                g[0][0] = 7;
+                const int hn = h[1].length();
+                const float h0 = h[0][0];
+                
+                const int[] c = [int: 1,2];
+                float[] f = c;
+                c[0] = 3;
+                const float f0 = f[0];
+                """
+            ),
+            "Converted",System.err
+        );
+        assertNotNull(m);
+        assertEquals(2L,m.getLong("n"));
+        assertEquals(1.,m.getDouble("a"),0);
+        assertEquals(2.,m.getDouble("b"),0);
+        assertEquals(0L,m.getLong("dn"));
+        assertEquals(List.of(1.,4.,3.),m.getListView("e"));
+        assertEquals(2L,m.getLong("hn"));
+        assertEquals(1.,m.getDouble("h0"),0);
+        assertEquals(1.,m.getDouble("f0"),0);
+    }
+    
+    @Test
+    public void testImportCache() throws IOException,ScriptException
+    {
+        final Path dir = Files.createTempDirectory("prgmImports"),cache = dir.resolve("cache");
+        Files.writeString(dir.resolve("CacheDep.prgm"),"const int d = 40;");
+        Files.writeString(dir.resolve("Cached.prgm"),"import \"CacheDep.prgm\"; const int x = d + 2;");
+        Script.setImportsDir(dir);
+        Script.setCacheDir(cache);
+        final String src = "import \"Cached.prgm\"; int y = x;";
+        try
+        {
+            assertEquals(42L,Script.run(new StringReader(src),"Cache",System.err).getLong("y"));
+            final Path[] files;
+            try(final Stream<Path> s = Files.list(cache)) {files = s.toArray(Path[]::new);}
+            assertEquals(2,files.length);
+            for(final Path f : files) Files.setLastModifiedTime(f,FileTime.fromMillis(0));
+            
+            // Unregistering the modules makes the next import load them again, like a new process would.
+            unregister();
+            assertEquals(42L,Script.run(new StringReader(src),"Cache",System.err).getLong("y"));
+            for(final Path f : files) assertEquals(0L,Files.getLastModifiedTime(f).toMillis());
+            
+            // Changing an import invalidates the scripts which were compiled against it.
+            Files.writeString(dir.resolve("CacheDep.prgm"),"const int d = 1;");
+            unregister();
+            assertEquals(3L,Script.run(new StringReader(src),"Cache",System.err).getLong("y"));
+            try(final Stream<Path> s = Files.list(cache)) {assertEquals(3L,s.count());}
+            // Only the script which imports the changed one is compiled again.
+            Path cached = null;
+            for(final Path f : files)
+                if(Files.getLastModifiedTime(f).toMillis() != 0L)
+                {
+                    assertNull(cached);
+                    cached = f;
+                }
+            assertNotNull(cached);
+            
+            // Corrupted cache files are replaced.
+            Files.write(cached,new byte[] {1,2,3});
+            unregister();
+            assertEquals(3L,Script.run(new StringReader(src),"Cache",System.err).getLong("y"));
+            assertTrue(Files.size(cached) > 3L);
+        }
+        finally
+        {
+            Script.setCacheDir(null);
+            unregister();
+        }
+    }
+    private static void unregister()
+    {
+        Module.REGISTRY.remove("Cached.prgm");
+        Module.REGISTRY.remove("CacheDep.prgm");
+    }
+    
+    @Test
+    public void testParallelImports() throws IOException,ScriptException
+    {
+        final Path dir = Files.createTempDirectory("prgmImports");
+        Files.writeString(dir.resolve("D.prgm"),"const int d = 1;");
+        Files.writeString(dir.resolve("B.prgm"),"import \"D.prgm\"; const int b = d + 1;");
+        Files.writeString(dir.resolve("C.prgm"),"import \"D.prgm\"; const int c = d + 2;");
+        Files.writeString(dir.resolve("X.prgm"),"import \"Y.prgm\"; const int x = 1;");
+        Files.writeString(dir.resolve("Y.prgm"),"import \"X.prgm\"; const int y = 1;");
+        Script.setImportsDir(dir);
+        
+        final Module m = Script.run
+        (
+            new StringReader("import \"B.prgm\"; import \"C.prgm\"; {import \"D.prgm\"; int n = b + c + d;}"),
+            "Diamond",System.err
+        );
+        assertNotNull(m);
+        
+        // Circular imports are errors instead of deadlocks.
+        final ByteArrayOutputStream err = new ByteArrayOutputStream();
+        assertNull(Script.run(new StringReader("import \"X.prgm\";"),"Cycle",new PrintStream(err,true)));
+        assertTrue(err.toString().contains("Circular import of module"));
+    }
+    @Test
+    public void testPrecompileAll() throws Exception
+    {
+        final Path dir = Files.createTempDirectory("prgmImports");
+        Files.createDirectory(dir.resolve("sub"));
+        Files.writeString(dir.resolve("a.prgm"),"const int a = 1;");
+        Files.writeString(dir.resolve("sub").resolve("b.prgm"),"import \"a.prgm\"; const int b = a + 1;");
+        Files.writeString(dir.resolve("c.prgm"),"import \"sub/b.prgm\"; import \"a.prgm\"; const int c = a + b;");
+        Files.writeString(dir.resolve("bad.prgm"),"int x = ;");
+        Files.writeString(dir.resolve("cyc1.prgm"),"import \"cyc2.prgm\";");
+        Files.writeString(dir.resolve("cyc2.prgm"),"import \"cyc1.prgm\";");
+        Script.setImportsDir(dir);
+        
+        final ExecutorService ex = Executors.newFixedThreadPool(2);
+        try
+        {
+            final ByteArrayOutputStream err = new ByteArrayOutputStream();
+            final Script.Precompiled p = Script.precompileAll(Path.of(""),ex,new PrintStream(err,true));
+            assertEquals(List.of("a.prgm","c.prgm","sub/b.prgm"),p.compiled());
+            assertEquals(List.of("bad.prgm","cyc1.prgm","cyc2.prgm"),p.failed());
+            assertEquals(6,p.times().size());
+            assertTrue(err.toString().contains("Circular import of module"));
+            assertEquals(3L,Script.run(new StringReader("import \"c.prgm\"; int x = c;"),"Precompiled",System.err).getLong("x"));
+            
+            // Registered modules are skipped.
+            assertEquals(List.of(),Script.precompileAll(dir.resolve("sub"),ex,System.err).compiled());
+            assertThrows(IllegalArgumentException.class,() -> Script.precompileAll(dir.getParent(),ex,System.err));
+        }
+        finally {ex.shutdown();}
+    }
+    @Test
+    public void testReload() throws Exception
+    {
+        final Path dir = Files.createTempDirectory("prgmImports");
+        Files.writeString(dir.resolve("Base.prgm"),"const int v = 1;");
+        Files.writeString(dir.resolve("Mid.prgm"),"import \"Base.prgm\"; const int w = v * 10;");
+        Files.writeString(dir.resolve("Other.prgm"),"const int o = 5;");
+        Script.setImportsDir(dir);
+        final String src = "import \"Mid.prgm\"; import \"Other.prgm\"; int x = w + o;";
+        final CompiledScript old = Script.compile(new StringReader(src),"Reload",System.err);
+        assertNotNull(old);
+        final ScriptCache cache = new ScriptCache(4);
+        assertEquals(15L,cache.compile(src,"Reload",System.err).run().getLong("x"));
+        
+        // Scripts which are imported for the first time by a new version see the other new versions.
+        Files.writeString(dir.resolve("Base.prgm"),"const int v = 2;");
+        Files.writeString(dir.resolve("Fresh.prgm"),"import \"Base.prgm\"; const int f = v;");
+        Files.writeString(dir.resolve("Mid.prgm"),"import \"Fresh.prgm\"; const int w = f * 10;");
+        assertEquals(Set.of("Base.prgm","Mid.prgm"),Script.reload(List.of(dir.resolve("Base.prgm")),System.err));
+        assertEquals(25L,Script.run(new StringReader(src),"Reload",System.err).getLong("x"));
+        // Scripts which were compiled before the reload keep using the old versions, but cached scripts are
+        // compiled again.
+        assertEquals(15L,old.run().getLong("x"));
+        assertEquals(25L,cache.compile(src,"Reload",System.err).run().getLong("x"));
+        assertEquals(new ScriptCache.Stats(0,2,0),cache.stats());
+        
+        // Scripts with errors do not replace the old versions.
+        Files.writeString(dir.resolve("Base.prgm"),"const int v = ;");
+        final ByteArrayOutputStream err = new ByteArrayOutputStream();
+        assertEquals(Set.of(),Script.reload(List.of(dir.resolve("Base.prgm")),new PrintStream(err,true)));
+        assertNotEquals(0,err.size());
+        assertEquals(25L,Script.run(new StringReader(src),"Reload",System.err).getLong("x"));
+    }
+    @Test
+    public void testImportWatcher() throws Exception
+    {
+        final Path dir = Files.createTempDirectory("prgmImports");
+        Files.writeString(dir.resolve("WatchBase.prgm"),"const int v = 1;");
+        Files.writeString(dir.resolve("WatchMid.prgm"),"import \"WatchBase.prgm\"; const int w = v * 10;");
+        Script.setImportsDir(dir);
+        final String src = "import \"WatchMid.prgm\"; int x = w;";
+        assertEquals(10L,Script.run(new StringReader(src),"Watch",System.err).getLong("x"));
+        
+        final BlockingQueue<Set<String>> reloads = new LinkedBlockingQueue<>();
+        final ByteArrayOutputStream err = new ByteArrayOutputStream();
+        try(final ImportWatcher w = new ImportWatcher(new PrintStream(err,true),reloads::add))
+        {
+            // Changing a file on disk reloads it and the scripts which import it. Saving a file can take several
+            // events, so the test waits for the script to see the final version.
+            Files.writeString(dir.resolve("WatchBase.prgm"),"const int v = 2;");
+            assertEquals(Set.of("WatchBase.prgm","WatchMid.prgm"),reloads.poll(10,TimeUnit.SECONDS));
+            awaitImport(src,20L);
+            
+            // Deleting it is reported, and the old versions are kept until it is created again.
+            err.reset();
+            Files.delete(dir.resolve("WatchBase.prgm"));
+            for(int i = 0;i != 100 && !err.toString().contains("WatchBase.prgm");++i) Thread.sleep(100);
+            assertTrue(err.toString().contains("WatchBase.prgm"));
+            assertEquals(20L,Script.run(new StringReader(src),"Watch",System.err).getLong("x"));
+            Files.writeString(dir.resolve("WatchBase.prgm"),"const int v = 3;");
+            awaitImport(src,30L);
+        }
+    }
+    /** Runs the script until its global {@code x} has the expected value, or fails after ten seconds. */
+    private static void awaitImport(final String src,final long expected) throws Exception
+    {
+        long x = 0;
+        for(int i = 0;i != 100 && (x = Script.run(new StringReader(src),"Watch",System.err).getLong("x")) != expected;++i)
+            Thread.sleep(100);
+        assertEquals(expected,x);
+    }
+    @Test
+    public void testIR() throws IOException,ScriptException
+    {
+        final CompiledScript c = Script.compile
+        (
+            new StringReader
+            (
+                """
+                struct Pair {int a,float b}
+                func<Pair>(int) make = func<Pair>(int n) {return {Pair: a = n,b = n / 2.};};
+                int[] l = [int: 1,2,3];
+                int sum = 0;
+                for(const x : l) sum += make(x).a;
+                const str s = sum > 5? "big" : "small";
+                """
+            ),
+            "IR",System.err,new Script.Options(true,true)
+        );
+        assertNotNull(c);
+        final byte[] ir = IRCodec.encode(c);
+        final CompiledScript d = IRCodec.decode(ByteBuffer.wrap(ir),System.err);
+        final Module m = d.run();
+        assertEquals(6L,m.getLong("sum"));
+        assertEquals("big",m.getString("s"));
+        assertEquals(ir.length,IRCodec.encode(d).length);
+        
+        assertThrows(IOException.class,() -> IRCodec.decode(ByteBuffer.wrap(new byte[] {1,2,3}),System.err));
+        // Scripts only keep their IR when they are compiled to be encoded.
+        final CompiledScript e = Script.compile(new StringReader("int x = 1;"),"IR",System.err);
+        assertNotNull(e);
+        assertNull(e.body.blocks());
+        assertThrows(IllegalArgumentException.class,() -> IRCodec.encode(e));
+        assertNull(IRCodec.decode(ByteBuffer.wrap(ir),System.err,Script.Options.DEFAULT).body.blocks());
+        assertThrows(IOException.class,() -> IRCodec.decode(ByteBuffer.wrap(ir,0,ir.length-3),System.err));
+    }
+    @Test
+    public void testDebugInfo() throws IOException,ScriptException
+    {
+        final String src = "int[] l = [int: 1,2,3];\nint sum = 0;\nfor(const x : l)\n    sum += x;\n";
+        final CompiledScript c = Script.compile(new StringReader(src),"Debug",System.err,new Script.Options(true,true)),
+                             d = Script.compile(new StringReader(src),"NoDebug",System.err,new Script.Options(false,true)),
+                             r = Script.compile(new StringReader(src),"Release",System.err,Script.Options.RELEASE);
+        assertNotNull(c);
+        assertNotNull(d);
+        assertNotNull(r);
+        assertEquals(6L,d.run().getLong("sum"));
+        assertEquals(6L,r.run().getLong("sum"));
+        // Release builds don't keep the IR either.
+        assertNull(r.body.blocks());
+        // Scripts without debug names still keep the line of every instruction.
+        final List<Script.Body> a = c.body.bodies(),b = d.body.bodies();
+        assertEquals(a.size(),b.size());
+        for(int i = 0;i < a.size();++i)
+        {
+            assertEquals(a.get(i).blocks().size(),b.get(i).blocks().size());
+            for(int j = 0;j < a.get(i).blocks().size();++j)
+            {
+                final BlockBuilder x = a.get(i).blocks().get(j),y = b.get(i).blocks().get(j);
+                assertTrue(x.debug());
+                assertFalse(y.debug());
+                assertEquals(x.ops,y.ops);
+                for(int k = 0;k < x.ilist.size();++k) assertEquals(x.ilist.get(k).line,y.ilist.get(k).line);
+            }
+        }
+    }
+    
     private static final String DIR = Path.of
     (
         System.getProperty("user.dir"),
@@ -152,7 +498,14 @@ public class ScriptTest
     private static void testFile(final String file) throws IOException,ScriptException
     {
         final File f = Path.of(DIR,file+".prgm").toFile();
-        try(final FileReader fr = new FileReader(f)) {assertNotNull(Script.run(fr,file,System.err));}
+        try(final FileReader fr = new FileReader(f))
+        {
+            final CompiledScript c = Script.compile(fr,file,System.err,new Script.Options(true,true));
+            assertNotNull(c);
+            assertNotNull(c.run());
+            // The script must behave the same after a round trip through the IR.
+            assertNotNull(IRCodec.decode(ByteBuffer.wrap(IRCodec.encode(c)),System.err).run());
+        }
     }
     
     @Test public void testValidAssignments() throws IOException,ScriptException {testFile("ValidAssignments");}
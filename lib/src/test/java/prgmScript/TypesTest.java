@@ -0,0 +1,107 @@
+package prgmScript;
+
+import org.junit.Test;
+
+import java.io.StringReader;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.*;
+
+public class TypesTest
+{
+    @Test
+    public void testInterning() throws Exception
+    {
+        // Threads which create the same types at the same time get the same instances.
+        final int threads = 8;
+        final Type s = Types.structType("S",Map.of("x",Types.CONST_INT));
+        final ExecutorService ex = Executors.newFixedThreadPool(threads);
+        try
+        {
+            final CyclicBarrier barrier = new CyclicBarrier(threads);
+            final Callable<Type[]> make = () ->
+            {
+                barrier.await();
+                final Type l = Types.listType(Types.listType(s)),
+                           f = Types.funcType(l,Types.constableType(s,true),Types.MUTABLE_INT);
+                return new Type[] {l,f,Types.constableType(f,true).type};
+            };
+            final List<Future<Type[]>> results = new ArrayList<>(threads);
+            for(int i = 0;i < threads;++i) results.add(ex.submit(make));
+            final Type[] first = results.get(0).get();
+            for(final Future<Type[]> r : results) assertArrayEquals(first,r.get());
+            assertSame(first[1],first[2]);
+        }
+        finally {ex.shutdown();}
+        
+        // The const-ness of the arguments is not part of a function type.
+        assertSame(Types.funcType(Types.INT,Types.CONST_INT),Types.funcType(Types.INT,Types.MUTABLE_INT));
+        assertNotSame(Types.funcType(Types.INT,Types.CONST_INT),Types.funcType(Types.FLOAT,Types.CONST_INT));
+        
+        // Each struct declaration is a different type, even if it looks the same.
+        final Type s2 = Types.structType("S",Map.of("x",Types.CONST_INT));
+        assertNotSame(s,s2);
+        assertNotSame(Types.listType(s),Types.listType(s2));
+        assertTrue(Types.matches(s2,"S",s.fields));
+        assertFalse(Types.matches(s2,"S",Map.of("x",Types.MUTABLE_INT)));
+    }
+    @Test
+    public void testIds()
+    {
+        final Type[] types = {Types.VOID,Types.BOOL,Types.INT,Types.FLOAT,Types.STR,Types.listType(Types.INT),
+                              Types.structType("S",Map.of()),Types.funcType(Types.VOID)};
+        final Set<Integer> ids = new HashSet<>();
+        final int count = Types.count();
+        for(final Type t : types)
+        {
+            assertTrue(t.id >= 0 && t.id < count);
+            assertTrue(ids.add(t.id));
+        }
+        // Interning an existing type does not use up an id.
+        Types.listType(Types.INT);
+        assertEquals(count,Types.count());
+    }
+    
+    private static void collect(final String msg,final int attempt) throws InterruptedException
+    {
+        assertTrue(msg,attempt < 100);
+        System.gc();
+        Thread.sleep(10);
+    }
+    @Test
+    public void testSoak() throws Exception
+    {
+        // Compiling many scripts with their own types must not retain the types once the scripts are gone.
+        final int n = 1000;
+        WeakReference<Type> first = null;
+        for(int i = 0;i < n;++i)
+        {
+            final String src = "struct S"+i+" {int x,func<int[]>(int) f}\n" +
+                               "func<S"+i+"[]>(S"+i+") g = func<S"+i+"[]>(S"+i+" s) {return [S"+i+": s];};\n" +
+                               "S"+i+" s = g({S"+i+": x = "+i+",f = func<int[]>(int i) {return [int: i];}})[0];\n";
+            final CompiledScript c = Script.compile(new StringReader(src),"TypesTest_Soak"+i,System.err);
+            assertNotNull(c);
+            assertEquals((long)i,c.run().getStructView("s").get("x"));
+            if(i == 0) first = new WeakReference<>(c.compileTime.structs.get("S0"));
+        }
+        // The collector may need several cycles to collect everything, and it enqueues the cleared references a little
+        // later, so each check is retried a few times instead of measuring the heap.
+        for(int i = 0;first.get() != null;++i) collect("Struct type was not collected",i);
+        // The cleared function types are removed when a function type is made.
+        for(int i = 0;Types.funcType(Types.VOID) != null && Types.funcTypes() >= n;++i)
+            collect("Function types were not collected: "+Types.funcTypes(),i);
+        // New types get the ids of the collected ones.
+        final int count = Types.count();
+        for(int i = 0;Types.structType("Reused",Map.of()).id >= count;++i) collect("Ids were not reused",i);
+    }
+}
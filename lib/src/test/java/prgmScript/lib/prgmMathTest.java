@@ -8,7 +8,13 @@ import prgmScript.exception.ScriptException;
 import java.io.File;
 import java.io.FileReader;
 import java.io.IOException;
+import java.io.StringReader;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.function.BiFunction;
 import java.util.function.Function;
 
@@ -89,4 +95,31 @@ public class prgmMathTest
         assertEquals(Math.fma(.5,.33,.75),(double)m.getValue("_fma").getValue(),1e-10);
         assertEquals(StrictMath.scalb(.5,2),(double)m.getValue("_scalb").getValue(),1e-10);
     }
-}
\ No newline at end of file
+    @Test
+    public void testConcurrentCalls() throws Exception
+    {
+        // Every script shares the functions in prgmMath, so concurrent calls must not interfere with each other.
+        final int threads = 8;
+        final ExecutorService ex = Executors.newFixedThreadPool(threads);
+        try
+        {
+            final List<Future<Module>> results = new ArrayList<>(threads);
+            for(int t = 0;t < threads;++t)
+            {
+                final String src = "import \"prgmMath\"; float acc = 0; int m = 0;"+
+                                   "for(int i = 0;i != 5000;++i) {acc = acc + hypot(i,"+t+") + scalb(1,"+t+"); m = maxInt(m,i*"+t+");}";
+                results.add(ex.submit(() -> Script.run(new StringReader(src),"Concurrent",System.err)));
+            }
+            for(int t = 0;t < threads;++t)
+            {
+                double acc = 0;
+                for(int i = 0;i != 5000;++i) acc = acc + StrictMath.hypot(i,t) + Math.scalb(1.,t);
+                final Module m = results.get(t).get();
+                assertNotNull(m);
+                assertEquals(acc,(double)m.getValue("acc").getValue(),0);
+                assertEquals(4999L*t,(long)m.getValue("m").getValue());
+            }
+        }
+        finally {ex.shutdown();}
+    }
+}
@@ -3,7 +3,12 @@ package prgmScript.token;
 import org.junit.Test;
 import prgmScript.token.Tokenize.TokenIterator;
 
+import prgmScript.util.ErrReporter;
+
 import java.io.*;
+import java.nio.CharBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
 
 import static org.junit.Assert.*;
@@ -151,4 +156,93 @@ public class TokenizeTest
         assertNull(Tokenize.tokenize(new StringReader("@"),"Unknown Token",System.err));
         assertNull(Tokenize.tokenize(new StringReader("@="),"Unknown Token",System.err));
     }
-}
\ No newline at end of file
+    @Test
+    public void testSharedValues() throws IOException
+    {
+        // Tokens with the same value share it.
+        final TokenIterator k = Tokenize.tokenize(new StringReader("x = x+1; y = \"x\";"),"Symbols",System.err);
+        final Token[] t = k.tokens();
+        assertEquals(TokenType.ID,t[0].type());
+        assertSame(t[0].value(),t[2].value());
+        assertSame(t[0].value(),t[8].value());
+        assertEquals(TokenType.ASSIGN,k.peekType(1));
+        assertNull(k.peekType(t.length));
+    }
+    @Test
+    public void testSources() throws IOException
+    {
+        final String src = "int x = 0x1F; // comment\nstr s = \"a\\tb\";\nfloat f = .5e3;";
+        // A reader which is never ready, like a pipe which has not received the rest of the input yet.
+        final java.io.Reader pipe = new java.io.Reader()
+        {
+            int pos = 0;
+            @Override public int read(final char[] b,final int off,final int len)
+            {
+                if(pos == src.length()) return -1;
+                b[off] = src.charAt(pos++);
+                return 1;
+            }
+            @Override public boolean ready() {return false;}
+            @Override public void close() {}
+        };
+        final TokenIterator i = Tokenize.tokenize(pipe,"Pipe",System.err);
+        assertNotNull(i);
+        assertEquals(16,i.tokens().length);
+        assertEquals(new Token(TokenType.LIT_INT,0,"0x1F"),i.tokens()[3]);
+        assertEquals(new Token(TokenType.LIT_STR,1,"a\tb"),i.tokens()[8]);
+        assertEquals(new Token(TokenType.LIT_FLOAT,2,".5e3"),i.tokens()[13]);
+        
+        // Lazy iterators only scan as far as they are asked to.
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final ErrReporter reporter = new ErrReporter("Lazy",new PrintStream(out));
+        final TokenIterator l = Tokenize.lazy(CharBuffer.wrap("a b @"),reporter);
+        assertEquals("a",l.next().value());
+        assertEquals("b",l.peek().value());
+        assertFalse(reporter.reportAll());
+        assertEquals(TokenType.EOF,l.advance().type());
+        assertFalse(l.canAdvance());
+        assertTrue(reporter.reportAll());
+        
+        // Files are mapped instead of being read.
+        final Path f = Files.createTempFile("TokenizeTest",".prgm");
+        try
+        {
+            Files.writeString(f,src);
+            final TokenIterator m = Tokenize.tokenize(f,new ErrReporter("Mapped",System.err));
+            assertNotNull(m);
+            assertArrayEquals(i.tokens(),m.tokens());
+        }
+        finally {Files.delete(f);}
+    }
+    @Test
+    public void testParallel()
+    {
+        // Strings and block comments which contain newlines, and comments which contain quotes.
+        final StringBuilder sb = new StringBuilder();
+        for(int i = 0;i < 200;++i)
+            sb.append("int x").append(i).append(" = 0x").append(Integer.toHexString(i)).append(";\n")
+              .append("str s").append(i).append(" = \"a\n\\\"b\\\\\n\";/*/\n").append(i%3 == 0? "\"/**\n*/\n" : "\n")
+              .append("// \"\nfloat f = x").append(i).append("/ .5e3 /*\n\"*/;\n");
+        final String src = sb.toString();
+        final Token[] expected = Tokenize.tokenize(CharBuffer.wrap(src),new ErrReporter("Sequential",System.err),0).tokens();
+        for(final int chunk : new int[] {1,7,64,src.length()-1})
+        {
+            final TokenIterator i = Tokenize.tokenize(CharBuffer.wrap(src),new ErrReporter("Parallel",System.err),chunk);
+            assertNotNull(i);
+            assertArrayEquals(expected,i.tokens());
+            // The symbols of all chunks are merged.
+            String f = null;
+            for(final Token t : i.tokens())
+                if(t.type() == TokenType.ID && t.value().equals("f"))
+                    assertSame(f == null? f = t.value() : f,t.value());
+        }
+        
+        // Errors are reported the same way as without chunks.
+        final String bad = src.substring(0,src.length()/2)+"@\n\"\\u12\"\n"+src.substring(src.length()/2)+"\"";
+        final ByteArrayOutputStream seq = new ByteArrayOutputStream(),par = new ByteArrayOutputStream();
+        assertNull(Tokenize.tokenize(CharBuffer.wrap(bad),new ErrReporter("Errors",new PrintStream(seq)),0));
+        assertNull(Tokenize.tokenize(CharBuffer.wrap(bad),new ErrReporter("Errors",new PrintStream(par)),16));
+        assertNotEquals(0,seq.size());
+        assertEquals(seq.toString(),par.toString());
+    }
+}